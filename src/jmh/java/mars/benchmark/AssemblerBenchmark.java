@@ -0,0 +1,68 @@
+package mars.benchmark;
+
+import mars.ErrorList;
+import mars.ProcessingException;
+import mars.assembler.Assembler;
+import mars.assembler.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing and assembling a large generated program (see Machines.largeSource()).  The tokenizer benchmark
+ * tokenizes every line, the assembler benchmark assembles the tokenized program into memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark
+{
+    @Param({"250", "1000"})
+    public int blocks;
+
+    private String[] lines;
+
+    private ArrayList programs;
+
+    @Setup
+    public void setUp() throws IOException, ProcessingException
+    {
+        Machines.create("interpreter");
+        String source = Machines.largeSource(blocks);
+        lines = source.split("\n");
+        programs = Machines.tokenize(source);
+    }
+
+    @Benchmark
+    public void tokenizeLine(Blackhole blackhole)
+    {
+        Tokenizer tokenizer = new Tokenizer();
+        ErrorList errors = new ErrorList();
+        for (int i = 0; i < lines.length; i++)
+        {
+            blackhole.consume(tokenizer.tokenizeLine(i + 1, lines[i], errors, false));
+        }
+    }
+
+    @Benchmark
+    public ArrayList assemble() throws ProcessingException
+    {
+        return new Assembler().assemble(programs, true, false);
+    }
+}
@@ -0,0 +1,69 @@
+package mars.benchmark;
+
+import mars.Globals;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.instructions.BasicInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding instructions by their binary code, as the simulator does for each instruction it fetches.  Each operation
+ * decodes the next instruction of the bundled kernels and the large generated program, in program order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark
+{
+    private int[] binaries;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, ProcessingException
+    {
+        Machines.create("interpreter");
+        ArrayList<Integer> codes = new ArrayList<Integer>();
+        ArrayList<String> sources = new ArrayList<String>();
+        for (String kernel : Machines.KERNELS)
+        {
+            sources.add(Machines.kernel(kernel));
+        }
+        sources.add(Machines.largeSource(100));
+        for (String source : sources)
+        {
+            for (Object statement : Machines.assemble(source).getMachineList())
+            {
+                codes.add(((ProgramStatement) statement).getBinaryStatement());
+            }
+        }
+        binaries = new int[codes.size()];
+        for (int i = 0; i < binaries.length; i++)
+        {
+            binaries[i] = codes.get(i);
+        }
+    }
+
+    @Benchmark
+    public BasicInstruction findByBinaryCode()
+    {
+        next = (next + 1 == binaries.length) ? 0 : next + 1;
+        return Globals.instructionSet.findByBinaryCode(binaries[next]);
+    }
+}
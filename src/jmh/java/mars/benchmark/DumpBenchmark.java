@@ -0,0 +1,71 @@
+package mars.benchmark;
+
+import mars.mips.dump.DumpFormat;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dumping 64 KB of the data segment to a file in each dump format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DumpBenchmark
+{
+    private static final int SIZE = 64 * 1024;
+
+    // Class of the format in mars.mips.dump, without the DumpFormat suffix
+    @Param({"AsciiText", "BinaryText", "Binary", "HexText", "IntelHex", "SegmentWindow"})
+    public String format;
+
+    private DumpFormat dumpFormat;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException, AddressErrorException, IOException
+    {
+        Memory memory = Machines.create("interpreter").getMemory();
+        dumpFormat = (DumpFormat) Class.forName("mars.mips.dump." + format + "DumpFormat")
+            .getDeclaredConstructor().newInstance();
+        for (int i = 0; i < SIZE; i += 4)
+        {
+            // Printable characters and other values
+            memory.setWord(Memory.dataBaseAddress + i, (i % 8 == 0) ? 0x41424344 + i : i * 0x9E3779B9);
+        }
+        file = File.createTempFile("benchmark", ".dump");
+        file.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public long dumpMemoryRange() throws AddressErrorException, IOException
+    {
+        dumpFormat.dumpMemoryRange(file, Memory.dataBaseAddress, Memory.dataBaseAddress + SIZE - 4);
+        return file.length();
+    }
+}
@@ -0,0 +1,131 @@
+package mars.benchmark;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.Settings;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Setting up machines and programs for the benchmarks, outside the measured code.
+ */
+final class Machines
+{
+    /** Kernels bundled in the kernels resource directory, run by SimulationBenchmark */
+    static final String[] KERNELS = {"loop", "memcpy", "fib", "sort"};
+
+    private Machines()
+    {
+    }
+
+    /**
+     * Initialize the simulator without a GUI and make a new machine the calling thread's.
+     *
+     * @param mode execution mode: interpreter, pd (pre-decoded) or jit (block compilation)
+     * @return the machine, its output discarded
+     */
+    static MachineContext create(String mode)
+    {
+        Globals.initialize(false);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED,
+            mode.equals("pd") || mode.equals("jit"));
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, mode.equals("jit"));
+        MachineContext context = new MachineContext();
+        context.setStandardOutput(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+        context.makeCurrent();
+        return context;
+    }
+
+    /**
+     * @param name a bundled kernel
+     * @return its source
+     */
+    static String kernel(String name) throws IOException
+    {
+        try (InputStream in = Machines.class.getResourceAsStream("/kernels/" + name + ".asm"))
+        {
+            if (in == null)
+            {
+                throw new IOException("no kernel " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Write a source to a temporary file, deleted on exit, and read and tokenize it.
+     *
+     * @param source the source
+     * @return the tokenized programs to assemble, as MIPSprogram.assemble() takes them
+     */
+    static ArrayList tokenize(String source) throws IOException, ProcessingException
+    {
+        File file = File.createTempFile("benchmark", ".asm");
+        file.deleteOnExit();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        ArrayList<String> files = new ArrayList<String>();
+        files.add(file.getPath());
+        return new MIPSprogram().prepareFilesForAssembly(files, file.getPath(), null);
+    }
+
+    /**
+     * Assemble a source into the current machine, with the program counter at its start.
+     *
+     * @param source the source
+     * @return the program
+     */
+    static MIPSprogram assemble(String source) throws IOException, ProcessingException
+    {
+        ArrayList programs = tokenize(source);
+        MIPSprogram program = (MIPSprogram) programs.get(0);
+        program.assemble(programs, true);
+        MachineContext.getCurrent().setProgram(program);
+        RegisterFile.INSTANCE.initializeProgramCounter(false);
+        return program;
+    }
+
+    /**
+     * Generate a large program: blocks of arithmetic, memory accesses, pseudo instructions, branches and data
+     * directives, each block with its own labels.
+     *
+     * @param blocks number of blocks, of 17 lines each
+     * @return the source
+     */
+    static String largeSource(int blocks)
+    {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < blocks; i++)
+        {
+            source.append("        .data\n");
+            source.append("table").append(i).append(":  .word ").append(i).append(", 0x7fff, -1, 42\n");
+            source.append("name").append(i).append(":   .asciiz \"block ").append(i).append("\\n\"\n");
+            source.append("        .text\n");
+            source.append("block").append(i).append(":\n");
+            source.append("        la    $t0, table").append(i).append("      # address of the table\n");
+            source.append("        lw    $t1, 0($t0)\n");
+            source.append("        lw    $t2, 4($t0)\n");
+            source.append("        addu  $t3, $t1, $t2\n");
+            source.append("        sll   $t4, $t3, 2\n");
+            source.append("        li    $t5, 0x12345678\n");
+            source.append("        xor   $t6, $t4, $t5\n");
+            source.append("        sw    $t6, 8($t0)\n");
+            source.append("        bge   $t6, $zero, next").append(i).append("\n");
+            source.append("        mul   $t7, $t6, $t3\n");
+            source.append("next").append(i).append(":\n");
+            source.append("        addiu $s0, $s0, 1\n");
+        }
+        source.append("        li    $v0, 10\n");
+        source.append("        syscall\n");
+        return source.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package mars.benchmark;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory reads and writes of each width, in each segment a program uses, with and without an observer of the
+ * addresses accessed.  Each operation accesses the next address of a 16 KB window, so successive accesses stay in the
+ * same few pages as a program's would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark
+{
+    private static final int WINDOW_MASK = 0x3FFC;
+
+    @Param({"data", "heap", "stack", "kdata"})
+    public String segment;
+
+    @Param({"false", "true"})
+    public boolean observed;
+
+    private Memory memory;
+
+    private int base;
+
+    private int offset;
+
+    @Setup
+    public void setUp() throws AddressErrorException
+    {
+        memory = Machines.create("interpreter").getMemory();
+        switch (segment)
+        {
+            case "data":
+                base = Memory.dataBaseAddress;
+                break;
+            case "heap":
+                base = Memory.heapBaseAddress;
+                break;
+            case "stack":
+                base = Memory.stackPointer - WINDOW_MASK;
+                break;
+            default:
+                base = Memory.kernelDataBaseAddress;
+                break;
+        }
+        for (int address = base; address <= base + WINDOW_MASK; address += 4)
+        {
+            memory.setWord(address, address);
+        }
+        if (observed)
+        {
+            memory.addObserver(new Observer()
+            {
+                public void update(Observable memory, Object notice)
+                {
+                }
+            }, base, base + WINDOW_MASK);
+        }
+    }
+
+    // Next word address of the window
+    private int next()
+    {
+        offset = (offset + 4) & WINDOW_MASK;
+        return base + offset;
+    }
+
+    @Benchmark
+    public int getWord() throws AddressErrorException
+    {
+        return memory.getWord(next());
+    }
+
+    @Benchmark
+    public int getHalf() throws AddressErrorException
+    {
+        return memory.getHalf(next() + 2);
+    }
+
+    @Benchmark
+    public int getByte() throws AddressErrorException
+    {
+        return memory.getByte(next() + 3);
+    }
+
+    @Benchmark
+    public int setWord() throws AddressErrorException
+    {
+        return memory.setWord(next(), offset);
+    }
+
+    @Benchmark
+    public int setHalf() throws AddressErrorException
+    {
+        return memory.setHalf(next() + 2, offset);
+    }
+
+    @Benchmark
+    public int setByte() throws AddressErrorException
+    {
+        return memory.setByte(next() + 3, offset);
+    }
+}
@@ -0,0 +1,77 @@
+package mars.benchmark;
+
+import mars.mips.hardware.RegisterFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Register file reads and writes by number, and program counter updates, with and without an observer of the
+ * registers.  Each operation accesses the next of registers $t0 to $s7.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterBenchmark
+{
+    @Param({"false", "true"})
+    public boolean observed;
+
+    private int number;
+
+    @Setup
+    public void setUp()
+    {
+        Machines.create("interpreter");
+        if (observed)
+        {
+            RegisterFile.addRegistersObserver(new Observer()
+            {
+                public void update(Observable register, Object notice)
+                {
+                }
+            });
+        }
+    }
+
+    // Next register of $t0 ($8) to $s7 ($23)
+    private int next()
+    {
+        number = (number + 1) & 15;
+        return number + 8;
+    }
+
+    @Benchmark
+    public int getValue()
+    {
+        return RegisterFile.getValue(next());
+    }
+
+    @Benchmark
+    public int updateRegister()
+    {
+        return RegisterFile.updateRegister(next(), number);
+    }
+
+    @Benchmark
+    public int incrementPC()
+    {
+        RegisterFile.incrementPC();
+        return RegisterFile.getPc();
+    }
+}
@@ -0,0 +1,81 @@
+package mars.benchmark;
+
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.simulator.MachineState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole program simulation of the bundled kernels in each execution mode.  A kernel is assembled once, and each
+ * operation restores the machine state taken after assembly and runs the kernel to its exit.  Besides the time per
+ * run, the instructions counter gives the throughput in instructions per second: divide by a million for MIPS.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationBenchmark
+{
+    @Param({"loop", "memcpy", "fib", "sort"})
+    public String kernel;
+
+    @Param({"interpreter", "pd", "jit"})
+    public String mode;
+
+    private MachineContext context;
+
+    private MIPSprogram program;
+
+    private MachineState assembled;
+
+    /**
+     * Instructions simulated, reported by JMH alongside the runs.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions
+    {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            instructions = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException, ProcessingException
+    {
+        context = Machines.create(mode);
+        program = Machines.assemble(Machines.kernel(kernel));
+        assembled = MachineState.capture(context);
+    }
+
+    @Benchmark
+    public int run(Instructions counter) throws ProcessingException
+    {
+        assembled.restore(context);
+        program.simulate(-1);
+        counter.instructions += context.getInstructionCount();
+        return context.getExitCode();
+    }
+}
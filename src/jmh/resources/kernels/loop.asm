@@ -0,0 +1,16 @@
+# Arithmetic loop: register to register ALU instructions and a backward branch
+        .text
+main:   li    $t0, 200000          # iterations
+        li    $t1, 1
+        li    $t2, 0
+loop:   addu  $t2, $t2, $t1
+        sll   $t3, $t2, 3
+        xor   $t1, $t1, $t3
+        srl   $t4, $t1, 5
+        or    $t1, $t4, $t0
+        andi  $t5, $t2, 0xff
+        subu  $t2, $t2, $t5
+        addiu $t0, $t0, -1
+        bgtz  $t0, loop
+        li    $v0, 10
+        syscall
@@ -0,0 +1,25 @@
+# Memory copy: word loads and stores between two 4 KB buffers, repeated
+        .data
+source: .space 4096
+target: .space 4096
+        .text
+main:   li    $s0, 100             # copies
+        la    $t0, source          # fill the source buffer
+        li    $t1, 1024
+fill:   sw    $t1, 0($t0)
+        addiu $t0, $t0, 4
+        addiu $t1, $t1, -1
+        bgtz  $t1, fill
+copy:   la    $t0, source
+        la    $t1, target
+        li    $t2, 1024
+word:   lw    $t3, 0($t0)
+        sw    $t3, 0($t1)
+        addiu $t0, $t0, 4
+        addiu $t1, $t1, 4
+        addiu $t2, $t2, -1
+        bgtz  $t2, word
+        addiu $s0, $s0, -1
+        bgtz  $s0, copy
+        li    $v0, 10
+        syscall
@@ -0,0 +1,457 @@
+package mars;
+
+import mars.mips.hardware.RegisterFile;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembles and simulates the programs listed in a manifest file on a pool of worker threads, each program in its own
+ * <code>MachineContext</code>, and writes one JSON object per program (JSON lines) to a results stream.  This is the
+ * "batch" option of the command line.  All jobs share the instruction set loaded by <code>Globals.initialize</code>
+ * and the current settings.
+ * <p>
+ * Each line of the manifest describes one job as up to four whitespace-separated fields:
+ * <pre>
+ *   program [input [expected [steps]]]
+ * </pre>
+ * <code>input</code> is a file read by the program's console input syscalls, <code>expected</code> a file holding
+ * the console output the program must produce, and <code>steps</code> its maximum instruction count.  A field of
+ * "-" means none, in which case the program reads an empty input, its output is not checked and the step limit given
+ * on the command line applies.  Relative paths are relative to the manifest's directory.  Blank lines and lines
+ * starting with '#' are ignored.
+ * <p>
+ * A job's record holds its number (manifest order, from 1), program, status, exit code, console output, instruction
+ * count, wall time and error messages, and whether its output matched the expected output if there is one.  It also
+ * holds the simulation speed in instructions per second and, only when jobs run one at a time (one worker), the peak
+ * heap use of the JVM while the job ran.  Records are written as jobs finish, so may be out of order.  Status is one
+ * of:
+ * <ul>
+ * <li>ok -- the program terminated normally
+ * <li>error -- the program terminated on a runtime error, or the job failed, e.g. its input or expected output could
+ * not be read
+ * <li>assemble-error -- the program did not assemble
+ * <li>step-limit -- the program reached its maximum instruction count
+ * <li>timeout -- the program ran past the wall clock limit and was stopped
+ * </ul>
+ */
+public class BatchRunner
+{
+    private static final String STATUS_OK = "ok";
+
+    private static final String STATUS_ERROR = "error";
+
+    private static final String STATUS_ASSEMBLE_ERROR = "assemble-error";
+
+    private static final String STATUS_STEP_LIMIT = "step-limit";
+
+    private static final String STATUS_TIMEOUT = "timeout";
+
+    private final File manifest;
+
+    private final int workers;
+
+    private final boolean virtualThreads;
+
+    // step limit of jobs that do not give their own, 0 or less for none
+    private final int maxSteps;
+
+    // wall clock limit of each job in milliseconds, 0 or less for none
+    private final long timeout;
+
+    private final boolean pseudo;
+
+    private final boolean warningsAreErrors;
+
+    private final boolean startAtMain;
+
+    private final PrintStream results;
+
+    /**
+     * @param manifest file listing the jobs
+     * @param workers maximum number of jobs run at the same time
+     * @param virtualThreads run jobs on virtual threads if this Java supports them, else on platform threads
+     * @param maxSteps step limit of jobs that do not give their own, 0 or less for none
+     * @param timeout wall clock limit of each job in milliseconds, 0 or less for none
+     * @param pseudo whether pseudo instructions and formats are permitted
+     * @param warningsAreErrors whether assembler warnings are errors
+     * @param startAtMain whether execution starts at the global label main, if defined
+     * @param results stream receiving the result records
+     */
+    public BatchRunner(File manifest, int workers, boolean virtualThreads, int maxSteps, long timeout,
+                       boolean pseudo, boolean warningsAreErrors, boolean startAtMain, PrintStream results)
+    {
+        this.manifest = manifest;
+        this.workers = Math.max(1, workers);
+        this.virtualThreads = virtualThreads;
+        this.maxSteps = maxSteps;
+        this.timeout = timeout;
+        this.pseudo = pseudo;
+        this.warningsAreErrors = warningsAreErrors;
+        this.startAtMain = startAtMain;
+        this.results = results;
+    }
+
+    /**
+     * Run all jobs of the manifest and wait for them to finish.
+     *
+     * @return true if every job terminated normally and produced its expected output
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    public boolean run() throws IOException
+    {
+        ArrayList<Job> jobs = readManifest();
+        ExecutorService executor = createExecutor();
+        ScheduledExecutorService timer = null;
+        if (timeout > 0)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "MIPS batch timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        // Virtual thread executors start a thread per job, so limit the number of jobs running there too.
+        Semaphore running = new Semaphore(workers);
+        ArrayList<Future<Boolean>> outcomes = new ArrayList<Future<Boolean>>();
+        for (Job job : jobs)
+        {
+            ScheduledExecutorService jobTimer = timer;
+            outcomes.add(executor.submit(() ->
+            {
+                running.acquire();
+                try
+                {
+                    return runJob(job, jobTimer);
+                }
+                finally
+                {
+                    running.release();
+                }
+            }));
+        }
+        boolean passed = true;
+        for (Future<Boolean> outcome : outcomes)
+        {
+            try
+            {
+                passed &= outcome.get();
+            }
+            catch (InterruptedException e)
+            {
+                passed = false;
+            }
+            catch (ExecutionException e)
+            {
+                // runJob() writes a record for anything but an Error
+                passed = false;
+                System.err.println("batch job failed: " + e.getCause());
+            }
+        }
+        executor.shutdownNow();
+        if (timer != null)
+        {
+            timer.shutdownNow();
+        }
+        return passed;
+    }
+
+    // Virtual threads are available from Java 21 on.  Look them up reflectively so older runtimes fall back.
+    private ExecutorService createExecutor()
+    {
+        if (virtualThreads)
+        {
+            try
+            {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                // not supported, use platform threads
+            }
+        }
+        return Executors.newFixedThreadPool(workers);
+    }
+
+    private ArrayList<Job> readManifest() throws IOException
+    {
+        ArrayList<Job> jobs = new ArrayList<Job>();
+        File directory = manifest.getAbsoluteFile().getParentFile();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest)))
+        {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length > 4)
+                {
+                    throw new IOException(manifest + " line " + lineNumber + ": too many fields");
+                }
+                int steps = maxSteps;
+                if (fields.length > 3 && !fields[3].equals("-"))
+                {
+                    try
+                    {
+                        steps = Integer.decode(fields[3]);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw new IOException(manifest + " line " + lineNumber + ": invalid step count " + fields[3]);
+                    }
+                }
+                jobs.add(new Job(jobs.size() + 1, resolve(directory, fields, 0), resolve(directory, fields, 1),
+                    resolve(directory, fields, 2), steps));
+            }
+        }
+        return jobs;
+    }
+
+    private static File resolve(File directory, String[] fields, int field)
+    {
+        if (field >= fields.length || fields[field].equals("-"))
+        {
+            return null;
+        }
+        File file = new File(fields[field]);
+        return file.isAbsolute() ? file : new File(directory, fields[field]);
+    }
+
+    // Assemble and simulate one job in a new MachineContext and write its record.  Returns whether it passed.
+    private boolean runJob(Job job, ScheduledExecutorService timer)
+    {
+        MachineContext context = new MachineContext();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        context.setStandardOutput(new PrintStream(output, false, StandardCharsets.UTF_8));
+        String status;
+        String errors = "";
+        long start = System.nanoTime();
+        long simulationTime = 0;
+        if (workers == 1)
+        {
+            resetPeakHeap();
+        }
+        ScheduledFuture<?> stopper = null;
+        try (InputStream input = (job.input == null)
+            ? new ByteArrayInputStream(new byte[0]) : new FileInputStream(job.input))
+        {
+            context.setStandardInput(input);
+            context.makeCurrent();
+            MIPSprogram program = new MIPSprogram();
+            boolean programRan = false;
+            try
+            {
+                ArrayList<String> files = new ArrayList<String>();
+                files.add(job.program.getPath());
+                ArrayList programs = program.prepareFilesForAssembly(files, job.program.getPath(), null);
+                ErrorList warnings = program.assemble(programs, pseudo, warningsAreErrors);
+                if (warnings != null && warnings.warningsOccurred())
+                {
+                    errors = warnings.generateWarningReport();
+                }
+                RegisterFile.INSTANCE.initializeProgramCounter(startAtMain);
+                if (timer != null)
+                {
+                    stopper = timer.schedule(context::requestStop, timeout, TimeUnit.MILLISECONDS);
+                }
+                programRan = true;
+                long simulationStart = System.nanoTime();
+                try
+                {
+                    if (program.simulate(job.maxSteps))
+                    {
+                        status = STATUS_OK;
+                    }
+                    else
+                    {
+                        status = context.isStopRequested() ? STATUS_TIMEOUT : STATUS_STEP_LIMIT;
+                    }
+                }
+                finally
+                {
+                    simulationTime = System.nanoTime() - simulationStart;
+                }
+            }
+            catch (ProcessingException e)
+            {
+                status = programRan ? STATUS_ERROR : STATUS_ASSEMBLE_ERROR;
+                errors = e.errors().generateErrorAndWarningReport();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // A missing input file, or a failure of the simulator itself: the job still gets its record.
+            status = STATUS_ERROR;
+            errors = e.toString();
+        }
+        finally
+        {
+            if (stopper != null)
+            {
+                stopper.cancel(false);
+            }
+            MachineContext.release();
+        }
+        long wallTime = (System.nanoTime() - start) / 1000000;
+        long peakHeap = getPeakHeap();
+        context.getStandardOutput().flush();
+        String stdout = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        Boolean matched = null;
+        if (job.expected != null)
+        {
+            try
+            {
+                matched = stdout.equals(new String(Files.readAllBytes(job.expected.toPath()), StandardCharsets.UTF_8));
+            }
+            catch (IOException e)
+            {
+                matched = false;
+                status = STATUS_ERROR;
+                errors = errors + e;
+            }
+        }
+
+        StringBuilder record = new StringBuilder();
+        record.append("{\"job\":").append(job.number);
+        record.append(",\"program\":").append(quote(job.program.getPath()));
+        record.append(",\"status\":").append(quote(status));
+        record.append(",\"exitCode\":").append(context.getExitCode());
+        record.append(",\"instructions\":").append(context.getInstructionCount());
+        record.append(",\"wallTimeMs\":").append(wallTime);
+        record.append(",\"instructionsPerSecond\":")
+            .append((simulationTime == 0) ? 0 : context.getInstructionCount() * 1000000000L / simulationTime);
+        if (workers == 1)
+        {
+            // Heap use is measured for the whole JVM, so it is not the job's own when jobs overlap.
+            record.append(",\"peakHeapBytes\":").append(peakHeap);
+        }
+        record.append(",\"stdout\":").append(quote(stdout));
+        record.append(",\"errors\":").append(quote(errors));
+        if (matched != null)
+        {
+            record.append(",\"passed\":").append(matched);
+        }
+        record.append('}');
+        synchronized (results)
+        {
+            results.println(record);
+            results.flush();
+        }
+        return status.equals(STATUS_OK) && (matched == null || matched);
+    }
+
+    // Start measuring the peak heap use from the current use.
+    private static void resetPeakHeap()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Peak heap use since the last reset, summed over the heap's memory pools.
+    private static long getPeakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    // Quote a string as a JSON string literal.
+    private static String quote(String string)
+    {
+        StringBuilder quoted = new StringBuilder(string.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class Job
+    {
+        private final int number;
+
+        private final File program;
+
+        private final File input;
+
+        private final File expected;
+
+        private final int maxSteps;
+
+        private Job(int number, File program, File input, File expected, int maxSteps)
+        {
+            this.number = number;
+            this.program = program;
+            this.input = input;
+            this.expected = expected;
+            this.maxSteps = maxSteps;
+        }
+    }
+}
@@ -97,6 +97,21 @@ public class Globals
      */
     public static final int maximumBacksteps = getBackstepLimit();
 
+    /**
+     * Maximum memory, in megabytes, used to buffer back-step operations
+     */
+    public static final int maximumBackstepMemory = getBackstepMemoryLimit();
+
+    /**
+     * Number of instructions between time travel checkpoints
+     */
+    public static final int timeTravelInterval = getTimeTravelInterval();
+
+    /**
+     * Maximum number of time travel checkpoints kept for one program
+     */
+    public static final int maximumCheckpoints = getCheckpointLimit();
+
     /**
      * Placeholder for non-printable ASCII codes
      */
@@ -116,17 +131,27 @@ public class Globals
 
     /**
      * the program currently being worked with.  Used by GUI only, not command line.
+     *
+     * @deprecated Each MachineContext has its own program; use getProgram().  This field follows the program of the
+     * default context, the one the GUI and single-program command line use, and is kept for existing tools.
      **/
+    @Deprecated
     public static MIPSprogram program;
 
     /**
      * Symbol table for file currently being assembled.
+     *
+     * @deprecated Use getSymbolTable().  This field is the global symbol table of the default context.
      **/
+    @Deprecated
     public static SymbolTable symbolTable;
 
     /**
      * Simulated MIPS memory component.
+     *
+     * @deprecated Use getMemory().  This field is the memory of the default context.
      **/
+    @Deprecated
     public static Memory memory;
 
     /**
@@ -146,7 +171,10 @@ public class Globals
 
     /**
      * MARS exit code -- useful with SYSCALL 17 when running from command line (not GUI)
+     *
+     * @deprecated Use MachineContext.getExitCode().  This field follows the exit code of the default context.
      */
+    @Deprecated
     public static int exitCode = 0;
 
     public static boolean runSpeedPanelExists = false;
@@ -187,6 +215,42 @@ public class Globals
         return settings;
     }
 
+    /**
+     * The program currently being worked with, in the calling thread's MachineContext.  Used by GUI only, not command
+     * line.
+     *
+     * @return the current MIPSprogram, or null if none
+     */
+    public static MIPSprogram getProgram()
+    {
+        return MachineContext.getCurrent().getProgram();
+    }
+
+    public static void setProgram(MIPSprogram p)
+    {
+        MachineContext.getCurrent().setProgram(p);
+    }
+
+    /**
+     * Global symbol table of the calling thread's MachineContext.
+     *
+     * @return the global SymbolTable
+     */
+    public static SymbolTable getSymbolTable()
+    {
+        return MachineContext.getCurrent().getSymbolTable();
+    }
+
+    /**
+     * Simulated MIPS memory component of the calling thread's MachineContext.  Same as Memory.getInstance().
+     *
+     * @return the Memory
+     */
+    public static Memory getMemory()
+    {
+        return MachineContext.getCurrent().getMemory();
+    }
+
     /**
      * Method called once upon system initialization to create the global data structures.
      **/
@@ -195,14 +259,12 @@ public class Globals
     {
         if (!initialized)
         {
-            memory = Memory.getInstance();  //clients can use Memory.getInstance instead of Globals.memory
             instructionSet = new InstructionSet();
             instructionSet.populate();
-            symbolTable = new SymbolTable("global");
             settings = new Settings(gui);
             initialized = true;
             debug = false;
-            memory.clear(); // will establish memory configuration from setting
+            getMemory().clear(); // will establish memory configuration from setting
         }
     }
 
@@ -224,6 +286,24 @@ public class Globals
         return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
     }
 
+    // Read backstep memory limit, in megabytes, from properties file.  If no value found, use a default value.
+    private static int getBackstepMemoryLimit()
+    {
+        return getIntegerProperty(configPropertiesFile, "BackstepMemoryLimit", 64);
+    }
+
+    // Read number of instructions between time travel checkpoints from properties file.
+    private static int getTimeTravelInterval()
+    {
+        return getIntegerProperty(configPropertiesFile, "TimeTravelInterval", 1000000);
+    }
+
+    // Read limit on number of time travel checkpoints from properties file.
+    private static int getCheckpointLimit()
+    {
+        return getIntegerProperty(configPropertiesFile, "TimeTravelCheckpoints", 200);
+    }
+
     // Read ASCII default display character for non-printing characters, from properties file.
     public static String getAsciiNonPrint()
     {
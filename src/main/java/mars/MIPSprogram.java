@@ -3,7 +3,9 @@ package mars;
 import mars.assembler.*;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.BackStepper;
+import mars.simulator.Breakpoints;
 import mars.simulator.Simulator;
+import mars.simulator.TimeTravel;
 
 import javax.swing.*;
 import java.io.BufferedReader;
@@ -64,6 +66,8 @@ public class MIPSprogram
 
     private BackStepper backStepper;
 
+    private TimeTravel timeTravel;
+
     private SymbolTable localSymbolTable;
 
     private MacroPool macroPool;
@@ -194,6 +198,17 @@ public class MIPSprogram
         return backStepper;
     }
 
+    /**
+     * Returns the time travel history of this program.  It is created upon successful assembly.
+     *
+     * @return TimeTravel object, null if there is none.
+     **/
+
+    public TimeTravel getTimeTravel()
+    {
+        return timeTravel;
+    }
+
     /**
      * Returns SymbolTable associated with this program.  It is created at assembly time, and stores local labels (those
      * not declared using .globl directive).
@@ -360,9 +375,15 @@ public class MIPSprogram
                               boolean warningsAreErrors) throws ProcessingException
     {
         this.backStepper = null;
+        if (this.timeTravel != null)
+        {
+            this.timeTravel.reset(); // ends the memory write journal it keeps between runs
+            this.timeTravel = null;
+        }
         Assembler asm = new Assembler();
         this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
         this.backStepper = new BackStepper();
+        this.timeTravel = new TimeTravel(this);
         return asm.getErrorList();
     }
 
@@ -393,7 +414,7 @@ public class MIPSprogram
 
     public boolean simulate(int maxSteps) throws ProcessingException
     {
-        return this.simulateFromPC(null, maxSteps, null);
+        return this.simulateFromPC((Breakpoints) null, maxSteps, null);
     }
 
     /**
@@ -413,6 +434,24 @@ public class MIPSprogram
         return sim.simulate(this, RegisterFile.getPc(), maxSteps, breakPoints, a);
     }
 
+    /**
+     * Simulates execution of the MIPS program. Program must have already been assembled. Begins simulation at current
+     * program counter address and continues until stopped, paused, maximum steps exceeded, a breakpoint or watchpoint
+     * is hit, or exception occurs.
+     *
+     * @param breakpoints breakpoints and watchpoints.  Can be null.
+     * @param maxSteps maximum number of instruction executions.  Default -1 means no maximum.
+     * @param a the GUI component responsible for this call (GO normally).  set to null if none.
+     * @return true if execution completed and false otherwise
+     * @throws ProcessingException Will throw exception if errors occured while simulating.
+     **/
+    public boolean simulateFromPC(Breakpoints breakpoints, int maxSteps, AbstractAction a) throws ProcessingException
+    {
+        steppedExecution = false;
+        Simulator sim = Simulator.getInstance();
+        return sim.simulate(this, RegisterFile.getPc(), maxSteps, breakpoints, a);
+    }
+
 
     /**
      * Simulates execution of the MIPS program. Program must have already been assembled. Begins simulation at current
@@ -426,7 +465,7 @@ public class MIPSprogram
     {
         steppedExecution = true;
         Simulator sim = Simulator.getInstance();
-        boolean done = sim.simulate(this, RegisterFile.getPc(), 1, null, a);
+        boolean done = sim.simulate(this, RegisterFile.getPc(), 1, (Breakpoints) null, a);
         return done;
     }
 
@@ -0,0 +1,478 @@
+package mars;
+
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterBank;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.syscalls.SyscallHandler;
+import mars.simulator.DelayedBranch;
+import mars.simulator.ExecutionListener;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
+import mars.util.SystemIO;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The complete state of one simulated MIPS machine: memory, the register file, coprocessors 0 and 1, the pending
+ * delayed branch, the files opened by syscalls, the random number streams, the program and global symbol table, and
+ * the exit code.  Independent programs can be assembled and simulated concurrently in one JVM by giving each its own
+ * MachineContext.
+ * <p>
+ * Each thread has a current context.  The static hardware accessors (<code>RegisterFile</code>,
+ * <code>Coprocessor0</code>, <code>Coprocessor1</code>, <code>DelayedBranch</code>, <code>Memory.getInstance()</code>,
+ * <code>Globals.getProgram()</code> and so on) all operate on the calling thread's current context, so instruction
+ * simulation code and syscalls need no changes.  The simulator thread started by <code>Simulator.simulate()</code>
+ * runs in the context that was current for its caller.  Threads that never call <code>makeCurrent()</code> use the
+ * default context, which is what the GUI and single-program command line use.
+ */
+public final class MachineContext
+{
+    // Set once any thread is bound to a context other than the default.  Until then every
+    // thread uses the default context and getCurrent() need not consult the thread local.
+    private static volatile boolean contextsInUse = false;
+
+    private static final MachineContext defaultContext = new MachineContext(Globals.memoryAndRegistersLock);
+
+    static
+    {
+        // The deprecated Globals fields of the time before there were several machines describe the default one.
+        Globals.memory = defaultContext.memory;
+        Globals.symbolTable = defaultContext.symbolTable;
+    }
+
+    private static final ThreadLocal<MachineContext> current = new ThreadLocal<MachineContext>();
+
+    private final Object lock;
+
+    private final Memory memory;
+
+    // Register values are held in flat banks; the Register objects are views onto them for the GUI and tools.
+    private final RegisterBank registerBank;
+
+    private final Register[] registers;
+
+    private final RegisterBank coprocessor0RegisterBank;
+
+    private final Register[] coprocessor0Registers;
+
+    private final RegisterBank coprocessor1RegisterBank;
+
+    private final Register[] coprocessor1Registers;
+
+    private final Register coprocessor1ConditionFlags;
+
+    private final DelayedBranch delayedBranch;
+
+    private final SystemIO.FileIOData fileIOData;
+
+    private final HashMap randomStreams;
+
+    private final SymbolTable symbolTable;
+
+    private MIPSprogram program;
+
+    private int exitCode;
+
+    // Console streams used by the syscalls; null means System.in and System.out.
+    private InputStream standardInput;
+
+    private PrintStream standardOutput;
+
+    // Instructions executed by all completed runs of the simulator in this context.
+    private long instructionCount;
+
+    // Instructions executed so far by the run in progress, or null if none.
+    private LongSupplier runInstructionCount;
+
+    private SyscallHandler syscallHandler;
+
+    // Listeners of the run in progress, or null if none or no run.
+    private ExecutionListener[] executionListeners;
+
+    // Listeners added to this machine, told of its runs only.  Replaced, never modified, when one is added or removed.
+    private volatile ExecutionListener[] machineExecutionListeners = new ExecutionListener[0];
+
+    // Log recording or replaying the input of the runs, or null.
+    private InputLog inputLog;
+
+    // Set from another thread to make the simulator stop at its next check.
+    private volatile boolean stopRequested;
+
+    // Device whose external interrupt the simulator is to take before its next instruction, Simulator.NO_DEVICE if
+    // none.  Set by memory mapped device tools from their own threads.
+    private volatile int externalInterruptingDevice;
+
+    /**
+     * Create a new machine, with its memory and registers in their initial state.
+     */
+    public MachineContext()
+    {
+        this(new Object());
+    }
+
+    private MachineContext(Object lock)
+    {
+        this.lock = lock;
+        this.memory = new Memory();
+        this.registerBank = new RegisterBank(RegisterFile.REGISTER_COUNT);
+        this.registers = RegisterFile.createRegisters(registerBank);
+        this.coprocessor0RegisterBank = new RegisterBank(Coprocessor0.REGISTER_COUNT);
+        this.coprocessor0Registers = Coprocessor0.createRegisters(coprocessor0RegisterBank);
+        this.coprocessor1RegisterBank = new RegisterBank(Coprocessor1.REGISTER_COUNT);
+        this.coprocessor1Registers = Coprocessor1.createRegisters(coprocessor1RegisterBank);
+        this.coprocessor1ConditionFlags = Coprocessor1.createConditionFlagsRegister(coprocessor1RegisterBank);
+        this.delayedBranch = new DelayedBranch();
+        this.fileIOData = new SystemIO.FileIOData();
+        this.randomStreams = new HashMap();
+        this.symbolTable = new SymbolTable("global");
+        this.program = null;
+        this.exitCode = 0;
+        this.standardInput = null;
+        this.standardOutput = null;
+        this.instructionCount = 0;
+        this.runInstructionCount = null;
+        this.syscallHandler = null;
+        this.inputLog = null;
+        this.stopRequested = false;
+        this.externalInterruptingDevice = Simulator.NO_DEVICE;
+    }
+
+    /**
+     * @return the context used by the calling thread
+     */
+    public static MachineContext getCurrent()
+    {
+        if (!contextsInUse)
+        {
+            return defaultContext;
+        }
+        MachineContext context = current.get();
+        return (context == null) ? defaultContext : context;
+    }
+
+    /**
+     * @return the context used by threads that have not selected another one
+     */
+    public static MachineContext getDefault()
+    {
+        return defaultContext;
+    }
+
+    /**
+     * Make this the context of the calling thread, until it selects another.
+     */
+    public void makeCurrent()
+    {
+        if (this != defaultContext)
+        {
+            contextsInUse = true;
+        }
+        current.set(this);
+    }
+
+    /**
+     * Return the calling thread to the default context.
+     */
+    public static void release()
+    {
+        current.remove();
+    }
+
+    /**
+     * Lock guarding this machine's memory and registers.  For the default context this is
+     * <code>Globals.memoryAndRegistersLock</code>.
+     *
+     * @return the lock object
+     */
+    public Object getLock()
+    {
+        return lock;
+    }
+
+    public Memory getMemory()
+    {
+        return memory;
+    }
+
+    public RegisterBank getRegisterBank()
+    {
+        return registerBank;
+    }
+
+    public Register[] getRegisters()
+    {
+        return registers;
+    }
+
+    public RegisterBank getCoprocessor0RegisterBank()
+    {
+        return coprocessor0RegisterBank;
+    }
+
+    public Register[] getCoprocessor0Registers()
+    {
+        return coprocessor0Registers;
+    }
+
+    public RegisterBank getCoprocessor1RegisterBank()
+    {
+        return coprocessor1RegisterBank;
+    }
+
+    public Register[] getCoprocessor1Registers()
+    {
+        return coprocessor1Registers;
+    }
+
+    public Register getCoprocessor1ConditionFlags()
+    {
+        return coprocessor1ConditionFlags;
+    }
+
+    public DelayedBranch getDelayedBranch()
+    {
+        return delayedBranch;
+    }
+
+    public SystemIO.FileIOData getFileIOData()
+    {
+        return fileIOData;
+    }
+
+    public HashMap getRandomStreams()
+    {
+        return randomStreams;
+    }
+
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+    public MIPSprogram getProgram()
+    {
+        return program;
+    }
+
+    public void setProgram(MIPSprogram program)
+    {
+        this.program = program;
+        if (this == defaultContext)
+        {
+            Globals.program = program;
+        }
+    }
+
+    /**
+     * @return exit code set by the exit2 syscall (17), 0 if not used
+     */
+    public int getExitCode()
+    {
+        return exitCode;
+    }
+
+    public void setExitCode(int exitCode)
+    {
+        this.exitCode = exitCode;
+        if (this == defaultContext)
+        {
+            Globals.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * @return stream read by the console input syscalls
+     */
+    public InputStream getStandardInput()
+    {
+        return (standardInput == null) ? System.in : standardInput;
+    }
+
+    /**
+     * Set the stream read by the console input syscalls.  Must be set before the program starts reading.
+     *
+     * @param standardInput the stream, or null for System.in
+     */
+    public void setStandardInput(InputStream standardInput)
+    {
+        this.standardInput = standardInput;
+    }
+
+    /**
+     * @return stream written by the console output syscalls when there is no GUI
+     */
+    public PrintStream getStandardOutput()
+    {
+        return (standardOutput == null) ? System.out : standardOutput;
+    }
+
+    /**
+     * Set the stream written by the console output syscalls when there is no GUI.
+     *
+     * @param standardOutput the stream, or null for System.out
+     */
+    public void setStandardOutput(PrintStream standardOutput)
+    {
+        this.standardOutput = standardOutput;
+    }
+
+    /**
+     * @return number of MIPS instructions executed in this context, including those of the run in progress if called
+     *     from its thread
+     */
+    public long getInstructionCount()
+    {
+        LongSupplier run = runInstructionCount;
+        return (run == null) ? instructionCount : instructionCount + run.getAsLong();
+    }
+
+    public void addInstructionCount(long count)
+    {
+        instructionCount += count;
+    }
+
+    /**
+     * Set the number of instructions executed, e.g. when a saved machine state is restored.  Not while a run is in
+     * progress.
+     *
+     * @param count the number of instructions
+     */
+    public void setInstructionCount(long count)
+    {
+        instructionCount = count;
+    }
+
+    /**
+     * Called by the simulator at the start and end of a run, so that getInstructionCount() can include the
+     * instructions executed by the run so far.
+     *
+     * @param count supplies the number of instructions executed by the run in progress, or null when it has ended
+     */
+    public void setRunInstructionCount(LongSupplier count)
+    {
+        runInstructionCount = count;
+    }
+
+    /**
+     * @return handler through which the syscalls of this machine are performed, or null to call the services directly
+     */
+    public SyscallHandler getSyscallHandler()
+    {
+        return syscallHandler;
+    }
+
+    public void setSyscallHandler(SyscallHandler syscallHandler)
+    {
+        this.syscallHandler = syscallHandler;
+    }
+
+    /**
+     * @return listeners to be told of the syscalls of the run in progress, or null if none
+     */
+    public ExecutionListener[] getExecutionListeners()
+    {
+        return executionListeners;
+    }
+
+    public void setExecutionListeners(ExecutionListener[] executionListeners)
+    {
+        this.executionListeners = executionListeners;
+    }
+
+    /**
+     * Add a listener to be told of the instructions, loads, stores and syscalls of every run of this machine started
+     * from now on.  Unlike one added to the Simulator, it is not told of the runs of other machines.
+     *
+     * @param l the listener
+     */
+    public synchronized void addExecutionListener(ExecutionListener l)
+    {
+        ExecutionListener[] listeners = Arrays.copyOf(machineExecutionListeners, machineExecutionListeners.length + 1);
+        listeners[listeners.length - 1] = l;
+        machineExecutionListeners = listeners;
+    }
+
+    /**
+     * Remove a listener added with addExecutionListener().  A run in progress goes on telling it until it stops.
+     *
+     * @param l the listener
+     */
+    public synchronized void removeExecutionListener(ExecutionListener l)
+    {
+        ArrayList<ExecutionListener> listeners =
+            new ArrayList<ExecutionListener>(Arrays.asList(machineExecutionListeners));
+        if (listeners.remove(l))
+        {
+            machineExecutionListeners = listeners.toArray(new ExecutionListener[0]);
+        }
+    }
+
+    /**
+     * @return the listeners added to this machine with addExecutionListener()
+     */
+    public ExecutionListener[] getMachineExecutionListeners()
+    {
+        return machineExecutionListeners;
+    }
+
+    /**
+     * @return log recording or replaying the input of this machine's runs, or null if none (see InputLog)
+     */
+    public InputLog getInputLog()
+    {
+        return inputLog;
+    }
+
+    public void setInputLog(InputLog inputLog)
+    {
+        this.inputLog = inputLog;
+    }
+
+    /**
+     * Ask the simulator running in this context to stop, as if its Stop button had been pressed.  May be called from
+     * any thread.  The request stays in effect until <code>clearStopRequest</code>.
+     */
+    public void requestStop()
+    {
+        stopRequested = true;
+    }
+
+    public void clearStopRequest()
+    {
+        stopRequested = false;
+    }
+
+    public boolean isStopRequested()
+    {
+        return stopRequested;
+    }
+
+    /**
+     * Raise an external interrupt, which the simulator running in this context takes before its next instruction.  May
+     * be called from any thread.
+     *
+     * @param device the interrupting device's cause code, such as Exceptions.EXTERNAL_INTERRUPT_KEYBOARD, or
+     *               Simulator.NO_DEVICE to withdraw the interrupt
+     */
+    public void setExternalInterruptingDevice(int device)
+    {
+        externalInterruptingDevice = device;
+    }
+
+    /**
+     * @return the device whose external interrupt is pending, Simulator.NO_DEVICE if none
+     */
+    public int getExternalInterruptingDevice()
+    {
+        return externalInterruptingDevice;
+    }
+}
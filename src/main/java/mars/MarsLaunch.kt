@@ -3,7 +3,20 @@ package mars
 import mars.mips.dump.DumpFormat
 import mars.mips.dump.DumpFormatLoader
 import mars.mips.hardware.*
+import mars.assembler.SymbolTable
+import mars.simulator.BreakpointCondition
+import mars.simulator.Breakpoints
+import mars.simulator.BranchModel
+import mars.simulator.CacheModel
+import mars.simulator.ExecutionListener
+import mars.simulator.ExecutionTrace
+import mars.simulator.ExecutionTraceReader
+import mars.simulator.InputLog
+import mars.simulator.MachineSnapshot
+import mars.simulator.PipelineModel
+import mars.simulator.Profiler
 import mars.simulator.ProgramArgumentList
+import mars.simulator.Simulator
 import mars.util.Binary
 import mars.util.FilenameFinder
 import mars.util.MemoryDump
@@ -72,7 +85,34 @@ class MarsLaunch(var args: Array<String>)
     // Whether to allow self-modifying code (e.g. write to text segment)
     private var selfModifyingCode = false
 
-    private var instructionCount = 0
+    // Whether to run the program with the pre-decoded interpreter instead of the reference simulation code
+    private var predecodedExecution = false
+
+    // Whether to compile frequently executed basic blocks to JVM bytecode
+    private var blockCompilation = false
+
+    private var instructionCount = 0L
+
+    // Counts the instructions executed, for the "ic" option
+    private val instructionCounter = object : ExecutionListener
+    {
+        override fun onRetire(pc: Int, binaryStatement: Int)
+        {
+            instructionCount++
+        }
+    }
+
+    // manifest of programs to run in batch mode, null if not in batch mode
+    private var batchManifest: File? = null
+
+    // number of batch jobs run at the same time
+    private var batchWorkers = Runtime.getRuntime().availableProcessors()
+
+    // Whether batch jobs run on virtual threads instead of platform threads
+    private var batchVirtualThreads = false
+
+    // wall clock limit of each batch job in milliseconds, 0 for none
+    private var batchTimeout = 0L
 
     // MARS command exit code to return if assemble error occurs
     private var assembleErrorExitCode = 0
@@ -80,6 +120,63 @@ class MarsLaunch(var args: Array<String>)
     // MARS command exit code to return if simulation error occurs
     private var simulateErrorExitCode = 0
     
+    // breakpoints as <address or label> and an optional condition, resolved after assembly
+    private var breakpointList: ArrayList<Pair<String, String?>> = ArrayList()
+
+    // watched memory ranges as <address or label>[-<address or label>], resolved after assembly
+    private var watchpointList: ArrayList<String> = ArrayList()
+
+    // machine snapshot to start the run from instead of the program's initial state, null if none
+    private var resumeSnapshot: String? = null
+
+    // file to save a machine snapshot to when the run stops, null if none
+    private var saveSnapshot: String? = null
+
+    // file to record the run's input to, null if none
+    private var recordInput: String? = null
+
+    // file to replay the run's input from instead of the console, clock and devices, null if none
+    private var replayInput: String? = null
+
+    // file to write an execution trace of the run to, null if none
+    private var traceFile: String? = null
+
+    // number of instructions a trace keeps, the last executed, 0 for all
+    private var traceCapacity = 0L
+
+    // trace file to export as <range> <format> <file> instead of running a program, null if none
+    private var traceDump: Array<String>? = null
+
+    // Whether to display a profile of the run
+    private var profile = false
+
+    // file to write the run's call paths to in collapsed stack format, null if none
+    private var flameGraph: String? = null
+
+    // Profiler of the run, if the "prof" or "flame" option is used
+    private var profiler: Profiler? = null
+
+    // Whether to display the cycles of the run on the five stage pipeline
+    private var countCycles = false
+
+    // latencies of the pipeline model, as <name>=<n>[,<name>=<n>...], null for the defaults
+    private var latencies: String? = null
+
+    // Pipeline model of the run, if the "cycles" option is used
+    private var pipelineModel: PipelineModel? = null
+
+    // cache hierarchies to simulate, in the format of CacheModel
+    private var cacheHierarchies: ArrayList<String> = ArrayList()
+
+    // Cache model of the run, if the "cache" option is used
+    private var cacheModel: CacheModel? = null
+
+    // branch predictors to run, in the format of BranchPredictor
+    private var branchPredictors: ArrayList<String> = ArrayList()
+
+    // Branch model of the run, if the "predict" option is used
+    private var branchModel: BranchModel? = null
+
     private var registerDisplayList: ArrayList<String> = ArrayList()
     private var memoryDisplayList: ArrayList<String> = ArrayList()
     private var filenameList: ArrayList<String> = ArrayList()
@@ -126,12 +223,20 @@ class MarsLaunch(var args: Array<String>)
             // assure command mode works in headless environment (generates exception if not)
             System.setProperty("java.awt.headless", "true")
             MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration())
-            // do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
+            // do NOT use Globals.getProgram() for command line MARS -- it triggers 'backstep' log.
             code = MIPSprogram()
             maxSteps = -1
             if (parseCommandArgs(args))
             {
-                if (runCommand())
+                if (traceDump != null)
+                {
+                    dumpTrace()
+                }
+                else if (batchManifest != null)
+                {
+                    runBatch()
+                }
+                else if (runCommand())
                 {
                     displayMiscellaneousPostMortem()
                     displayRegistersPostMortem()
@@ -139,7 +244,7 @@ class MarsLaunch(var args: Array<String>)
                 }
                 dumpSegments()
             }
-            exitProcess(Globals.exitCode)
+            exitProcess(MachineContext.getCurrent().exitCode)
         }
     }
 
@@ -189,7 +294,7 @@ class MarsLaunch(var args: Array<String>)
             }
             try
             {
-                val highAddress = Globals.memory.getAddressOfFirstNull(
+                val highAddress = Globals.getMemory().getAddressOfFirstNull(
                     segInfo[0]!!.toInt(), segInfo[1]!!.toInt()
                 ) - Memory.WORD_LENGTH_BYTES
                 if (highAddress < segInfo[0]!!.toInt())
@@ -287,6 +392,248 @@ class MarsLaunch(var args: Array<String>)
                 i++
                 continue
             }
+            if (args[i].equals("bp", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Breakpoint command line argument requires an address or label.")
+                    argsOK = false
+                } else
+                {
+                    breakpointList.add(Pair(args[++i], null))
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("bpc", ignoreCase = true))
+            {
+                if (args.size <= i + 2)
+                {
+                    out.println("Conditional breakpoint command line argument requires an address or label and a condition.")
+                    argsOK = false
+                } else
+                {
+                    breakpointList.add(Pair(args[++i], args[++i]))
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("wp", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Watchpoint command line argument requires an address, label or range.")
+                    argsOK = false
+                } else
+                {
+                    watchpointList.add(args[++i])
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("resume", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Resume command line argument requires a snapshot file name.")
+                    argsOK = false
+                } else
+                {
+                    resumeSnapshot = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("snapshot", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Snapshot command line argument requires a file name.")
+                    argsOK = false
+                } else
+                {
+                    saveSnapshot = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("record", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Record command line argument requires a file name.")
+                    argsOK = false
+                } else
+                {
+                    recordInput = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("replay", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Replay command line argument requires an input log file name.")
+                    argsOK = false
+                } else
+                {
+                    replayInput = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("trace", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Trace command line argument requires a file name.")
+                    argsOK = false
+                } else
+                {
+                    traceFile = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("prof", ignoreCase = true))
+            {
+                profile = true
+                i++
+                continue
+            }
+            if (args[i].equals("cycles", ignoreCase = true))
+            {
+                countCycles = true
+                i++
+                continue
+            }
+            if (args[i].equals("predict", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Predict command line argument requires a branch predictor.")
+                    argsOK = false
+                } else
+                {
+                    branchPredictors.add(args[++i])
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("cache", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Cache command line argument requires a cache hierarchy.")
+                    argsOK = false
+                } else
+                {
+                    cacheHierarchies.add(args[++i])
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("latency", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Latency command line argument requires a list of latencies.")
+                    argsOK = false
+                } else
+                {
+                    latencies = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("flame", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Flame command line argument requires a file name.")
+                    argsOK = false
+                } else
+                {
+                    flameGraph = args[++i]
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("tracedump", ignoreCase = true))
+            {
+                if (args.size <= i + 3)
+                {
+                    out.println("Tracedump command line argument requires a range, format and trace file name.")
+                    argsOK = false
+                } else
+                {
+                    traceDump = arrayOf(args[++i], args[++i], args[++i])
+                }
+                i++
+                continue
+            }
+            // Set number of instructions kept by the trace
+            if (args[i].lowercase(Locale.getDefault()).indexOf("tr") == 0)
+            {
+                try
+                {
+                    traceCapacity = java.lang.Long.decode(args[i].substring(2))
+                    if (traceCapacity >= 0)
+                    {
+                        i++
+                        continue
+                    }
+                } catch (nfe: NumberFormatException)
+                {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            if (args[i].equals("batch", ignoreCase = true))
+            {
+                if (args.size <= i + 1)
+                {
+                    out.println("Batch command line argument requires a manifest file name.")
+                    argsOK = false
+                } else
+                {
+                    batchManifest = File(args[++i])
+                }
+                i++
+                continue
+            }
+            if (args[i].equals("bv", ignoreCase = true))
+            {
+                batchVirtualThreads = true
+                i++
+                continue
+            }
+            // Set number of batch worker threads
+            if (args[i].lowercase(Locale.getDefault()).indexOf("bw") == 0)
+            {
+                try
+                {
+                    batchWorkers = Integer.decode(args[i].substring(2)).toInt()
+                    i++
+                    continue
+                } catch (nfe: NumberFormatException)
+                {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            // Set batch job wall clock limit
+            if (args[i].lowercase(Locale.getDefault()).indexOf("bt") == 0)
+            {
+                try
+                {
+                    batchTimeout = java.lang.Long.decode(args[i].substring(2))
+                    i++
+                    continue
+                } catch (nfe: NumberFormatException)
+                {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
             if (args[i].equals("mc", ignoreCase = true))
             {
                 val configName = args[++i]
@@ -402,6 +749,18 @@ class MarsLaunch(var args: Array<String>)
                 i++
                 continue
             }
+            if (args[i].equals("pd", ignoreCase = true))
+            {
+                predecodedExecution = true
+                i++
+                continue
+            }
+            if (args[i].equals("jit", ignoreCase = true))
+            {
+                blockCompilation = true
+                i++
+                continue
+            }
             if (args[i].equals("ic", ignoreCase = true))
             { // added 19-Jul-2012 DPS
                 countInstructions = true
@@ -475,6 +834,87 @@ class MarsLaunch(var args: Array<String>)
     //////////////////////////////////////////////////////////////////////
     // Carry out the mars command: assemble then optionally run
     // Returns false if no simulation (run) occurs, true otherwise.
+    //////////////////////////////////////////////////////////////////////
+    // Run the programs listed in the batch manifest, writing one JSON result
+    // record per program to standard out.  Exit code is 1 if any did not
+    // terminate normally or did not produce its expected output.
+    private fun runBatch()
+    {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching)
+        Globals.getSettings()
+            .setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode)
+        Globals.getSettings()
+            .setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED, predecodedExecution)
+        Globals.getSettings()
+            .setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, blockCompilation)
+        val runner = BatchRunner(
+            batchManifest, batchWorkers, batchVirtualThreads, maxSteps, batchTimeout,
+            pseudo, warningsAreErrors, startAtMain, System.out
+        )
+        try
+        {
+            if (!runner.run())
+            {
+                MachineContext.getCurrent().exitCode = 1
+            }
+        } catch (e: IOException)
+        {
+            out.println("Error running batch: " + e.message)
+            MachineContext.getCurrent().exitCode = 1
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Export the records of a trace written by the "trace" option to standard
+    // out, as text or CSV.  The range is "all" or <first>-<last>, counts of
+    // instructions executed before the records.
+    private fun dumpTrace()
+    {
+        val (range, format, fileName) = traceDump!!
+        if (!format.equals("text", ignoreCase = true) && !format.equals("csv", ignoreCase = true))
+        {
+            out.println("Invalid trace format: $format")
+            MachineContext.getCurrent().exitCode = 1
+            return
+        }
+        var first = 0L
+        var last = Long.MAX_VALUE
+        if (!range.equals("all", ignoreCase = true))
+        {
+            val bounds = range.split("-")
+            try
+            {
+                if (bounds.size != 2)
+                {
+                    throw NumberFormatException()
+                }
+                first = java.lang.Long.decode(bounds[0])
+                last = java.lang.Long.decode(bounds[1])
+            } catch (nfe: NumberFormatException)
+            {
+                out.println("Invalid trace range: $range")
+                MachineContext.getCurrent().exitCode = 1
+                return
+            }
+        }
+        try
+        {
+            val reader = ExecutionTraceReader.open(File(fileName))
+            try
+            {
+                reader.export(first, last, System.out, format.equals("csv", ignoreCase = true))
+            } finally
+            {
+                reader.close()
+            }
+        } catch (e: IOException)
+        {
+            out.println("Error reading trace: " + e.message)
+            MachineContext.getCurrent().exitCode = 1
+        }
+        System.out.flush()
+    }
+
     private fun runCommand(): Boolean
     {
         var programRan = false
@@ -487,6 +927,10 @@ class MarsLaunch(var args: Array<String>)
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching)
             Globals.getSettings()
                 .setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode)
+            Globals.getSettings()
+                .setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED, predecodedExecution)
+            Globals.getSettings()
+                .setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, blockCompilation)
             val mainFile = File(filenameList[0]).absoluteFile // First file is "main" file
             val filesToAssemble: ArrayList<*>
             if (assembleProject)
@@ -538,19 +982,152 @@ class MarsLaunch(var args: Array<String>)
             RegisterFile.initializeProgramCounter(startAtMain) // DPS 3/9/09
             if (simulate)
             {
-                // store program args (if any) in MIPS memory
-                ProgramArgumentList(programArgumentList).storeProgramArguments()
-                // establish observer if specified
-                establishObserver()
+                if (resumeSnapshot != null)
+                {
+                    // the snapshot holds the program arguments stored by the run that saved it
+                    try
+                    {
+                        MachineSnapshot.load(MachineContext.getCurrent(), File(resumeSnapshot!!))
+                    } catch (e: IOException)
+                    {
+                        out.println("Error loading snapshot: " + e.message)
+                        MachineContext.getCurrent().exitCode = 1
+                        return programRan
+                    }
+                } else
+                {
+                    // store program args (if any) in MIPS memory
+                    ProgramArgumentList(programArgumentList).storeProgramArguments()
+                }
                 if (Globals.debug)
                 {
                     out.println("--------  SIMULATION BEGINS  -----------")
                 }
+                val breakpoints = createBreakpoints(MIPSprogramsToAssemble[0] as MIPSprogram) ?: return programRan
+                if (countCycles)
+                {
+                    pipelineModel = PipelineModel.start(MachineContext.getCurrent())
+                    try
+                    {
+                        latencies?.let { pipelineModel!!.setLatencies(it) }
+                    } catch (e: IllegalArgumentException)
+                    {
+                        pipelineModel!!.stop()
+                        out.println("Error in latency list: " + e.message)
+                        MachineContext.getCurrent().exitCode = 1
+                        return programRan
+                    }
+                }
+                if (cacheHierarchies.isNotEmpty())
+                {
+                    try
+                    {
+                        cacheModel = CacheModel.start(MachineContext.getCurrent(), cacheHierarchies)
+                    } catch (e: IllegalArgumentException)
+                    {
+                        pipelineModel?.stop()
+                        out.println("Error in cache hierarchy: " + e.message)
+                        MachineContext.getCurrent().exitCode = 1
+                        return programRan
+                    }
+                }
+                if (branchPredictors.isNotEmpty())
+                {
+                    try
+                    {
+                        branchModel = BranchModel.start(MachineContext.getCurrent(), branchPredictors)
+                    } catch (e: IllegalArgumentException)
+                    {
+                        pipelineModel?.stop()
+                        cacheModel?.stop()
+                        out.println("Error in branch predictor: " + e.message)
+                        MachineContext.getCurrent().exitCode = 1
+                        return programRan
+                    }
+                }
+                val inputLog = try
+                {
+                    when
+                    {
+                        replayInput != null -> InputLog.replay(MachineContext.getCurrent(), File(replayInput!!))
+                        recordInput != null -> InputLog.record(MachineContext.getCurrent(), File(recordInput!!))
+                        else -> null
+                    }
+                } catch (e: IOException)
+                {
+                    out.println("Error opening input log: " + e.message)
+                    MachineContext.getCurrent().exitCode = 1
+                    pipelineModel?.stop()
+                    cacheModel?.stop()
+                    branchModel?.stop()
+                    return programRan
+                }
+                val trace = try
+                {
+                    traceFile?.let { ExecutionTrace.record(MachineContext.getCurrent(), File(it), traceCapacity) }
+                } catch (e: IOException)
+                {
+                    out.println("Error opening trace: " + e.message)
+                    MachineContext.getCurrent().exitCode = 1
+                    inputLog?.close()
+                    pipelineModel?.stop()
+                    cacheModel?.stop()
+                    branchModel?.stop()
+                    return programRan
+                }
+                // establish observer if specified
+                establishObserver()
+                if (profile || flameGraph != null)
+                {
+                    profiler = Profiler.start(MachineContext.getCurrent())
+                }
                 programRan = true
-                val done = code!!.simulate(maxSteps)
+                val done = try
+                {
+                    code!!.simulateFromPC(breakpoints, maxSteps, null)
+                } finally
+                {
+                    Simulator.getInstance().removeExecutionListener(instructionCounter)
+                    profiler?.stop()
+                    pipelineModel?.stop()
+                    cacheModel?.stop()
+                    branchModel?.stop()
+                    try
+                    {
+                        inputLog?.close()
+                    } catch (e: IOException)
+                    {
+                        out.println("Error writing input log: " + e.message)
+                    }
+                    try
+                    {
+                        trace?.close()
+                    } catch (e: IOException)
+                    {
+                        out.println("Error writing trace: " + e.message)
+                    }
+                }
                 if (!done)
                 {
-                    out.println("\nProgram terminated when maximum step limit $maxSteps reached.")
+                    when (breakpoints.stopReason)
+                    {
+                        Breakpoints.BREAKPOINT ->
+                            out.println("\nProgram stopped at breakpoint " + Binary.intToHexString(breakpoints.stopAddress))
+                        Breakpoints.WATCHPOINT ->
+                            out.println("\nProgram stopped after a write to watched address " + Binary.intToHexString(breakpoints.stopAddress))
+                        else -> out.println("\nProgram terminated when maximum step limit $maxSteps reached.")
+                    }
+                }
+                if (saveSnapshot != null)
+                {
+                    try
+                    {
+                        MachineSnapshot.save(MachineContext.getCurrent(), File(saveSnapshot!!))
+                    } catch (e: IOException)
+                    {
+                        out.println("Error saving snapshot: " + e.message)
+                        MachineContext.getCurrent().exitCode = 1
+                    }
                 }
             }
             if (Globals.debug)
@@ -559,13 +1136,63 @@ class MarsLaunch(var args: Array<String>)
             }
         } catch (e: ProcessingException)
         {
-            Globals.exitCode = if (programRan) simulateErrorExitCode else assembleErrorExitCode
+            MachineContext.getCurrent().exitCode = if (programRan) simulateErrorExitCode else assembleErrorExitCode
             out.println(e.errors().generateErrorAndWarningReport())
             out.println("Processing terminated due to errors.")
         }
         return programRan
     }
 
+    //////////////////////////////////////////////////////////////////////
+    // Resolve the "bp", "bpc" and "wp" options against the assembled program.
+    // Prints a message and returns null if any is invalid.
+    private fun createBreakpoints(program: MIPSprogram): Breakpoints?
+    {
+        val breakpoints = Breakpoints()
+        try
+        {
+            for ((where, condition) in breakpointList)
+            {
+                breakpoints.addBreakpoint(resolveAddress(program, where), condition?.let { BreakpointCondition.parse(it) })
+            }
+            for (range in watchpointList)
+            {
+                // labels cannot contain the separator, and addresses may not be negative
+                val separator = range.indexOf(rangeSeparator)
+                val first = resolveAddress(program, if (separator > 0) range.substring(0, separator) else range)
+                val last = if (separator > 0) resolveAddress(program, range.substring(separator + 1)) else first
+                breakpoints.addWatchpoint(first and 3.inv(), last and 3.inv())
+            }
+        } catch (e: IllegalArgumentException)
+        {
+            out.println("Invalid breakpoint or watchpoint: " + e.message)
+            return null
+        } catch (e: AddressErrorException)
+        {
+            out.println("Invalid watchpoint: " + e.message)
+            return null
+        }
+        return breakpoints
+    }
+
+    // Address of a label visible from the main file, or a number.
+    @Throws(NumberFormatException::class)
+    private fun resolveAddress(program: MIPSprogram, where: String): Int
+    {
+        val address = program.localSymbolTable.getAddressLocalOrGlobal(where)
+        if (address != SymbolTable.NOT_FOUND)
+        {
+            return address
+        }
+        try
+        {
+            return Binary.stringToInt(where)
+        } catch (e: NumberFormatException)
+        {
+            throw NumberFormatException("\"$where\" is not a label or address")
+        }
+    }
+
     //////////////////////////////////////////////////////////////////////
     // Check for memory address subrange.  Has to be two integers separated
     // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -603,40 +1230,7 @@ class MarsLaunch(var args: Array<String>)
     {
         if (countInstructions)
         {
-            val instructionCounter: Observer = object : Observer
-            {
-                private var lastAddress = 0
-                override fun update(o: Observable, obj: Any)
-                {
-                    if (obj is AccessNotice)
-                    {
-                        val notice = obj
-                        if (!notice.accessIsFromMIPS())
-                        {
-                            return
-                        }
-                        if (notice.accessType != AccessNotice.READ)
-                        {
-                            return
-                        }
-                        val m = notice as MemoryAccessNotice
-                        val a = m.address
-                        if (a == lastAddress)
-                        {
-                            return
-                        }
-                        lastAddress = a
-                        instructionCount++
-                    }
-                }
-            }
-            try
-            {
-                Globals.memory.addObserver(instructionCounter, Memory.textBaseAddress, Memory.textLimitAddress)
-            } catch (aee: AddressErrorException)
-            {
-                out.println("Internal error: MarsLaunch uses incorrect text segment address for instruction observer")
-            }
+            Simulator.getInstance().addExecutionListener(instructionCounter)
         }
     }
 
@@ -649,6 +1243,37 @@ class MarsLaunch(var args: Array<String>)
         {
             out.println("\n\n$instructionCount")
         }
+        if (profile)
+        {
+            out.println()
+            profiler!!.writeReport(out, code, PROFILE_LINES)
+        }
+        if (countCycles)
+        {
+            out.println()
+            pipelineModel!!.writeReport(out, code, PROFILE_LINES)
+        }
+        if (cacheModel != null)
+        {
+            out.println()
+            cacheModel!!.writeReport(out)
+        }
+        if (branchModel != null)
+        {
+            out.println()
+            branchModel!!.writeReport(out, code, PROFILE_LINES)
+        }
+        if (flameGraph != null)
+        {
+            try
+            {
+                PrintStream(flameGraph!!).use { profiler!!.writeCollapsedStacks(it, code) }
+            } catch (e: IOException)
+            {
+                out.println("Error writing flame graph stacks: " + e.message)
+                MachineContext.getCurrent().exitCode = 1
+            }
+        }
     }
 
     //////////////////////////////////////////////////////////////////////
@@ -795,11 +1420,11 @@ class MarsLaunch(var args: Array<String>)
                     // Allow display of binary text segment (machine code) DPS 14-July-2008
                     value = if (Memory.inTextSegment(addr) || Memory.inKernelTextSegment(addr))
                     {
-                        val iValue = Globals.memory.getRawWordOrNull(addr)
+                        val iValue = Globals.getMemory().getRawWordOrNull(addr)
                         iValue?.toInt() ?: 0
                     } else
                     {
-                        Globals.memory.getWord(addr)
+                        Globals.getMemory().getWord(addr)
                     }
                     out.print(formatIntForDisplay(value) + "\t")
                 } catch (aee: AddressErrorException)
@@ -859,6 +1484,29 @@ class MarsLaunch(var args: Array<String>)
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.")
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.")
         out.println("      b  -- brief - do not display register/memory address along with contents")
+        out.println("  batch <manifest>  -- assemble and run every program listed in file <manifest>, several")
+        out.println("            at a time, and write one JSON result line per program to standard out.")
+        out.println("            Each manifest line is: <program> [<input> [<expected> [<n>]]], giving a")
+        out.println("            file to use as console input, a file holding the expected console output")
+        out.println("            and a maximum count of steps; '-' for none.  # starts a comment.")
+        out.println("            Exit code is 1 if any program fails or its output differs from expected.")
+        out.println("   bp <where>  -- stop before executing the instruction at <where>, a text address or label,")
+        out.println("            then display registers and memory as at the end of a run.  Option may be repeated.")
+        out.println("  bpc <where> <condition>  -- like bp, but stop only if <condition> holds, e.g. \"\$t0 == 5\"")
+        out.println("            or \"hits > 100\": comparisons (== != < <= > >=) of registers, numbers and hits,")
+        out.println("            the number of times <where> has been reached, joined by && or ||.")
+        out.println("  bt<n>  -- batch: stop each program after <n> milliseconds (default no limit)")
+        out.println("     bv  -- batch: run programs on virtual threads when Java supports them")
+        out.println("  bw<n>  -- batch: run up to <n> programs at a time (default number of processors)")
+        out.println("  cache <hierarchy>  -- simulate a cache hierarchy and display its hit and miss counts at the")
+        out.println("            end of the run.  <hierarchy> is a list of levels separated by commas, each")
+        out.println("            <level>=<size>:<block size>:<ways>[:<replacement>][:<write policy>].  Levels are l1i,")
+        out.println("            l1d, l1 (both) and l2.  Sizes are in bytes, with optional k or m.  Ways may be full.")
+        out.println("            Replacement is lru (default), fifo, random or plru; write policy wb (default) or wt.")
+        out.println("            E.g. l1i=16k:32:2,l1d=16k:32:4:plru,l2=256k:64:8.  Option may be repeated to")
+        out.println("            simulate several hierarchies in the same run.")
+        out.println("  cycles  -- display the cycles the run takes on a five stage pipeline with forwarding, and CPI,")
+        out.println("            with stall cycles per instruction and per source line.")
         out.println("      d  -- display MARS debugging statements")
         out.println("     db  -- MIPS delayed branching is enabled")
         out.println("    dec  -- display memory or register contents in decimal.")
@@ -869,8 +1517,13 @@ class MarsLaunch(var args: Array<String>)
         out.println("            <segment> = $segments")
         out.println("            <format> = $formats")
         out.println("      h  -- display this help.  Use by itself with no filename.")
+        out.println("  flame <file>  -- write the instructions executed per call path to <file>, in the collapsed")
+        out.println("            stack format of flame graph tools such as flamegraph.pl.")
         out.println("    hex  -- display memory or register contents in hexadecimal (default)")
         out.println("     ic  -- display count of MIPS basic instructions 'executed'")
+        out.println("  latency <list>  -- set latencies of the cycles option, as <name>=<n> separated by commas.")
+        out.println("            Names are mult, div, fpadd, fpmul, fpdiv and branch (cycles lost after a taken")
+        out.println("            branch).  Defaults are mult=12,div=35,fpadd=2,fpmul=4,fpdiv=12,branch=1.")
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is")
         out.println("            case-sensitive and possible values are: Default for the default")
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with")
@@ -880,9 +1533,36 @@ class MarsLaunch(var args: Array<String>)
         out.println("            Can separate messages from program output using redirection")
         out.println("     np  -- use of pseudo instructions and formats not permitted")
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.")
+        out.println("     pd  -- Pre-decoded execution - decode the text segment once and run it with a faster")
+        out.println("            interpreter.")
+        out.println("    jit  -- Block compilation - like pd, but also compile frequently executed basic blocks")
+        out.println("            to Java bytecode.  Ignored if delayed branching is enabled.")
+        out.println("  predict <predictor>  -- run a branch predictor on the conditional branches executed and")
+        out.println("            display its accuracy at the end of the run, overall and per branch.  <predictor> is")
+        out.println("            static (not taken), 1bit:<entries>, 2bit:<entries>, gshare:<entries>:<history bits>,")
+        out.println("            tournament:<entries>:<history bits> or btb:<entries>, entries being a power of two.")
+        out.println("            Option may be repeated to compare several predictors in the same run.")
+        out.println("   prof  -- display a profile of the run: instructions executed per function, with and without")
+        out.println("            the functions it calls, found by following jal and jr \$ra, and per source line.")
+        out.println("  record <file>  -- record the run's input to <file>: console and file input, dialogs, time,")
+        out.println("            random numbers and memory mapped device input, tagged with instruction counts.")
+        out.println("  replay <file>  -- run with the input recorded in <file> by the record option instead of")
+        out.println("            reading the console or devices, asking the clock or sleeping.")
+        out.println("  resume <file>  -- start the run from the machine state in snapshot <file>, saved by the")
+        out.println("            snapshot option with the same program and memory configuration.")
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.")
         out.println("     sm  -- start execution at statement with global label main, if defined")
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment")
+        out.println("  snapshot <file>  -- save the machine state to <file> when the run stops, e.g. at the")
+        out.println("            step limit or a breakpoint: memory, registers, heap and open files.")
+        out.println("  trace <file>  -- write a binary trace of the run to <file>: for each instruction executed,")
+        out.println("            its address and code, the register it writes and the memory it loads or stores.")
+        out.println("  tracedump <range> <format> <file>  -- instead of running a program, export trace <file> to")
+        out.println("            standard out.  <range> is all or <m>-<n>, counts of instructions executed before")
+        out.println("            the first and last records.  <format> is text or csv.")
+        out.println("  tr<n>  -- trace: keep only the last <n> instructions executed (default all)")
+        out.println("   wp <m>[-<n>]  -- stop after an instruction writes to the word at <m>, or to the range")
+        out.println("            <m> to <n>.  <m> and <n> are addresses or labels.  Option may be repeated.")
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.")
         out.println("            If 0, negative or not specified, there is no maximum.")
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ")
@@ -910,5 +1590,6 @@ class MarsLaunch(var args: Array<String>)
         private const val DECIMAL = 0 // memory and register display format
         private const val HEXADECIMAL = 1 // memory and register display format
         private const val ASCII = 2 // memory and register display format
+        private const val PROFILE_LINES = 20 // source lines or branches listed by the profile, cycles and predict reports
     }
 }
@@ -60,6 +60,23 @@ public class Settings extends Observable
      * Flag to determine whether a program can write binary code to the text or data segment and execute that code.
      */
     public static final int SELF_MODIFYING_CODE_ENABLED = 20;
+
+    /**
+     * Flag to determine whether the simulator decodes the text segment once and runs it with the pre-decoded
+     * interpreter instead of calling each instruction's simulation code.  Only applies to runs without backstepping.
+     * If the program modifies its text segment the simulator reverts to the reference code for the rest of the run.
+     */
+    public static final int PREDECODED_EXECUTION_ENABLED = 21;
+    /**
+     * Flag to determine whether frequently executed basic blocks are compiled to JVM bytecode.  Implies pre-decoded
+     * execution for the remaining code.  Not used with delayed branching.
+     */
+    public static final int BLOCK_COMPILATION_ENABLED = 22;
+    /**
+     * Flag to determine whether runs at unlimited speed take periodic checkpoints and record syscall results, so that
+     * Backstep can return to any earlier instruction by restoring a checkpoint and executing forward from it.
+     */
+    public static final int TIME_TRAVEL_ENABLED = 23;
     /////////////////////////////  PROPERTY ARRAY INDEXES /////////////////////////////
     // Because MARS is programmed to Java 1.4, we cannot use an enumerated type.
 
@@ -321,7 +338,7 @@ public class Settings extends Observable
     private static final String settingsFile = "Settings";
 
     // NOTE: key sequence must match up with labels above which are used for array indexes!
-    private static final String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll", "LabelWindowVisibility", "DisplayAddressesInHex", "DisplayValuesInHex", "LoadExceptionHandler", "DelayedBranching", "EditorLineNumbersDisplayed", "WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting", "RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting", "PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor", "AutoIndent", "SelfModifyingCode"};
+    private static final String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll", "LabelWindowVisibility", "DisplayAddressesInHex", "DisplayValuesInHex", "LoadExceptionHandler", "DelayedBranching", "EditorLineNumbersDisplayed", "WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting", "RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting", "PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor", "AutoIndent", "SelfModifyingCode", "PredecodedExecution", "BlockCompilation", "TimeTravel"};
 
     // Match the above by position.
     private static final String[] stringSettingsKeys = {"ExceptionHandler", "TextColumnOrder", "LabelSortState", "MemoryConfiguration", "CaretBlinkRate", "EditorTabSize", "EditorPopupPrefixLength"};
@@ -377,7 +394,7 @@ public class Settings extends Observable
      * by list position.
      */
     public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
-        true, false, false, false, false, true, true, false, false, true, false, false, true, true, false, true, true, false, false, true, false};
+        true, false, false, false, false, true, true, false, false, true, false, false, true, true, false, true, true, false, false, true, false, false, false, false};
 
     private static String[] syntaxStyleColorSettingsKeys, syntaxStyleBoldSettingsKeys, syntaxStyleItalicSettingsKeys;
 
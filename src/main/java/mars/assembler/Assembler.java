@@ -176,8 +176,8 @@ public class Assembler
         externAddress = Memory.externBaseAddress;
         currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
         accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
-        Globals.symbolTable.clear();
-        Globals.memory.clear();
+        Globals.getSymbolTable().clear();
+        Globals.getMemory().clear();
         this.machineList = new ArrayList();
         this.errors = new ErrorList();
         if (Globals.debug)
@@ -264,7 +264,7 @@ public class Assembler
         // Have processed all source files. Attempt to resolve any remaining forward label
         // references from global symbol table. Those that remain unresolved are undefined
         // and require error message.
-        accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
+        accumulatedDataSegmentForwardReferences.resolve(Globals.getSymbolTable());
         accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
 
         // Throw collection of errors accumulated through the first pass.
@@ -405,7 +405,7 @@ public class Assembler
             }
             try
             {
-                Globals.memory.setStatement(statement.getAddress(), statement);
+                Globals.getMemory().setStatement(statement.getAddress(), statement);
             }
             catch (AddressErrorException e)
             {
@@ -674,7 +674,7 @@ public class Assembler
     private boolean compactTranslationCanBeApplied(ProgramStatement statement)
     {
         return (statement.getInstruction() instanceof ExtendedInstruction
-            && Globals.memory.usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
+            && Globals.getMemory().usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
             .getInstruction()).hasCompactTranslation());
     }
 
@@ -951,9 +951,9 @@ public class Assembler
             }
             int size = Binary.stringToInt(tokens.get(2).getValue());
             // If label already in global symtab, do nothing. If not, add it right now.
-            if (Globals.symbolTable.getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND)
+            if (Globals.getSymbolTable().getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND)
             {
-                Globals.symbolTable.addSymbol(tokens.get(1), this.externAddress,
+                Globals.getSymbolTable().addSymbol(tokens.get(1), this.externAddress,
                     Symbol.DATA_SYMBOL, errors);
                 this.externAddress += size;
             }
@@ -1017,7 +1017,7 @@ public class Assembler
             }
             else
             {
-                if (Globals.symbolTable.getAddress(label.getValue()) != SymbolTable.NOT_FOUND)
+                if (Globals.getSymbolTable().getAddress(label.getValue()) != SymbolTable.NOT_FOUND)
                 {
                     errors.add(new ErrorMessage(fileCurrentlyBeingAssembled, label.getSourceLine(),
                         label.getStartPos(), "\"" + label.getValue()
@@ -1026,7 +1026,7 @@ public class Assembler
                 else
                 {
                     fileCurrentlyBeingAssembled.getLocalSymbolTable().removeSymbol(label);
-                    Globals.symbolTable.addSymbol(label, symtabEntry.getAddress(),
+                    Globals.getSymbolTable().addSymbol(label, symtabEntry.getAddress(),
                         symtabEntry.getType(), errors);
                 }
             }
@@ -1173,7 +1173,7 @@ public class Assembler
              *
              * else { // not in data segment...which we assume to mean in text
              * segment. try { for (int i=0; i < repetitions; i++) {
-             * Globals.memory.set(this.textAddress.get(),
+             * Globals.getMemory().set(this.textAddress.get(),
              * Binary.stringToInt(valueToken.getValue()), lengthInBytes);
              * this.textAddress.increment(lengthInBytes); } } catch
              * (AddressErrorException e) { errors.add(new
@@ -1248,7 +1248,7 @@ public class Assembler
             {
                 try
                 {
-                    Globals.memory.set(this.textAddress.get(), value, lengthInBytes);
+                    Globals.getMemory().set(this.textAddress.get(), value, lengthInBytes);
                 }
                 catch (AddressErrorException e)
                 {
@@ -1415,7 +1415,7 @@ public class Assembler
                     }
                     try
                     {
-                        Globals.memory.set(this.dataAddress.get(), theChar,
+                        Globals.getMemory().set(this.dataAddress.get(), theChar,
                             DataTypes.CHAR_SIZE);
                     }
                     catch (AddressErrorException e)
@@ -1430,7 +1430,7 @@ public class Assembler
                 {
                     try
                     {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        Globals.getMemory().set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     }
                     catch (AddressErrorException e)
                     {
@@ -1473,7 +1473,7 @@ public class Assembler
         }
         try
         {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            Globals.getMemory().set(this.dataAddress.get(), value, lengthInBytes);
         }
         catch (AddressErrorException e)
         {
@@ -1501,7 +1501,7 @@ public class Assembler
         }
         try
         {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            Globals.getMemory().setDouble(this.dataAddress.get(), value);
         }
         catch (AddressErrorException e)
         {
@@ -1690,7 +1690,7 @@ public class Assembler
                     // patch address has to be valid b/c we already stored there...
                     try
                     {
-                        Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                        Globals.getMemory().set(entry.patchAddress, labelAddress, entry.length);
                     }
                     catch (AddressErrorException aee)
                     {
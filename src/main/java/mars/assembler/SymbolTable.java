@@ -5,6 +5,9 @@ import mars.ErrorMessage;
 import mars.Globals;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -35,7 +38,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 /**
- * Creats a table of Symbol objects.
+ * Creats a table of Symbol objects, indexed by name and by address.
  *
  * @author Jason Bumgarner, Jason Shrewsbury
  * @version June 2003
@@ -52,7 +55,11 @@ public class SymbolTable
 
     private final String filename;
 
-    private ArrayList table;
+    // Symbols by name, in the order they were added
+    private LinkedHashMap<String, Symbol> table;
+
+    // Symbols by address, in the order they were added at each address
+    private TreeMap<Integer, ArrayList<Symbol>> addresses;
 
     /**
      * Create a new empty symbol table for given file
@@ -63,7 +70,8 @@ public class SymbolTable
     public SymbolTable(String filename)
     {
         this.filename = filename;
-        this.table = new ArrayList();
+        this.table = new LinkedHashMap<String, Symbol>();
+        this.addresses = new TreeMap<Integer, ArrayList<Symbol>>();
     }
 
     /**
@@ -95,7 +103,8 @@ public class SymbolTable
         else
         {
             Symbol s = new Symbol(label, address, b);
-            table.add(s);
+            table.put(label, s);
+            addresses.computeIfAbsent(address, k -> new ArrayList<Symbol>()).add(s);
             if (Globals.debug)
             {
                 System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
@@ -113,16 +122,13 @@ public class SymbolTable
     public void removeSymbol(Token token)
     {
         String label = token.getValue();
-        for (int i = 0; i < table.size(); i++)
+        Symbol s = table.remove(label);
+        if (s != null)
         {
-            if (((Symbol) (table.get(i))).getName().equals(label))
+            removeAddress(s);
+            if (Globals.debug)
             {
-                table.remove(i);
-                if (Globals.debug)
-                {
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                }
-                break;
+                System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
             }
         }
     }
@@ -135,14 +141,8 @@ public class SymbolTable
      **/
     public int getAddress(String s)
     {
-        for (int i = 0; i < table.size(); i++)
-        {
-            if (((Symbol) (table.get(i))).getName().equals(s))
-            {
-                return ((Symbol) table.get(i)).getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol symbol = table.get(s);
+        return (symbol == null) ? NOT_FOUND : symbol.getAddress();
     }
 
     /**
@@ -155,7 +155,7 @@ public class SymbolTable
     public int getAddressLocalOrGlobal(String s)
     {
         int address = this.getAddress(s);
-        return (address == NOT_FOUND) ? Globals.symbolTable.getAddress(s) : address;
+        return (address == NOT_FOUND) ? Globals.getSymbolTable().getAddress(s) : address;
     }
 
     /**
@@ -167,14 +167,7 @@ public class SymbolTable
 
     public Symbol getSymbol(String s)
     {
-        for (int i = 0; i < table.size(); i++)
-        {
-            if (((Symbol) (table.get(i))).getName().equals(s))
-            {
-                return (Symbol) table.get(i);
-            }
-        }
-        return null;
+        return table.get(s);
     }
 
     /**
@@ -195,14 +188,35 @@ public class SymbolTable
         {
             return null;
         }
-        for (int i = 0; i < table.size(); i++)
-        {
-            if (((Symbol) (table.get(i))).getAddress() == address)
-            {
-                return (Symbol) table.get(i);
-            }
-        }
-        return null;
+        return getSymbolGivenAddress(address);
+    }
+
+    /**
+     * Produce Symbol object from symbol table that has the given address.  If several do, the first one added.
+     *
+     * @param address the address
+     * @return Symbol object having requested address, null if address not found in symbol table.
+     **/
+
+    public Symbol getSymbolGivenAddress(int address)
+    {
+        ArrayList<Symbol> symbols = addresses.get(address);
+        return (symbols == null) ? null : symbols.get(0);
+    }
+
+    /**
+     * Produce Symbol object from symbol table that has the highest address not above the given address, such as the
+     * label of the function containing an instruction.  Addresses are compared as signed integers, so kernel labels
+     * are below user labels.
+     *
+     * @param address the address
+     * @return Symbol object at or before requested address, null if all symbols are above it.
+     **/
+
+    public Symbol getSymbolAtOrBefore(int address)
+    {
+        Map.Entry<Integer, ArrayList<Symbol>> symbols = addresses.floorEntry(address);
+        return (symbols == null) ? null : symbols.getValue().get(0);
     }
 
     /**
@@ -214,7 +228,7 @@ public class SymbolTable
     public Symbol getSymbolGivenAddressLocalOrGlobal(String s)
     {
         Symbol sym = this.getSymbolGivenAddress(s);
-        return (sym == null) ? Globals.symbolTable.getSymbolGivenAddress(s) : sym;
+        return (sym == null) ? Globals.getSymbolTable().getSymbolGivenAddress(s) : sym;
     }
 
     /**
@@ -226,11 +240,11 @@ public class SymbolTable
     public ArrayList getDataSymbols()
     {
         ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++)
+        for (Symbol symbol : table.values())
         {
-            if (((Symbol) table.get(i)).getType())
+            if (symbol.getType())
             {
-                list.add(table.get(i));
+                list.add(symbol);
             }
         }
         return list;
@@ -245,11 +259,11 @@ public class SymbolTable
     public ArrayList getTextSymbols()
     {
         ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++)
+        for (Symbol symbol : table.values())
         {
-            if (!((Symbol) table.get(i)).getType())
+            if (!symbol.getType())
             {
-                list.add(table.get(i));
+                list.add(symbol);
             }
         }
         return list;
@@ -263,12 +277,7 @@ public class SymbolTable
 
     public ArrayList getAllSymbols()
     {
-        ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++)
-        {
-            list.add(table.get(i));
-        }
-        return list;
+        return new ArrayList(table.values());
     }
 
     /**
@@ -288,7 +297,8 @@ public class SymbolTable
 
     public void clear()
     {
-        table = new ArrayList();
+        table = new LinkedHashMap<String, Symbol>();
+        addresses = new TreeMap<Integer, ArrayList<Symbol>>();
     }
 
     /**
@@ -302,11 +312,25 @@ public class SymbolTable
 
     public void fixSymbolTableAddress(int originalAddress, int replacementAddress)
     {
-        Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-        while (label != null)
+        ArrayList<Symbol> labels = addresses.remove(originalAddress);
+        if (labels != null)
+        {
+            for (Symbol label : labels)
+            {
+                label.setAddress(replacementAddress);
+            }
+            addresses.computeIfAbsent(replacementAddress, k -> new ArrayList<Symbol>()).addAll(labels);
+        }
+    }
+
+    // Removes a symbol from the address index
+    private void removeAddress(Symbol symbol)
+    {
+        ArrayList<Symbol> symbols = addresses.get(symbol.getAddress());
+        symbols.remove(symbol);
+        if (symbols.isEmpty())
         {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+            addresses.remove(symbol.getAddress());
         }
     }
 }
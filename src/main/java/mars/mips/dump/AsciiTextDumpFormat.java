@@ -83,7 +83,7 @@ public class AsciiTextDumpFormat extends AbstractDumpFormat
         {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES)
             {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Globals.getMemory().getRawWordOrNull(address);
                 if (temp == null)
                 {
                     break;
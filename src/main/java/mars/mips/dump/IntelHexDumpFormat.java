@@ -46,7 +46,7 @@ public class IntelHexDumpFormat extends AbstractDumpFormat
         {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES)
             {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Globals.getMemory().getRawWordOrNull(address);
                 if (temp == null)
                 {
                     break;
@@ -100,7 +100,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat
                         string = ((hexAddresses) ? Binary.intToHexString(address) : Binary.unsignedIntToIntString(address)) + "    ";
                     }
                     offset++;
-                    Integer temp = Globals.memory.getRawWordOrNull(address);
+                    Integer temp = Globals.getMemory().getRawWordOrNull(address);
                     if (temp == null)
                     {
                         break;
@@ -138,7 +138,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES)
             {
                 string = ((hexAddresses) ? Binary.intToHexString(address) : Binary.unsignedIntToIntString(address)) + "  ";
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Globals.getMemory().getRawWordOrNull(address);
                 if (temp == null)
                 {
                     break;
@@ -146,7 +146,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat
                 string += Binary.intToHexString(temp.intValue()) + "  ";
                 try
                 {
-                    ProgramStatement ps = Globals.memory.getStatement(address);
+                    ProgramStatement ps = Globals.getMemory().getStatement(address);
                     string += (ps.getPrintableBasicAssemblyStatement() + "                      ").substring(0, 22);
                     string += (((ps.getSource() == "") ? "" : Integer.valueOf(ps.getSourceLine()).toString()) + "     ").substring(0, 5);
                     string += ps.getSource();
@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.MachineContext;
 
 import java.util.Observer;
 
@@ -58,12 +59,38 @@ public class Coprocessor0
     // bit 1 (exception level) not set, bit 0 (interrupt enable) set.
     public static final int DEFAULT_STATUS_VALUE = 0x0000FF11;
 
-    private static final Register[] registers =
-        {new Register("$8 (vaddr)", 8, 0),
-            new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
-            new Register("$13 (cause)", 13, 0),
-            new Register("$14 (epc)", 14, 0)
-        };
+    /**
+     * Number of implemented registers: vaddr, status, cause and epc.
+     */
+    public static final int REGISTER_COUNT = 4;
+
+    // Registers of the calling thread's MachineContext
+    private static Register[] registers()
+    {
+        return MachineContext.getCurrent().getCoprocessor0Registers();
+    }
+
+    // Storage behind the registers of the calling thread's MachineContext
+    private static RegisterBank bank()
+    {
+        return MachineContext.getCurrent().getCoprocessor0RegisterBank();
+    }
+
+    /**
+     * Create a new set of registers, in their initial state.  Used by MachineContext.
+     *
+     * @param bank The bank of <code>REGISTER_COUNT</code> values the registers are views onto.
+     * @return The set of registers.
+     **/
+    public static Register[] createRegisters(RegisterBank bank)
+    {
+        return new Register[]
+            {new Register("$8 (vaddr)", 8, 0, bank, 0),
+                new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE, bank, 1),
+                new Register("$13 (cause)", 13, 0, bank, 2),
+                new Register("$14 (epc)", 14, 0, bank, 3)
+            };
+    }
 
 
     /**
@@ -72,6 +99,7 @@ public class Coprocessor0
 
     public static void showRegisters()
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             System.out.println("Name: " + registers[i].getName());
@@ -91,6 +119,7 @@ public class Coprocessor0
 
     public static int updateRegister(String n, int val)
     {
+        Register[] registers = registers();
         int oldValue = 0;
         for (int i = 0; i < registers.length; i++)
         {
@@ -113,18 +142,14 @@ public class Coprocessor0
      **/
     public static int updateRegister(int num, int val)
     {
-        int old = 0;
-        for (int i = 0; i < registers.length; i++)
+        int position = getRegisterPosition(num);
+        if (position < 0)
         {
-            if (registers[i].getNumber() == num)
-            {
-                old = (Globals.getSettings().getBackSteppingEnabled())
-                    ? Globals.program.getBackStepper().addCoprocessor0Restore(num, registers[i].setValue(val))
-                    : registers[i].setValue(val);
-                break;
-            }
+            return 0;
         }
-        return old;
+        return (Globals.getSettings().getBackSteppingEnabled())
+            ? Globals.getProgram().getBackStepper().addCoprocessor0Restore(num, bank().set(position, val))
+            : bank().set(position, val);
     }
 
 
@@ -137,14 +162,26 @@ public class Coprocessor0
 
     public static int getValue(int num)
     {
-        for (int i = 0; i < registers.length; i++)
+        int position = getRegisterPosition(num);
+        return (position < 0) ? 0 : bank().get(position);
+    }
+
+    // Position in the register bank of the register with the given number, or -1 if it is not implemented.
+    private static int getRegisterPosition(int num)
+    {
+        switch (num)
         {
-            if (registers[i].getNumber() == num)
-            {
-                return registers[i].getValue();
-            }
+            case VADDR:
+                return 0;
+            case STATUS:
+                return 1;
+            case CAUSE:
+                return 2;
+            case EPC:
+                return 3;
+            default:
+                return -1;
         }
-        return 0;
     }
 
     /**
@@ -156,6 +193,7 @@ public class Coprocessor0
 
     public static int getNumber(String n)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             if (("$" + registers[i].getNumber()).equals(n) || registers[i].getName().equals(n))
@@ -174,7 +212,7 @@ public class Coprocessor0
 
     public static Register[] getRegisters()
     {
-        return registers;
+        return registers();
     }
 
 
@@ -188,6 +226,7 @@ public class Coprocessor0
 
     public static int getRegisterPosition(Register r)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             if (registers[i] == r)
@@ -207,6 +246,7 @@ public class Coprocessor0
 
     public static Register getRegister(String rname)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             if (("$" + registers[i].getNumber()).equals(rname) || registers[i].getName().equals(rname))
@@ -224,6 +264,7 @@ public class Coprocessor0
 
     public static void resetRegisters()
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].resetValue();
@@ -236,6 +277,7 @@ public class Coprocessor0
      */
     public static void addRegistersObserver(Observer observer)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].addObserver(observer);
@@ -248,6 +290,7 @@ public class Coprocessor0
      */
     public static void deleteRegistersObserver(Observer observer)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].deleteObserver(observer);
@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.MachineContext;
 import mars.util.Binary;
 
 import java.util.Observer;
@@ -52,27 +53,73 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class Coprocessor1
 {
-    private static final Register[] registers =
-        {new Register("$f0", 0, 0), new Register("$f1", 1, 0),
-            new Register("$f2", 2, 0), new Register("$f3", 3, 0),
-            new Register("$f4", 4, 0), new Register("$f5", 5, 0),
-            new Register("$f6", 6, 0), new Register("$f7", 7, 0),
-            new Register("$f8", 8, 0), new Register("$f9", 9, 0),
-            new Register("$f10", 10, 0), new Register("$f11", 11, 0),
-            new Register("$f12", 12, 0), new Register("$f13", 13, 0),
-            new Register("$f14", 14, 0), new Register("$f15", 15, 0),
-            new Register("$f16", 16, 0), new Register("$f17", 17, 0),
-            new Register("$f18", 18, 0), new Register("$f19", 19, 0),
-            new Register("$f20", 20, 0), new Register("$f21", 21, 0),
-            new Register("$f22", 22, 0), new Register("$f23", 23, 0),
-            new Register("$f24", 24, 0), new Register("$f25", 25, 0),
-            new Register("$f26", 26, 0), new Register("$f27", 27, 0),
-            new Register("$f28", 28, 0), new Register("$f29", 29, 0),
-            new Register("$f30", 30, 0), new Register("$f31", 31, 0)
-        };
+    // Registers of the calling thread's MachineContext
+    private static Register[] registers()
+    {
+        return MachineContext.getCurrent().getCoprocessor1Registers();
+    }
+
+    // Storage behind the registers of the calling thread's MachineContext.  The condition flags are at
+    // CONDITION_FLAGS_INDEX, after the 32 FPU registers.
+    private static RegisterBank bank()
+    {
+        return MachineContext.getCurrent().getCoprocessor1RegisterBank();
+    }
+
+    /**
+     * Number of values in a Coprocessor1 register bank: the 32 FPU registers and the condition flags.
+     */
+    public static final int REGISTER_COUNT = 33;
+
+    private static final int FPU_REGISTER_COUNT = 32;
+
+    private static final int CONDITION_FLAGS_INDEX = 32;
 
     // The 8 condition flags will be stored in bits 0-7 for flags 0-7.
-    private static final Register condition = new Register("cf", 32, 0);
+    private static Register condition()
+    {
+        return MachineContext.getCurrent().getCoprocessor1ConditionFlags();
+    }
+
+    /**
+     * Create a new set of registers, in their initial state.  Used by MachineContext.
+     *
+     * @param bank The bank of <code>REGISTER_COUNT</code> values the registers are views onto.
+     * @return The set of registers.
+     **/
+    public static Register[] createRegisters(RegisterBank bank)
+    {
+        return new Register[]
+            {new Register("$f0", 0, 0, bank, 0), new Register("$f1", 1, 0, bank, 1),
+                new Register("$f2", 2, 0, bank, 2), new Register("$f3", 3, 0, bank, 3),
+                new Register("$f4", 4, 0, bank, 4), new Register("$f5", 5, 0, bank, 5),
+                new Register("$f6", 6, 0, bank, 6), new Register("$f7", 7, 0, bank, 7),
+                new Register("$f8", 8, 0, bank, 8), new Register("$f9", 9, 0, bank, 9),
+                new Register("$f10", 10, 0, bank, 10), new Register("$f11", 11, 0, bank, 11),
+                new Register("$f12", 12, 0, bank, 12), new Register("$f13", 13, 0, bank, 13),
+                new Register("$f14", 14, 0, bank, 14), new Register("$f15", 15, 0, bank, 15),
+                new Register("$f16", 16, 0, bank, 16), new Register("$f17", 17, 0, bank, 17),
+                new Register("$f18", 18, 0, bank, 18), new Register("$f19", 19, 0, bank, 19),
+                new Register("$f20", 20, 0, bank, 20), new Register("$f21", 21, 0, bank, 21),
+                new Register("$f22", 22, 0, bank, 22), new Register("$f23", 23, 0, bank, 23),
+                new Register("$f24", 24, 0, bank, 24), new Register("$f25", 25, 0, bank, 25),
+                new Register("$f26", 26, 0, bank, 26), new Register("$f27", 27, 0, bank, 27),
+                new Register("$f28", 28, 0, bank, 28), new Register("$f29", 29, 0, bank, 29),
+                new Register("$f30", 30, 0, bank, 30), new Register("$f31", 31, 0, bank, 31)
+            };
+    }
+
+    /**
+     * Create the register holding the condition flags, in its initial state.  Used by MachineContext.
+     *
+     * @param bank The bank the FPU registers are views onto.
+     * @return The condition flags register.
+     **/
+    public static Register createConditionFlagsRegister(RegisterBank bank)
+    {
+        return new Register("cf", 32, 0, bank, CONDITION_FLAGS_INDEX);
+    }
+
 
     private static final int numConditionFlags = 8;
 
@@ -82,6 +129,7 @@ public class Coprocessor1
 
     public static void showRegisters()
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
 
@@ -114,9 +162,9 @@ public class Coprocessor1
 
     public static void setRegisterToFloat(int reg, float val)
     {
-        if (reg >= 0 && reg < registers.length)
+        if (reg >= 0 && reg < FPU_REGISTER_COUNT)
         {
-            registers[reg].setValue(Float.floatToRawIntBits(val));
+            bank().set(reg, Float.floatToRawIntBits(val));
         }
     }
 
@@ -142,9 +190,9 @@ public class Coprocessor1
 
     public static void setRegisterToInt(int reg, int val)
     {
-        if (reg >= 0 && reg < registers.length)
+        if (reg >= 0 && reg < FPU_REGISTER_COUNT)
         {
-            registers[reg].setValue(val);
+            bank().set(reg, val);
         }
     }
 
@@ -162,13 +210,14 @@ public class Coprocessor1
     public static void setRegisterPairToDouble(int reg, double val)
         throws InvalidRegisterAccessException
     {
+        RegisterBank bank = bank();
         if (reg % 2 != 0)
         {
             throw new InvalidRegisterAccessException();
         }
         long bits = Double.doubleToRawLongBits(val);
-        registers[reg + 1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
-        registers[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
+        bank.set(reg + 1, Binary.highOrderLongToInt(bits));  // high order 32 bits
+        bank.set(reg, Binary.lowOrderLongToInt(bits)); // low order 32 bits
     }
 
 
@@ -201,12 +250,13 @@ public class Coprocessor1
     public static void setRegisterPairToLong(int reg, long val)
         throws InvalidRegisterAccessException
     {
+        RegisterBank bank = bank();
         if (reg % 2 != 0)
         {
             throw new InvalidRegisterAccessException();
         }
-        registers[reg + 1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
-        registers[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
+        bank.set(reg + 1, Binary.highOrderLongToInt(val));  // high order 32 bits
+        bank.set(reg, Binary.lowOrderLongToInt(val)); // low order 32 bits
     }
 
 
@@ -236,9 +286,9 @@ public class Coprocessor1
     public static float getFloatFromRegister(int reg)
     {
         float result = 0F;
-        if (reg >= 0 && reg < registers.length)
+        if (reg >= 0 && reg < FPU_REGISTER_COUNT)
         {
-            result = Float.intBitsToFloat(registers[reg].getValue());
+            result = Float.intBitsToFloat(bank().get(reg));
         }
         return result;
     }
@@ -267,9 +317,9 @@ public class Coprocessor1
     public static int getIntFromRegister(int reg)
     {
         int result = 0;
-        if (reg >= 0 && reg < registers.length)
+        if (reg >= 0 && reg < FPU_REGISTER_COUNT)
         {
-            result = registers[reg].getValue();
+            result = bank().get(reg);
         }
         return result;
     }
@@ -298,12 +348,12 @@ public class Coprocessor1
     public static double getDoubleFromRegisterPair(int reg)
         throws InvalidRegisterAccessException
     {
-        double result = 0.0;
+        RegisterBank bank = bank();
         if (reg % 2 != 0)
         {
             throw new InvalidRegisterAccessException();
         }
-        long bits = Binary.twoIntsToLong(registers[reg + 1].getValue(), registers[reg].getValue());
+        long bits = Binary.twoIntsToLong(bank.get(reg + 1), bank.get(reg));
         return Double.longBitsToDouble(bits);
     }
 
@@ -333,12 +383,12 @@ public class Coprocessor1
     public static long getLongFromRegisterPair(int reg)
         throws InvalidRegisterAccessException
     {
-        double result = 0.0;
+        RegisterBank bank = bank();
         if (reg % 2 != 0)
         {
             throw new InvalidRegisterAccessException();
         }
-        return Binary.twoIntsToLong(registers[reg + 1].getValue(), registers[reg].getValue());
+        return Binary.twoIntsToLong(bank.get(reg + 1), bank.get(reg));
     }
 
 
@@ -366,18 +416,13 @@ public class Coprocessor1
 
     public static int updateRegister(int num, int val)
     {
-        int old = 0;
-        for (int i = 0; i < registers.length; i++)
+        if (num < 0 || num >= FPU_REGISTER_COUNT)
         {
-            if (registers[i].getNumber() == num)
-            {
-                old = (Globals.getSettings().getBackSteppingEnabled())
-                    ? Globals.program.getBackStepper().addCoprocessor1Restore(num, registers[i].setValue(val))
-                    : registers[i].setValue(val);
-                break;
-            }
+            return 0;
         }
-        return old;
+        return (Globals.getSettings().getBackSteppingEnabled())
+            ? Globals.getProgram().getBackStepper().addCoprocessor1Restore(num, bank().set(num, val))
+            : bank().set(num, val);
     }
 
     /**
@@ -390,7 +435,7 @@ public class Coprocessor1
 
     public static int getValue(int num)
     {
-        return registers[num].getValue();
+        return registers()[num].getValue();
     }
 
     /**
@@ -402,6 +447,7 @@ public class Coprocessor1
 
     public static int getRegisterNumber(String n)
     {
+        Register[] registers = registers();
         int j = -1;
         for (int i = 0; i < registers.length; i++)
         {
@@ -422,7 +468,7 @@ public class Coprocessor1
 
     public static Register[] getRegisters()
     {
-        return registers;
+        return registers();
     }
 
     /**
@@ -434,6 +480,7 @@ public class Coprocessor1
 
     public static Register getRegister(String rName)
     {
+        Register[] registers = registers();
         Register reg = null;
         if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f')
         {
@@ -458,6 +505,7 @@ public class Coprocessor1
 
     public static void resetRegisters()
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].resetValue();
@@ -472,6 +520,7 @@ public class Coprocessor1
      */
     public static void addRegistersObserver(Observer observer)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].addObserver(observer);
@@ -485,6 +534,7 @@ public class Coprocessor1
      */
     public static void deleteRegistersObserver(Observer observer)
     {
+        Register[] registers = registers();
         for (int i = 0; i < registers.length; i++)
         {
             registers[i].deleteObserver(observer);
@@ -499,6 +549,7 @@ public class Coprocessor1
      */
     public static int setConditionFlag(int flag)
     {
+        Register condition = condition();
         int old = 0;
         if (flag >= 0 && flag < numConditionFlags)
         {
@@ -508,11 +559,11 @@ public class Coprocessor1
             {
                 if (old == 0)
                 {
-                    Globals.program.getBackStepper().addConditionFlagClear(flag);
+                    Globals.getProgram().getBackStepper().addConditionFlagClear(flag);
                 }
                 else
                 {
-                    Globals.program.getBackStepper().addConditionFlagSet(flag);
+                    Globals.getProgram().getBackStepper().addConditionFlagSet(flag);
                 }
             }
         }
@@ -527,6 +578,7 @@ public class Coprocessor1
      */
     public static int clearConditionFlag(int flag)
     {
+        Register condition = condition();
         int old = 0;
         if (flag >= 0 && flag < numConditionFlags)
         {
@@ -536,11 +588,11 @@ public class Coprocessor1
             {
                 if (old == 0)
                 {
-                    Globals.program.getBackStepper().addConditionFlagClear(flag);
+                    Globals.getProgram().getBackStepper().addConditionFlagClear(flag);
                 }
                 else
                 {
-                    Globals.program.getBackStepper().addConditionFlagSet(flag);
+                    Globals.getProgram().getBackStepper().addConditionFlagSet(flag);
                 }
             }
         }
@@ -556,6 +608,7 @@ public class Coprocessor1
      */
     public static int getConditionFlag(int flag)
     {
+        Register condition = condition();
         if (flag < 0 || flag >= numConditionFlags)
         {
             flag = 0;
@@ -571,7 +624,7 @@ public class Coprocessor1
      */
     public static int getConditionFlags()
     {
-        return condition.getValue();
+        return condition().getValue();
     }
 
 
@@ -580,7 +633,7 @@ public class Coprocessor1
      */
     public static void clearConditionFlags()
     {
-        condition.setValue(0);  // sets all 32 bits to 0.
+        condition().setValue(0);  // sets all 32 bits to 0.
     }
 
     /**
@@ -588,7 +641,7 @@ public class Coprocessor1
      */
     public static void setConditionFlags()
     {
-        condition.setValue(-1);  // sets all 32 bits to 1.
+        condition().setValue(-1);  // sets all 32 bits to 1.
     }
 
     /**
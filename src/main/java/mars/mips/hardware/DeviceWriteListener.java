@@ -0,0 +1,20 @@
+package mars.mips.hardware;
+
+/**
+ * Told of the stores to a Memory that are not made by the executing program, such as a memory mapped device's input
+ * (see <code>Memory.setDeviceWriteListener</code>).
+ */
+public interface DeviceWriteListener
+{
+    /**
+     * Called just after the store, in the thread that made it.
+     *
+     * @param address address stored to
+     * @param length number of bytes stored, 1, 2 or 4
+     * @param value value stored, in the low order bytes
+     * @param raw true if stored with setRawWord(), that is, without adjusting for byte order
+     * @param duringInstruction true if made by a memory observer while the program executes an instruction, false if
+     * made from another thread between two instructions
+     */
+    void deviceWrite(int address, int length, int value, boolean raw, boolean duringInstruction);
+}
@@ -1,11 +1,17 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.MachineContext;
 import mars.ProgramStatement;
 import mars.Settings;
 import mars.simulator.Exceptions;
+import mars.simulator.ExecutionListener;
 import mars.util.Binary;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 	
 	/*
@@ -37,7 +43,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 /**
- * Represents MIPS memory.  Different segments are represented by different data structs.
+ * Represents MIPS memory.  Data, stack, memory mapped I/O and kernel data words are kept in 4K byte pages of ints, and
+ * the program statements of the text segments in pages of ProgramStatements.  Both are found through a two-level page
+ * table over the whole 32 bit address space, and pages are allocated when first written.
  *
  * @author Pete Sanderson
  * @version August 2003
@@ -66,22 +74,33 @@ public class Memory extends Observable
      */
     public static final boolean BIG_ENDIAN = false;
 
-    private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
+    private static final int PAGE_SHIFT = 12; // pages are 4K bytes
 
-    private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
+    private static final int PAGE_LENGTH_WORDS = 1024;
 
-    private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
+    private static final int PAGE_LENGTH_BYTES = PAGE_LENGTH_WORDS * WORD_LENGTH_BYTES;
 
-    private static final int TEXT_BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
+    private static final int PAGE_TABLE_SHIFT = 22; // address bits above those selecting a page within a page table
 
-    private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
+    private static final int PAGE_TABLE_LENGTH = 1024; // Each entry of a page table points to a page.
+
+    private static final int PAGE_DIRECTORY_LENGTH = 1024; // Each entry of the directory points to a page table.
+
+    private static final int SEGMENT_LENGTH_BYTES = PAGE_TABLE_LENGTH * PAGE_LENGTH_BYTES; // 4 MB, one page table
+
+    private static final int MEMORY_MAP_LENGTH_BYTES = 16 * PAGE_LENGTH_BYTES; // 64K bytes, to the top of memory
+
+    // Shared by every directory entry whose page table has no pages, so that looking up a
+    // page never needs to test for a missing page table.  Never written.
+    private static final int[][] NO_PAGES = new int[PAGE_TABLE_LENGTH][];
+
+    private static final ProgramStatement[][] NO_STATEMENT_PAGES = new ProgramStatement[PAGE_TABLE_LENGTH][];
 
     ////////////////////////////////////////////////////////////////////////////////
     //
     // Helper method to store 1, 2 or 4 byte value in table that represents MIPS
     // memory. Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
+    // Both are stored in pages of the same page table.
     // Modified 29 Dec 2005 to return old value of replaced bytes.
     //
     private static final boolean STORE = true;
@@ -125,25 +144,31 @@ public class Memory extends Observable
     // This assures that observers are not bombarded with notices from memory
     // addresses they do not care about.
     //
-    // Would like a tree-like implementation, but that is complicated by this fact:
-    // key for insertion into the tree would be based on Comparable using both low 
-    // and high end of address range, but retrieval from the tree has to be based
-    // on target address being ANYWHERE IN THE RANGE (not an exact key match).
+    // The observables are indexed by page (see ObserverIndex below), so a memory
+    // access only looks at the observables whose range includes its page, and an
+    // access to a page that nobody observes costs a single bitmap test.  With no
+    // observables at all there is no index and the cost is a null test.
 
     /** base address for kernel text segment: 0x80000000 **/
     public static int kernelTextBaseAddress = MemoryConfigurations.getDefaultKernelTextBaseAddress(); //0x80000000;
 
-    // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
-    // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
-    // is thus 1024 entries * 4096 bytes = 4 MB.  Should be enough to cover most
-    // programs!!  Beyond that it would go to an "indirect" block (similar to Unix i-nodes),
-    // which is not implemented.
+    // Memory is allocated in pages of 1024 ints (4096 bytes), found through a two-level
+    // page table covering the whole 32 bit address space: the top 10 bits of an address
+    // select a page table from the page directory, the next 10 bits a page from that
+    // table.  Data, stack, memory mapped I/O and kernel data all live in the same table.
+    // Each segment is still limited to 4 MB (see the limit addresses below).
+    //
+    // A page is not allocated until a value is written to an address within it, and a
+    // page table not until one of its pages is allocated.  Thus most small programs
+    // will use only a few pages.  Looking up the page of an address is two shifts, two
+    // array indexes and one null test; access time is constant.
     //
-    // Although this scheme is an array of arrays, it is relatively space-efficient since
-    // only the table is created initially. A 4096-byte block is not allocated until a value 
-    // is written to an address within it.  Thus most small programs will use only 8K bytes 
-    // of space (the table plus one block).  The index into both arrays is easily computed 
-    // from the address; access time is constant.
+    // Only pages lying wholly within one data segment are entered in the page table.
+    // set() and get() use such a page without checking the address against the segment
+    // boundaries, so the segment tests are only made for the first access to a page and
+    // for addresses in the text segments or outside of memory.  The few pages that
+    // straddle a segment boundary are kept in a separate map, reached only after those
+    // tests.
     //
     // SPIM stores statically allocated data (following first .data directive) starting
     // at location 0x10010000.  This is the first Data Segment word beyond the reach of $gp
@@ -151,11 +176,8 @@ public class Memory extends Observable
     // and with the signed 16 bit offset can reach from 0x10008000 - 0xFFFF = 0x10000000 
     // (Data Segment base) to 0x10008000 + 0x7FFF = 0x1000FFFF (the byte preceding 0x10010000).
     //
-    // Using my scheme, 0x10010000 falls at the beginning of the 17'th block -- table entry 16.
     // SPIM uses a heap base address of 0x10040000 which is not part of the MIPS specification.
-    // (I don't have a reference for that offhand...)  Using my scheme, 0x10040000 falls at
-    // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
-    // bytes of space available without going indirect.
+    // (I don't have a reference for that offhand...)  Both addresses are page aligned.
 
     /** starting address for exception handlers: 0x80000180 **/
     public static int exceptionHandlerAddress = MemoryConfigurations.getDefaultExceptionHandlerAddress(); //0x80000180;
@@ -169,99 +191,111 @@ public class Memory extends Observable
     /** highest address acessible in kernel mode. **/
     public static int kernelHighAddress = MemoryConfigurations.getDefaultKernelHighAddress(); //0xffffffff;
 
-    // The stack is modeled similarly to the data segment.  It cannot share the same
-    // data structure because the stack base address is very large.  To store it in the
-    // same data structure would require implementation of indirect blocks, which has not
-    // been realized.  So the stack gets its own table of blocks using the same dimensions 
-    // and allocation scheme used for data segment.
-    //
-    // The other major difference is the stack grows DOWNWARD from its base address, not
-    // upward.  I.e., the stack base is the largest stack address. This turns the whole 
-    // scheme for translating memory address to block-offset on its head!  The simplest
-    // solution is to calculate relative address (offset from base) by subtracting the 
-    // desired address from the stack base address (rather than subtracting base address 
-    // from desired address).  Thus as the address gets smaller the offset gets larger.
-    // Everything else works the same, so it shares some private helper methods with
-    // data segment algorithms.
-
-    public static int heapAddress;
-
-    // Memory mapped I/O is simulated with a separate table using the same structure and
-    // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
-    // address range is limited to 0xffff0000 to 0xfffffffc, there are only 64K bytes 
-    // total.  Thus there will be a maximum of 16 blocks, and I suspect never more than
-    // one since only the first few addresses are typically used.  The only exception
-    // may be a rogue program generating such addresses in a loop.  Note that the
-    // MMIO addresses are interpreted by Java as negative numbers since it does not 
-    // have unsigned types.  As long as the absolute address is correctly translated
-    // into a table offset, this is of no concern.
-
-    public static int dataSegmentLimitAddress = dataSegmentBaseAddress +
-        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-
-    public static int textLimitAddress = textBaseAddress +
-        TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-
-    // I use a similar scheme for storing instructions.  MIPS text segment ranges from
-    // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
-    // I'll provide table of blocks with similar capacity.  This differs from data segment
-    // somewhat in that the block entries do not contain int's, but instead contain
-    // references to ProgramStatement objects.  
-
-    public static int kernelDataSegmentLimitAddress = kernelDataBaseAddress +
-        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-
-    public static int kernelTextLimitAddress = kernelTextBaseAddress +
-        TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-
-    public static int stackLimitAddress = stackBaseAddress -
-        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-
-    public static int memoryMapLimitAddress = memoryMapBaseAddress +
-        BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES;
+    // The stack grows DOWNWARD from its base address, which is the largest stack
+    // address.  With pages found by absolute address that makes no difference to how it
+    // is stored.
+
+    private int heapAddress;
+
+    // Memory mapped I/O is simulated with pages like the data segment.  Since the MMIO
+    // address range is limited to 0xffff0000 to 0xfffffffc, there are only 64K bytes
+    // total, and I suspect never more than one page since only the first few addresses
+    // are typically used.  Note that the MMIO addresses are interpreted by Java as
+    // negative numbers since it does not have unsigned types.  The page table is indexed
+    // with unsigned shifts, so this is of no concern.
+
+    public static int dataSegmentLimitAddress = dataSegmentBaseAddress + SEGMENT_LENGTH_BYTES;
+
+    public static int textLimitAddress = textBaseAddress + SEGMENT_LENGTH_BYTES;
+
+    // Instructions are stored the same way, in a second page table whose pages hold
+    // references to ProgramStatement objects rather than ints.  MIPS text segment ranges
+    // from 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!
+    // Like the data segments it is limited to 4 MB.
+
+    public static int kernelDataSegmentLimitAddress = kernelDataBaseAddress + SEGMENT_LENGTH_BYTES;
+
+    public static int kernelTextLimitAddress = kernelTextBaseAddress + SEGMENT_LENGTH_BYTES;
+
+    public static int stackLimitAddress = stackBaseAddress - SEGMENT_LENGTH_BYTES;
+
+    public static int memoryMapLimitAddress = memoryMapBaseAddress + MEMORY_MAP_LENGTH_BYTES;
 
     // Set "top" address boundary to go with each "base" address.  This determines permissable
-    // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
-    // on the table structures described above (except memory mapped IO, limited to 64KB by range).
+    // address range for user program.  Currently limit is 4MB, the span of one page table
+    // (except memory mapped IO, limited to 64KB by range).
 
     /** Current setting for endian (default LITTLE_ENDIAN) **/
     private static boolean byteOrder = LITTLE_ENDIAN;
 
-    private static final Memory uniqueMemoryInstance = new Memory();
-
     Collection observables = getNewMemoryObserversCollection();
 
-    private int[][] dataBlockTable;
+    // Rebuilt from observables whenever it changes; null when there are none.
+    private volatile ObserverIndex observerIndex;
+
+    // There is one instance per MachineContext.  getInstance() returns the one belonging to
+    // the calling thread's context.
+
+    // Page directory for data, stack, memory mapped I/O and kernel data.  Entries with no
+    // pages are NO_PAGES.
+    private int[][][] pageDirectory;
+
+    // Allocated pages that straddle a segment boundary, by page number (address >>> PAGE_SHIFT).
+    private HashMap<Integer, int[]> boundaryPages;
+
+    // Page directory used for stores.  It holds the pages of pageDirectory that may be
+    // modified in place; a page shared with a MemoryImage is missing from it until the
+    // first store to the page, which goes to findPage() and copies it.  The same object
+    // as pageDirectory while no pages are shared.
+    private int[][][] writablePageDirectory;
+
+    // Page directory for user and kernel text.  Pages hold ProgramStatements instead of ints.
+    private ProgramStatement[][][] statementDirectory;
+
+    // Page numbers of boundary pages and text pages shared with a MemoryImage.  They are
+    // copied before they are next modified.
+    private HashSet<Integer> sharedBoundaryPages;
+
+    private HashSet<Integer> sharedStatementPages;
+
+    // Addresses of the words written since startWriteJournal(), or null if not journaling.
+    private LinkedHashSet<Integer> writeJournal;
 
-    private int[][] kernelDataBlockTable;
+    // Journals started before the current one and not yet ended, innermost last.
+    private final ArrayList<LinkedHashSet<Integer>> outerWriteJournals = new ArrayList<LinkedHashSet<Integer>>();
 
-    private int[][] stackBlockTable;
-    // This will be a Singleton class, only one instance is ever created.  Since I know the 
-    // Memory object is always needed, I'll go ahead and create it at the time of class loading.
-    // (greedy rather than lazy instantiation).  The constructor is private and getInstance()
-    // always returns this instance.
+    // Told of the stores not made by the program itself, or null.  See setDeviceWriteListener().
+    private DeviceWriteListener deviceWriteListener;
 
-    private int[][] memoryMapBlockTable;
+    // Told of the loads and stores made by the program, or null if none.  See setExecutionListeners().
+    private ExecutionListener[] executionListeners;
 
-    private ProgramStatement[][] textBlockTable;
+    // Thread the program is executing in while there is a deviceWriteListener or executionListeners.
+    private Thread programThread;
 
-    private ProgramStatement[][] kernelTextBlockTable;
+    // Depth of observer notifications and execution listener calls in progress in programThread.
+    private int programObserverDepth;
 
-    /*
-     * Private constructor for Memory.  Separate data structures for text and data segments.
+    // Incremented whenever a text segment statement is stored, so that anything holding
+    // decoded or compiled copies of the text segment can tell they have gone stale.
+    private int textSegmentModificationCount;
+
+    /**
+     * Constructor for Memory.  Separate data structures for text and data segments.  Used by MachineContext; other
+     * clients should use getInstance().
      **/
-    private Memory()
+    public Memory()
     {
         initialize();
     }
 
     /**
-     * Returns the unique Memory instance, which becomes in essence global.
+     * Returns the Memory instance of the calling thread's MachineContext.
      */
 
     public static Memory getInstance()
     {
-        return uniqueMemoryInstance;
+        return MachineContext.getCurrent().getMemory();
     }
 
     /**
@@ -287,23 +321,17 @@ public class Memory extends Observable
         memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
         kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;
         dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
-            dataSegmentBaseAddress +
-                BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            dataSegmentBaseAddress + SEGMENT_LENGTH_BYTES);
         textLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getTextLimitAddress(),
-            textBaseAddress +
-                TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            textBaseAddress + SEGMENT_LENGTH_BYTES);
         kernelDataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress(),
-            kernelDataBaseAddress +
-                BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            kernelDataBaseAddress + SEGMENT_LENGTH_BYTES);
         kernelTextLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelTextLimitAddress(),
-            kernelTextBaseAddress +
-                TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            kernelTextBaseAddress + SEGMENT_LENGTH_BYTES);
         stackLimitAddress = Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
-            stackBaseAddress -
-                BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            stackBaseAddress - SEGMENT_LENGTH_BYTES);
         memoryMapLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
-            memoryMapBaseAddress +
-                BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            memoryMapBaseAddress + MEMORY_MAP_LENGTH_BYTES);
       /*	System.out.println("dataSegmentLimitAddress "+Binary.intToHexString(dataSegmentLimitAddress));
       	System.out.println("textLimitAddress "+Binary.intToHexString(textLimitAddress));
       	System.out.println("kernelDataSegmentLimitAddress "+Binary.intToHexString(kernelDataSegmentLimitAddress));
@@ -462,12 +490,18 @@ public class Memory extends Observable
     private void initialize()
     {
         heapAddress = heapBaseAddress;
-        textBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
-        kernelTextBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        kernelDataBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        pageDirectory = new int[PAGE_DIRECTORY_LENGTH][][];
+        Arrays.fill(pageDirectory, NO_PAGES);
+        writablePageDirectory = pageDirectory;
+        boundaryPages = new HashMap<Integer, int[]>();
+        statementDirectory = new ProgramStatement[PAGE_DIRECTORY_LENGTH][][];
+        Arrays.fill(statementDirectory, NO_STATEMENT_PAGES);
+        sharedBoundaryPages = new HashSet<Integer>();
+        sharedStatementPages = new HashSet<Integer>();
+        // Journals started before the memory was cleared are dropped, with the writes they recorded.
+        writeJournal = null;
+        outerWriteJournals.clear();
+        textSegmentModificationCount++;
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
@@ -505,6 +539,342 @@ public class Memory extends Observable
         return result;
     }
 
+    /**
+     * @return the address allocateBytesFromHeap() will return next
+     */
+    public int getHeapAddress()
+    {
+        return heapAddress;
+    }
+
+    /**
+     * Set the address allocateBytesFromHeap() will return next, e.g. to restore a saved machine state.
+     *
+     * @param address word-aligned address in the data segment
+     */
+    public void setHeapAddress(int address)
+    {
+        heapAddress = address;
+    }
+
+    /**
+     * Take an image of the whole of memory: data, stack, memory mapped I/O and kernel data pages, text segment
+     * statements and the heap address.  Pages are not copied.  Memory and the image share them, and the next store to
+     * a shared page copies it first (copy on write), so taking an image costs little more than copying the page
+     * tables, and a series of images only holds one copy of each page that has not changed between them.
+     *
+     * @return the image
+     */
+    public synchronized MemoryImage captureImage()
+    {
+        MemoryImage image = new MemoryImage(copyPageTables(pageDirectory), new HashMap<Integer, int[]>(boundaryPages),
+            copyStatementTables(statementDirectory), heapAddress, textSegmentModificationCount);
+        shareAllPages();
+        return image;
+    }
+
+    /**
+     * Return memory to the contents it had when the image was taken.  Memory shares the image's pages, copying each one
+     * when it is next stored to, so the image is not changed and can be restored again.  Observers are not notified.
+     *
+     * @param image an image taken by captureImage(), from this or another Memory with the same configuration
+     */
+    public synchronized void restoreImage(MemoryImage image)
+    {
+        pageDirectory = copyPageTables(image.pages);
+        boundaryPages = new HashMap<Integer, int[]>(image.boundaryPages);
+        statementDirectory = copyStatementTables(image.statements);
+        heapAddress = image.heapAddress;
+        if (image.textSegmentModificationCount != textSegmentModificationCount)
+        {
+            // The text segment is not what it was when the image was taken, or may not be
+            textSegmentModificationCount++;
+        }
+        shareAllPages();
+    }
+
+    /**
+     * Start recording which words are written, through any of the store methods, until endWriteJournal().  Used to
+     * find out what a syscall changed.  Journals nest: the words written while one is started inside another are also
+     * in the outer one.
+     */
+    public synchronized void startWriteJournal()
+    {
+        if (writeJournal != null)
+        {
+            outerWriteJournals.add(writeJournal);
+        }
+        writeJournal = new LinkedHashSet<Integer>();
+    }
+
+    /**
+     * Stop recording writes and return the words written since startWriteJournal().  The values are the words' current
+     * contents as stored (see setRawWord), so they can be written back with setRawWord().
+     *
+     * @return address and value of each word written, in pairs, in the order the words were first written; none if
+     *     the memory was cleared since startWriteJournal()
+     */
+    public synchronized int[] endWriteJournal()
+    {
+        if (writeJournal == null)
+        {
+            return new int[0];
+        }
+        int[] words = new int[2 * writeJournal.size()];
+        int i = 0;
+        for (int address : writeJournal)
+        {
+            words[i++] = address;
+            try
+            {
+                if (inTextSegment(address) || inKernelTextSegment(address))
+                {
+                    ProgramStatement statement = getStatement(address);
+                    words[i++] = (statement == null) ? 0 : statement.getBinaryStatement();
+                }
+                else
+                {
+                    words[i++] = fetchWordFromPage(findPage(address, false), address);
+                }
+            }
+            catch (AddressErrorException e)
+            {
+                // the address was written, so it is valid
+                words[i++] = 0;
+            }
+        }
+        if (outerWriteJournals.isEmpty())
+        {
+            writeJournal = null;
+        }
+        else
+        {
+            LinkedHashSet<Integer> outer = outerWriteJournals.remove(outerWriteJournals.size() - 1);
+            outer.addAll(writeJournal);
+            writeJournal = outer;
+        }
+        return words;
+    }
+
+    /**
+     * Tell a listener of every store that is not made by the executing program: those made from other threads, such
+     * as a tool's keyboard input from the GUI thread, and those made from the program's thread by memory observers
+     * reacting to one of its accesses.  Used to record device input.
+     *
+     * @param listener the listener, or null to stop telling
+     * @param programThread thread the program is executing in, whose own stores are not reported
+     */
+    public void setDeviceWriteListener(DeviceWriteListener listener, Thread programThread)
+    {
+        this.deviceWriteListener = listener;
+        this.programThread = programThread;
+        this.programObserverDepth = 0;
+    }
+
+    /**
+     * Tell listeners of every load and store the executing program makes with the methods that notify observers,
+     * including those made by syscalls.  Accesses made from other threads, by memory observers or with setRawWord()
+     * are not reported.
+     *
+     * @param listeners the listeners, or null to stop telling
+     * @param programThread thread the program is executing in
+     */
+    public void setExecutionListeners(ExecutionListener[] listeners, Thread programThread)
+    {
+        this.executionListeners = listeners;
+        this.programThread = programThread;
+        this.programObserverDepth = 0;
+    }
+
+    /**
+     * Write an image in a compact binary form: the heap address, each allocated data, stack, memory mapped I/O or
+     * kernel data page with its page number, and the address and binary code of each text segment statement.  Pages
+     * never allocated take no space.  Words are written as stored, so the image can only be read back by a Memory with
+     * the same byte order and configuration.
+     *
+     * @param image the image
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public static void writeImage(MemoryImage image, DataOutputStream out) throws IOException
+    {
+        out.writeInt(image.heapAddress);
+        ArrayList<Integer> pageNumbers = new ArrayList<Integer>();
+        ArrayList<int[]> pages = new ArrayList<int[]>();
+        for (int directoryIndex = 0; directoryIndex < PAGE_DIRECTORY_LENGTH; directoryIndex++)
+        {
+            int[][] pageTable = image.pages[directoryIndex];
+            for (int pageIndex = 0; pageTable != NO_PAGES && pageIndex < PAGE_TABLE_LENGTH; pageIndex++)
+            {
+                if (pageTable[pageIndex] != null)
+                {
+                    pageNumbers.add((directoryIndex << 10) | pageIndex);
+                    pages.add(pageTable[pageIndex]);
+                }
+            }
+        }
+        for (Map.Entry<Integer, int[]> entry : image.boundaryPages.entrySet())
+        {
+            pageNumbers.add(entry.getKey());
+            pages.add(entry.getValue());
+        }
+        out.writeInt(pages.size());
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_LENGTH_WORDS * WORD_LENGTH_BYTES);
+        for (int i = 0; i < pages.size(); i++)
+        {
+            out.writeInt(pageNumbers.get(i));
+            buffer.clear();
+            buffer.asIntBuffer().put(pages.get(i));
+            out.write(buffer.array());
+        }
+        int statementCount = 0;
+        for (ProgramStatement[][] pageTable : image.statements)
+        {
+            for (int pageIndex = 0; pageTable != NO_STATEMENT_PAGES && pageIndex < PAGE_TABLE_LENGTH; pageIndex++)
+            {
+                for (int word = 0; pageTable[pageIndex] != null && word < PAGE_LENGTH_WORDS; word++)
+                {
+                    if (pageTable[pageIndex][word] != null)
+                    {
+                        statementCount++;
+                    }
+                }
+            }
+        }
+        out.writeInt(statementCount);
+        for (ProgramStatement[][] pageTable : image.statements)
+        {
+            for (int pageIndex = 0; pageTable != NO_STATEMENT_PAGES && pageIndex < PAGE_TABLE_LENGTH; pageIndex++)
+            {
+                for (int word = 0; pageTable[pageIndex] != null && word < PAGE_LENGTH_WORDS; word++)
+                {
+                    ProgramStatement statement = pageTable[pageIndex][word];
+                    if (statement != null)
+                    {
+                        out.writeInt(statement.getAddress());
+                        out.writeInt(statement.getBinaryStatement());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read an image written by writeImage().  Text segment statements whose binary code matches the statement now at
+     * the same address are taken from this Memory, so they keep their source code when the same program has been
+     * assembled; others are decoded from their binary code.
+     *
+     * @param in where to read it from
+     * @return the image, to be given to restoreImage()
+     * @throws IOException if reading fails or the data is not a valid image for this Memory
+     */
+    public synchronized MemoryImage readImage(DataInputStream in) throws IOException
+    {
+        int heap = in.readInt();
+        int[][][] pages = new int[PAGE_DIRECTORY_LENGTH][][];
+        Arrays.fill(pages, NO_PAGES);
+        HashMap<Integer, int[]> boundary = new HashMap<Integer, int[]>();
+        int pageCount = in.readInt();
+        byte[] bytes = new byte[PAGE_LENGTH_WORDS * WORD_LENGTH_BYTES];
+        for (int i = 0; i < pageCount; i++)
+        {
+            int address = in.readInt() << PAGE_SHIFT;
+            in.readFully(bytes);
+            int[] page = new int[PAGE_LENGTH_WORDS];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(page);
+            if (pageInOneDataSegment(address))
+            {
+                installPage(pages, address, page);
+            }
+            else
+            {
+                boundary.put(address >>> PAGE_SHIFT, page);
+            }
+        }
+        ProgramStatement[][][] statements = new ProgramStatement[PAGE_DIRECTORY_LENGTH][][];
+        Arrays.fill(statements, NO_STATEMENT_PAGES);
+        int statementCount = in.readInt();
+        for (int i = 0; i < statementCount; i++)
+        {
+            int address = in.readInt();
+            int binary = in.readInt();
+            if ((address & 3) != 0 || !(inTextSegment(address) || inKernelTextSegment(address)))
+            {
+                throw new IOException("statement at " + Binary.intToHexString(address) + " is outside the text segments");
+            }
+            ProgramStatement statement = readProgramStatement(address);
+            if (statement == null || statement.getBinaryStatement() != binary)
+            {
+                statement = new ProgramStatement(binary, address);
+            }
+            int directoryIndex = address >>> PAGE_TABLE_SHIFT;
+            if (statements[directoryIndex] == NO_STATEMENT_PAGES)
+            {
+                statements[directoryIndex] = new ProgramStatement[PAGE_TABLE_LENGTH][];
+            }
+            ProgramStatement[][] pageTable = statements[directoryIndex];
+            int pageIndex = (address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1);
+            if (pageTable[pageIndex] == null)
+            {
+                pageTable[pageIndex] = new ProgramStatement[PAGE_LENGTH_WORDS];
+            }
+            pageTable[pageIndex][(address >>> 2) & (PAGE_LENGTH_WORDS - 1)] = statement;
+        }
+        // The modification count never matches, so restoring the image counts as modifying the text segment.
+        return new MemoryImage(pages, boundary, statements, heap, textSegmentModificationCount - 1);
+    }
+
+    // Copy a page directory and its page tables, but not the pages.
+    private static int[][][] copyPageTables(int[][][] directory)
+    {
+        int[][][] copy = directory.clone();
+        for (int i = 0; i < copy.length; i++)
+        {
+            if (copy[i] != NO_PAGES)
+            {
+                copy[i] = copy[i].clone();
+            }
+        }
+        return copy;
+    }
+
+    private static ProgramStatement[][][] copyStatementTables(ProgramStatement[][][] directory)
+    {
+        ProgramStatement[][][] copy = directory.clone();
+        for (int i = 0; i < copy.length; i++)
+        {
+            if (copy[i] != NO_STATEMENT_PAGES)
+            {
+                copy[i] = copy[i].clone();
+            }
+        }
+        return copy;
+    }
+
+    // Mark every page as shared with an image, so that each is copied before it is next modified.
+    private void shareAllPages()
+    {
+        writablePageDirectory = new int[PAGE_DIRECTORY_LENGTH][][];
+        Arrays.fill(writablePageDirectory, NO_PAGES);
+        sharedBoundaryPages = new HashSet<Integer>(boundaryPages.keySet());
+        sharedStatementPages = new HashSet<Integer>();
+        for (int directoryIndex = 0; directoryIndex < PAGE_DIRECTORY_LENGTH; directoryIndex++)
+        {
+            ProgramStatement[][] pageTable = statementDirectory[directoryIndex];
+            if (pageTable == NO_STATEMENT_PAGES)
+            {
+                continue;
+            }
+            for (int pageIndex = 0; pageIndex < PAGE_TABLE_LENGTH; pageIndex++)
+            {
+                if (pageTable[pageIndex] != null)
+                {
+                    sharedStatementPages.add((directoryIndex << 10) | pageIndex);
+                }
+            }
+        }
+    }
+
     /**
      * Retrieve memory byte order.  Default is LITTLE_ENDIAN (like PCs).
      *
@@ -541,7 +911,7 @@ public class Memory extends Observable
      * @return old value that was replaced by the set operation
      **/
 
-    // Allocates blocks if necessary.
+    // Allocates pages if necessary.
     public int set(int address, int value, int length) throws AddressErrorException
     {
         int oldValue = 0;
@@ -549,19 +919,21 @@ public class Memory extends Observable
         {
             System.out.println("memory[" + address + "] set to " + value + "(" + length + " bytes)");
         }
-        int relativeByteAddress;
-        if (inDataSegment(address))
+        int[] page = writablePage(address);
+        if (page != null)
+        {
+            // page lies wholly in a data segment.  Will write one byte at a time, w/o regard to boundaries.
+            oldValue = storeBytesInPage(page, address, length, value);
+        }
+        else if (inDataSegment(address))
         {
             // in data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
+            oldValue = storeBytesInPage(findPage(address, true), address, length, value);
         }
         else if (address > stackLimitAddress && address <= stackBaseAddress)
         {
-            // in stack.  Handle similarly to data segment write, except relative byte
-            // address calculated "backward" because stack addresses grow down from base.
-            relativeByteAddress = stackBaseAddress - address;
-            oldValue = storeBytesInTable(stackBlockTable, relativeByteAddress, length, value);
+            // in stack.  Handle similarly to data segment write.
+            oldValue = storeBytesInPage(findPage(address, true), address, length, value);
         }
         else if (inTextSegment(address))
         {
@@ -587,14 +959,12 @@ public class Memory extends Observable
         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress)
         {
             // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            oldValue = storeBytesInPage(findPage(address, true), address, length, value);
         }
         else if (inKernelDataSegment(address))
         {
             // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(kernelDataBlockTable, relativeByteAddress, length, value);
+            oldValue = storeBytesInPage(findPage(address, true), address, length, value);
         }
         else if (inKernelTextSegment(address))
         {
@@ -609,6 +979,18 @@ public class Memory extends Observable
             throw new AddressErrorException("address out of range ",
                 Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        if (writeJournal != null)
+        {
+            journalWrite(address, length);
+        }
+        if (deviceWriteListener != null)
+        {
+            reportDeviceWrite(address, length, value, false);
+        }
+        if (executionListeners != null)
+        {
+            reportStore(address, length, oldValue, value);
+        }
         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
@@ -624,24 +1006,27 @@ public class Memory extends Observable
      **/
     public int setRawWord(int address, int value) throws AddressErrorException
     {
-        int relative, oldValue = 0;
+        int oldValue = 0;
         if (address % WORD_LENGTH_BYTES != 0)
         {
             throw new AddressErrorException("store address not aligned on word boundary ",
                 Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
-        if (inDataSegment(address))
+        int[] page = writablePage(address);
+        if (page != null)
+        {
+            // page lies wholly in a data segment
+            oldValue = storeWordInPage(page, address, value);
+        }
+        else if (inDataSegment(address))
         {
             // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(dataBlockTable, relative, value);
+            oldValue = storeWordInPage(findPage(address, true), address, value);
         }
         else if (address > stackLimitAddress && address <= stackBaseAddress)
         {
-            // in stack.  Handle similarly to data segment write, except relative
-            // address calculated "backward" because stack addresses grow down from base.
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(stackBlockTable, relative, value);
+            // in stack.  Handle similarly to data segment write.
+            oldValue = storeWordInPage(findPage(address, true), address, value);
         }
         else if (inTextSegment(address))
         {
@@ -666,14 +1051,12 @@ public class Memory extends Observable
         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress)
         {
             // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
-            oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
+            oldValue = storeWordInPage(findPage(address, true), address, value);
         }
         else if (inKernelDataSegment(address))
         {
             // in data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(kernelDataBlockTable, relative, value);
+            oldValue = storeWordInPage(findPage(address, true), address, value);
         }
         else if (inKernelTextSegment(address))
         {
@@ -688,10 +1071,18 @@ public class Memory extends Observable
             throw new AddressErrorException("store address out of range ",
                 Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        if (writeJournal != null)
+        {
+            journalWrite(address, WORD_LENGTH_BYTES);
+        }
+        if (deviceWriteListener != null)
+        {
+            reportDeviceWrite(address, WORD_LENGTH_BYTES, value, true);
+        }
         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
         if (Globals.getSettings().getBackSteppingEnabled())
         {
-            Globals.program.getBackStepper().addMemoryRestoreRawWord(address, oldValue);
+            Globals.getProgram().getBackStepper().addMemoryRestoreRawWord(address, oldValue);
         }
         return oldValue;
     }
@@ -716,9 +1107,13 @@ public class Memory extends Observable
                 "store address not aligned on word boundary ",
                 Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
-        return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreWord(address, set(address, value, WORD_LENGTH_BYTES))
+        int[] page = writablePage(address);
+        int oldValue = (page != null && !Globals.debug)
+            ? storeAlignedInPage(page, address, WORD_LENGTH_BYTES, value)
             : set(address, value, WORD_LENGTH_BYTES);
+        return (Globals.getSettings().getBackSteppingEnabled())
+            ? Globals.getProgram().getBackStepper().addMemoryRestoreWord(address, oldValue)
+            : oldValue;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////
@@ -738,9 +1133,13 @@ public class Memory extends Observable
             throw new AddressErrorException("store address not aligned on halfword boundary ",
                 Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
-        return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreHalf(address, set(address, value, 2))
+        int[] page = writablePage(address);
+        int oldValue = (page != null && !Globals.debug)
+            ? storeAlignedInPage(page, address, 2, value)
             : set(address, value, 2);
+        return (Globals.getSettings().getBackSteppingEnabled())
+            ? Globals.getProgram().getBackStepper().addMemoryRestoreHalf(address, oldValue)
+            : oldValue;
     }
 
 
@@ -756,9 +1155,13 @@ public class Memory extends Observable
 
     public int setByte(int address, int value) throws AddressErrorException
     {
-        return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreByte(address, set(address, value, 1))
+        int[] page = writablePage(address);
+        int oldValue = (page != null && !Globals.debug)
+            ? storeAlignedInPage(page, address, 1, value)
             : set(address, value, 1);
+        return (Globals.getSettings().getBackSteppingEnabled())
+            ? Globals.getProgram().getBackStepper().addMemoryRestoreByte(address, oldValue)
+            : oldValue;
     }
 
 
@@ -805,14 +1208,7 @@ public class Memory extends Observable
         {
             System.out.println("memory[" + address + "] set to " + statement.getBinaryStatement());
         }
-        if (inTextSegment(address))
-        {
-            storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
-        }
-        else
-        {
-            storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
-        }
+        storeProgramStatement(address, statement);
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -838,25 +1234,27 @@ public class Memory extends Observable
     private int get(int address, int length, boolean notify) throws AddressErrorException
     {
         int value = 0;
-        int relativeByteAddress;
-        if (inDataSegment(address))
+        int[] page = mappedPage(address);
+        if (page != null)
+        {
+            // page lies wholly in a data segment.  Will read one byte at a time, w/o regard to boundaries.
+            value = fetchBytesFromPage(page, address, length);
+        }
+        else if (inDataSegment(address))
         {
             // in data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
+            value = fetchBytesFromPage(findPage(address, false), address, length);
         }
         else if (address > stackLimitAddress && address <= stackBaseAddress)
         {
-            // in stack. Similar to data, except relative address computed "backward"
-            relativeByteAddress = stackBaseAddress - address;
-            value = fetchBytesFromTable(stackBlockTable, relativeByteAddress, length);
+            // in stack. Similar to data.
+            value = fetchBytesFromPage(findPage(address, false), address, length);
         }
 
         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress)
         {
             // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+            value = fetchBytesFromPage(findPage(address, false), address, length);
         }
         else if (inTextSegment(address))
         {
@@ -877,8 +1275,7 @@ public class Memory extends Observable
         else if (inKernelDataSegment(address))
         {
             // in kernel data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(kernelDataBlockTable, relativeByteAddress, length);
+            value = fetchBytesFromPage(findPage(address, false), address, length);
         }
         else if (inKernelTextSegment(address))
         {
@@ -895,6 +1292,10 @@ public class Memory extends Observable
         }
         if (notify)
         {
+            if (executionListeners != null)
+            {
+                reportLoad(address, length, value);
+            }
             notifyAnyObservers(AccessNotice.READ, address, length, value);
         }
         return value;
@@ -920,29 +1321,31 @@ public class Memory extends Observable
     public int getRawWord(int address) throws AddressErrorException
     {
         int value = 0;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0)
         {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        if (inDataSegment(address))
+        int[] page = mappedPage(address);
+        if (page != null)
+        {
+            // page lies wholly in a data segment
+            value = fetchWordFromPage(page, address);
+        }
+        else if (inDataSegment(address))
         {
             // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(dataBlockTable, relative);
+            value = fetchWordFromPage(findPage(address, false), address);
         }
         else if (address > stackLimitAddress && address <= stackBaseAddress)
         {
-            // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordFromTable(stackBlockTable, relative);
+            // in stack. Similar to data.
+            value = fetchWordFromPage(findPage(address, false), address);
         }
         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress)
         {
             // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2;
-            value = fetchWordFromTable(memoryMapBlockTable, relative);
+            value = fetchWordFromPage(findPage(address, false), address);
         }
         else if (inTextSegment(address))
         {
@@ -963,8 +1366,7 @@ public class Memory extends Observable
         else if (inKernelDataSegment(address))
         {
             // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(kernelDataBlockTable, relative);
+            value = fetchWordFromPage(findPage(address, false), address);
         }
         else if (inKernelTextSegment(address))
         {
@@ -989,8 +1391,8 @@ public class Memory extends Observable
      * word-aligned.
      * <p>
      * Returns null if reading from text segment and there is no instruction at the requested address. Returns null if
-     * reading from data segment and this is the first reference to the MARS 4K memory allocation block (i.e., an array
-     * to hold the memory has not been allocated).
+     * reading from data segment and this is the first reference to the MARS 4K memory page (i.e., an array to hold
+     * the memory has not been allocated).
      * <p>
      * This method was developed by Greg Giberling of UC Berkeley to support the memory dump feature that he implemented
      * in Fall 2007.
@@ -1005,7 +1407,6 @@ public class Memory extends Observable
     public Integer getRawWordOrNull(int address) throws AddressErrorException
     {
         Integer value = null;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0)
         {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
@@ -1014,14 +1415,12 @@ public class Memory extends Observable
         if (inDataSegment(address))
         {
             // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(dataBlockTable, relative);
+            value = fetchWordOrNullFromPage(findPage(address, false), address);
         }
         else if (address > stackLimitAddress && address <= stackBaseAddress)
         {
-            // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(stackBlockTable, relative);
+            // in stack. Similar to data.
+            value = fetchWordOrNullFromPage(findPage(address, false), address);
         }
         else if (inTextSegment(address) || inKernelTextSegment(address))
         {
@@ -1037,8 +1436,7 @@ public class Memory extends Observable
         else if (inKernelDataSegment(address))
         {
             // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
+            value = fetchWordOrNullFromPage(findPage(address, false), address);
         }
         else
         {
@@ -1053,7 +1451,7 @@ public class Memory extends Observable
     /**
      * Look for first "null" memory value in an address range.  For text segment (binary code), this represents a word
      * that does not contain an instruction.  Normally use this to find the end of the program.  For data segment, this
-     * represents the first block of simulated memory (block length currently 4K words) that has not been referenced by
+     * represents the first page of simulated memory (page length currently 4K bytes) that has not been referenced by
      * an assembled/executing program.
      *
      * @param baseAddress lowest MIPS address to be searched; the starting point
@@ -1089,7 +1487,10 @@ public class Memory extends Observable
             throw new AddressErrorException("fetch address not aligned on word boundary ",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        return get(address, WORD_LENGTH_BYTES, true);
+        int[] page = mappedPage(address);
+        return (page != null)
+            ? fetchAlignedFromPage(page, address, WORD_LENGTH_BYTES, true)
+            : get(address, WORD_LENGTH_BYTES, true);
     }
 
     /**
@@ -1107,7 +1508,10 @@ public class Memory extends Observable
             throw new AddressErrorException("fetch address not aligned on word boundary ",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        return get(address, WORD_LENGTH_BYTES, false);
+        int[] page = mappedPage(address);
+        return (page != null)
+            ? fetchAlignedFromPage(page, address, WORD_LENGTH_BYTES, false)
+            : get(address, WORD_LENGTH_BYTES, false);
     }
 
     /**
@@ -1124,7 +1528,10 @@ public class Memory extends Observable
             throw new AddressErrorException("fetch address not aligned on halfword boundary ",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        return get(address, 2);
+        int[] page = mappedPage(address);
+        return (page != null)
+            ? fetchAlignedFromPage(page, address, 2, true)
+            : get(address, 2, true);
     }
 
     /**
@@ -1135,7 +1542,10 @@ public class Memory extends Observable
      **/
     public int getByte(int address) throws AddressErrorException
     {
-        return get(address, 1);
+        int[] page = mappedPage(address);
+        return (page != null)
+            ? fetchAlignedFromPage(page, address, 1, true)
+            : get(address, 1, true);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -1158,13 +1568,9 @@ public class Memory extends Observable
                 "fetch address for text segment out of range ",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        if (inTextSegment(address))
+        if (inTextSegment(address) || inKernelTextSegment(address))
         {
-            return readProgramStatement(address, textBaseAddress, textBlockTable);
-        }
-        else if (inKernelTextSegment(address))
-        {
-            return readProgramStatement(address, kernelTextBaseAddress, kernelTextBlockTable);
+            return readProgramStatement(address);
         }
         else
         {
@@ -1172,6 +1578,18 @@ public class Memory extends Observable
         }
     }
 
+    /**
+     * Returns a count that changes every time a statement is stored into the user or kernel text segment, whether by
+     * the assembler or by a self-modifying program.  Clients that cache decoded instructions compare it against the
+     * value seen when they decoded.
+     *
+     * @return the text segment modification count
+     */
+    public int getTextSegmentModificationCount()
+    {
+        return textSegmentModificationCount;
+    }
+
     /**
      * Method to accept registration from observer for any memory address.  Overrides inherited method.  Note to
      * observers: this class delegates Observable operations so notices will come from the delegate, not the memory
@@ -1240,7 +1658,11 @@ public class Memory extends Observable
             throw new AddressErrorException("end address of range < start address of range ",
                 Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
         }
-        observables.add(new MemoryObservable(obs, startAddr, endAddr));
+        synchronized (this)
+        {
+            observables.add(new MemoryObservable(obs, startAddr, endAddr));
+            observerIndex = new ObserverIndex(observables);
+        }
     }
 
     /**
@@ -1256,22 +1678,29 @@ public class Memory extends Observable
      *
      * @param obs Observer to be removed
      */
-    public void deleteObserver(Observer obs)
+    public synchronized void deleteObserver(Observer obs)
     {
         Iterator it = observables.iterator();
         while (it.hasNext())
         {
-            ((MemoryObservable) it.next()).deleteObserver(obs);
+            MemoryObservable mo = (MemoryObservable) it.next();
+            mo.deleteObserver(obs);
+            if (mo.countObservers() == 0)
+            {
+                it.remove();
+            }
         }
+        observerIndex = observables.isEmpty() ? null : new ObserverIndex(observables);
     }
 
     /**
      * Remove all memory observers
      */
-    public void deleteObservers()
+    public synchronized void deleteObservers()
     {
         // just drop the collection
         observables = getNewMemoryObserversCollection();
+        observerIndex = null;
     }
 
     /**
@@ -1309,188 +1738,394 @@ public class Memory extends Observable
     // Method to notify any observers of memory operation that has just occurred.
     //
     // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
-    // is from command mode, Globals.program is null but still want ability to observe.
+    // is from command mode, Globals.getProgram() is null but still want ability to observe.
+    //
+    // Only the observables registered for the page of the address are visited.  A
+    // MemoryAccessListener is called with the access itself; the other observers all
+    // share one notice, made only if there is such an observer.
     private void notifyAnyObservers(int type, int address, int length, int value)
     {
-        if ((Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0)
+        ObserverIndex index = observerIndex;
+        if (index == null || !index.observesPage(address))
+        {
+            return;
+        }
+        if (Globals.getProgram() != null || Globals.getGui() == null)
         {
-            Iterator it = this.observables.iterator();
-            MemoryObservable mo;
-            while (it.hasNext())
+            boolean fromProgram = (deviceWriteListener != null || executionListeners != null)
+                && Thread.currentThread() == programThread;
+            if (fromProgram)
+            {
+                programObserverDepth++;
+            }
+            try
             {
-                mo = (MemoryObservable) it.next();
-                if (mo.match(address))
+                MemoryObservable[] candidates = index.observablesForPage(address);
+                MemoryAccessNotice notice = null;
+                for (MemoryObservable mo : candidates)
                 {
-                    mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
+                    if (mo.match(address))
+                    {
+                        if (mo.listener != null)
+                        {
+                            mo.listener.memoryAccessed(type, address, length, value);
+                            continue;
+                        }
+                        if (notice == null)
+                        {
+                            notice = new MemoryAccessNotice(type, address, length, value);
+                        }
+                        mo.notifyObserver(notice);
+                    }
+                }
+            }
+            finally
+            {
+                if (fromProgram)
+                {
+                    programObserverDepth--;
                 }
             }
         }
     }
 
-    private int storeBytesInTable(int[][] blockTable,
-                                  int relativeByteAddress, int length, int value)
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Returns the page holding the given address if it is allocated and lies wholly
+    // within one data segment, otherwise null.  When a page is returned, the caller
+    // need not check the address against any segment boundaries.
+    //
+    private int[] mappedPage(int address)
     {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
+        return pageDirectory[address >>> PAGE_TABLE_SHIFT][(address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1)];
     }
 
-    private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length)
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Like mappedPage(), but for a store: returns null if the page is shared with a
+    // MemoryImage, so that the store goes to findPage() and the page is copied.
+    //
+    private int[] writablePage(int address)
     {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
+        return writablePageDirectory[address >>> PAGE_TABLE_SHIFT][(address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1)];
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // Helper method to fetch 1, 2 or 4 byte value from table that represents MIPS
-    // memory.  Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
+    // Returns the page holding the given address, which the caller has already found to
+    // lie in the data segment, stack, memory mapped I/O or kernel data segment.  If
+    // allocate is true the page is for a store: it is allocated if need be, and copied
+    // first if it is shared with a MemoryImage.  Otherwise null is returned for a page
+    // that has not been allocated.  Pages that straddle a segment boundary are kept out
+    // of the page table so that mappedPage() never returns them.  Synchronized because
+    // it is the only place pages are allocated; the unsynchronized fast paths below only
+    // ever use pages that are already in the page table.
     //
+    private synchronized int[] findPage(int address, boolean allocate)
+    {
+        int[] page = allocate ? writablePage(address) : mappedPage(address);
+        if (page != null)
+        {
+            return page;
+        }
+        int pageNumber = address >>> PAGE_SHIFT;
+        if (!pageInOneDataSegment(address))
+        {
+            page = boundaryPages.get(pageNumber);
+            if (allocate && (page == null || sharedBoundaryPages.remove(pageNumber)))
+            {
+                page = (page == null) ? new int[PAGE_LENGTH_WORDS] : page.clone();
+                boundaryPages.put(pageNumber, page);
+            }
+            return page;
+        }
+        if (allocate)
+        {
+            // Either not allocated yet or shared with an image; the store needs a page of its own.
+            int[] shared = mappedPage(address);
+            page = (shared == null) ? new int[PAGE_LENGTH_WORDS] : shared.clone();
+            installPage(pageDirectory, address, page);
+            if (writablePageDirectory != pageDirectory)
+            {
+                installPage(writablePageDirectory, address, page);
+            }
+        }
+        return page;
+    }
+
+    private static void installPage(int[][][] directory, int address, int[] page)
+    {
+        int directoryIndex = address >>> PAGE_TABLE_SHIFT;
+        int[][] pageTable = directory[directoryIndex];
+        if (pageTable == NO_PAGES)
+        {
+            // First page in this part of the address space, so allocate its page table.
+            pageTable = new int[PAGE_TABLE_LENGTH][];
+            directory[directoryIndex] = pageTable;
+        }
+        pageTable[(address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1)] = page;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Determines whether every byte of the page holding the given address belongs to
+    // the same data segment (data, stack, memory mapped I/O or kernel data), and none
+    // of it to either text segment.  Depends on the current memory configuration,
+    // which only changes along with clear().
+    //
+    private static boolean pageInOneDataSegment(int address)
+    {
+        int first = address & -PAGE_LENGTH_BYTES;
+        int last = first + PAGE_LENGTH_BYTES - 1;
+        if ((first < textLimitAddress && last >= textBaseAddress)
+            || (first < kernelTextLimitAddress && last >= kernelTextBaseAddress))
+        {
+            return false;
+        }
+        return (inDataSegment(first) && inDataSegment(last))
+            || (first > stackLimitAddress && last <= stackBaseAddress)
+            || (first >= memoryMapBaseAddress && last < memoryMapLimitAddress)
+            || (inKernelDataSegment(first) && inKernelDataSegment(last));
+    }
+
+    private int storeBytesInPage(int[] page, int address, int length, int value)
+    {
+        return storeOrFetchBytesInPage(page, address, length, value, STORE);
+    }
+
+    private int fetchBytesFromPage(int[] page, int address, int length)
+    {
+        return storeOrFetchBytesInPage(page, address, length, 0, FETCH);
+    }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
     // The helper's helper.  Works for either storing or fetching, little or big endian.
     // When storing/fetching bytes, most of the work is calculating the correct array element(s)
     // and element byte(s).  This method performs either store or fetch, as directed by its
-    // client using STORE or FETCH in last arg.
+    // client using STORE or FETCH in last arg.  The page is the one holding the starting
+    // address; it may be null for FETCH if that page was never written.  An unaligned
+    // access may continue into the following page.
     // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
     //
-    private synchronized int storeOrFetchBytesInTable(int[][] blockTable,
-                                                      int relativeByteAddress, int length, int value, boolean op)
+    private synchronized int storeOrFetchBytesInPage(int[] page, int address, int length, int value, boolean op)
     {
-        int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
+        int offset, bytePositionInMemory, bytePositionInValue;
         int oldValue = 0; // for STORE, return old values of replaced bytes
         int loopStopper = 3 - length;
-        // IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
-        // Fix provided by Saul Spatz; comments that follow are his.
-        // If address in stack segment is 4k + m, with 0 < m < 4, then the
-        // relativeByteAddress we want is stackBaseAddress - 4k + m, but the
-        // address actually passed in is stackBaseAddress - (4k + m), so we
-        // need to add 2m.  Because of the change in sign, we get the
-        // expression 4-delta below in place of m.
-        if (blockTable == stackBlockTable)
-        {
-            int delta = relativeByteAddress % 4;
-            if (delta != 0)
-            {
-                relativeByteAddress += (4 - delta) << 1;
-            }
-        }
         for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--)
         {
-            bytePositionInMemory = relativeByteAddress % 4;
-            relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null)
+            if (bytePositionInValue < 3 && (address & (PAGE_LENGTH_BYTES - 1)) == 0)
             {
-                if (op == STORE)
-                {
-                    blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-                }
-                else
-                {
-                    return 0;
-                }
+                page = findPage(address, op == STORE);
+            }
+            if (page == null)
+            {
+                // first reference to an address in this page.  Assume initialized to 0.
+                address++;
+                continue;
             }
+            bytePositionInMemory = address & 3;
+            offset = (address >>> 2) & (PAGE_LENGTH_WORDS - 1); // Word within that page
             if (byteOrder == LITTLE_ENDIAN)
             {
                 bytePositionInMemory = 3 - bytePositionInMemory;
             }
             if (op == STORE)
             {
-                oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
+                oldValue = replaceByte(page[offset], bytePositionInMemory,
                     oldValue, bytePositionInValue);
-                blockTable[block][offset] = replaceByte(value, bytePositionInValue,
-                    blockTable[block][offset], bytePositionInMemory);
+                page[offset] = replaceByte(value, bytePositionInValue,
+                    page[offset], bytePositionInMemory);
             }
             else
             {// op == FETCH
-                value = replaceByte(blockTable[block][offset], bytePositionInMemory,
+                value = replaceByte(page[offset], bytePositionInMemory,
                     value, bytePositionInValue);
             }
-            relativeByteAddress++;
+            address++;
         }
         return (op == STORE) ? oldValue : value;
     }
 
-    private synchronized int storeWordInTable(int[][] blockTable, int relative, int value)
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Fast paths used by getWord(), setWord() and friends for an address aligned to the
+    // access length, in a page from the page table.  Such an access lies within one
+    // array element, so the bytes are selected with a shift and mask rather than the
+    // byte loop above.  Words are kept so that for LITTLE_ENDIAN the element holds the
+    // word value as is; for BIG_ENDIAN its bytes are reversed.
+    //
+    // These do not enter the Memory monitor.  The simulator only accesses memory while
+    // holding the lock of its MachineContext (Globals.memoryAndRegistersLock for the GUI),
+    // which is also what GUI readers synchronize on, and a single array element is read
+    // or written atomically in any case.
+    //
+    private int fetchAlignedFromPage(int[] page, int address, int length, boolean notify)
     {
-        int block, offset, oldValue;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null)
+        int word = page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+        if (byteOrder == BIG_ENDIAN)
+        {
+            word = reverseBytes(word);
+        }
+        int value = (length == WORD_LENGTH_BYTES)
+            ? word
+            : (word >>> ((address & 3) << 3)) & ((length == 2) ? 0xFFFF : 0xFF);
+        if (notify)
         {
-            // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            if (executionListeners != null)
+            {
+                reportLoad(address, length, value);
+            }
+            notifyAnyObservers(AccessNotice.READ, address, length, value);
         }
-        oldValue = blockTable[block][offset];
-        blockTable[block][offset] = value;
+        return value;
+    }
+
+    private int storeAlignedInPage(int[] page, int address, int length, int value)
+    {
+        int offset = (address >>> 2) & (PAGE_LENGTH_WORDS - 1);
+        int word = page[offset];
+        if (byteOrder == BIG_ENDIAN)
+        {
+            word = reverseBytes(word);
+        }
+        int oldValue;
+        if (length == WORD_LENGTH_BYTES)
+        {
+            oldValue = word;
+            word = value;
+        }
+        else
+        {
+            int shift = (address & 3) << 3;
+            int mask = ((length == 2) ? 0xFFFF : 0xFF) << shift;
+            oldValue = (word & mask) >>> shift;
+            word = (word & ~mask) | ((value << shift) & mask);
+        }
+        page[offset] = (byteOrder == BIG_ENDIAN) ? reverseBytes(word) : word;
+        if (writeJournal != null)
+        {
+            journalWrite(address, length);
+        }
+        if (deviceWriteListener != null)
+        {
+            reportDeviceWrite(address, length, value, false);
+        }
+        if (executionListeners != null)
+        {
+            reportStore(address, length, oldValue, value);
+        }
+        notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to store 4 byte value in table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes address is word aligned, no endian processing.
-    // Modified 29 Dec 2005 to return overwritten value.
+    // Pass a store on to the device write listener unless the program made it.
+    private void reportDeviceWrite(int address, int length, int value, boolean raw)
+    {
+        DeviceWriteListener listener = deviceWriteListener;
+        boolean inProgramThread = Thread.currentThread() == programThread;
+        if (listener != null && (!inProgramThread || programObserverDepth > 0))
+        {
+            listener.deviceWrite(address, length, value, raw, inProgramThread);
+        }
+    }
 
-    private synchronized int fetchWordFromTable(int[][] blockTable, int relative)
+    // Tell the execution listeners of a load made by the program itself.
+    private void reportLoad(int address, int length, int value)
     {
-        int value = 0;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null)
+        ExecutionListener[] listeners = executionListeners;
+        if (listeners != null && Thread.currentThread() == programThread && programObserverDepth == 0)
+        {
+            programObserverDepth++;
+            try
+            {
+                for (ExecutionListener listener : listeners)
+                {
+                    listener.onLoad(address, length, value);
+                }
+            }
+            finally
+            {
+                programObserverDepth--;
+            }
+        }
+    }
+
+    // Tell the execution listeners of a store made by the program itself.
+    private void reportStore(int address, int length, int oldValue, int value)
+    {
+        ExecutionListener[] listeners = executionListeners;
+        if (listeners != null && Thread.currentThread() == programThread && programObserverDepth == 0)
         {
-            // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
+            int newValue = (length == WORD_LENGTH_BYTES) ? value : value & ((length == 2) ? 0xFFFF : 0xFF);
+            programObserverDepth++;
+            try
+            {
+                for (ExecutionListener listener : listeners)
+                {
+                    listener.onStore(address, length, oldValue, newValue);
+                }
+            }
+            finally
+            {
+                programObserverDepth--;
+            }
         }
-        else
+    }
+
+    // Record the words holding the bytes from address to address + length - 1 in the write journal.
+    private synchronized void journalWrite(int address, int length)
+    {
+        if (writeJournal != null)
         {
-            value = blockTable[block][offset];
+            writeJournal.add(address & -WORD_LENGTH_BYTES);
+            writeJournal.add((address + length - 1) & -WORD_LENGTH_BYTES);
         }
-        return value;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
+    // Helper method to store 4 byte value in the page holding a word aligned address.
+    // No endian processing.  Returns the overwritten value.
     //
+    private int storeWordInPage(int[] page, int address, int value)
+    {
+        int offset = (address >>> 2) & (PAGE_LENGTH_WORDS - 1);
+        int oldValue = page[offset];
+        page[offset] = value;
+        return oldValue;
+    }
 
-    private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative)
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Helper method to fetch 4 byte value from the page holding a word aligned address.
+    // No endian processing.  A page that was never allocated reads as 0.
+    //
+    private int fetchWordFromPage(int[] page, int address)
     {
-        int value = 0;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null)
-        {
-            // first reference to an address in this block.  Assume initialized to 0.
-            return null;
-        }
-        else
+        if (page == null)
         {
-            value = blockTable[block][offset];
+            // first reference to an address in this page.  Assume initialized to 0.
+            return 0;
         }
-        return value;
+        return page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
-    //
-    // This differs from "fetchWordFromTable()" in that it returns an Integer and
-    // returns null instead of 0 if the 4K table has not been allocated.  Developed
+    // This differs from "fetchWordFromPage()" in that it returns an Integer and
+    // returns null instead of 0 if the page has not been allocated.  Developed
     // by Greg Gibeling of UC Berkeley, fall 2007.
     //
+    private Integer fetchWordOrNullFromPage(int[] page, int address)
+    {
+        if (page == null)
+        {
+            return null;
+        }
+        return page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+    }
 
     ////////////////////////////////////////////////////////////////////////////////////
     // Returns result of substituting specified byte of source value into specified byte
@@ -1521,47 +2156,128 @@ public class Memory extends Observable
 
     ///////////////////////////////////////////////////////////////////////
     // Store a program statement at the given address.  Address has already been verified
-    // as valid.  It may be either in user or kernel text segment, as specified by arguments.
-    private void storeProgramStatement(int address, ProgramStatement statement,
-                                       int baseAddress, ProgramStatement[][] blockTable)
+    // as valid.  It may be either in user or kernel text segment.
+    private void storeProgramStatement(int address, ProgramStatement statement)
     {
-        int relative = (address - baseAddress) >> 2; // convert byte address to words
-        int block = relative / BLOCK_LENGTH_WORDS;
-        int offset = relative % BLOCK_LENGTH_WORDS;
-        if (block < TEXT_BLOCK_TABLE_LENGTH)
+        int directoryIndex = address >>> PAGE_TABLE_SHIFT;
+        ProgramStatement[][] pageTable = statementDirectory[directoryIndex];
+        if (pageTable == NO_STATEMENT_PAGES)
         {
-            if (blockTable[block] == null)
-            {
-                // No instructions are stored in this block, so allocate the block.
-                blockTable[block] = new ProgramStatement[BLOCK_LENGTH_WORDS];
-            }
-            blockTable[block][offset] = statement;
+            pageTable = new ProgramStatement[PAGE_TABLE_LENGTH][];
+            statementDirectory[directoryIndex] = pageTable;
+        }
+        int pageIndex = (address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1);
+        if (pageTable[pageIndex] == null)
+        {
+            // No instructions are stored in this page, so allocate the page.
+            pageTable[pageIndex] = new ProgramStatement[PAGE_LENGTH_WORDS];
         }
+        else if (sharedStatementPages.remove(address >>> PAGE_SHIFT))
+        {
+            // Shared with a MemoryImage, so copy it first.
+            pageTable[pageIndex] = pageTable[pageIndex].clone();
+        }
+        pageTable[pageIndex][(address >>> 2) & (PAGE_LENGTH_WORDS - 1)] = statement;
+        textSegmentModificationCount++;
     }
 
     ///////////////////////////////////////////////////////////////////////
     // Read a program statement from the given address.  Address has already been verified
-    // as valid.  It may be either in user or kernel text segment, as specified by arguments.
+    // as valid.  It may be either in user or kernel text segment.
     // Returns associated ProgramStatement or null if none.
-    // Last parameter controls whether or not observers will be notified.
-    private ProgramStatement readProgramStatement(int address, int baseAddress, ProgramStatement[][] blockTable)
+    private ProgramStatement readProgramStatement(int address)
+    {
+        ProgramStatement[] page =
+            statementDirectory[address >>> PAGE_TABLE_SHIFT][(address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1)];
+        return (page == null) ? null : page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Index from page to the observables whose address range includes any of that
+    // page.  Never modified once built; Memory replaces the whole index when the
+    // observables change, so the simulator can use it without locking.
+    //
+    // A directory entry (4MB of address space) whose pages all have the same
+    // observables gets one shared array of them.  Only an entry where ranges begin
+    // or end gets a table with an array per page.  Arrays list the observables in
+    // the order they were added, which is the order observers are notified.
+    private static final class ObserverIndex
     {
-        int relative = (address - baseAddress) >> 2; // convert byte address to words
-        int block = relative / TEXT_BLOCK_LENGTH_WORDS;
-        int offset = relative % TEXT_BLOCK_LENGTH_WORDS;
-        if (block < TEXT_BLOCK_TABLE_LENGTH)
+        private static final MemoryObservable[] NONE = new MemoryObservable[0];
+
+        // One bit per page, set if any observable includes that page.
+        private final long[] observedPages = new long[(PAGE_DIRECTORY_LENGTH * PAGE_TABLE_LENGTH) >>> 6];
+
+        private final MemoryObservable[][] byDirectory = new MemoryObservable[PAGE_DIRECTORY_LENGTH][];
+
+        private final MemoryObservable[][][] byPage = new MemoryObservable[PAGE_DIRECTORY_LENGTH][][];
+
+        ObserverIndex(Collection observables)
         {
-            if (blockTable[block] == null || blockTable[block][offset] == null)
+            MemoryObservable[] all = (MemoryObservable[]) observables.toArray(new MemoryObservable[0]);
+            // First find the directory entries that are only partly covered by some range.
+            for (MemoryObservable mo : all)
             {
-                // No instructions are stored in this block or offset.
-                return null;
+                int firstPage = mo.lowAddress >>> PAGE_SHIFT;
+                int lastPage = (mo.highAddress + WORD_LENGTH_BYTES - 1) >>> PAGE_SHIFT;
+                if ((firstPage & (PAGE_TABLE_LENGTH - 1)) != 0)
+                {
+                    byPage[firstPage >>> 10] = new MemoryObservable[PAGE_TABLE_LENGTH][];
+                }
+                if ((lastPage & (PAGE_TABLE_LENGTH - 1)) != PAGE_TABLE_LENGTH - 1)
+                {
+                    byPage[lastPage >>> 10] = new MemoryObservable[PAGE_TABLE_LENGTH][];
+                }
             }
-            else
+            for (MemoryObservable mo : all)
+            {
+                int firstPage = mo.lowAddress >>> PAGE_SHIFT;
+                int lastPage = (mo.highAddress + WORD_LENGTH_BYTES - 1) >>> PAGE_SHIFT;
+                for (int page = firstPage; page <= lastPage; page++)
+                {
+                    int directoryIndex = page >>> 10;
+                    MemoryObservable[][] pages = byPage[directoryIndex];
+                    if (pages == null)
+                    {
+                        // whole directory entry covered by this range
+                        byDirectory[directoryIndex] = append(byDirectory[directoryIndex], mo);
+                        Arrays.fill(observedPages, page >>> 6, (page + PAGE_TABLE_LENGTH) >>> 6, -1L);
+                        page += PAGE_TABLE_LENGTH - 1;
+                    }
+                    else
+                    {
+                        pages[page & (PAGE_TABLE_LENGTH - 1)] = append(pages[page & (PAGE_TABLE_LENGTH - 1)], mo);
+                        observedPages[page >>> 6] |= 1L << page;
+                    }
+                }
+            }
+        }
+
+        private static MemoryObservable[] append(MemoryObservable[] list, MemoryObservable mo)
+        {
+            if (list == null)
             {
-                return blockTable[block][offset];
+                return new MemoryObservable[]{mo};
             }
+            MemoryObservable[] longer = Arrays.copyOf(list, list.length + 1);
+            longer[list.length] = mo;
+            return longer;
+        }
+
+        boolean observesPage(int address)
+        {
+            int page = address >>> PAGE_SHIFT;
+            return (observedPages[page >>> 6] & (1L << page)) != 0;
+        }
+
+        MemoryObservable[] observablesForPage(int address)
+        {
+            MemoryObservable[][] pages = byPage[address >>> PAGE_TABLE_SHIFT];
+            MemoryObservable[] list = (pages == null)
+                ? byDirectory[address >>> PAGE_TABLE_SHIFT]
+                : pages[(address >>> PAGE_SHIFT) & (PAGE_TABLE_LENGTH - 1)];
+            return (list == null) ? NONE : list;
         }
-        return null;
     }
 
     /////////////////////////////////////////////////////////////////////////
@@ -1573,10 +2289,14 @@ public class Memory extends Observable
 
         private final int highAddress;
 
+        // The observer if it takes accesses without a notice, otherwise null.
+        private final MemoryAccessListener listener;
+
         public MemoryObservable(Observer obs, int startAddr, int endAddr)
         {
             lowAddress = startAddr;
             highAddress = endAddr;
+            listener = (obs instanceof MemoryAccessListener) ? (MemoryAccessListener) obs : null;
             this.addObserver(obs);
         }
 
@@ -0,0 +1,21 @@
+package mars.mips.hardware;
+
+import java.util.Observer;
+
+/**
+ * A Memory observer that is told of accesses through memoryAccessed() rather than being sent a MemoryAccessNotice, so
+ * no notice is made for each access.  Register it with <code>Memory.addObserver</code> like any other observer; its
+ * update() method is not called by Memory.
+ */
+public interface MemoryAccessListener extends Observer
+{
+    /**
+     * Called just after the access, in the thread that made it.
+     *
+     * @param type AccessNotice.READ or AccessNotice.WRITE
+     * @param address address accessed
+     * @param length number of bytes accessed, 1, 2 or 4
+     * @param value value read or written, in the low order bytes
+     */
+    void memoryAccessed(int type, int address, int length, int value);
+}
@@ -237,7 +237,7 @@ public class MemoryConfigurations
         if (config != currentConfiguration)
         {
             currentConfiguration = config;
-            Globals.memory.clear();
+            Globals.getMemory().clear();
             RegisterFile.getUserRegister("$gp").changeResetValue(config.getGlobalPointer());
             RegisterFile.getUserRegister("$sp").changeResetValue(config.getStackPointer());
             RegisterFile.getProgramCounterRegister().changeResetValue(config.getTextBaseAddress());
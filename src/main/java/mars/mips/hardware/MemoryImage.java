@@ -0,0 +1,45 @@
+package mars.mips.hardware;
+
+import mars.ProgramStatement;
+
+import java.util.HashMap;
+
+/**
+ * The contents of a Memory at one moment, taken by <code>Memory.captureImage()</code> and put back by
+ * <code>Memory.restoreImage()</code>.  The pages are shared with the Memory and with other images taken from it until
+ * the Memory next stores to them, so an image is cheap to take and to keep as long as little memory is written between
+ * images.  An image is never modified.
+ */
+public final class MemoryImage
+{
+    // Page tables for data, stack, memory mapped I/O and kernel data, indexed like Memory's page directory
+    final int[][][] pages;
+
+    // Pages that straddle a segment boundary, by page number
+    final HashMap<Integer, int[]> boundaryPages;
+
+    // Page tables for user and kernel text
+    final ProgramStatement[][][] statements;
+
+    final int heapAddress;
+
+    final int textSegmentModificationCount;
+
+    MemoryImage(int[][][] pages, HashMap<Integer, int[]> boundaryPages, ProgramStatement[][][] statements,
+                int heapAddress, int textSegmentModificationCount)
+    {
+        this.pages = pages;
+        this.boundaryPages = boundaryPages;
+        this.statements = statements;
+        this.heapAddress = heapAddress;
+        this.textSegmentModificationCount = textSegmentModificationCount;
+    }
+
+    /**
+     * @return the address the heap allocator would have returned next
+     */
+    public int getHeapAddress()
+    {
+        return heapAddress;
+    }
+}
@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import java.util.Observable;
+import java.util.Observer;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -45,14 +46,17 @@ public class Register extends Observable
 
     private int resetValue;
 
-    // volatile should be enough to allow safe multithreaded access
-    // w/o the use of synchronized methods.  getValue and setValue
-    // are the only methods here used by the register collection
-    // (RegisterFile, Coprocessor0, Coprocessor1) methods.
-    private volatile int value;
+    // The value is held in a RegisterBank shared with the other registers of its set, so that simulation code can
+    // reach it as a plain array element.  This object is a view onto that element.
+    private final RegisterBank bank;
+
+    private final int index;
+
+    // True while this register has at least one observer.
+    private volatile boolean observed;
 
     /**
-     * Creates a new register with specified name, number, and value.
+     * Creates a new register with specified name, number, and value, stored in a bank of its own.
      *
      * @param n The name of the register.
      * @param num The number of the register.
@@ -60,11 +64,30 @@ public class Register extends Observable
      */
 
     public Register(String n, int num, int val)
+    {
+        this(n, num, val, new RegisterBank(1), 0);
+    }
+
+    /**
+     * Creates a new register with specified name, number, and value, stored at the given position of a bank.
+     *
+     * @param n The name of the register.
+     * @param num The number of the register.
+     * @param val The inital (and reset) value of the register.
+     * @param bank The bank holding the register's value.
+     * @param index The position of the register in the bank.
+     */
+
+    public Register(String n, int num, int val, RegisterBank bank, int index)
     {
         name = n;
         number = num;
-        value = val;
         resetValue = val;
+        this.bank = bank;
+        this.index = index;
+        observed = false;
+        bank.getValues()[index] = val;
+        bank.attach(index, this);
     }
 
     /**
@@ -84,9 +107,13 @@ public class Register extends Observable
      * @return value The value of the Register.
      */
 
-    public synchronized int getValue()
+    public int getValue()
     {
-        return value;
+        if (observed)
+        {
+            notifyAnyObservers(AccessNotice.READ);
+        }
+        return bank.getValues()[index];
     }
 
 
@@ -119,10 +146,15 @@ public class Register extends Observable
      * @return previous value of register
      */
 
-    public synchronized int setValue(int val)
+    public int setValue(int val)
     {
-        int old = value;
-        value = val;
+        int[] values = bank.getValues();
+        int old = values[index];
+        values[index] = val;
+        if (observed)
+        {
+            notifyAnyObservers(AccessNotice.WRITE);
+        }
         return old;
     }
 
@@ -130,9 +162,9 @@ public class Register extends Observable
      * Resets the value of the register to the value it was constructed with. Observers are not notified.
      */
 
-    public synchronized void resetValue()
+    public void resetValue()
     {
-        value = resetValue;
+        bank.getValues()[index] = resetValue;
     }
 
     /**
@@ -143,4 +175,57 @@ public class Register extends Observable
     {
         resetValue = reset;
     }
+
+    /**
+     * @return The bank holding this register's value.
+     */
+
+    public RegisterBank getBank()
+    {
+        return bank;
+    }
+
+    /**
+     * @return The position of this register in its bank.
+     */
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public synchronized void addObserver(Observer o)
+    {
+        super.addObserver(o);
+        observersChanged();
+    }
+
+    public synchronized void deleteObserver(Observer o)
+    {
+        super.deleteObserver(o);
+        observersChanged();
+    }
+
+    public synchronized void deleteObservers()
+    {
+        super.deleteObservers();
+        observersChanged();
+    }
+
+    // Keep the observed flags of this register and its bank in step with the observer list.
+    private void observersChanged()
+    {
+        boolean nowObserved = countObservers() > 0;
+        if (nowObserved != observed)
+        {
+            observed = nowObserved;
+            bank.viewObservedChanged(nowObserved);
+        }
+    }
+
+    private void notifyAnyObservers(int type)
+    {
+        setChanged();
+        notifyObservers(new RegisterAccessNotice(type, name));
+    }
 }
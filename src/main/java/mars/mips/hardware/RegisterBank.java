@@ -0,0 +1,104 @@
+package mars.mips.hardware;
+
+/**
+ * The storage behind one set of registers (the register file, coprocessor 0 or coprocessor 1).  Register values live
+ * in a flat <code>int[]</code> that the simulation code reads and writes directly; the <code>Register</code> objects
+ * are views onto it, used by the GUI windows and tools, and are the only way to observe register accesses.
+ * <p>
+ * Observation is opt-in.  While no view has an observer, <code>get</code> and <code>set</code> are plain array
+ * accesses behind a single volatile check.  Once a window or tool attaches an observer to any view, accesses through
+ * the bank are routed through the views so that observers are notified as before.
+ */
+public final class RegisterBank
+{
+    private final int[] values;
+
+    private final Register[] views;
+
+    // Number of views in this bank that currently have at least one observer.
+    private int observedViews;
+
+    private volatile boolean observed;
+
+    /**
+     * Create a bank of registers, all zero.
+     *
+     * @param size number of registers in the bank
+     */
+    public RegisterBank(int size)
+    {
+        values = new int[size];
+        views = new Register[size];
+        observedViews = 0;
+        observed = false;
+    }
+
+    /**
+     * The register values, indexed by position in the bank.  Writes made directly to this array are not seen by
+     * observers; use <code>set</code> unless <code>isObserved()</code> is known to be false.
+     *
+     * @return the backing array of this bank
+     */
+    public int[] getValues()
+    {
+        return values;
+    }
+
+    /**
+     * @return the number of registers in this bank
+     */
+    public int size()
+    {
+        return values.length;
+    }
+
+    /**
+     * @return true if any register in this bank has an observer
+     */
+    public boolean isObserved()
+    {
+        return observed;
+    }
+
+    /**
+     * Read a register, notifying its observers if it has any.
+     *
+     * @param index position of the register in the bank
+     * @return the register's value
+     */
+    public int get(int index)
+    {
+        return observed ? views[index].getValue() : values[index];
+    }
+
+    /**
+     * Write a register, notifying its observers if it has any.
+     *
+     * @param index position of the register in the bank
+     * @param value the new value
+     * @return the previous value
+     */
+    public int set(int index, int value)
+    {
+        if (observed)
+        {
+            return views[index].setValue(value);
+        }
+        int old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    // Called by the Register constructor.
+    void attach(int index, Register view)
+    {
+        views[index] = view;
+    }
+
+    // Called by a view when it gains its first observer or loses its last one.
+    synchronized void viewObservedChanged(boolean viewObserved)
+    {
+        observedViews += viewObserved ? 1 : -1;
+        observed = observedViews > 0;
+    }
+}
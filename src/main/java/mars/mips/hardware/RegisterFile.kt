@@ -1,6 +1,7 @@
 package mars.mips.hardware
 
 import mars.Globals
+import mars.MachineContext
 import mars.assembler.SymbolTable
 import mars.mips.instructions.Instruction
 import mars.util.Binary
@@ -44,43 +45,68 @@ object RegisterFile
     const val GLOBAL_POINTER_REGISTER = 28
     const val STACK_POINTER_REGISTER = 29
 
+    /**
+     * Number of registers in the register file: the 32 general purpose registers, pc, hi and lo.
+     */
+    const val REGISTER_COUNT = 35
+
     /**
      * For returning the set of registers.
      *
+     * @return The set of registers of the calling thread's MachineContext.
+     */
+    @JvmStatic
+    val registers: Array<Register>
+        get() = MachineContext.getCurrent().registers
+
+    /**
+     * The storage behind the registers of the calling thread's MachineContext.
+     */
+    @JvmStatic
+    val registerBank: RegisterBank
+        get() = MachineContext.getCurrent().registerBank
+
+    /**
+     * Create a new set of registers, in their initial state.  Used by MachineContext.
+     *
+     * @param bank The bank of [REGISTER_COUNT] values the registers are views onto.
      * @return The set of registers.
      */
     @JvmStatic
-    val registers = arrayOf(
-        Register("\$zero", 0, 0), Register("\$at", 1, 0),
-        Register("\$v0", 2, 0), Register("\$v1", 3, 0),
-        Register("\$a0", 4, 0), Register("\$a1", 5, 0),
-        Register("\$a2", 6, 0), Register("\$a3", 7, 0),
-        Register("\$t0", 8, 0), Register("\$t1", 9, 0),
-        Register("\$t2", 10, 0), Register("\$t3", 11, 0),
-        Register("\$t4", 12, 0), Register("\$t5", 13, 0),
-        Register("\$t6", 14, 0), Register("\$t7", 15, 0),
-        Register("\$s0", 16, 0), Register("\$s1", 17, 0),
-        Register("\$s2", 18, 0), Register("\$s3", 19, 0),
-        Register("\$s4", 20, 0), Register("\$s5", 21, 0),
-        Register("\$s6", 22, 0), Register("\$s7", 23, 0),
-        Register("\$t8", 24, 0), Register("\$t9", 25, 0),
-        Register("\$k0", 26, 0), Register("\$k1", 27, 0),
-        Register("\$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer),
-        Register("\$sp", STACK_POINTER_REGISTER, Memory.stackPointer),
-        Register("\$fp", 30, 0), Register("\$ra", 31, 0),  // Internal registers
-        Register("pc", 32, Memory.textBaseAddress),
-        Register("hi", 33, 0),
-        Register("lo", 34, 0)
+    fun createRegisters(bank: RegisterBank) = arrayOf(
+        Register("\$zero", 0, 0, bank, 0), Register("\$at", 1, 0, bank, 1),
+        Register("\$v0", 2, 0, bank, 2), Register("\$v1", 3, 0, bank, 3),
+        Register("\$a0", 4, 0, bank, 4), Register("\$a1", 5, 0, bank, 5),
+        Register("\$a2", 6, 0, bank, 6), Register("\$a3", 7, 0, bank, 7),
+        Register("\$t0", 8, 0, bank, 8), Register("\$t1", 9, 0, bank, 9),
+        Register("\$t2", 10, 0, bank, 10), Register("\$t3", 11, 0, bank, 11),
+        Register("\$t4", 12, 0, bank, 12), Register("\$t5", 13, 0, bank, 13),
+        Register("\$t6", 14, 0, bank, 14), Register("\$t7", 15, 0, bank, 15),
+        Register("\$s0", 16, 0, bank, 16), Register("\$s1", 17, 0, bank, 17),
+        Register("\$s2", 18, 0, bank, 18), Register("\$s3", 19, 0, bank, 19),
+        Register("\$s4", 20, 0, bank, 20), Register("\$s5", 21, 0, bank, 21),
+        Register("\$s6", 22, 0, bank, 22), Register("\$s7", 23, 0, bank, 23),
+        Register("\$t8", 24, 0, bank, 24), Register("\$t9", 25, 0, bank, 25),
+        Register("\$k0", 26, 0, bank, 26), Register("\$k1", 27, 0, bank, 27),
+        Register("\$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer, bank, GLOBAL_POINTER_REGISTER),
+        Register("\$sp", STACK_POINTER_REGISTER, Memory.stackPointer, bank, STACK_POINTER_REGISTER),
+        Register("\$fp", 30, 0, bank, 30), Register("\$ra", 31, 0, bank, 31),  // Internal registers
+        Register("pc", 32, Memory.textBaseAddress, bank, 32),
+        Register("hi", 33, 0, bank, 33),
+        Register("lo", 34, 0, bank, 34)
     )
 
-    val registerNameIndex = registers.associateBy { it.name }
+    private val registerNumbers = createRegisters(RegisterBank(REGISTER_COUNT)).associate { it.name to it.number }
 
     @JvmStatic
-    val programCounterRegister = registers[32]
-    @JvmStatic
-    private val HI = registers[33]
-    @JvmStatic
-    private val LO = registers[34]
+    val programCounterRegister: Register
+        get() = registers[32]
+
+    private val HI: Register
+        get() = registers[33]
+
+    private val LO: Register
+        get() = registers[34]
 
     val backstep by lazy { Globals.getSettings().backSteppingEnabled }
 
@@ -104,18 +130,23 @@ object RegisterFile
      *
      * @param num Register to set the value of.
      * @param value The desired value for the register.
+     * @return old value in register prior to update
      */
     @JvmStatic
     fun updateRegister(num: Int, value: Int): Int
     {
-        val old = 0
+        var old = 0
         if (num == 0)
         {
             println("You can not change the value of the zero register.")
         }
         else
         {
-            registers[num].value = value
+            old = registerBank.set(num, value)
+            if (Globals.getSettings().backSteppingEnabled)
+            {
+                Globals.getProgram().backStepper.addRegisterFileRestore(num, old)
+            }
         }
         return old
     }
@@ -129,8 +160,8 @@ object RegisterFile
     @JvmStatic
     fun updateRegister(reg: String, value: Int)
     {
-        registerNameIndex[reg]?.let {
-            updateRegister(it.number, value)
+        registerNumbers[reg]?.let {
+            updateRegister(it, value)
         }
     }
 
@@ -141,7 +172,7 @@ object RegisterFile
      * @return The value of the given register.
      */
     @JvmStatic
-    fun getValue(num: Int) = registers[num].value
+    fun getValue(num: Int) = registerBank.get(num)
 
     /**
      * For getting the number representation of the register.
@@ -150,7 +181,7 @@ object RegisterFile
      * @return The number of the register represented by the string or -1 if no match.
      */
     @JvmStatic
-    fun getNumber(n: String) = registerNameIndex[n]?.number ?: -1
+    fun getNumber(n: String) = registerNumbers[n] ?: -1
 
     /**
      * Get register object corresponding to given name.  If no match, return null.
@@ -211,7 +242,7 @@ object RegisterFile
      */
     fun initializeProgramCounter(startAtMain: Boolean)
     {
-        val mainAddr = Globals.symbolTable.getAddress(SymbolTable.getStartLabel())
+        val mainAddr = Globals.getSymbolTable().getAddress(SymbolTable.getStartLabel())
         if (startAtMain && mainAddr != SymbolTable.NOT_FOUND && (Memory.inTextSegment(mainAddr) || Memory.inKernelTextSegment(
                 mainAddr
             ))
@@ -234,11 +265,10 @@ object RegisterFile
     @JvmStatic
     fun setProgramCounter(value: Int): Int
     {
-        val old = programCounterRegister.value
-        programCounterRegister.value = value
+        val old = registerBank.set(32, value)
         if (Globals.getSettings().backSteppingEnabled)
         {
-            Globals.program.backStepper.addPCRestore(old)
+            Globals.getProgram().backStepper.addPCRestore(old)
         }
         return old
     }
@@ -250,7 +280,7 @@ object RegisterFile
      */
     @JvmStatic
     val pc: Int
-        get() = programCounterRegister.value
+        get() = registerBank.get(32)
 
     /**
      * For returning the program counter's initial (reset) value.
@@ -285,7 +315,8 @@ object RegisterFile
     @JvmStatic
     fun incrementPC()
     {
-        programCounterRegister.value += Instruction.INSTRUCTION_LENGTH
+        val bank = registerBank
+        bank.set(32, bank.get(32) + Instruction.INSTRUCTION_LENGTH)
     }
 
     /**
@@ -1,12 +1,15 @@
 package mars.mips.instructions;
 
 import mars.Globals;
+import mars.MachineContext;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.*;
 import mars.mips.instructions.syscalls.Syscall;
+import mars.mips.instructions.syscalls.SyscallHandler;
 import mars.simulator.DelayedBranch;
 import mars.simulator.Exceptions;
+import mars.simulator.ExecutionListener;
 import mars.util.Binary;
 
 import java.io.BufferedReader;
@@ -58,7 +61,12 @@ public class InstructionSet
 {
     private final ArrayList<Instruction> instructionList;
 
-    private ArrayList opcodeMatchMaps;
+    private DecodeTable decodeTable;
+
+    // Instructions by lower case mnemonic, and by lower case mnemonic prefix; both built by populate()
+    private HashMap<String, ArrayList<Instruction>> operatorMap;
+
+    private OperatorTrie operatorTrie;
 
     private SyscallLoader syscallLoader;
 
@@ -673,7 +681,7 @@ public class InstructionSet
                         try
                         {
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getWord(
+                                Globals.getMemory().getWord(
                                     RegisterFile.getValue(operands[2]) + operands[1]));
                         }
                         catch (AddressErrorException e)
@@ -703,7 +711,7 @@ public class InstructionSet
                         try
                         {
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getWord(
+                                Globals.getMemory().getWord(
                                     RegisterFile.getValue(operands[2]) + operands[1]));
                         }
                         catch (AddressErrorException e)
@@ -728,7 +736,7 @@ public class InstructionSet
                             int result = RegisterFile.getValue(operands[0]);
                             for (int i = 0; i <= address % Memory.WORD_LENGTH_BYTES; i++)
                             {
-                                result = Binary.setByte(result, 3 - i, Globals.memory.getByte(address - i));
+                                result = Binary.setByte(result, 3 - i, Globals.getMemory().getByte(address - i));
                             }
                             RegisterFile.updateRegister(operands[0], result);
                         }
@@ -754,7 +762,7 @@ public class InstructionSet
                             int result = RegisterFile.getValue(operands[0]);
                             for (int i = 0; i <= 3 - (address % Memory.WORD_LENGTH_BYTES); i++)
                             {
-                                result = Binary.setByte(result, i, Globals.memory.getByte(address + i));
+                                result = Binary.setByte(result, i, Globals.getMemory().getByte(address + i));
                             }
                             RegisterFile.updateRegister(operands[0], result);
                         }
@@ -776,7 +784,7 @@ public class InstructionSet
                         int[] operands = statement.getOperands();
                         try
                         {
-                            Globals.memory.setWord(
+                            Globals.getMemory().setWord(
                                 RegisterFile.getValue(operands[2]) + operands[1],
                                 RegisterFile.getValue(operands[0]));
                         }
@@ -800,7 +808,7 @@ public class InstructionSet
                         int[] operands = statement.getOperands();
                         try
                         {
-                            Globals.memory.setWord(
+                            Globals.getMemory().setWord(
                                 RegisterFile.getValue(operands[2]) + operands[1],
                                 RegisterFile.getValue(operands[0]));
                         }
@@ -827,7 +835,7 @@ public class InstructionSet
                             int source = RegisterFile.getValue(operands[0]);
                             for (int i = 0; i <= address % Memory.WORD_LENGTH_BYTES; i++)
                             {
-                                Globals.memory.setByte(address - i, Binary.getByte(source, 3 - i));
+                                Globals.getMemory().setByte(address - i, Binary.getByte(source, 3 - i));
                             }
                         }
                         catch (AddressErrorException e)
@@ -852,7 +860,7 @@ public class InstructionSet
                             int source = RegisterFile.getValue(operands[0]);
                             for (int i = 0; i <= 3 - (address % Memory.WORD_LENGTH_BYTES); i++)
                             {
-                                Globals.memory.setByte(address + i, Binary.getByte(source, i));
+                                Globals.getMemory().setByte(address + i, Binary.getByte(source, i));
                             }
                         }
                         catch (AddressErrorException e)
@@ -1313,7 +1321,7 @@ public class InstructionSet
                         try
                         {
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getByte(
+                                Globals.getMemory().getByte(
                                     RegisterFile.getValue(operands[2])
                                         + (operands[1] << 16 >> 16))
                                     << 24
@@ -1338,7 +1346,7 @@ public class InstructionSet
                         try
                         {
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getHalf(
+                                Globals.getMemory().getHalf(
                                     RegisterFile.getValue(operands[2])
                                         + (operands[1] << 16 >> 16))
                                     << 16
@@ -1364,7 +1372,7 @@ public class InstructionSet
                         {
                             // offset is sign-extended and loaded halfword value is zero-extended
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getHalf(
+                                Globals.getMemory().getHalf(
                                     RegisterFile.getValue(operands[2])
                                         + (operands[1] << 16 >> 16))
                                     & 0x0000ffff);
@@ -1388,7 +1396,7 @@ public class InstructionSet
                         try
                         {
                             RegisterFile.updateRegister(operands[0],
-                                Globals.memory.getByte(
+                                Globals.getMemory().getByte(
                                     RegisterFile.getValue(operands[2])
                                         + (operands[1] << 16 >> 16))
                                     & 0x000000ff);
@@ -1411,7 +1419,7 @@ public class InstructionSet
                         int[] operands = statement.getOperands();
                         try
                         {
-                            Globals.memory.setByte(
+                            Globals.getMemory().setByte(
                                 RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                 RegisterFile.getValue(operands[0])
@@ -1435,7 +1443,7 @@ public class InstructionSet
                         int[] operands = statement.getOperands();
                         try
                         {
-                            Globals.memory.setHalf(
+                            Globals.getMemory().setHalf(
                                 RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                 RegisterFile.getValue(operands[0])
@@ -2872,7 +2880,7 @@ public class InstructionSet
                         try
                         {
                             Coprocessor1.updateRegister(operands[0],
-                                Globals.memory.getWord(
+                                Globals.getMemory().getWord(
                                     RegisterFile.getValue(operands[2]) + operands[1]));
                         }
                         catch (AddressErrorException e)
@@ -2906,10 +2914,10 @@ public class InstructionSet
                         try
                         {
                             Coprocessor1.updateRegister(operands[0],
-                                Globals.memory.getWord(
+                                Globals.getMemory().getWord(
                                     RegisterFile.getValue(operands[2]) + operands[1]));
                             Coprocessor1.updateRegister(operands[0] + 1,
-                                Globals.memory.getWord(
+                                Globals.getMemory().getWord(
                                     RegisterFile.getValue(operands[2]) + operands[1] + 4));
                         }
                         catch (AddressErrorException e)
@@ -2930,7 +2938,7 @@ public class InstructionSet
                         int[] operands = statement.getOperands();
                         try
                         {
-                            Globals.memory.setWord(
+                            Globals.getMemory().setWord(
                                 RegisterFile.getValue(operands[2]) + operands[1],
                                 Coprocessor1.getValue(operands[0]));
                         }
@@ -2963,10 +2971,10 @@ public class InstructionSet
                         }
                         try
                         {
-                            Globals.memory.setWord(
+                            Globals.getMemory().setWord(
                                 RegisterFile.getValue(operands[2]) + operands[1],
                                 Coprocessor1.getValue(operands[0]));
-                            Globals.memory.setWord(
+                            Globals.getMemory().setWord(
                                 RegisterFile.getValue(operands[2]) + operands[1] + 4,
                                 Coprocessor1.getValue(operands[0] + 1));
                         }
@@ -3211,6 +3219,15 @@ public class InstructionSet
                     }
                 }));
 
+        // Index the basic instructions by mnemonic, then each pseudo-instruction as it is added: their templates
+        // are checked against the instructions before them.
+        operatorMap = new HashMap<String, ArrayList<Instruction>>();
+        operatorTrie = new OperatorTrie();
+        for (Instruction inst : instructionList)
+        {
+            addToOperatorIndex(inst);
+        }
+
         ////////////// READ PSEUDO-INSTRUCTION SPECS FROM DATA FILE AND ADD //////////////////////
         addPseudoInstructions();
 
@@ -3247,22 +3264,25 @@ public class InstructionSet
             }
         }
         Collections.sort(matchMaps);
-        this.opcodeMatchMaps = matchMaps;
+        ArrayList<BasicInstruction> basics = new ArrayList<BasicInstruction>();
+        for (int i = 0; i < matchMaps.size(); i++)
+        {
+            basics.addAll(((MatchMap) matchMaps.get(i)).matchMap.values());
+        }
+        this.decodeTable = new DecodeTable(basics, 0);
     }
 
+    /**
+     * Given a binary instruction, will return the basic instruction it encodes: the one with the most specific opcode
+     * mask, if several match.  Looks it up in a decode table built by populate(), indexed by the primary opcode and
+     * then by fields such as funct, rt or fmt.
+     *
+     * @param binaryInstr the binary instruction
+     * @return the matching BasicInstruction, or null if none matches.
+     */
     public BasicInstruction findByBinaryCode(int binaryInstr)
     {
-        ArrayList matchMaps = this.opcodeMatchMaps;
-        for (int i = 0; i < matchMaps.size(); i++)
-        {
-            MatchMap map = (MatchMap) matchMaps.get(i);
-            BasicInstruction ret = map.find(binaryInstr);
-            if (ret != null)
-            {
-                return ret;
-            }
-        }
-        return null;
+        return decodeTable.find(binaryInstr);
     }
 
     /*  METHOD TO ADD PSEUDO-INSTRUCTIONS
@@ -3326,6 +3346,7 @@ public class InstructionSet
                         ? new ExtendedInstruction(pseudoOp, template, description)
                         : new ExtendedInstruction(pseudoOp, firstTemplate, template, description);
                     instructionList.add(inst);
+                    addToOperatorIndex(inst);
                     //if (firstTemplate != null) System.out.println("\npseudoOp: "+pseudoOp+"\ndefault template:\n"+firstTemplate+"\ncompact template:\n"+template);
                 }
             }
@@ -3346,59 +3367,40 @@ public class InstructionSet
 
     }
 
+    // Adds an instruction to the mnemonic index and prefix trie used by matchOperator() and prefixMatchOperator()
+    private void addToOperatorIndex(Instruction inst)
+    {
+        String name = inst.getName().toLowerCase();
+        operatorMap.computeIfAbsent(name, k -> new ArrayList<Instruction>()).add(inst);
+        operatorTrie.add(name, inst);
+    }
+
     /**
-     * Given an operator mnemonic, will return the corresponding Instruction object(s) from the instruction set.  Uses
-     * straight linear search technique.
+     * Given an operator mnemonic, will return the corresponding Instruction object(s) from the instruction set.
+     * Case-insensitive.  Looks the mnemonic up in a hash index built by populate().
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList matchOperator(String name)
     {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        for (int i = 0; i < instructionList.size(); i++)
-        {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name))
-            {
-                if (matchingInstructions == null)
-                {
-                    matchingInstructions = new ArrayList();
-                }
-                matchingInstructions.add(instructionList.get(i));
-            }
-        }
-        return matchingInstructions;
+        ArrayList<Instruction> matchingInstructions = (name == null) ? null : operatorMap.get(name.toLowerCase());
+        return (matchingInstructions == null) ? null : new ArrayList(matchingInstructions);
     }
 
 
     /**
      * Given a string, will return the Instruction object(s) from the instruction set whose operator mnemonic prefix
-     * matches it.  Case-insensitive.  For example "s" will match "sw", "sh", "sb", etc.  Uses straight linear search
-     * technique.
+     * matches it.  Case-insensitive.  For example "s" will match "sw", "sh", "sb", etc.  Walks a prefix trie of the
+     * mnemonics built by populate().
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList prefixMatchOperator(String name)
     {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        if (name != null)
-        {
-            for (int i = 0; i < instructionList.size(); i++)
-            {
-                if (((Instruction) instructionList.get(i)).getName().toLowerCase().startsWith(name.toLowerCase()))
-                {
-                    if (matchingInstructions == null)
-                    {
-                        matchingInstructions = new ArrayList();
-                    }
-                    matchingInstructions.add(instructionList.get(i));
-                }
-            }
-        }
-        return matchingInstructions;
+        ArrayList<Instruction> matchingInstructions = (name == null) ? null : operatorTrie.find(name.toLowerCase());
+        return (matchingInstructions == null) ? null : new ArrayList(matchingInstructions);
     }
 
     /*
@@ -3410,10 +3412,27 @@ public class InstructionSet
     private void findAndSimulateSyscall(int number, ProgramStatement statement)
         throws ProcessingException
     {
+        MachineContext context = MachineContext.getCurrent();
+        ExecutionListener[] listeners = context.getExecutionListeners();
+        if (listeners != null)
+        {
+            for (ExecutionListener listener : listeners)
+            {
+                listener.onSyscall(number);
+            }
+        }
         Syscall service = syscallLoader.findSyscall(number);
         if (service != null)
         {
-            service.simulate(statement);
+            SyscallHandler handler = context.getSyscallHandler();
+            if (handler == null)
+            {
+                service.simulate(statement);
+            }
+            else
+            {
+                handler.simulate(service, statement);
+            }
             return;
         }
         throw new ProcessingException(statement,
@@ -3532,11 +3551,141 @@ public class InstructionSet
             }
             return d;
         }
+    }
+
+    /*
+     * Decode table for findByBinaryCode().  A table selects its child by one field of the instruction, chosen when it
+     * is built as the field that best splits its instructions: the primary opcode at the top, then fields such as
+     * funct, rt or fmt.  A leaf keeps the few instructions left, most specific mask first, and checks them in turn.
+     */
+    private static class DecodeTable
+    {
+        // Fields a table can be indexed by, as {shift, width}: opcode, funct, rs/fmt, rt, rd, shamt
+        private static final int[][] FIELDS = {{26, 6}, {0, 6}, {21, 5}, {16, 5}, {11, 5}, {6, 5}};
+
+        private int shift;
+
+        private int fieldMask;
+
+        private DecodeTable[] children;
+
+        private BasicInstruction[] instructions;
+
+        private int[] masks;
+
+        private int[] matches;
+
+        // Builds the table for the given instructions, in precedence order, by the fields not in usedFields (bit set)
+        public DecodeTable(ArrayList<BasicInstruction> candidates, int usedFields)
+        {
+            int best = -1;
+            int bestLargest = candidates.size();
+            int bestTotal = 0;
+            for (int f = 0; f < FIELDS.length && candidates.size() > 1; f++)
+            {
+                if ((usedFields & (1 << f)) != 0)
+                {
+                    continue;
+                }
+                int largest = 0;
+                int total = 0;
+                for (int value = 0; value < (1 << FIELDS[f][1]); value++)
+                {
+                    int size = select(candidates, f, value).size();
+                    largest = Math.max(largest, size);
+                    total += size;
+                }
+                if (largest < bestLargest || (largest == bestLargest && best >= 0 && total < bestTotal))
+                {
+                    best = f;
+                    bestLargest = largest;
+                    bestTotal = total;
+                }
+            }
+            if (best < 0)
+            {
+                instructions = candidates.toArray(new BasicInstruction[0]);
+                masks = new int[instructions.length];
+                matches = new int[instructions.length];
+                for (int i = 0; i < instructions.length; i++)
+                {
+                    masks[i] = instructions[i].getOpcodeMask();
+                    matches[i] = instructions[i].getOpcodeMatch();
+                }
+                return;
+            }
+            shift = FIELDS[best][0];
+            fieldMask = (1 << FIELDS[best][1]) - 1;
+            children = new DecodeTable[fieldMask + 1];
+            for (int value = 0; value <= fieldMask; value++)
+            {
+                children[value] = new DecodeTable(select(candidates, best, value), usedFields | (1 << best));
+            }
+        }
+
+        // The instructions that can match when field f of the instruction has the given value
+        private static ArrayList<BasicInstruction> select(ArrayList<BasicInstruction> candidates, int f, int value)
+        {
+            int field = ((1 << FIELDS[f][1]) - 1) << FIELDS[f][0];
+            ArrayList<BasicInstruction> selected = new ArrayList<BasicInstruction>();
+            for (BasicInstruction basic : candidates)
+            {
+                int mask = basic.getOpcodeMask() & field;
+                if (((value << FIELDS[f][0]) & mask) == (basic.getOpcodeMatch() & mask))
+                {
+                    selected.add(basic);
+                }
+            }
+            return selected;
+        }
 
         public BasicInstruction find(int instr)
         {
-            int match = Integer.valueOf(instr & mask);
-            return (BasicInstruction) matchMap.get(match);
+            DecodeTable table = this;
+            while (table.children != null)
+            {
+                table = table.children[(instr >>> table.shift) & table.fieldMask];
+            }
+            for (int i = 0; i < table.instructions.length; i++)
+            {
+                if ((instr & table.masks[i]) == table.matches[i])
+                {
+                    return table.instructions[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /*
+     * Prefix trie of lower case operator mnemonics.  Each node keeps the instructions whose mnemonic starts with the
+     * prefix leading to it, in instruction set order, so a prefix match is a walk down the trie.
+     */
+    private static class OperatorTrie
+    {
+        private final HashMap<Character, OperatorTrie> children = new HashMap<Character, OperatorTrie>();
+
+        private final ArrayList<Instruction> instructions = new ArrayList<Instruction>();
+
+        public void add(String name, Instruction inst)
+        {
+            OperatorTrie node = this;
+            node.instructions.add(inst);
+            for (int i = 0; i < name.length(); i++)
+            {
+                node = node.children.computeIfAbsent(name.charAt(i), k -> new OperatorTrie());
+                node.instructions.add(inst);
+            }
+        }
+
+        public ArrayList<Instruction> find(String prefix)
+        {
+            OperatorTrie node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++)
+            {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return (node == null || node.instructions.isEmpty()) ? null : node.instructions;
         }
     }
 }
@@ -1,5 +1,7 @@
 package mars.mips.instructions.syscalls;
 
+import mars.MachineContext;
+
 import java.util.HashMap;
 
 /*
@@ -32,15 +34,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /**
- * This small class serves only to hold a static HashMap for storing random number generators for use by all the random
- * number generator syscalls.
+ * This small class serves only to find the HashMap storing random number generators for use by all the random number
+ * generator syscalls.  Each MachineContext has its own.
  */
 
 public class RandomStreams
 {
     /**
-     * Collection of pseudorandom number streams available for use in Rand-type syscalls. The streams are by default not
-     * seeded.
+     * Collection of pseudorandom number streams available for use in Rand-type syscalls, in the calling thread's
+     * MachineContext. The streams are by default not seeded.
      */
-    static final HashMap randomStreams = new HashMap();
+    static HashMap randomStreams()
+    {
+        return MachineContext.getCurrent().getRandomStreams();
+    }
 }
@@ -1,6 +1,7 @@
 package mars.mips.instructions.syscalls;
 
 import mars.Globals;
+import mars.MachineContext;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
@@ -56,7 +57,7 @@ public class SyscallExit2 extends AbstractSyscall
     {
         if (Globals.getGui() == null)
         {
-            Globals.exitCode = RegisterFile.getValue(4);
+            MachineContext.getCurrent().setExitCode(RegisterFile.getValue(4));
         }
         throw new ProcessingException(); // empty error list
     }
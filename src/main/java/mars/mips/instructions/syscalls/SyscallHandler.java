@@ -0,0 +1,22 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+
+/**
+ * Stands between the SYSCALL instruction and the syscall services of one MachineContext (see
+ * <code>MachineContext.setSyscallHandler</code>), for instance to record what each service does or to replay a
+ * recording instead of calling the service.
+ */
+public interface SyscallHandler
+{
+    /**
+     * Perform a syscall.  Normally this calls <code>service.simulate(statement)</code>.
+     *
+     * @param service the service selected by $v0
+     * @param statement ProgramStatement for this syscall statement.
+     * @throws ProcessingException as thrown by the service
+     */
+    void simulate(Syscall service, ProgramStatement statement)
+        throws ProcessingException;
+}
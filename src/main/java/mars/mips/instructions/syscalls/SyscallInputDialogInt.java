@@ -70,12 +70,12 @@ public class SyscallInputDialogInt extends AbstractSyscall
         char[] ch = {' '}; // Need an array to convert to String
         try
         {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Globals.getMemory().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Globals.getMemory().getByte(byteAddress);
             }
         }
         catch (AddressErrorException e)
@@ -59,13 +59,13 @@ public class SyscallPrintString extends AbstractSyscall
         char ch = 0;
         try
         {
-            ch = (char) Globals.memory.getByte(byteAddress);
+            ch = (char) Globals.getMemory().getByte(byteAddress);
             // won't stop until NULL byte reached!
             while (ch != 0)
             {
                 SystemIO.printString(Character.toString(ch));
                 byteAddress++;
-                ch = (char) Globals.memory.getByte(byteAddress);
+                ch = (char) Globals.getMemory().getByte(byteAddress);
             }
         }
         catch (AddressErrorException e)
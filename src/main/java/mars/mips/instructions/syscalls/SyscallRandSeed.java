@@ -59,10 +59,10 @@ public class SyscallRandSeed extends AbstractSyscall
         // Result: No values are returned. Sets the seed of the underlying Java pseudorandom number generator.
 
         Integer index = Integer.valueOf(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
+        Random stream = (Random) RandomStreams.randomStreams().get(index);
         if (stream == null)
         {
-            RandomStreams.randomStreams.put(index, new Random(RegisterFile.getValue(5)));
+            RandomStreams.randomStreams().put(index, new Random(RegisterFile.getValue(5)));
         }
         else
         {
@@ -86,7 +86,7 @@ public class SyscallRead extends AbstractSyscall
         {
             while (index < retLength)
             {
-                Globals.memory.setByte(byteAddress++,
+                Globals.getMemory().setByte(byteAddress++,
                     myBuffer[index++]);
             }
         }
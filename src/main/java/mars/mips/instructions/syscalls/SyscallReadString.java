@@ -74,17 +74,17 @@ public class SyscallReadString extends AbstractSyscall
         {
             for (int index = 0; index < stringLength; index++)
             {
-                Globals.memory.setByte(buf + index,
+                Globals.getMemory().setByte(buf + index,
                     inputString.charAt(index));
             }
             if (stringLength < maxLength)
             {
-                Globals.memory.setByte(buf + stringLength, '\n');
+                Globals.getMemory().setByte(buf + stringLength, '\n');
                 stringLength++;
             }
             if (addNullByte)
             {
-                Globals.memory.setByte(buf + stringLength, 0);
+                Globals.getMemory().setByte(buf + stringLength, 0);
             }
         }
         catch (AddressErrorException e)
@@ -57,7 +57,7 @@ public class SyscallSbrk extends AbstractSyscall
         int address = 0;
         try
         {
-            address = Globals.memory.allocateBytesFromHeap(RegisterFile.getValue(4));
+            address = Globals.getMemory().allocateBytesFromHeap(RegisterFile.getValue(4));
         }
         catch (IllegalArgumentException iae)
         {
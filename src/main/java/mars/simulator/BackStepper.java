@@ -2,11 +2,16 @@ package mars.simulator;
 
 import mars.Globals;
 import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.mips.instructions.Instruction;
 
+import java.util.Arrays;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -45,7 +50,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class BackStepper
 {
     // The types of "undo" actions.  Under 1.5, these would be enumerated type.
-    // These fit better in the BackStep class below but inner classes cannot have static members.
     private static final int MEMORY_RESTORE_RAW_WORD = 0;
 
     private static final int MEMORY_RESTORE_WORD = 1;
@@ -68,7 +72,10 @@ public class BackStepper
 
     private static final int DO_NOTHING = 10;  // instruction does not write anything.
 
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
+    // Set in a recorded action when the instruction executed in the "delay slot" of a delayed branch.
+    private static final int IN_DELAY_SLOT = 0x40;
+
+    // Flag to mark an undo action as prepresenting specific situation: user manipulates
     // memory/register value via GUI after assembling program but before running it.
     private static final int NOT_PC_VALUE = -1;
 
@@ -76,21 +83,16 @@ public class BackStepper
 
     private final BackstepStack backSteps;
 
-    // One can argue using java.util.Stack, given its clumsy implementation.
-    // A homegrown linked implementation will be more streamlined, but
-    // I anticipate that backstepping will only be used during timed
-    // (currently max 30 instructions/second) or stepped execution, where
-    // performance is not an issue.  Its Vector implementation may result
-    // in quicker garbage collection than a pure linked list implementation.
-
     /**
      * Create a fresh BackStepper.  It is enabled, which means all subsequent instruction executions will have their
-     * "undo" action recorded here.
+     * "undo" action recorded here.  The history holds <code>Globals.maximumBacksteps</code> actions, or as many as
+     * fit in <code>Globals.maximumBackstepMemory</code> megabytes if that is more; it grows as it is used.
      */
     public BackStepper()
     {
         engaged = true;
-        backSteps = new BackstepStack(Globals.maximumBacksteps);
+        long budget = ((long) Globals.maximumBackstepMemory << 20) / BackstepStack.BYTES_PER_STEP;
+        backSteps = new BackstepStack((int) Math.min(Integer.MAX_VALUE - 8, Math.max(Globals.maximumBacksteps, budget)));
     }
 
     /**
@@ -123,6 +125,14 @@ public class BackStepper
         return backSteps.empty();
     }
 
+    /**
+     * Discard all steps, e.g. when the machine is put into a state they do not lead back from.
+     */
+    public void reset()
+    {
+        backSteps.clear();
+    }
+
     /**
      * Determine whether the next back-step action occurred as the result of an instruction that executed in the "delay
      * slot" of a delayed branch.
@@ -132,7 +142,7 @@ public class BackStepper
     // Added 25 June 2007
     public boolean inDelaySlot()
     {
-        return !empty() && backSteps.peek().inDelaySlot;
+        return !empty() && (backSteps.peekAction() & IN_DELAY_SLOT) != 0;
     }
 
     /**
@@ -145,72 +155,144 @@ public class BackStepper
     // all store their result in register pairs which results in two store operations.
     // Both must be undone transparently, so we need to detect that multiple steps happen
     // together and carry out all of them here.
-    // Use a do-while loop based on the backstep's program statement reference.
+    // Use a do-while loop based on the backstep's program counter.
     public void backStep()
     {
-        if (engaged && !backSteps.empty())
+        backStep(1);
+    }
+
+    /**
+     * Undo the latest executions, one instruction at a time, until the given number of instructions have been undone
+     * or there is nothing left to undo.  Does nothing if backstepping not enabled.
+     *
+     * @param instructions number of instruction executions to undo
+     * @return number of instruction executions undone
+     */
+    public int backStep(int instructions)
+    {
+        int undone = 0;
+        if (engaged)
         {
-            ProgramStatement statement = backSteps.peek().ps;
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
-            do
+            while (undone < instructions && !backSteps.empty())
             {
-                BackStep step = backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-                if (step.pc != NOT_PC_VALUE)
-                {
-                    RegisterFile.setProgramCounter(step.pc);
-                }
-                try
+                undoInstruction();
+                undone++;
+            }
+            engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+        }
+        return undone;
+    }
+
+    /**
+     * "Reverse continue": undo instruction executions until the program counter is at a breakpoint or there is nothing
+     * left to undo.  At least one instruction is undone, so repeated calls move from one breakpoint to the previous.
+     * Does nothing if backstepping not enabled.
+     *
+     * @param breakpoints breakpoints to stop at.  Conditions are not evaluated.
+     * @return number of instruction executions undone
+     */
+    public int backStepToBreakpoint(Breakpoints breakpoints)
+    {
+        int undone = 0;
+        if (engaged)
+        {
+            engaged = false;
+            while (!backSteps.empty())
+            {
+                undoInstruction();
+                undone++;
+                if (breakpoints != null && breakpoints.contains(RegisterFile.getPc()))
                 {
-                    switch (step.action)
-                    {
-                        case MEMORY_RESTORE_RAW_WORD:
-                            Globals.memory.setRawWord(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_WORD:
-                            Globals.memory.setWord(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_HALF:
-                            Globals.memory.setHalf(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_BYTE:
-                            Globals.memory.setByte(step.param1, step.param2);
-                            break;
-                        case REGISTER_RESTORE:
-                            RegisterFile.updateRegister(step.param1, step.param2);
-                            break;
-                        case PC_RESTORE:
-                            RegisterFile.setProgramCounter(step.param1);
-                            break;
-                        case COPROC0_REGISTER_RESTORE:
-                            Coprocessor0.updateRegister(step.param1, step.param2);
-                            break;
-                        case COPROC1_REGISTER_RESTORE:
-                            Coprocessor1.updateRegister(step.param1, step.param2);
-                            break;
-                        case COPROC1_CONDITION_CLEAR:
-                            Coprocessor1.clearConditionFlag(step.param1);
-                            break;
-                        case COPROC1_CONDITION_SET:
-                            Coprocessor1.setConditionFlag(step.param1);
-                            break;
-                        case DO_NOTHING:
-                            break;
-                    }
+                    break;
                 }
-                catch (Exception e)
+            }
+            engaged = true;
+        }
+        return undone;
+    }
+
+    // Pop and carry out all the undo actions recorded by the latest instruction execution.
+    private void undoInstruction()
+    {
+        int statementPC = backSteps.peekPC();
+        do
+        {
+            int action = backSteps.peekAction() & ~IN_DELAY_SLOT;
+            int pc = backSteps.peekPC();
+            int param1 = backSteps.peekParam1();
+            int param2 = backSteps.peekParam2();
+            backSteps.pop();
+            if (pc != NOT_PC_VALUE)
+            {
+                RegisterFile.setProgramCounter(pc);
+            }
+            try
+            {
+                switch (action)
                 {
-                    // if the original action did not cause an exception this will not either.
-                    System.out.println("Internal MARS error: address exception while back-stepping.");
-                    System.exit(0);
+                    case MEMORY_RESTORE_RAW_WORD:
+                        Globals.getMemory().setRawWord(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_WORD:
+                        Globals.getMemory().setWord(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_HALF:
+                        Globals.getMemory().setHalf(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_BYTE:
+                        Globals.getMemory().setByte(param1, param2);
+                        break;
+                    case REGISTER_RESTORE:
+                        RegisterFile.updateRegister(param1, param2);
+                        break;
+                    case PC_RESTORE:
+                        RegisterFile.setProgramCounter(param1);
+                        break;
+                    case COPROC0_REGISTER_RESTORE:
+                        Coprocessor0.updateRegister(param1, param2);
+                        break;
+                    case COPROC1_REGISTER_RESTORE:
+                        Coprocessor1.updateRegister(param1, param2);
+                        break;
+                    case COPROC1_CONDITION_CLEAR:
+                        Coprocessor1.clearConditionFlag(param1);
+                        break;
+                    case COPROC1_CONDITION_SET:
+                        Coprocessor1.setConditionFlag(param1);
+                        break;
+                    case DO_NOTHING:
+                        break;
                 }
             }
-            while (!backSteps.empty() && statement == backSteps.peek().ps);
-            engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+            catch (Exception e)
+            {
+                // if the original action did not cause an exception this will not either.
+                System.out.println("Internal MARS error: address exception while back-stepping.");
+                System.exit(0);
+            }
+        }
+        while (!backSteps.empty() && statementPC == backSteps.peekPC());
+    }
+
+    /**
+     * Get the statement whose execution the next back-step would undo.
+     *
+     * @return the statement, or null if there is nothing to undo or the undo action is not associated with a statement
+     */
+    public ProgramStatement peekStatement()
+    {
+        if (backSteps.empty() || backSteps.peekPC() == NOT_PC_VALUE)
+        {
+            return null;
+        }
+        try
+        {
+            return Globals.getMemory().getStatement(backSteps.peekPC());
+        }
+        catch (AddressErrorException e)
+        {
+            return null;
         }
     }
 
@@ -235,7 +317,10 @@ public class BackStepper
      */
     public int addMemoryRestoreRawWord(int address, int value)
     {
-        backSteps.push(MEMORY_RESTORE_RAW_WORD, pc(), address, value);
+        if (engaged)
+        {
+            backSteps.push(MEMORY_RESTORE_RAW_WORD, pc(), address, value);
+        }
         return value;
     }
 
@@ -248,7 +333,10 @@ public class BackStepper
      */
     public int addMemoryRestoreWord(int address, int value)
     {
-        backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
+        if (engaged)
+        {
+            backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
+        }
         return value;
     }
 
@@ -261,7 +349,10 @@ public class BackStepper
      */
     public int addMemoryRestoreHalf(int address, int value)
     {
-        backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
+        if (engaged)
+        {
+            backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
+        }
         return value;
     }
 
@@ -274,7 +365,10 @@ public class BackStepper
      */
     public int addMemoryRestoreByte(int address, int value)
     {
-        backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
+        if (engaged)
+        {
+            backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
+        }
         return value;
     }
 
@@ -288,7 +382,10 @@ public class BackStepper
      */
     public int addRegisterFileRestore(int register, int value)
     {
-        backSteps.push(REGISTER_RESTORE, pc(), register, value);
+        if (engaged)
+        {
+            backSteps.push(REGISTER_RESTORE, pc(), register, value);
+        }
         return value;
     }
 
@@ -304,7 +401,10 @@ public class BackStepper
         value -= Instruction.INSTRUCTION_LENGTH;
         // Use "value" insead of "pc()" for second arg because RegisterFile.getProgramCounter()
         // returns branch target address at this point.
-        backSteps.push(PC_RESTORE, value, value);
+        if (engaged)
+        {
+            backSteps.push(PC_RESTORE, value, value);
+        }
         return value;
     }
 
@@ -318,7 +418,10 @@ public class BackStepper
      */
     public int addCoprocessor0Restore(int register, int value)
     {
-        backSteps.push(COPROC0_REGISTER_RESTORE, pc(), register, value);
+        if (engaged)
+        {
+            backSteps.push(COPROC0_REGISTER_RESTORE, pc(), register, value);
+        }
         return value;
     }
 
@@ -332,7 +435,10 @@ public class BackStepper
      */
     public int addCoprocessor1Restore(int register, int value)
     {
-        backSteps.push(COPROC1_REGISTER_RESTORE, pc(), register, value);
+        if (engaged)
+        {
+            backSteps.push(COPROC1_REGISTER_RESTORE, pc(), register, value);
+        }
         return value;
     }
 
@@ -345,7 +451,10 @@ public class BackStepper
      */
     public int addConditionFlagSet(int flag)
     {
-        backSteps.push(COPROC1_CONDITION_SET, pc(), flag);
+        if (engaged)
+        {
+            backSteps.push(COPROC1_CONDITION_SET, pc(), flag);
+        }
         return flag;
     }
 
@@ -358,7 +467,10 @@ public class BackStepper
      */
     public int addConditionFlagClear(int flag)
     {
-        backSteps.push(COPROC1_CONDITION_CLEAR, pc(), flag);
+        if (engaged)
+        {
+            backSteps.push(COPROC1_CONDITION_CLEAR, pc(), flag);
+        }
         return flag;
     }
 
@@ -371,7 +483,7 @@ public class BackStepper
      */
     public int addDoNothing(int pc)
     {
-        if (backSteps.empty() || backSteps.peek().pc != pc)
+        if (engaged && (backSteps.empty() || backSteps.peekPC() != pc))
         {
             backSteps.push(DO_NOTHING, pc);
         }
@@ -379,54 +491,23 @@ public class BackStepper
     }
 
 
-    // Represents a "back step" (undo action) on the stack.
-    private static class BackStep
+    // Program counter value to record for an undo action, or NOT_PC_VALUE if it is not the address of a statement.
+    // The only situation causing this so far: user modifies memory or register contents through direct manipulation
+    // on the GUI, after assembling the program but before starting to run it (or after backstepping all the way to
+    // the start).  The action will not be associated with any instruction, but will be carried out when popped.
+    // Same test as Memory.getStatement, so that the statement can be looked up from the PC when needed.
+    private static int statementPC(int programCounter)
     {
-        private int action;  // what do do MEMORY_RESTORE_WORD, etc
-
-        private int pc;      // program counter value when original step occurred
-
-        private ProgramStatement ps;   // statement whose action is being "undone" here
-
-        private int param1;  // first parameter required by that action
-
-        private int param2;  // optional second parameter required by that action
-
-        private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-
-        // it is critical that BackStep object get its values by calling this method
-        // rather than assigning to individual members, because of the technique used
-        // to set its ps member (and possibly pc).
-        private void assign(int act, int programCounter, int parm1, int parm2)
+        if (programCounter % Instruction.INSTRUCTION_LENGTH != 0)
         {
-            action = act;
-            pc = programCounter;
-            try
-            {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                ps = Globals.memory.getStatement(programCounter);
-            }
-            catch (Exception e)
-            {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                ps = null;
-                pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-            }
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
+            return NOT_PC_VALUE;
+        }
+        if (Memory.inTextSegment(programCounter) || Memory.inKernelTextSegment(programCounter)
+            || Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED))
+        {
+            return programCounter;
         }
+        return NOT_PC_VALUE;
     }
 
     // *****************************************************************************
@@ -435,37 +516,37 @@ public class BackStepper
     // newly-pushed item overwrites the oldest item, with circular top!  All operations
     // are constant time.  It's synchronized too, to be safe (is used by both the
     // simulation thread and the GUI thread for the back-step button).
-    // Upon construction, it is filled with newly-created empty BackStep objects which
-    // will exist for the life of the stack.  Push does not create a BackStep object
-    // but instead overwrites the contents of the existing one.  Thus during MIPS
-    // program (simulated) execution, BackStep objects are never created or junked
-    // regardless of how many steps are executed.  This will speed things up a bit
-    // and make life easier for the garbage collector.
+    // Each field of the undo actions is held in its own primitive array, so pushing
+    // creates no objects however many steps are executed, and a history of millions
+    // of steps costs 13 bytes per step with nothing for the garbage collector to trace.
+    // The arrays start small and double as needed, up to the capacity; until they
+    // reach it the stack never wraps, so the entries are always at [0, size).
 
     private static class BackstepStack
     {
+        // action (with IN_DELAY_SLOT flag), pc, param1 and param2
+        private static final int BYTES_PER_STEP = 1 + 3 * 4;
+
+        private static final int INITIAL_LENGTH = 1024;
+
         private final int capacity;
 
         private int size;
 
         private int top;
 
-        private final BackStep[] stack;
+        private byte[] actions;
+
+        private int[] pcs;
+
+        private int[] params1;
+
+        private int[] params2;
 
-        // Stack is created upon successful assembly or reset.  The one-time overhead of
-        // creating all the BackStep objects will not be noticed by the user, and enhances
-        // runtime performance by not having to create or recycle them during MIPS
-        // program execution.
         private BackstepStack(int capacity)
         {
             this.capacity = capacity;
-            this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i = 0; i < capacity; i++)
-            {
-                this.stack[i] = new BackStep();
-            }
+            clear();
         }
 
         private synchronized boolean empty()
@@ -473,25 +554,44 @@ public class BackStepper
             return size == 0;
         }
 
+        // Empty the stack and go back to arrays of the initial length: push() grows them only while the entries fill
+        // them from index 0, before they wrap around.
+        private synchronized void clear()
+        {
+            size = 0;
+            top = -1;
+            int length = Math.min(capacity, INITIAL_LENGTH);
+            actions = new byte[length];
+            pcs = new int[length];
+            params1 = new int[length];
+            params2 = new int[length];
+        }
+
         private synchronized void push(int act, int programCounter, int parm1, int parm2)
         {
-            if (size == 0)
+            int length = actions.length;
+            if (size == length && length < capacity)
             {
-                top = 0;
-                size++;
+                length = (int) Math.min(capacity, 2L * length);
+                actions = Arrays.copyOf(actions, length);
+                pcs = Arrays.copyOf(pcs, length);
+                params1 = Arrays.copyOf(params1, length);
+                params2 = Arrays.copyOf(params2, length);
             }
-            else if (size < capacity)
+            if (size < length)
             {
-                top = (top + 1) % capacity;
                 size++;
             }
-            else
-            { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-                top = (top + 1) % capacity;
+            // when size == capacity the top moves up one, replacing oldest entry (goodbye!)
+            top = (top + 1) % length;
+            if (Simulator.inDelaySlot())
+            {
+                act |= IN_DELAY_SLOT;
             }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
+            actions[top] = (byte) act;
+            pcs[top] = statementPC(programCounter);
+            params1[top] = parm1;
+            params2[top] = parm2;
         }
 
         private synchronized void push(int act, int programCounter, int parm1)
@@ -506,29 +606,33 @@ public class BackStepper
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
         // for trying to pop from empty stack.
-        private synchronized BackStep pop()
+        private synchronized void pop()
         {
-            BackStep bs;
-            bs = stack[top];
-            if (size == 1)
-            {
-                top = -1;
-            }
-            else
-            {
-                top = (top + capacity - 1) % capacity;
-            }
+            top = (top + actions.length - 1) % actions.length;
             size--;
-            return bs;
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
         // for trying to peek from empty stack.
-        private synchronized BackStep peek()
+        private synchronized int peekAction()
         {
-            return stack[top];
+            return actions[top];
         }
 
+        private synchronized int peekPC()
+        {
+            return pcs[top];
+        }
+
+        private synchronized int peekParam1()
+        {
+            return params1[top];
+        }
+
+        private synchronized int peekParam2()
+        {
+            return params2[top];
+        }
     }
 
 }
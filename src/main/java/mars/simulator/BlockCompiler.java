@@ -0,0 +1,850 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.util.Binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution tier above the pre-decoded interpreter.  The decoded text segment is split into basic blocks at branch and
+ * jump targets, after every branch and jump, and around instructions the tier cannot handle.  Each block counts how
+ * often it is entered; once it is hot it is compiled to JVM bytecode in a hidden class (see <code>CompiledBlock</code>)
+ * so that the JVM's own JIT compiler can optimize it.  MIPS registers live in JVM locals for the duration of the block.
+ * <p>
+ * The tier falls back to the interpreter ("deoptimizes") on every event it does not model: runtime exceptions leave
+ * precise state behind and are handled by the run loop, syscalls and other FALLBACK instructions are never compiled,
+ * breakpoints split blocks so that the run loop sees each one, and with self-modifying code enabled every store ends
+ * its block so the run loop can discard compiled code as soon as the text segment changes.  Delayed branching is not
+ * supported; the run loop does not create a BlockCompiler when it is enabled.
+ */
+final class BlockCompiler
+{
+    /**
+     * Number of times a block must be entered before it is compiled.
+     */
+    static final int COMPILE_THRESHOLD = 500;
+
+    // Longer blocks are split, to keep generated methods well below the JVM's own compile limits.
+    private static final int MAXIMUM_BLOCK_LENGTH = 64;
+
+    private static final String GENERATED_CLASS = "mars/simulator/GeneratedBlock";
+
+    private static final String SUPER_CLASS = "mars/simulator/CompiledBlock";
+
+    private static final String CONSTRUCTOR_DESCRIPTOR = "(Lmars/simulator/PredecodedProgram;II)V";
+
+    // Blocks compiled and blocks that failed to compile, by all BlockCompilers, for tests to check
+    private static final AtomicLong blocksCompiled = new AtomicLong();
+
+    private static final AtomicLong compileFailures = new AtomicLong();
+
+    private final PredecodedProgram program;
+
+    // Number of instructions in the block starting at each index, 0 if no block starts there.
+    private final int[] blockLength;
+
+    private final int[] entryCount;
+
+    private final CompiledBlock[] compiled;
+
+    /**
+     * Find the basic blocks of a decoded program.
+     *
+     * @param program the decoded text segment
+     * @param breakPoints sorted breakpoint addresses, or null if none
+     * @param selfModifyingCode whether the text segment may be written while running
+     */
+    BlockCompiler(PredecodedProgram program, int[] breakPoints, boolean selfModifyingCode)
+    {
+        this.program = program;
+        int size = program.size();
+        this.blockLength = new int[size];
+        this.entryCount = new int[size];
+        this.compiled = new CompiledBlock[size];
+        boolean[] leader = new boolean[size + 1];
+        if (size > 0)
+        {
+            leader[0] = true;
+        }
+        for (int i = 0; i < size; i++)
+        {
+            int opcode = program.getOpcode(i);
+            if (isBranch(opcode) || opcode == PredecodedProgram.J || opcode == PredecodedProgram.JAL)
+            {
+                int target = program.indexOf(program.getImmediate(i));
+                if (target >= 0)
+                {
+                    leader[target] = true;
+                }
+            }
+            if (endsBlock(opcode, selfModifyingCode) || !isCompilable(i))
+            {
+                leader[i + 1] = true;
+            }
+        }
+        if (breakPoints != null)
+        {
+            for (int breakPoint : breakPoints)
+            {
+                int index = program.indexOf(breakPoint);
+                if (index >= 0)
+                {
+                    leader[index] = true;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++)
+        {
+            if (!leader[i])
+            {
+                continue;
+            }
+            int end = i;
+            while (end < size && end - i < MAXIMUM_BLOCK_LENGTH && isCompilable(end) && (end == i || !leader[end]))
+            {
+                end++;
+                if (endsBlock(program.getOpcode(end - 1), selfModifyingCode))
+                {
+                    break;
+                }
+            }
+            blockLength[i] = end - i;
+        }
+    }
+
+    /**
+     * Called by the run loop before it executes the instruction at the given index.  Counts the entry if a block
+     * starts there, compiling the block once it becomes hot.
+     *
+     * @param index index of the next instruction in the PredecodedProgram
+     * @return the compiled block starting at that index, or null if the instruction must be interpreted
+     */
+    CompiledBlock enter(int index)
+    {
+        CompiledBlock block = compiled[index];
+        if (block == null && blockLength[index] > 0 && ++entryCount[index] >= COMPILE_THRESHOLD)
+        {
+            block = compile(index, blockLength[index]);
+            if (block == null)
+            {
+                blockLength[index] = 0; // could not be compiled, stay in the interpreter
+            }
+            compiled[index] = block;
+        }
+        return block;
+    }
+
+    /**
+     * @return number of blocks compiled so far in this JVM
+     */
+    static long getBlocksCompiled()
+    {
+        return blocksCompiled.get();
+    }
+
+    /**
+     * @return number of blocks that failed to compile so far in this JVM; any is a bug in the generated code
+     */
+    static long getCompileFailures()
+    {
+        return compileFailures.get();
+    }
+
+    private static boolean isBranch(int opcode)
+    {
+        return opcode >= PredecodedProgram.BEQ && opcode <= PredecodedProgram.BLTZ;
+    }
+
+    private static boolean endsBlock(int opcode, boolean selfModifyingCode)
+    {
+        return opcode >= PredecodedProgram.BEQ && opcode <= PredecodedProgram.JALR
+            || selfModifyingCode && opcode >= PredecodedProgram.SW && opcode <= PredecodedProgram.SB;
+    }
+
+    // FALLBACK instructions are interpreted, and so are writes to $zero because the reference
+    // register file reports those on the console.
+    private boolean isCompilable(int index)
+    {
+        int opcode = program.getOpcode(index);
+        if (opcode == PredecodedProgram.FALLBACK)
+        {
+            return false;
+        }
+        return !(writesFirstOperand(opcode) && program.getFirst(index) == 0);
+    }
+
+    private static boolean writesFirstOperand(int opcode)
+    {
+        return opcode >= PredecodedProgram.ADD && opcode <= PredecodedProgram.MOVZ
+            || opcode == PredecodedProgram.MUL
+            || opcode == PredecodedProgram.MFHI || opcode == PredecodedProgram.MFLO
+            || opcode >= PredecodedProgram.LW && opcode <= PredecodedProgram.LBU
+            || opcode == PredecodedProgram.JALR;
+    }
+
+    // Generate, define and instantiate the hidden class for one block.
+    private CompiledBlock compile(int start, int length)
+    {
+        try
+        {
+            byte[] classBytes = new ClassWriter(program, start, length).toByteArray();
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            CompiledBlock block = (CompiledBlock) lookup.lookupClass()
+                .getDeclaredConstructor(PredecodedProgram.class, int.class, int.class)
+                .newInstance(program, start, length);
+            blocksCompiled.incrementAndGet();
+            return block;
+        }
+        catch (ReflectiveOperationException | LinkageError | IOException e)
+        {
+            // The generated class is broken, a bug here.  The block is interpreted, which is slower but still right.
+            compileFailures.incrementAndGet();
+            if (Globals.debug)
+            {
+                System.out.println("block at " + Binary.intToHexString(program.addressOf(start)) + " not compiled: "
+                    + e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes the class file for one compiled block.  Generated code is straight-line with a single exit, so no stack
+     * map frames are needed.  Local variable 0 is <code>this</code> and local 1+n holds MIPS register n.
+     */
+    private static final class ClassWriter
+    {
+        private static final int MAX_STACK = 8;
+
+        private static final int MAX_LOCALS = 36;
+
+        private final PredecodedProgram program;
+
+        private final int start;
+
+        private final int length;
+
+        private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+
+        private final DataOutputStream constantPool = new DataOutputStream(constants);
+
+        private final HashMap<String, Integer> constantIndex = new HashMap<>();
+
+        private int constantCount = 1;
+
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        private final boolean[] loaded = new boolean[35];
+
+        private final boolean[] dirty = new boolean[35];
+
+        ClassWriter(PredecodedProgram program, int start, int length)
+        {
+            this.program = program;
+            this.start = start;
+            this.length = length;
+        }
+
+        byte[] toByteArray() throws IOException
+        {
+            int thisClass = classConstant(GENERATED_CLASS);
+            int superClass = classConstant(SUPER_CLASS);
+            int codeName = utf8Constant("Code");
+            int initName = utf8Constant("<init>");
+            int initDescriptor = utf8Constant(CONSTRUCTOR_DESCRIPTOR);
+            int executeName = utf8Constant("execute");
+            int executeDescriptor = utf8Constant("()I");
+            int superConstructor = methodConstant(SUPER_CLASS, "<init>", CONSTRUCTOR_DESCRIPTOR);
+            byte[] executeCode = generateExecute();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52); // Java 8 format: verification by type inference, no frames required
+            out.writeShort(constantCount);
+            constantPool.flush();
+            out.write(constants.toByteArray());
+            out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+            // Constructor passes its arguments to CompiledBlock's.
+            byte[] initCode = {
+                0x2a, 0x2b, 0x1c, 0x1d, // aload_0, aload_1, iload_2, iload_3
+                (byte) 0xb7, (byte) (superConstructor >> 8), (byte) superConstructor, // invokespecial
+                (byte) 0xb1 // return
+            };
+            writeMethod(out, 0x0000, initName, initDescriptor, codeName, 4, 4, initCode);
+            writeMethod(out, 0x0000, executeName, executeDescriptor, codeName, MAX_STACK, MAX_LOCALS, executeCode);
+            out.writeShort(0); // class attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName,
+                                 int maxStack, int maxLocals, byte[] body) throws IOException
+        {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1); // attributes: Code
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+        }
+
+        /////////////////////////////////////////////////////////////////////
+        // The execute() method.
+
+        private byte[] generateExecute() throws IOException
+        {
+            int end = start + length;
+            for (int i = start; i < end; i++)
+            {
+                if (generateInstruction(i))
+                {
+                    return code.toByteArray(); // block ended with a branch or jump
+                }
+            }
+            writeBack();
+            pushInt(program.addressOf(end));
+            emit(0xac); // ireturn
+            return code.toByteArray();
+        }
+
+        // Emit code for one instruction.  Returns true if it ended the method.
+        private boolean generateInstruction(int i) throws IOException
+        {
+            int a = program.getFirst(i);
+            int b = program.getSecond(i);
+            int c = program.getThird(i);
+            int imm = program.getImmediate(i);
+            int next = program.addressOf(i) + 4;
+            switch (program.getOpcode(i))
+            {
+                case PredecodedProgram.NOP:
+                    break;
+                case PredecodedProgram.ADD:
+                    synchronize(i);
+                    emit(0x2a); // aload_0
+                    loadRegister(b);
+                    loadRegister(c);
+                    pushInt(i);
+                    invokeVirtual("addWithOverflow", "(III)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.SUB:
+                    synchronize(i);
+                    emit(0x2a);
+                    loadRegister(b);
+                    loadRegister(c);
+                    pushInt(i);
+                    invokeVirtual("subtractWithOverflow", "(III)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.ADDI:
+                    synchronize(i);
+                    emit(0x2a);
+                    loadRegister(b);
+                    pushInt(imm);
+                    pushInt(i);
+                    invokeVirtual("addWithOverflow", "(III)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.ADDU:
+                    binary(a, b, c, 0x60); // iadd
+                    break;
+                case PredecodedProgram.SUBU:
+                    binary(a, b, c, 0x64); // isub
+                    break;
+                case PredecodedProgram.AND:
+                    binary(a, b, c, 0x7e); // iand
+                    break;
+                case PredecodedProgram.OR:
+                    binary(a, b, c, 0x80); // ior
+                    break;
+                case PredecodedProgram.XOR:
+                    binary(a, b, c, 0x82); // ixor
+                    break;
+                case PredecodedProgram.NOR:
+                    loadRegister(b);
+                    loadRegister(c);
+                    emit(0x80); // ior
+                    emit(0x02); // iconst_m1
+                    emit(0x82); // ixor
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.SLLV:
+                    binary(a, b, c, 0x78); // ishl, which like sllv uses the low 5 bits of the amount
+                    break;
+                case PredecodedProgram.SRLV:
+                    binary(a, b, c, 0x7c); // iushr
+                    break;
+                case PredecodedProgram.SRAV:
+                    binary(a, b, c, 0x7a); // ishr
+                    break;
+                case PredecodedProgram.ADDIU:
+                    immediate(a, b, imm, 0x60);
+                    break;
+                case PredecodedProgram.ANDI:
+                    immediate(a, b, imm, 0x7e);
+                    break;
+                case PredecodedProgram.ORI:
+                    immediate(a, b, imm, 0x80);
+                    break;
+                case PredecodedProgram.XORI:
+                    immediate(a, b, imm, 0x82);
+                    break;
+                case PredecodedProgram.SLL:
+                    immediate(a, b, c, 0x78);
+                    break;
+                case PredecodedProgram.SRL:
+                    immediate(a, b, c, 0x7c);
+                    break;
+                case PredecodedProgram.SRA:
+                    immediate(a, b, c, 0x7a);
+                    break;
+                case PredecodedProgram.SLT:
+                    loadRegister(b);
+                    loadRegister(c);
+                    invokeStatic("lessThan", "(II)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.SLTU:
+                    loadRegister(b);
+                    loadRegister(c);
+                    invokeStatic("lessThanUnsigned", "(II)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.SLTI:
+                    loadRegister(b);
+                    pushInt(imm);
+                    invokeStatic("lessThan", "(II)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.SLTIU:
+                    loadRegister(b);
+                    pushInt(imm);
+                    invokeStatic("lessThanUnsigned", "(II)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.LUI:
+                    pushInt(imm);
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.MOVN:
+                    loadRegister(c);
+                    loadRegister(b);
+                    loadRegister(a);
+                    invokeStatic("moveIfNonZero", "(III)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.MOVZ:
+                    loadRegister(c);
+                    loadRegister(b);
+                    loadRegister(a);
+                    invokeStatic("moveIfZero", "(III)I");
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.MULT:
+                    multiply(a, b, "multiplyHigh");
+                    break;
+                case PredecodedProgram.MULTU:
+                    multiply(a, b, "multiplyHighUnsigned");
+                    break;
+                case PredecodedProgram.MUL:
+                    // HI is computed first, from the operand values before the destination is written.
+                    loadRegister(b);
+                    loadRegister(c);
+                    invokeStatic("multiplyHigh", "(II)I");
+                    storeRegister(PredecodedProgram.HI);
+                    loadRegister(b);
+                    loadRegister(c);
+                    emit(0x68); // imul
+                    emit(0x59); // dup
+                    storeRegister(a);
+                    storeRegister(PredecodedProgram.LO);
+                    break;
+                case PredecodedProgram.DIV:
+                    divide(a, b, "remainder", "quotient");
+                    break;
+                case PredecodedProgram.DIVU:
+                    divide(a, b, "remainderUnsigned", "quotientUnsigned");
+                    break;
+                case PredecodedProgram.MFHI:
+                    loadRegister(PredecodedProgram.HI);
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.MFLO:
+                    loadRegister(PredecodedProgram.LO);
+                    storeRegister(a);
+                    break;
+                case PredecodedProgram.MTHI:
+                    loadRegister(a);
+                    storeRegister(PredecodedProgram.HI);
+                    break;
+                case PredecodedProgram.MTLO:
+                    loadRegister(a);
+                    storeRegister(PredecodedProgram.LO);
+                    break;
+                case PredecodedProgram.LW:
+                    load(i, a, c, imm, "loadWord");
+                    break;
+                case PredecodedProgram.LH:
+                    load(i, a, c, imm, "loadHalf");
+                    break;
+                case PredecodedProgram.LHU:
+                    load(i, a, c, imm, "loadHalfUnsigned");
+                    break;
+                case PredecodedProgram.LB:
+                    load(i, a, c, imm, "loadByte");
+                    break;
+                case PredecodedProgram.LBU:
+                    load(i, a, c, imm, "loadByteUnsigned");
+                    break;
+                case PredecodedProgram.SW:
+                    store(i, a, c, imm, "storeWord");
+                    break;
+                case PredecodedProgram.SH:
+                    store(i, a, c, imm, "storeHalf");
+                    break;
+                case PredecodedProgram.SB:
+                    store(i, a, c, imm, "storeByte");
+                    break;
+                case PredecodedProgram.BEQ:
+                    writeBack();
+                    loadRegister(a);
+                    loadRegister(b);
+                    pushInt(imm);
+                    pushInt(next);
+                    invokeStatic("branchIfEqual", "(IIII)I");
+                    emit(0xac); // ireturn
+                    return true;
+                case PredecodedProgram.BNE:
+                    writeBack();
+                    loadRegister(a);
+                    loadRegister(b);
+                    pushInt(imm);
+                    pushInt(next);
+                    invokeStatic("branchIfNotEqual", "(IIII)I");
+                    emit(0xac);
+                    return true;
+                case PredecodedProgram.BGEZ:
+                    branchOnZero(a, imm, next, "branchIfGreaterOrEqualZero");
+                    return true;
+                case PredecodedProgram.BGTZ:
+                    branchOnZero(a, imm, next, "branchIfGreaterThanZero");
+                    return true;
+                case PredecodedProgram.BLEZ:
+                    branchOnZero(a, imm, next, "branchIfLessOrEqualZero");
+                    return true;
+                case PredecodedProgram.BLTZ:
+                    branchOnZero(a, imm, next, "branchIfLessThanZero");
+                    return true;
+                case PredecodedProgram.J:
+                    writeBack();
+                    pushInt(imm);
+                    emit(0xac);
+                    return true;
+                case PredecodedProgram.JAL:
+                    pushInt(next);
+                    storeRegister(PredecodedProgram.RA);
+                    writeBack();
+                    pushInt(imm);
+                    emit(0xac);
+                    return true;
+                case PredecodedProgram.JR:
+                    writeBack();
+                    loadRegister(a);
+                    emit(0xac);
+                    return true;
+                case PredecodedProgram.JALR:
+                    // link first, then read the target, in the same order as the reference
+                    pushInt(next);
+                    storeRegister(a);
+                    writeBack();
+                    loadRegister(b);
+                    emit(0xac);
+                    return true;
+                default:
+                    throw new IOException("not a compilable instruction");
+            }
+            return false;
+        }
+
+        private void binary(int destination, int first, int second, int operation)
+        {
+            loadRegister(first);
+            loadRegister(second);
+            emit(operation);
+            storeRegister(destination);
+        }
+
+        private void immediate(int destination, int source, int value, int operation)
+        {
+            loadRegister(source);
+            pushInt(value);
+            emit(operation);
+            storeRegister(destination);
+        }
+
+        private void multiply(int first, int second, String high) throws IOException
+        {
+            loadRegister(first);
+            loadRegister(second);
+            invokeStatic(high, "(II)I");
+            storeRegister(PredecodedProgram.HI);
+            loadRegister(first);
+            loadRegister(second);
+            emit(0x68); // imul, whose result is the low 32 bits either way
+            storeRegister(PredecodedProgram.LO);
+        }
+
+        private void divide(int dividend, int divisor, String remainder, String quotient) throws IOException
+        {
+            loadRegister(dividend);
+            loadRegister(divisor);
+            loadRegister(PredecodedProgram.HI);
+            invokeStatic(remainder, "(III)I");
+            storeRegister(PredecodedProgram.HI);
+            loadRegister(dividend);
+            loadRegister(divisor);
+            loadRegister(PredecodedProgram.LO);
+            invokeStatic(quotient, "(III)I");
+            storeRegister(PredecodedProgram.LO);
+        }
+
+        private void load(int index, int destination, int base, int offset, String helper) throws IOException
+        {
+            synchronize(index);
+            emit(0x2a);
+            loadRegister(base);
+            pushInt(offset);
+            emit(0x60); // iadd
+            pushInt(index);
+            invokeVirtual(helper, "(II)I");
+            storeRegister(destination);
+        }
+
+        private void store(int index, int source, int base, int offset, String helper) throws IOException
+        {
+            synchronize(index);
+            emit(0x2a);
+            loadRegister(base);
+            pushInt(offset);
+            emit(0x60);
+            loadRegister(source);
+            pushInt(index);
+            invokeVirtual(helper, "(III)V");
+        }
+
+        private void branchOnZero(int register, int taken, int notTaken, String helper) throws IOException
+        {
+            writeBack();
+            loadRegister(register);
+            pushInt(taken);
+            pushInt(notTaken);
+            invokeStatic(helper, "(III)I");
+            emit(0xac);
+        }
+
+        // Make the register file and program counter precise before an instruction that may throw.
+        private void synchronize(int index) throws IOException
+        {
+            writeBack();
+            pushInt(program.addressOf(index) + 4);
+            invokeStatic("setProgramCounter", "(I)V");
+        }
+
+        private void writeBack()
+        {
+            for (int register = 1; register < dirty.length; register++)
+            {
+                if (dirty[register])
+                {
+                    pushInt(register);
+                    emitLocal(0x15, register + 1); // iload
+                    invokeStaticUnchecked("setRegister", "(II)V");
+                    dirty[register] = false;
+                }
+            }
+        }
+
+        private void loadRegister(int register)
+        {
+            if (register == 0)
+            {
+                emit(0x03); // iconst_0, $zero never changes
+            }
+            else if (loaded[register])
+            {
+                emitLocal(0x15, register + 1); // iload
+            }
+            else
+            {
+                pushInt(register);
+                invokeStaticUnchecked("getRegister", "(I)I");
+                emit(0x59); // dup
+                emitLocal(0x36, register + 1); // istore
+                loaded[register] = true;
+            }
+        }
+
+        private void storeRegister(int register)
+        {
+            emitLocal(0x36, register + 1); // istore
+            loaded[register] = true;
+            dirty[register] = true;
+        }
+
+        /////////////////////////////////////////////////////////////////////
+        // Bytecode and constant pool primitives.
+
+        private void emit(int opcode)
+        {
+            code.write(opcode);
+        }
+
+        private void emitLocal(int opcode, int local)
+        {
+            code.write(opcode);
+            code.write(local);
+        }
+
+        private void emitShort(int opcode, int operand)
+        {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+        }
+
+        private void pushInt(int value)
+        {
+            if (value >= -1 && value <= 5)
+            {
+                emit(0x03 + value); // iconst_<n>
+            }
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            {
+                code.write(0x10); // bipush
+                code.write(value);
+            }
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            {
+                emitShort(0x11, value); // sipush
+            }
+            else
+            {
+                emitShort(0x13, integerConstant(value)); // ldc_w
+            }
+        }
+
+        private void invokeStatic(String name, String descriptor) throws IOException
+        {
+            emitShort(0xb8, methodConstant(SUPER_CLASS, name, descriptor));
+        }
+
+        private void invokeVirtual(String name, String descriptor) throws IOException
+        {
+            emitShort(0xb6, methodConstant(SUPER_CLASS, name, descriptor));
+        }
+
+        // The constant pool is an in-memory stream, so IOException cannot actually occur.
+        private void invokeStaticUnchecked(String name, String descriptor)
+        {
+            try
+            {
+                invokeStatic(name, descriptor);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int integerConstant(int value)
+        {
+            Integer index = constantIndex.get("I" + value);
+            if (index == null)
+            {
+                try
+                {
+                    constantPool.writeByte(3); // CONSTANT_Integer
+                    constantPool.writeInt(value);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                index = newConstant("I" + value);
+            }
+            return index;
+        }
+
+        private int utf8Constant(String value) throws IOException
+        {
+            Integer index = constantIndex.get("U" + value);
+            if (index == null)
+            {
+                constantPool.writeByte(1); // CONSTANT_Utf8
+                constantPool.writeUTF(value);
+                index = newConstant("U" + value);
+            }
+            return index;
+        }
+
+        private int classConstant(String name) throws IOException
+        {
+            Integer index = constantIndex.get("C" + name);
+            if (index == null)
+            {
+                int nameIndex = utf8Constant(name);
+                constantPool.writeByte(7); // CONSTANT_Class
+                constantPool.writeShort(nameIndex);
+                index = newConstant("C" + name);
+            }
+            return index;
+        }
+
+        private int methodConstant(String owner, String name, String descriptor) throws IOException
+        {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = constantIndex.get(key);
+            if (index == null)
+            {
+                int ownerIndex = classConstant(owner);
+                int nameIndex = utf8Constant(name);
+                int descriptorIndex = utf8Constant(descriptor);
+                constantPool.writeByte(12); // CONSTANT_NameAndType
+                constantPool.writeShort(nameIndex);
+                constantPool.writeShort(descriptorIndex);
+                int nameAndType = newConstant("N" + name + descriptor);
+                constantPool.writeByte(10); // CONSTANT_Methodref
+                constantPool.writeShort(ownerIndex);
+                constantPool.writeShort(nameAndType);
+                index = newConstant(key);
+            }
+            return index;
+        }
+
+        private int newConstant(String key)
+        {
+            int index = constantCount++;
+            constantIndex.put(key, index);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProgramStatement;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Running branch predictors on the conditional branches a program executes, to compare their accuracy.  All the
+ * predictors see the same stream of branches in the same run, each predicting a branch before learning its outcome.
+ * Accuracy is counted overall and per branch.
+ * <p>
+ * The outcome of a branch is found from the next instruction executed: the branch was taken unless it is the one
+ * following it, or following its delay slot when delayed branching is enabled.
+ */
+public final class BranchModel implements ExecutionListener
+{
+    // Counters per address: executions and taken, then correct predictions of each predictor
+    private static final int EXECUTED = 0;
+
+    private static final int TAKEN = 1;
+
+    private static final int CORRECT = 2;
+
+    // Position of the program counter in the register bank
+    private static final int PC = 32;
+
+    private final MachineContext context;
+
+    private final boolean delayedBranching;
+
+    private final BranchPredictor[] predictors;
+
+    private final TextCounters counts;
+
+    private final long[] correct;
+
+    private long branchCount;
+
+    private long takenCount;
+
+    // Branch awaiting its outcome, if pending
+    private boolean pending;
+
+    private boolean delaySlotPassed;
+
+    private int branchPc;
+
+    private int branchTarget;
+
+    private BranchModel(MachineContext context, List<String> specifications)
+    {
+        this.context = context;
+        this.delayedBranching = Globals.getSettings().getDelayedBranchingEnabled();
+        this.predictors = new BranchPredictor[specifications.size()];
+        for (int i = 0; i < predictors.length; i++)
+        {
+            predictors[i] = BranchPredictor.create(specifications.get(i));
+        }
+        this.counts = new TextCounters(CORRECT + predictors.length);
+        this.correct = new long[predictors.length];
+    }
+
+    /**
+     * Start predicting the branches of the runs of a machine.
+     *
+     * @param context the machine
+     * @param specifications the predictors, in the format of BranchPredictor.create()
+     * @return the model, which must be stopped
+     * @throws IllegalArgumentException if a predictor is not valid
+     */
+    public static BranchModel start(MachineContext context, List<String> specifications)
+    {
+        BranchModel model = new BranchModel(context, specifications);
+        context.addExecutionListener(model);
+        return model;
+    }
+
+    /**
+     * Stop predicting.  The last branch executed, if its outcome has not been seen, is scored by where the run left the
+     * program counter.  The counts remain available.
+     */
+    public void stop()
+    {
+        context.removeExecutionListener(this);
+        if (pending)
+        {
+            if (delayedBranching && !delaySlotPassed)
+            {
+                // Stopped before the delay slot: taken if the branch is still to be carried out
+                resolve(context.getDelayedBranch().isPending());
+            }
+            else
+            {
+                resolve(context.getRegisterBank().get(PC) != branchPc + (delayedBranching ? 8 : 4));
+            }
+        }
+    }
+
+    public void onRetire(int pc, int binaryStatement)
+    {
+        if (pending)
+        {
+            if (delayedBranching && !delaySlotPassed && pc == branchPc + 4)
+            {
+                delaySlotPassed = true;
+                return;
+            }
+            resolve(pc != branchPc + (delayedBranching ? 8 : 4));
+        }
+        if (isConditionalBranch(binaryStatement))
+        {
+            pending = true;
+            delaySlotPassed = false;
+            branchPc = pc;
+            branchTarget = pc + 4 + ((short) binaryStatement << 2);
+        }
+    }
+
+    // Predict the pending branch with each predictor, then teach them its outcome
+    private void resolve(boolean taken)
+    {
+        pending = false;
+        branchCount++;
+        counts.add(branchPc, EXECUTED, 1);
+        if (taken)
+        {
+            takenCount++;
+            counts.add(branchPc, TAKEN, 1);
+        }
+        for (int i = 0; i < predictors.length; i++)
+        {
+            if (predictors[i].predict(branchPc, branchTarget) == taken)
+            {
+                correct[i]++;
+                counts.add(branchPc, CORRECT + i, 1);
+            }
+            predictors[i].update(branchPc, branchTarget, taken);
+        }
+    }
+
+    /**
+     * @param binaryStatement an instruction
+     * @return true if it is a conditional branch: beq, bne, blez, bgtz and their likely forms, the bltz and bgez
+     * family including the linking ones, and bc1f and bc1t
+     */
+    static boolean isConditionalBranch(int binaryStatement)
+    {
+        int opcode = binaryStatement >>> 26;
+        int rs = (binaryStatement >>> 21) & 0x1F;
+        int rt = (binaryStatement >>> 16) & 0x1F;
+        return (opcode >= 0x04 && opcode <= 0x07) || (opcode >= 0x14 && opcode <= 0x17)
+            || (opcode == 0x01 && (rt <= 0x03 || (rt >= 0x10 && rt <= 0x13)))
+            || (opcode == 0x11 && rs == 0x08);
+    }
+
+    /**
+     * @return number of conditional branches executed
+     */
+    public long getBranchCount()
+    {
+        return branchCount;
+    }
+
+    /**
+     * @return number of conditional branches taken
+     */
+    public long getTakenCount()
+    {
+        return takenCount;
+    }
+
+    /**
+     * @param predictor a predictor, numbered from 0 in the order given
+     * @return number of branches it predicted correctly
+     */
+    public long getCorrectCount(int predictor)
+    {
+        return correct[predictor];
+    }
+
+    /**
+     * Write the accuracy of each predictor, then of each on the branches executed most.
+     *
+     * @param out where to write
+     * @param program the program run
+     * @param lines number of branches to list
+     */
+    public void writeReport(PrintStream out, MIPSprogram program, int lines)
+    {
+        out.println("Conditional branches: " + branchCount + ", taken: " + takenCount + " ("
+            + percent(takenCount, branchCount) + ")");
+        out.println(String.format("  %-3s %-28s %12s %12s %9s", "#", "predictor", "correct", "mispredicted",
+            "accuracy"));
+        for (int i = 0; i < predictors.length; i++)
+        {
+            out.println(String.format("  %-3d %-28s %12d %12d %9s", i + 1, predictors[i].getSpecification(),
+                correct[i], branchCount - correct[i], percent(correct[i], branchCount)));
+        }
+
+        ArrayList<ProgramStatement> branches = new ArrayList<ProgramStatement>();
+        for (Object element : program.getMachineList())
+        {
+            ProgramStatement statement = (ProgramStatement) element;
+            if (counts.get(statement.getAddress(), EXECUTED) != 0)
+            {
+                branches.add(statement);
+            }
+        }
+        branches.sort((a, b) -> Long.compare(counts.get(b.getAddress(), EXECUTED),
+            counts.get(a.getAddress(), EXECUTED)));
+        StringBuilder columns = new StringBuilder(String.format("%12s %8s", "count", "taken"));
+        for (int i = 0; i < predictors.length; i++)
+        {
+            columns.append(String.format(" %8s", "#" + (i + 1)));
+        }
+        TreeMap<Integer, String> labels = Profiler.labels(program);
+        out.println();
+        out.println(columns + String.format("  %-10s %-24s %-20s  %s", "address", "line", "where", "source"));
+        for (int i = 0; i < Math.min(lines, branches.size()); i++)
+        {
+            ProgramStatement statement = branches.get(i);
+            int address = statement.getAddress();
+            long executed = counts.get(address, EXECUTED);
+            StringBuilder row = new StringBuilder(String.format("%12d %8s", executed,
+                percent(counts.get(address, TAKEN), executed)));
+            for (int predictor = 0; predictor < predictors.length; predictor++)
+            {
+                row.append(String.format(" %8s", percent(counts.get(address, CORRECT + predictor), executed)));
+            }
+            String line = new File(statement.getSourceFile()).getName() + ":" + statement.getSourceLine();
+            out.println(row + String.format("  0x%08x %-24s %-20s  %s", address, line, Profiler.name(labels, address),
+                statement.getSource().trim()));
+        }
+        if (counts.getOther(EXECUTED) != 0)
+        {
+            out.println();
+            out.println("Branches executed outside the text segments: " + counts.getOther(EXECUTED));
+        }
+    }
+
+    private static String percent(long count, long total)
+    {
+        return String.format("%.2f%%", (total == 0) ? 0.0 : 100.0 * count / total);
+    }
+}
@@ -0,0 +1,318 @@
+package mars.simulator;
+
+import java.util.Arrays;
+
+/**
+ * A branch predictor, predicting whether each conditional branch executed is taken and learning from the outcome.
+ * Predictors are created by create() from a specification <code>&lt;kind&gt;[:&lt;entries&gt;[:&lt;history
+ * bits&gt;]]</code>, the number of entries being a power of two:
+ * <ul>
+ * <li>static: always predicts not taken;</li>
+ * <li>1bit:&lt;entries&gt;: a branch history table of bits giving the last outcome of the branches mapping to
+ * them;</li>
+ * <li>2bit:&lt;entries&gt;: a branch history table of two bit saturating counters;</li>
+ * <li>gshare:&lt;entries&gt;:&lt;history bits&gt;: two bit counters indexed by the address of the branch xor'ed with
+ * the global history of the last outcomes;</li>
+ * <li>tournament:&lt;entries&gt;:&lt;history bits&gt;: a local predictor (per branch histories indexing two bit
+ * counters) and a global one (two bit counters indexed by the global history), chosen between by two bit counters
+ * indexed by the global history;</li>
+ * <li>btb:&lt;entries&gt;: a direct mapped branch target buffer, predicting a branch taken to its target if it holds
+ * it.  Taken branches are entered and not taken ones removed.</li>
+ * </ul>
+ * Tables are indexed by the word address of the branch modulo their size, and start predicting not taken.
+ */
+public abstract class BranchPredictor
+{
+    private static final String[] KINDS = {"static", "1bit", "2bit", "gshare", "tournament", "btb"};
+
+    // Number of sizes of each kind
+    private static final int[] SIZES = {0, 1, 1, 2, 2, 1};
+
+    private final String specification;
+
+    private BranchPredictor(String specification)
+    {
+        this.specification = specification;
+    }
+
+    /**
+     * Create a predictor.
+     *
+     * @param specification the predictor, as described above
+     * @return the predictor
+     * @throws IllegalArgumentException if the specification is not valid
+     */
+    public static BranchPredictor create(String specification)
+    {
+        String[] fields = specification.toLowerCase().split(":");
+        int[] sizes = new int[fields.length - 1];
+        try
+        {
+            for (int i = 1; i < fields.length; i++)
+            {
+                sizes[i - 1] = Integer.parseInt(fields[i]);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("invalid branch predictor " + specification);
+        }
+        int kind = Arrays.asList(KINDS).indexOf(fields[0]);
+        if (kind < 0)
+        {
+            throw new IllegalArgumentException("unknown branch predictor " + specification);
+        }
+        if (sizes.length != SIZES[kind])
+        {
+            throw new IllegalArgumentException("branch predictor " + specification
+                + " has the wrong number of sizes");
+        }
+        switch (fields[0])
+        {
+            case "static":
+                return new NotTaken(specification);
+            case "1bit":
+                return new OneBit(specification, entries(sizes[0], specification));
+            case "2bit":
+                return new TwoBit(specification, entries(sizes[0], specification));
+            case "gshare":
+                return new Gshare(specification, entries(sizes[0], specification),
+                    historyBits(sizes[1], specification));
+            case "tournament":
+                return new Tournament(specification, entries(sizes[0], specification),
+                    historyBits(sizes[1], specification));
+            default:
+                return new BranchTargetBuffer(specification, entries(sizes[0], specification));
+        }
+    }
+
+    private static int entries(int entries, String specification)
+    {
+        if (Integer.bitCount(entries) != 1)
+        {
+            throw new IllegalArgumentException("branch predictor " + specification + " size is not a power of two");
+        }
+        return entries;
+    }
+
+    private static int historyBits(int bits, String specification)
+    {
+        if (bits < 1 || bits > 24)
+        {
+            throw new IllegalArgumentException("branch predictor " + specification + " history is not 1 to 24 bits");
+        }
+        return bits;
+    }
+
+    /**
+     * @return the specification the predictor was created from
+     */
+    public String getSpecification()
+    {
+        return specification;
+    }
+
+    /**
+     * Predict a branch.
+     *
+     * @param pc address of the branch
+     * @param target address the branch goes to if taken
+     * @return true if predicted taken
+     */
+    public abstract boolean predict(int pc, int target);
+
+    /**
+     * Learn the outcome of the branch last predicted.
+     *
+     * @param pc address of the branch
+     * @param target address the branch goes to if taken
+     * @param taken true if it was taken
+     */
+    public abstract void update(int pc, int target, boolean taken);
+
+    private static int index(int pc, int entries)
+    {
+        return (pc >>> 2) & (entries - 1);
+    }
+
+    // Two bit saturating counter moved towards an outcome
+    private static byte count(byte counter, boolean taken)
+    {
+        return (byte) (taken ? Math.min(counter + 1, 3) : Math.max(counter - 1, 0));
+    }
+
+    private static final class NotTaken extends BranchPredictor
+    {
+        NotTaken(String specification)
+        {
+            super(specification);
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            return false;
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+        }
+    }
+
+    private static final class OneBit extends BranchPredictor
+    {
+        private final boolean[] table;
+
+        OneBit(String specification, int entries)
+        {
+            super(specification);
+            table = new boolean[entries];
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            return table[index(pc, table.length)];
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+            table[index(pc, table.length)] = taken;
+        }
+    }
+
+    private static final class TwoBit extends BranchPredictor
+    {
+        private final byte[] counters;
+
+        TwoBit(String specification, int entries)
+        {
+            super(specification);
+            counters = new byte[entries];
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            return counters[index(pc, counters.length)] >= 2;
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+            int i = index(pc, counters.length);
+            counters[i] = count(counters[i], taken);
+        }
+    }
+
+    private static final class Gshare extends BranchPredictor
+    {
+        private final byte[] counters;
+
+        private final int historyMask;
+
+        private int history;
+
+        Gshare(String specification, int entries, int historyBits)
+        {
+            super(specification);
+            counters = new byte[entries];
+            historyMask = (1 << historyBits) - 1;
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            return counters[index(pc ^ (history << 2), counters.length)] >= 2;
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+            int i = index(pc ^ (history << 2), counters.length);
+            counters[i] = count(counters[i], taken);
+            history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+        }
+    }
+
+    private static final class Tournament extends BranchPredictor
+    {
+        // Local: history of each branch, indexing counters
+        private final int[] localHistories;
+
+        private final byte[] localCounters;
+
+        // Global: counters indexed by the global history, and the choice between local (0 and 1) and global
+        private final byte[] globalCounters;
+
+        private final byte[] choosers;
+
+        private final int historyMask;
+
+        private int history;
+
+        Tournament(String specification, int entries, int historyBits)
+        {
+            super(specification);
+            historyMask = (1 << historyBits) - 1;
+            localHistories = new int[entries];
+            localCounters = new byte[historyMask + 1];
+            globalCounters = new byte[historyMask + 1];
+            choosers = new byte[historyMask + 1];
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            return (choosers[history] >= 2) ? globalCounters[history] >= 2
+                : localCounters[localHistories[index(pc, localHistories.length)]] >= 2;
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+            int branch = index(pc, localHistories.length);
+            int local = localHistories[branch];
+            boolean localCorrect = (localCounters[local] >= 2) == taken;
+            boolean globalCorrect = (globalCounters[history] >= 2) == taken;
+            if (localCorrect != globalCorrect)
+            {
+                choosers[history] = count(choosers[history], globalCorrect);
+            }
+            localCounters[local] = count(localCounters[local], taken);
+            globalCounters[history] = count(globalCounters[history], taken);
+            localHistories[branch] = ((local << 1) | (taken ? 1 : 0)) & historyMask;
+            history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+        }
+    }
+
+    private static final class BranchTargetBuffer extends BranchPredictor
+    {
+        private final int[] tags;
+
+        private final int[] targets;
+
+        private final boolean[] valid;
+
+        BranchTargetBuffer(String specification, int entries)
+        {
+            super(specification);
+            tags = new int[entries];
+            targets = new int[entries];
+            valid = new boolean[entries];
+        }
+
+        public boolean predict(int pc, int target)
+        {
+            int i = index(pc, tags.length);
+            return valid[i] && tags[i] == pc && targets[i] == target;
+        }
+
+        public void update(int pc, int target, boolean taken)
+        {
+            int i = index(pc, tags.length);
+            if (taken)
+            {
+                valid[i] = true;
+                tags[i] = pc;
+                targets[i] = target;
+            }
+            else if (tags[i] == pc)
+            {
+                valid[i] = false;
+            }
+        }
+    }
+}
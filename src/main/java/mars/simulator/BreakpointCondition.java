@@ -0,0 +1,174 @@
+package mars.simulator;
+
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+
+/**
+ * Condition attached to a breakpoint, compiled once from text into a tree of small objects so that evaluating it at
+ * each hit needs no parsing.  A condition is one or more comparisons joined by <code>&amp;&amp;</code> or
+ * <code>||</code> (evaluated left to right, <code>&amp;&amp;</code> binding tighter).  Each comparison is two operands
+ * and one of <code>== != &lt; &lt;= &gt; &gt;=</code>.  An operand is an integer register (<code>$t0</code>,
+ * <code>$8</code>, <code>hi</code>, <code>lo</code>, <code>pc</code>), an integer literal (decimal or hex), or
+ * <code>hits</code>, the number of times the breakpoint has been reached including this time.  Comparisons are
+ * signed.  Examples: <code>$t0 == 5</code>, <code>hits &gt; 100</code>, <code>$a0 &lt; 0 || $v0 != 0x10</code>.
+ */
+public final class BreakpointCondition
+{
+    private interface Operand
+    {
+        int value(int hits);
+    }
+
+    private interface Predicate
+    {
+        boolean test(int hits);
+    }
+
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+
+    private final String text;
+
+    private final Predicate predicate;
+
+    private BreakpointCondition(String text, Predicate predicate)
+    {
+        this.text = text;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Compile a condition.
+     *
+     * @param text the condition, e.g. <code>$t0 == 5</code>
+     * @return the compiled condition
+     * @throws IllegalArgumentException if the condition is not well formed
+     */
+    public static BreakpointCondition parse(String text)
+    {
+        Predicate any = null;
+        for (String alternative : split(text, "||"))
+        {
+            Predicate all = null;
+            for (String comparison : split(alternative, "&&"))
+            {
+                Predicate p = parseComparison(comparison);
+                if (all == null)
+                {
+                    all = p;
+                }
+                else
+                {
+                    Predicate left = all;
+                    all = hits -> left.test(hits) && p.test(hits);
+                }
+            }
+            if (any == null)
+            {
+                any = all;
+            }
+            else
+            {
+                Predicate left = any;
+                Predicate right = all;
+                any = hits -> left.test(hits) || right.test(hits);
+            }
+        }
+        return new BreakpointCondition(text.trim(), any);
+    }
+
+    /**
+     * Evaluate the condition using the calling thread's registers.
+     *
+     * @param hits number of times the breakpoint has been reached, including this time
+     * @return true if execution should stop
+     */
+    public boolean isSatisfied(int hits)
+    {
+        return predicate.test(hits);
+    }
+
+    public String toString()
+    {
+        return text;
+    }
+
+    private static ArrayList<String> split(String text, String separator)
+    {
+        ArrayList<String> parts = new ArrayList<String>();
+        int start = 0;
+        int at;
+        while ((at = text.indexOf(separator, start)) >= 0)
+        {
+            parts.add(text.substring(start, at));
+            start = at + separator.length();
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static Predicate parseComparison(String comparison)
+    {
+        for (String operator : OPERATORS)
+        {
+            int at = comparison.indexOf(operator);
+            if (at < 0)
+            {
+                continue;
+            }
+            Operand left = parseOperand(comparison.substring(0, at));
+            Operand right = parseOperand(comparison.substring(at + operator.length()));
+            switch (operator)
+            {
+                case "==":
+                    return hits -> left.value(hits) == right.value(hits);
+                case "!=":
+                    return hits -> left.value(hits) != right.value(hits);
+                case "<=":
+                    return hits -> left.value(hits) <= right.value(hits);
+                case ">=":
+                    return hits -> left.value(hits) >= right.value(hits);
+                case "<":
+                    return hits -> left.value(hits) < right.value(hits);
+                default:
+                    return hits -> left.value(hits) > right.value(hits);
+            }
+        }
+        throw new IllegalArgumentException("no comparison operator in \"" + comparison.trim() + "\"");
+    }
+
+    private static Operand parseOperand(String token)
+    {
+        String operand = token.trim();
+        if (operand.isEmpty())
+        {
+            throw new IllegalArgumentException("missing operand");
+        }
+        if (operand.equals("hits"))
+        {
+            return hits -> hits;
+        }
+        int number = RegisterFile.getNumber(operand);
+        if (number < 0)
+        {
+            Register register = RegisterFile.getUserRegister(operand);
+            number = (register == null) ? -1 : register.getNumber();
+        }
+        if (number >= 0)
+        {
+            int registerNumber = number;
+            return hits -> RegisterFile.getValue(registerNumber);
+        }
+        try
+        {
+            int literal = Binary.stringToInt(operand);
+            return hits -> literal;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("\"" + operand + "\" is not a register, number or \"hits\"");
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package mars.simulator;
+
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryAccessListener;
+import mars.mips.hardware.MemoryAccessNotice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Observable;
+
+/**
+ * The breakpoints and watchpoints of one simulation run.
+ * <p>
+ * Breakpoint addresses are kept in bitmaps over text segment word indexes, so checking the program counter after
+ * each instruction costs a few array accesses however many breakpoints are set.  Addresses close to each other share
+ * a bitmap region; breakpoints in both the user and kernel text segments use two regions rather than one spanning
+ * the gap between them.  A breakpoint may carry a <code>BreakpointCondition</code>, evaluated only when its address
+ * is reached, and counts how often it has been reached so conditions can test the hit count.
+ * <p>
+ * A watchpoint stops execution after an instruction executed by the MIPS program writes to a watched address range.
+ * Watchpoints are Memory observers on just the watched range, so stores to other pages are not slowed down.
+ */
+public class Breakpoints implements MemoryAccessListener
+{
+    /** Reasons reported by getStopReason() */
+    public static final int NOT_STOPPED = 0;
+
+    public static final int BREAKPOINT = 1;
+
+    public static final int WATCHPOINT = 2;
+
+    // Breakpoints this many words or more after the end of a region start a new one.
+    private static final int REGION_GAP_WORDS = 1 << 14;
+
+    // Sorted, distinct breakpoint addresses
+    private int[] addresses = new int[0];
+
+    // First word index (address >>> 2) covered by each bitmap region, and the region bitmaps.
+    private int[] regionBase = new int[0];
+
+    private long[][] regionBits = new long[0][];
+
+    // Conditional breakpoints by address.  Addresses without an entry stop unconditionally.
+    private final HashMap<Integer, Conditional> conditions = new HashMap<Integer, Conditional>();
+
+    // Watched ranges as {first address, last address} pairs, both word aligned.
+    private final ArrayList<int[]> watchpoints = new ArrayList<int[]>();
+
+    private Memory watchedMemory;
+
+    private volatile boolean watchpointHit;
+
+    private int watchpointAddress;
+
+    private int stopReason = NOT_STOPPED;
+
+    private int stopAddress;
+
+    private static final class Conditional
+    {
+        final BreakpointCondition condition;
+
+        int hits;
+
+        Conditional(BreakpointCondition condition)
+        {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Create an empty set of breakpoints.
+     */
+    public Breakpoints()
+    {
+    }
+
+    /**
+     * Create a set of unconditional breakpoints.
+     *
+     * @param breakPoints breakpoint addresses in any order, may be null
+     */
+    public Breakpoints(int[] breakPoints)
+    {
+        if (breakPoints != null)
+        {
+            for (int address : breakPoints)
+            {
+                addBreakpoint(address);
+            }
+        }
+    }
+
+    /**
+     * Stop before executing the instruction at the given address.
+     *
+     * @param address instruction address
+     */
+    public void addBreakpoint(int address)
+    {
+        addBreakpoint(address, null);
+    }
+
+    /**
+     * Stop before executing the instruction at the given address if the condition holds.
+     *
+     * @param address instruction address
+     * @param condition condition to test each time the address is reached, or null to always stop
+     */
+    public void addBreakpoint(int address, BreakpointCondition condition)
+    {
+        if (condition == null)
+        {
+            conditions.remove(address);
+        }
+        else
+        {
+            conditions.put(address, new Conditional(condition));
+        }
+        if (Arrays.binarySearch(addresses, address) < 0)
+        {
+            int[] more = Arrays.copyOf(addresses, addresses.length + 1);
+            more[addresses.length] = address;
+            Arrays.sort(more);
+            addresses = more;
+            buildBitmap();
+        }
+    }
+
+    /**
+     * Stop after any instruction that writes to the given range.
+     *
+     * @param firstAddress the low end of the range, word aligned
+     * @param lastAddress the word holding the high end of the range, word aligned
+     * @throws AddressErrorException if an address is not word aligned, or the range is empty or crosses 0x80000000
+     */
+    public void addWatchpoint(int firstAddress, int lastAddress) throws AddressErrorException
+    {
+        if (firstAddress % Memory.WORD_LENGTH_BYTES != 0 || lastAddress % Memory.WORD_LENGTH_BYTES != 0)
+        {
+            throw new AddressErrorException("watchpoint address not aligned on word boundary ",
+                Exceptions.ADDRESS_EXCEPTION_STORE, firstAddress);
+        }
+        if ((firstAddress >= 0 && lastAddress < 0) || lastAddress < firstAddress)
+        {
+            throw new AddressErrorException("invalid watchpoint range ",
+                Exceptions.ADDRESS_EXCEPTION_STORE, firstAddress);
+        }
+        watchpoints.add(new int[]{firstAddress, lastAddress});
+    }
+
+    /**
+     * @return true if there are neither breakpoints nor watchpoints
+     */
+    public boolean isEmpty()
+    {
+        return addresses.length == 0 && watchpoints.isEmpty();
+    }
+
+    /**
+     * @return true if any watchpoint is set
+     */
+    public boolean hasWatchpoints()
+    {
+        return !watchpoints.isEmpty();
+    }
+
+    /**
+     * @return the breakpoint addresses in ascending order, or null if there are none
+     */
+    public int[] getAddresses()
+    {
+        return (addresses.length == 0) ? null : addresses.clone();
+    }
+
+    /**
+     * Test whether the instruction about to be executed is at a breakpoint whose condition, if any, holds.  Counts a
+     * hit for conditional breakpoints.
+     *
+     * @param pc address of the next instruction
+     * @return true if execution should stop
+     */
+    public boolean isBreakpoint(int pc)
+    {
+        if (!isMarked(pc))
+        {
+            return false;
+        }
+        Conditional conditional = conditions.get(pc);
+        if (conditional == null)
+        {
+            return true;
+        }
+        conditional.hits++;
+        return conditional.condition.isSatisfied(conditional.hits);
+    }
+
+    /**
+     * Test whether there is a breakpoint at the given address, without evaluating its condition or counting a hit.
+     *
+     * @param address instruction address
+     * @return true if a breakpoint is set there
+     */
+    public boolean contains(int address)
+    {
+        return isMarked(address);
+    }
+
+    /**
+     * Called by the run loop after each instruction: test whether that instruction wrote to a watched address or the
+     * next one is at a breakpoint whose condition holds.
+     *
+     * @param pc address of the next instruction
+     * @return true if execution should stop
+     */
+    public boolean shouldStop(int pc)
+    {
+        if (watchpointHit)
+        {
+            watchpointHit = false;
+            stopReason = WATCHPOINT;
+            stopAddress = watchpointAddress;
+            return true;
+        }
+        if (isBreakpoint(pc))
+        {
+            stopReason = BREAKPOINT;
+            stopAddress = pc;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return why the most recent run stopped: BREAKPOINT, WATCHPOINT or NOT_STOPPED if neither
+     */
+    public int getStopReason()
+    {
+        return stopReason;
+    }
+
+    /**
+     * @return the breakpoint address, or the watched address written, at which the most recent run stopped
+     */
+    public int getStopAddress()
+    {
+        return stopAddress;
+    }
+
+    /**
+     * Start observing the watched ranges of the given memory.
+     *
+     * @param memory memory of the machine being simulated
+     */
+    void attach(Memory memory)
+    {
+        detach();
+        watchpointHit = false;
+        stopReason = NOT_STOPPED;
+        if (watchpoints.isEmpty())
+        {
+            return;
+        }
+        watchedMemory = memory;
+        try
+        {
+            for (int[] range : watchpoints)
+            {
+                memory.addObserver(this, range[0], range[1]);
+            }
+        }
+        catch (AddressErrorException aee)
+        {
+            // ranges were checked by addWatchpoint
+            System.out.println("Internal Error in Breakpoints.attach: " + aee);
+        }
+    }
+
+    /**
+     * Stop observing memory.
+     */
+    void detach()
+    {
+        if (watchedMemory != null)
+        {
+            watchedMemory.deleteObserver(this);
+            watchedMemory = null;
+        }
+    }
+
+    public void memoryAccessed(int type, int address, int length, int value)
+    {
+        // Thread to execute the MIPS program is named "MIPS", see AccessNotice.accessIsFromMIPS().
+        if (type == AccessNotice.WRITE && Thread.currentThread().getName().startsWith("MIPS"))
+        {
+            watchpointAddress = address;
+            watchpointHit = true;
+        }
+    }
+
+    public void update(Observable observable, Object obj)
+    {
+        AccessNotice notice = (AccessNotice) obj;
+        if (notice.getAccessType() == AccessNotice.WRITE && notice.accessIsFromMIPS())
+        {
+            watchpointAddress = ((MemoryAccessNotice) notice).getAddress();
+            watchpointHit = true;
+        }
+    }
+
+    private boolean isMarked(int pc)
+    {
+        int word = pc >>> 2;
+        for (int r = 0; r < regionBase.length; r++)
+        {
+            int offset = word - regionBase[r];
+            long[] bits = regionBits[r];
+            if (offset >= 0 && (offset >>> 6) < bits.length)
+            {
+                return (pc & 3) == 0 && (bits[offset >>> 6] & (1L << offset)) != 0;
+            }
+        }
+        return false;
+    }
+
+    private void buildBitmap()
+    {
+        ArrayList<int[]> regions = new ArrayList<int[]>(); // {first word, last word}
+        for (int address : addresses)
+        {
+            int word = address >>> 2;
+            int[] last = regions.isEmpty() ? null : regions.get(regions.size() - 1);
+            if (last != null && word >= last[1] && word - last[1] < REGION_GAP_WORDS)
+            {
+                last[1] = word;
+            }
+            else
+            {
+                regions.add(new int[]{word, word});
+            }
+        }
+        int[] base = new int[regions.size()];
+        long[][] bits = new long[regions.size()][];
+        for (int r = 0; r < base.length; r++)
+        {
+            int[] region = regions.get(r);
+            base[r] = region[0];
+            bits[r] = new long[((region[1] - region[0]) >>> 6) + 1];
+        }
+        for (int address : addresses)
+        {
+            int word = address >>> 2;
+            for (int r = 0; r < base.length; r++)
+            {
+                int offset = word - base[r];
+                if (offset >= 0 && (offset >>> 6) < bits[r].length)
+                {
+                    bits[r][offset >>> 6] |= 1L << offset;
+                    break;
+                }
+            }
+        }
+        regionBase = base;
+        regionBits = bits;
+    }
+}
@@ -0,0 +1,377 @@
+package mars.simulator;
+
+import java.util.Arrays;
+
+/**
+ * One level of a cache, simulated for its hits and misses only: no data is stored.  The cache has a power of two
+ * number of sets of the same number of blocks, ways, each holding a power of two number of bytes.  An address maps to
+ * the set given by its block number modulo the number of sets, and is a hit if a valid block of the set has its tag.
+ * Otherwise a block of the set is replaced, chosen by the replacement policy once the set is full.
+ * <p>
+ * A write back cache allocates a block on a write miss and marks it dirty, writing it to the next level when it is
+ * replaced.  A write through cache writes every write to the next level, and does not allocate a block on a write miss.
+ * The next level, if any, is accessed for each fill and write; it may be shared by several caches.
+ * <p>
+ * The state is kept in primitive arrays, so an access allocates nothing.
+ */
+public final class Cache
+{
+    /** Replace the block of the set used least recently */
+    public static final int LRU = 0;
+
+    /** Replace the block of the set filled first */
+    public static final int FIFO = 1;
+
+    /** Replace a block of the set chosen at random, the same for each run */
+    public static final int RANDOM = 2;
+
+    /** Replace the block of the set a binary tree of bits points to, updated on each access to approximate LRU */
+    public static final int PLRU = 3;
+
+    /** Write to the cache only, and to the next level when a dirty block is replaced */
+    public static final int WRITE_BACK = 0;
+
+    /** Write to the cache, if a hit, and to the next level */
+    public static final int WRITE_THROUGH = 1;
+
+    private final int sizeInBytes;
+
+    private final int blockSizeInBytes;
+
+    private final int ways;
+
+    private final int replacement;
+
+    private final int writePolicy;
+
+    private final Cache next;
+
+    private final int blockShift;
+
+    private final int setMask;
+
+    private final int setShift;
+
+    // Per block, at set * ways + way: tag, valid and dirty flags, and time of the last access (LRU) or fill (FIFO)
+    private final int[] tags;
+
+    private final boolean[] valid;
+
+    private final boolean[] dirty;
+
+    private final long[] times;
+
+    // Per set, at set * ways + node for nodes 1 to ways - 1: true if the block to replace is in the node's upper half
+    private final boolean[] plruBits;
+
+    private int random;
+
+    private long time;
+
+    private long reads;
+
+    private long writes;
+
+    private long readMisses;
+
+    private long writeMisses;
+
+    private long writeBacks;
+
+    private int lastBlock;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param sizeInBytes size of the cache, a power of two
+     * @param blockSizeInBytes size of a block, a power of two of at least 4
+     * @param ways number of blocks per set, a power of two, or 0 for a fully associative cache
+     * @param replacement LRU, FIFO, RANDOM or PLRU
+     * @param writePolicy WRITE_BACK or WRITE_THROUGH
+     * @param next next level of the hierarchy, null for memory
+     * @throws IllegalArgumentException if the sizes are not valid
+     */
+    public Cache(int sizeInBytes, int blockSizeInBytes, int ways, int replacement, int writePolicy, Cache next)
+    {
+        if (Integer.bitCount(blockSizeInBytes) != 1 || blockSizeInBytes < 4)
+        {
+            throw new IllegalArgumentException("block size " + blockSizeInBytes + " is not a power of two of at least 4");
+        }
+        if (Integer.bitCount(sizeInBytes) != 1 || sizeInBytes < blockSizeInBytes)
+        {
+            throw new IllegalArgumentException("cache size " + sizeInBytes + " is not a power of two of at least a block");
+        }
+        int blocks = sizeInBytes / blockSizeInBytes;
+        if (ways == 0)
+        {
+            ways = blocks;
+        }
+        if (Integer.bitCount(ways) != 1 || ways > blocks)
+        {
+            throw new IllegalArgumentException("associativity " + ways + " is not a power of two of at most "
+                + blocks + " blocks");
+        }
+        if (replacement < LRU || replacement > PLRU || writePolicy < WRITE_BACK || writePolicy > WRITE_THROUGH)
+        {
+            throw new IllegalArgumentException("invalid cache policy");
+        }
+        this.sizeInBytes = sizeInBytes;
+        this.blockSizeInBytes = blockSizeInBytes;
+        this.ways = ways;
+        this.replacement = replacement;
+        this.writePolicy = writePolicy;
+        this.next = next;
+        this.blockShift = Integer.numberOfTrailingZeros(blockSizeInBytes);
+        this.setMask = blocks / ways - 1;
+        this.setShift = Integer.numberOfTrailingZeros(blocks / ways);
+        this.tags = new int[blocks];
+        this.valid = new boolean[blocks];
+        this.dirty = new boolean[blocks];
+        this.times = new long[blocks];
+        this.plruBits = new boolean[(replacement == PLRU) ? blocks : 0];
+        reset();
+    }
+
+    /**
+     * Empty the cache and clear its counts.
+     */
+    public void reset()
+    {
+        Arrays.fill(valid, false);
+        Arrays.fill(dirty, false);
+        Arrays.fill(plruBits, false);
+        random = 0x2545F491;
+        time = reads = writes = readMisses = writeMisses = writeBacks = 0;
+        lastBlock = -1;
+    }
+
+    /**
+     * Read or write the block holding an address, filling it from the next level on a miss.
+     *
+     * @param address the address
+     * @param write true for a write, false for a read
+     * @return true if a hit
+     */
+    public boolean access(int address, boolean write)
+    {
+        time++;
+        int block = address >>> blockShift;
+        int set = block & setMask;
+        int tag = block >>> setShift;
+        int first = set * ways;
+        if (write)
+        {
+            writes++;
+        }
+        else
+        {
+            reads++;
+        }
+        for (int i = first; i < first + ways; i++)
+        {
+            if (valid[i] && tags[i] == tag)
+            {
+                touch(i, first);
+                if (write)
+                {
+                    if (writePolicy == WRITE_BACK)
+                    {
+                        dirty[i] = true;
+                    }
+                    else if (next != null)
+                    {
+                        next.access(address, true);
+                    }
+                }
+                lastBlock = i;
+                return true;
+            }
+        }
+        if (write)
+        {
+            writeMisses++;
+            if (writePolicy == WRITE_THROUGH)
+            {
+                if (next != null)
+                {
+                    next.access(address, true);
+                }
+                lastBlock = -1;
+                return false;
+            }
+        }
+        else
+        {
+            readMisses++;
+        }
+        int victim = victim(first);
+        if (valid[victim] && dirty[victim])
+        {
+            writeBacks++;
+            if (next != null)
+            {
+                next.access(((tags[victim] << setShift) | set) << blockShift, true);
+            }
+        }
+        if (next != null)
+        {
+            next.access(address, false);
+        }
+        valid[victim] = true;
+        dirty[victim] = write;
+        tags[victim] = tag;
+        times[victim] = time;
+        touch(victim, first);
+        lastBlock = victim;
+        return false;
+    }
+
+    // Record an access to a block for the replacement policy
+    private void touch(int block, int first)
+    {
+        if (replacement == LRU)
+        {
+            times[block] = time;
+        }
+        else if (replacement == PLRU)
+        {
+            // Walk from the root to the block, pointing each node to the other half
+            int way = block - first;
+            int node = 1;
+            for (int half = ways >> 1; half > 0; half >>= 1)
+            {
+                boolean upper = (way & half) != 0;
+                plruBits[first + node] = !upper;
+                node = 2 * node + (upper ? 1 : 0);
+            }
+        }
+    }
+
+    // Block of a set to fill: an empty one, else the one chosen by the replacement policy
+    private int victim(int first)
+    {
+        for (int i = first; i < first + ways; i++)
+        {
+            if (!valid[i])
+            {
+                return i;
+            }
+        }
+        switch (replacement)
+        {
+            case RANDOM:
+                random ^= random << 13;
+                random ^= random >>> 17;
+                random ^= random << 5;
+                return first + (int) ((random & 0xFFFFFFFFL) % ways);
+            case PLRU:
+                int node = 1;
+                while (node < ways)
+                {
+                    node = 2 * node + (plruBits[first + node] ? 1 : 0);
+                }
+                return first + node - ways;
+            default:
+                // LRU and FIFO: the oldest time
+                int oldest = first;
+                for (int i = first + 1; i < first + ways; i++)
+                {
+                    if (times[i] < times[oldest])
+                    {
+                        oldest = i;
+                    }
+                }
+                return oldest;
+        }
+    }
+
+    /**
+     * @return the block accessed by the last access, its number in the cache being set * ways + way, or -1 if it was
+     * a write miss not allocating a block
+     */
+    public int getLastBlock()
+    {
+        return lastBlock;
+    }
+
+    public int getSizeInBytes()
+    {
+        return sizeInBytes;
+    }
+
+    public int getBlockSizeInBytes()
+    {
+        return blockSizeInBytes;
+    }
+
+    public int getWays()
+    {
+        return ways;
+    }
+
+    public int getNumberOfSets()
+    {
+        return setMask + 1;
+    }
+
+    /**
+     * @param address an address
+     * @return the tag of the address in the cache
+     */
+    public int getTag(int address)
+    {
+        return address >>> blockShift >>> setShift;
+    }
+
+    /**
+     * @param address an address
+     * @return the set the address maps to
+     */
+    public int getSet(int address)
+    {
+        return (address >>> blockShift) & setMask;
+    }
+
+    public long getAccessCount()
+    {
+        return reads + writes;
+    }
+
+    public long getMissCount()
+    {
+        return readMisses + writeMisses;
+    }
+
+    public long getHitCount()
+    {
+        return getAccessCount() - getMissCount();
+    }
+
+    public long getReadCount()
+    {
+        return reads;
+    }
+
+    public long getWriteCount()
+    {
+        return writes;
+    }
+
+    public long getReadMissCount()
+    {
+        return readMisses;
+    }
+
+    public long getWriteMissCount()
+    {
+        return writeMisses;
+    }
+
+    /**
+     * @return number of dirty blocks written to the next level when replaced
+     */
+    public long getWriteBackCount()
+    {
+        return writeBacks;
+    }
+}
@@ -0,0 +1,256 @@
+package mars.simulator;
+
+import mars.MachineContext;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Simulating cache hierarchies on the memory accesses of the program, to compare their hit rates.  Several hierarchies
+ * are simulated side by side in the same run.  Each is given as a list of levels separated by commas, such as
+ * "l1i=16k:32:2,l1d=16k:32:4:plru,l2=256k:64:8:lru:wb".  A level is
+ * <code>&lt;name&gt;=&lt;size&gt;:&lt;block size&gt;:&lt;ways&gt;[:&lt;replacement&gt;][:&lt;write policy&gt;]</code>:
+ * <ul>
+ * <li>the name is l1i for the instruction cache, l1d for the data cache, l1 for a cache of both, or l2 for the second
+ * level behind them;</li>
+ * <li>sizes are in bytes, possibly followed by k or m;</li>
+ * <li>ways is the number of blocks per set, or full for a fully associative cache;</li>
+ * <li>replacement is lru (the default), fifo, random or plru;</li>
+ * <li>the write policy is wb for write back (the default) or wt for write through.</li>
+ * </ul>
+ * Instruction fetches are the instructions executed; data accesses are the loads and stores of the program, including
+ * those of syscalls.
+ */
+public final class CacheModel implements ExecutionListener
+{
+    private static final String[] LEVELS = {"l1i", "l1d", "l1", "l2"};
+
+    private static final String[] REPLACEMENTS = {"lru", "fifo", "random", "plru"};
+
+    private static final String[] WRITE_POLICIES = {"wb", "wt"};
+
+    private final MachineContext context;
+
+    private final String[] descriptions;
+
+    // Per hierarchy: instruction cache, data cache (the same for an l1 cache) and second level, each possibly null
+    private final Cache[] instructionCaches;
+
+    private final Cache[] dataCaches;
+
+    private final Cache[] secondLevels;
+
+    private CacheModel(MachineContext context, List<String> hierarchies)
+    {
+        int count = hierarchies.size();
+        this.context = context;
+        this.descriptions = hierarchies.toArray(new String[count]);
+        this.instructionCaches = new Cache[count];
+        this.dataCaches = new Cache[count];
+        this.secondLevels = new Cache[count];
+        for (int i = 0; i < count; i++)
+        {
+            parse(i, descriptions[i]);
+        }
+    }
+
+    /**
+     * Start simulating cache hierarchies on the runs of a machine.
+     *
+     * @param context the machine
+     * @param hierarchies the hierarchies, in the format described above
+     * @return the model, which must be stopped
+     * @throws IllegalArgumentException if a hierarchy is not valid
+     */
+    public static CacheModel start(MachineContext context, List<String> hierarchies)
+    {
+        CacheModel model = new CacheModel(context, hierarchies);
+        context.addExecutionListener(model);
+        return model;
+    }
+
+    /**
+     * Stop simulating.  The counts remain available.
+     */
+    public void stop()
+    {
+        context.removeExecutionListener(this);
+    }
+
+    // Create the caches of a hierarchy
+    private void parse(int hierarchy, String description)
+    {
+        String[] specifications = new String[LEVELS.length];
+        for (String level : description.split(","))
+        {
+            String[] parts = level.trim().toLowerCase().split("=");
+            int index = (parts.length == 2) ? indexOf(LEVELS, parts[0]) : -1;
+            if (index < 0 || specifications[index] != null)
+            {
+                throw new IllegalArgumentException("invalid cache level " + level + " in " + description);
+            }
+            specifications[index] = parts[1];
+        }
+        if (specifications[2] != null && (specifications[0] != null || specifications[1] != null))
+        {
+            throw new IllegalArgumentException("l1 cache together with l1i or l1d in " + description);
+        }
+        if (specifications[0] == null && specifications[1] == null && specifications[2] == null)
+        {
+            throw new IllegalArgumentException("no first level cache in " + description);
+        }
+        Cache next = (specifications[3] == null) ? null : create(specifications[3], null, description);
+        secondLevels[hierarchy] = next;
+        if (specifications[2] != null)
+        {
+            instructionCaches[hierarchy] = dataCaches[hierarchy] = create(specifications[2], next, description);
+        }
+        else
+        {
+            instructionCaches[hierarchy] = (specifications[0] == null) ? null : create(specifications[0], next, description);
+            dataCaches[hierarchy] = (specifications[1] == null) ? null : create(specifications[1], next, description);
+        }
+    }
+
+    // Create a cache given as <size>:<block size>:<ways>[:<replacement>][:<write policy>]
+    private static Cache create(String specification, Cache next, String description)
+    {
+        String[] fields = specification.split(":");
+        if (fields.length < 3 || fields.length > 5)
+        {
+            throw new IllegalArgumentException("invalid cache " + specification + " in " + description);
+        }
+        int replacement = Cache.LRU;
+        int writePolicy = Cache.WRITE_BACK;
+        for (int i = 3; i < fields.length; i++)
+        {
+            if (indexOf(REPLACEMENTS, fields[i]) >= 0)
+            {
+                replacement = indexOf(REPLACEMENTS, fields[i]);
+            }
+            else if (indexOf(WRITE_POLICIES, fields[i]) >= 0)
+            {
+                writePolicy = indexOf(WRITE_POLICIES, fields[i]);
+            }
+            else
+            {
+                throw new IllegalArgumentException("invalid cache policy " + fields[i] + " in " + description);
+            }
+        }
+        try
+        {
+            int ways = fields[2].equals("full") ? 0 : Integer.parseInt(fields[2]);
+            return new Cache(size(fields[0]), size(fields[1]), ways, replacement, writePolicy, next);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("invalid cache " + specification + " in " + description);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(e.getMessage() + " in " + description);
+        }
+    }
+
+    private static int size(String size)
+    {
+        int unit = size.endsWith("k") ? 1 << 10 : size.endsWith("m") ? 1 << 20 : 1;
+        return Integer.parseInt((unit == 1) ? size : size.substring(0, size.length() - 1)) * unit;
+    }
+
+    private static int indexOf(String[] names, String name)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            if (names[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void onRetire(int pc, int binaryStatement)
+    {
+        for (Cache cache : instructionCaches)
+        {
+            if (cache != null)
+            {
+                cache.access(pc, false);
+            }
+        }
+    }
+
+    public void onLoad(int address, int length, int value)
+    {
+        for (Cache cache : dataCaches)
+        {
+            if (cache != null)
+            {
+                cache.access(address, false);
+            }
+        }
+    }
+
+    public void onStore(int address, int length, int oldValue, int newValue)
+    {
+        for (Cache cache : dataCaches)
+        {
+            if (cache != null)
+            {
+                cache.access(address, true);
+            }
+        }
+    }
+
+    /**
+     * @return number of hierarchies simulated
+     */
+    public int getHierarchyCount()
+    {
+        return descriptions.length;
+    }
+
+    /**
+     * @param hierarchy a hierarchy, numbered from 0 in the order given
+     * @param level 0 for the instruction cache, 1 for the data cache (the same for an l1 cache), 2 for the second level
+     * @return the cache, or null if the hierarchy has none at that level
+     */
+    public Cache getCache(int hierarchy, int level)
+    {
+        return (level == 0) ? instructionCaches[hierarchy] : (level == 1) ? dataCaches[hierarchy] : secondLevels[hierarchy];
+    }
+
+    /**
+     * Write the accesses, hits, misses and write backs of each cache of each hierarchy.
+     *
+     * @param out where to write
+     */
+    public void writeReport(PrintStream out)
+    {
+        for (int hierarchy = 0; hierarchy < descriptions.length; hierarchy++)
+        {
+            out.println("Cache hierarchy " + (hierarchy + 1) + ": " + descriptions[hierarchy]);
+            out.println(String.format("  %-5s %12s %12s %12s %9s %12s %12s", "level", "accesses", "hits", "misses",
+                "miss rate", "write misses", "write backs"));
+            boolean unified = instructionCaches[hierarchy] == dataCaches[hierarchy];
+            writeLevel(out, unified ? "L1" : "L1I", instructionCaches[hierarchy]);
+            if (!unified)
+            {
+                writeLevel(out, "L1D", dataCaches[hierarchy]);
+            }
+            writeLevel(out, "L2", secondLevels[hierarchy]);
+        }
+    }
+
+    private static void writeLevel(PrintStream out, String name, Cache cache)
+    {
+        if (cache == null)
+        {
+            return;
+        }
+        double missRate = (cache.getAccessCount() == 0) ? 0.0 : 100.0 * cache.getMissCount() / cache.getAccessCount();
+        out.println(String.format("  %-5s %12d %12d %12d %8.2f%% %12d %12d", name, cache.getAccessCount(),
+            cache.getHitCount(), cache.getMissCount(), missRate, cache.getWriteMissCount(), cache.getWriteBackCount()));
+    }
+}
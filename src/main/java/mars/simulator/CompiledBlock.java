@@ -0,0 +1,302 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProcessingException;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.RegisterFile;
+
+/**
+ * Superclass of the hidden classes generated by <code>BlockCompiler</code>.  Each subclass implements
+ * <code>execute</code> for one basic block of MIPS code, holding the MIPS registers it uses in JVM locals.  The
+ * generated code calls back into the helpers below for register file access, memory access and for anything that can
+ * raise a MIPS exception, so that those paths stay identical to the reference <code>SimulationCode</code>.
+ * <p>
+ * Before any instruction that can raise an exception, the generated code writes its modified registers back to the
+ * register file and sets the program counter past that instruction, exactly as the interpreter would have left them.
+ * An exception therefore leaves the machine in a precise state and the run loop handles it as usual, continuing in
+ * the interpreter.
+ */
+abstract class CompiledBlock
+{
+    private final PredecodedProgram program;
+
+    private final int start;
+
+    private final int length;
+
+    // Instructions completed before the one that raised the last exception, not yet counted by the run loop
+    private int retired;
+
+    CompiledBlock(PredecodedProgram program, int start, int length)
+    {
+        this.program = program;
+        this.start = start;
+        this.length = length;
+    }
+
+    /**
+     * Execute the block.
+     *
+     * @return address of the next instruction to execute
+     * @throws ProcessingException on a runtime exception, with registers and program counter precise.
+     */
+    abstract int execute() throws ProcessingException;
+
+    /**
+     * @return index of the first instruction of this block in its PredecodedProgram
+     */
+    int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return number of MIPS instructions executed by one call to <code>execute</code>
+     */
+    int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Called by the run loop when <code>execute</code> has thrown, to count the instructions of the block that
+     * completed before the one raising the exception.
+     *
+     * @return number of instructions completed, 0 if the block has not raised an exception since the last call
+     */
+    int takeRetired()
+    {
+        int count = retired;
+        retired = 0;
+        return count;
+    }
+
+    // Records that the instruction at index raises the exception, after the ones before it in the block completed.
+    private ProcessingException fault(int index, ProcessingException exception)
+    {
+        retired = index - start;
+        return exception;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Helpers called from generated code.  They must stay non-private.
+
+    static int getRegister(int number)
+    {
+        return RegisterFile.getValue(number);
+    }
+
+    static void setRegister(int number, int value)
+    {
+        RegisterFile.updateRegister(number, value);
+    }
+
+    static void setProgramCounter(int value)
+    {
+        RegisterFile.initializeProgramCounter(value);
+    }
+
+    final int addWithOverflow(int add1, int add2, int index) throws ProcessingException
+    {
+        int sum = add1 + add2;
+        // overflow on A+B detected when A and B have same sign and A+B has other sign.
+        if ((add1 >= 0 && add2 >= 0 && sum < 0)
+            || (add1 < 0 && add2 < 0 && sum >= 0))
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index),
+                "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION));
+        }
+        return sum;
+    }
+
+    final int subtractWithOverflow(int sub1, int sub2, int index) throws ProcessingException
+    {
+        int dif = sub1 - sub2;
+        // overflow on A-B detected when A and B have opposite signs and A-B has B's sign
+        if ((sub1 >= 0 && sub2 < 0 && dif < 0)
+            || (sub1 < 0 && sub2 >= 0 && dif >= 0))
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index),
+                "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION));
+        }
+        return dif;
+    }
+
+    final int loadWord(int address, int index) throws ProcessingException
+    {
+        try
+        {
+            return Globals.getMemory().getWord(address);
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final int loadHalf(int address, int index) throws ProcessingException
+    {
+        try
+        {
+            return Globals.getMemory().getHalf(address) << 16 >> 16;
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final int loadHalfUnsigned(int address, int index) throws ProcessingException
+    {
+        try
+        {
+            return Globals.getMemory().getHalf(address) & 0x0000FFFF;
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final int loadByte(int address, int index) throws ProcessingException
+    {
+        try
+        {
+            return Globals.getMemory().getByte(address) << 24 >> 24;
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final int loadByteUnsigned(int address, int index) throws ProcessingException
+    {
+        try
+        {
+            return Globals.getMemory().getByte(address) & 0x000000FF;
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final void storeWord(int address, int value, int index) throws ProcessingException
+    {
+        try
+        {
+            Globals.getMemory().setWord(address, value);
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final void storeHalf(int address, int value, int index) throws ProcessingException
+    {
+        try
+        {
+            Globals.getMemory().setHalf(address, value & 0x0000FFFF);
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    final void storeByte(int address, int value, int index) throws ProcessingException
+    {
+        try
+        {
+            Globals.getMemory().setByte(address, value & 0x000000FF);
+        }
+        catch (AddressErrorException e)
+        {
+            throw fault(index, new ProcessingException(program.getStatement(index), e));
+        }
+    }
+
+    static int lessThan(int first, int second)
+    {
+        return (first < second) ? 1 : 0;
+    }
+
+    static int lessThanUnsigned(int first, int second)
+    {
+        return (Integer.compareUnsigned(first, second) < 0) ? 1 : 0;
+    }
+
+    // movn and movz: value of destination if the condition fails
+    static int moveIfNonZero(int condition, int value, int current)
+    {
+        return (condition != 0) ? value : current;
+    }
+
+    static int moveIfZero(int condition, int value, int current)
+    {
+        return (condition == 0) ? value : current;
+    }
+
+    static int multiplyHigh(int first, int second)
+    {
+        return (int) (((long) first * (long) second) >> 32);
+    }
+
+    static int multiplyHighUnsigned(int first, int second)
+    {
+        return (int) (((first & 0xFFFFFFFFL) * (second & 0xFFFFFFFFL)) >> 32);
+    }
+
+    // div and divu leave HI and LO unchanged on a zero divisor.
+    static int remainder(int dividend, int divisor, int current)
+    {
+        return (divisor == 0) ? current : dividend % divisor;
+    }
+
+    static int quotient(int dividend, int divisor, int current)
+    {
+        return (divisor == 0) ? current : dividend / divisor;
+    }
+
+    static int remainderUnsigned(int dividend, int divisor, int current)
+    {
+        return (divisor == 0) ? current : Integer.remainderUnsigned(dividend, divisor);
+    }
+
+    static int quotientUnsigned(int dividend, int divisor, int current)
+    {
+        return (divisor == 0) ? current : Integer.divideUnsigned(dividend, divisor);
+    }
+
+    static int branchIfEqual(int first, int second, int taken, int notTaken)
+    {
+        return (first == second) ? taken : notTaken;
+    }
+
+    static int branchIfNotEqual(int first, int second, int taken, int notTaken)
+    {
+        return (first != second) ? taken : notTaken;
+    }
+
+    static int branchIfGreaterOrEqualZero(int value, int taken, int notTaken)
+    {
+        return (value >= 0) ? taken : notTaken;
+    }
+
+    static int branchIfGreaterThanZero(int value, int taken, int notTaken)
+    {
+        return (value > 0) ? taken : notTaken;
+    }
+
+    static int branchIfLessOrEqualZero(int value, int taken, int notTaken)
+    {
+        return (value <= 0) ? taken : notTaken;
+    }
+
+    static int branchIfLessThanZero(int value, int taken, int notTaken)
+    {
+        return (value < 0) ? taken : notTaken;
+    }
+}
@@ -1,5 +1,7 @@
 package mars.simulator;
 
+import mars.MachineContext;
+
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
 
@@ -47,8 +49,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * The eventual branch taken is the original one (as one would hope) but in the meantime the first statement following
  * the sequence of successful branches will constitute the delay slot and will be executed!
  * <p>
- * Since only one pending delayed branch can be taken at a time, everything here is done with statics.  The class itself
- * represents the potential branch.
+ * Since only one pending delayed branch can be taken at a time, the methods are static.  Each MachineContext holds
+ * one instance of the class, representing its potential branch, and the static methods operate on the one belonging
+ * to the calling thread's context.
  *
  * @author Pete Sanderson
  * @version June 2007
@@ -65,9 +68,22 @@ public class DelayedBranch
 
     // Initially nothing is happening.
 
-    private static int state = CLEARED;
+    private int state = CLEARED;
+
+    private int branchTargetAddress = 0;
+
+    /**
+     * Create the delayed branch state of a new MachineContext.
+     */
+    public DelayedBranch()
+    {
+    }
 
-    private static int branchTargetAddress = 0;
+    // State of the calling thread's MachineContext
+    private static DelayedBranch current()
+    {
+        return MachineContext.getCurrent().getDelayedBranch();
+    }
 
     /**
      * Register the fact that a successful branch is to occur.  This is called in the instruction's simulated execution
@@ -80,14 +96,15 @@ public class DelayedBranch
      */
     public static void register(int targetAddress)
     {
+        DelayedBranch branch = current();
         // About as clean as a switch statement can be!
-        switch (state)
+        switch (branch.state)
         {
             case CLEARED:
-                branchTargetAddress = targetAddress;
+                branch.branchTargetAddress = targetAddress;
             case REGISTERED:
             case TRIGGERED:
-                state = REGISTERED;
+                branch.state = REGISTERED;
         }
     }
 
@@ -103,12 +120,13 @@ public class DelayedBranch
      */
     static void trigger()
     {
+        DelayedBranch branch = current();
         // About as clean as a switch statement can be!
-        switch (state)
+        switch (branch.state)
         {
             case REGISTERED:
             case TRIGGERED:
-                state = TRIGGERED;
+                branch.state = TRIGGERED;
             case CLEARED:
         }
     }
@@ -119,8 +137,9 @@ public class DelayedBranch
      */
     static void clear()
     {
-        state = CLEARED;
-        branchTargetAddress = 0;
+        DelayedBranch branch = current();
+        branch.state = CLEARED;
+        branch.branchTargetAddress = 0;
     }
 
     /**
@@ -132,7 +151,7 @@ public class DelayedBranch
 
     static boolean isRegistered()
     {
-        return state == REGISTERED;
+        return current().state == REGISTERED;
     }
 
     /**
@@ -144,7 +163,7 @@ public class DelayedBranch
 
     static boolean isTriggered()
     {
-        return state == TRIGGERED;
+        return current().state == TRIGGERED;
     }
 
 
@@ -158,7 +177,40 @@ public class DelayedBranch
      */
     static int getBranchTargetAddress()
     {
-        return branchTargetAddress;
+        return current().branchTargetAddress;
+    }
+
+    /**
+     * Return whether a branch has been taken and not yet carried out, that is, its delay slot is still to come.  This
+     * method has package visibility.
+     *
+     * @return true if registered or triggered, false if cleared
+     */
+    boolean isPending()
+    {
+        return state != CLEARED;
+    }
+
+    /**
+     * Return the state of this branch, so it can be saved along with the rest of the machine.  This method has package
+     * visibility.
+     *
+     * @return state and target address
+     */
+    int[] save()
+    {
+        return new int[]{state, branchTargetAddress};
+    }
+
+    /**
+     * Restore a state returned by save().  This method has package visibility.
+     *
+     * @param saved state and target address
+     */
+    void restore(int[] saved)
+    {
+        state = saved[0];
+        branchTargetAddress = saved[1];
     }
 
 }  // DelayedBranch
@@ -0,0 +1,56 @@
+package mars.simulator;
+
+/**
+ * Told of what the simulated program does, one primitive callback per event (see
+ * <code>Simulator.addExecutionListener</code> and <code>MachineContext.addExecutionListener</code>).  The callbacks
+ * are made in the simulator thread, with the MachineContext of the run current and its lock held, so they must be
+ * quick and must not wait for the GUI.  A listener added to the Simulator is told of every run started after it was
+ * added, in any MachineContext; one added to a MachineContext only of the runs of that machine.
+ * <p>
+ * The methods do nothing by default, so a listener only overrides those it needs.
+ */
+public interface ExecutionListener
+{
+    /**
+     * Called when an instruction has been executed, after its loads, stores and syscall.  An instruction that raises
+     * an exception handled by the program's exception handler is also reported, as it is counted as executed.
+     *
+     * @param pc address of the instruction
+     * @param binaryStatement binary code of the instruction
+     */
+    default void onRetire(int pc, int binaryStatement)
+    {
+    }
+
+    /**
+     * Called when the program has loaded a value from memory.  Syscalls that read memory report their loads too.
+     *
+     * @param address address loaded from
+     * @param length number of bytes loaded, 1, 2 or 4
+     * @param value value loaded, in the low order bytes
+     */
+    default void onLoad(int address, int length, int value)
+    {
+    }
+
+    /**
+     * Called when the program has stored a value to memory.  Syscalls that write memory report their stores too.
+     *
+     * @param address address stored to
+     * @param length number of bytes stored, 1, 2 or 4
+     * @param oldValue value overwritten, in the low order bytes
+     * @param newValue value stored, in the low order bytes
+     */
+    default void onStore(int address, int length, int oldValue, int newValue)
+    {
+    }
+
+    /**
+     * Called when the program performs a syscall, before the service runs.
+     *
+     * @param number the service number in $v0
+     */
+    default void onSyscall(int number)
+    {
+    }
+}
@@ -0,0 +1,350 @@
+package mars.simulator;
+
+import mars.MachineContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writing a binary trace of the instructions a machine executes, one fixed size record per instruction, for debugging
+ * long runs after the fact (see ExecutionTraceReader).  A record holds the instruction's address and binary code, the
+ * register it writes and the register's new value, and the address and value of the memory it stores to or else loads
+ * from.  The file is written through memory mapped windows, without allocating per instruction.  A trace either grows
+ * with the run or, given a capacity, is a ring holding the last instructions executed.
+ * <p>
+ * The trace records the runs of its machine from when it is created until it is closed.  It is an ExecutionListener,
+ * so block compilation is not used meanwhile.
+ * <p>
+ * File layout, little endian: a header of HEADER_SIZE bytes (magic, version, record size, capacity or 0 if unbounded,
+ * instruction count of the first record and number of records written, kept up to date after every record) followed
+ * by the records.  Record n is at slot n, or n modulo the capacity for a ring.  Each record is the address (4 bytes),
+ * binary code (4), value of the register written (4), memory address (4), memory value (4), register written (1, see
+ * NO_REGISTER, HI, LO and FPU), and access (1, LOAD or STORE or'ed with the length in bytes, 0 if none), padded to
+ * RECORD_SIZE.  An instruction accessing memory more than once, such as a syscall, records its last store, or its last
+ * load if it stores nothing.
+ */
+public final class ExecutionTrace implements ExecutionListener
+{
+    static final int MAGIC = 0x454D5452; // "EMTR"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int RECORD_SIZE = 24;
+
+    // Header fields
+    static final int HEADER_VERSION = 4;
+
+    static final int HEADER_RECORD_SIZE = 8;
+
+    static final int HEADER_CAPACITY = 16;
+
+    static final int HEADER_FIRST_INSTRUCTION = 24;
+
+    static final int HEADER_RECORDS = 32;
+
+    // Record fields
+    static final int PC = 0;
+
+    static final int BINARY_STATEMENT = 4;
+
+    static final int REGISTER_VALUE = 8;
+
+    static final int ADDRESS = 12;
+
+    static final int MEMORY_VALUE = 16;
+
+    static final int REGISTER = 20;
+
+    static final int ACCESS = 21;
+
+    /** Register field of an instruction that writes no register */
+    public static final int NO_REGISTER = 0xFF;
+
+    /** Register field of an instruction writing HI, which also writes LO */
+    public static final int HI = 33;
+
+    /** Register field of an instruction writing LO, and possibly HI, such as mult */
+    public static final int LO = 34;
+
+    /** Register field of an instruction writing floating point register n is FPU + n */
+    public static final int FPU = 64;
+
+    /** Access field flag of a load */
+    public static final int LOAD = 0x10;
+
+    /** Access field flag of a store */
+    public static final int STORE = 0x20;
+
+    // Records mapped at a time
+    static final int WINDOW_RECORDS = 1 << 18;
+
+    private final MachineContext context;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer header;
+
+    // Values of the machine's registers, read after each instruction
+    private final int[] registers;
+
+    private final int[] fpuRegisters;
+
+    private final long capacity;
+
+    private MappedByteBuffer window;
+
+    // Index of the window mapped, -1 if none
+    private long windowIndex = -1;
+
+    private long records;
+
+    // Access of the instruction executing, as in a record's access field, and its address and value
+    private int access;
+
+    private int accessAddress;
+
+    private int accessValue;
+
+    // First error writing the trace, thrown by close()
+    private IOException error;
+
+    // Set by close(): a run in progress may go on telling the trace until it stops
+    private boolean closed;
+
+    private ExecutionTrace(MachineContext context, RandomAccessFile file, long capacity) throws IOException
+    {
+        this.context = context;
+        this.file = file;
+        this.channel = file.getChannel();
+        this.capacity = capacity;
+        this.registers = context.getRegisterBank().getValues();
+        this.fpuRegisters = context.getCoprocessor1RegisterBank().getValues();
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(HEADER_VERSION, VERSION);
+        header.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        header.putLong(HEADER_CAPACITY, capacity);
+        header.putLong(HEADER_FIRST_INSTRUCTION, context.getInstructionCount());
+        header.putLong(HEADER_RECORDS, 0);
+    }
+
+    /**
+     * Start tracing the runs of a machine to a file, replacing it.
+     *
+     * @param context the machine
+     * @param file trace file to write
+     * @param capacity number of records after which the oldest are overwritten, or 0 to keep them all
+     * @return the trace, which must be closed
+     * @throws IOException if the file cannot be written
+     */
+    public static ExecutionTrace record(MachineContext context, File file, long capacity) throws IOException
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("negative trace capacity");
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        ExecutionTrace trace;
+        try
+        {
+            out.setLength(0);
+            trace = new ExecutionTrace(context, out, capacity);
+        }
+        catch (IOException e)
+        {
+            out.close();
+            throw e;
+        }
+        Simulator.getInstance().addExecutionListener(trace);
+        return trace;
+    }
+
+    /**
+     * @return number of records written so far, including those a ring has overwritten
+     */
+    public long getRecordCount()
+    {
+        return records;
+    }
+
+    /**
+     * Stop tracing and close the file.
+     *
+     * @throws IOException if writing the trace failed at any point; it then ends at the failure
+     */
+    public void close() throws IOException
+    {
+        Simulator.getInstance().removeExecutionListener(this);
+        synchronized (context.getLock())
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            window = null;
+            header.force();
+            try
+            {
+                // Drop the unused end of the last window
+                long slots = (capacity == 0) ? records : Math.min(records, capacity);
+                file.setLength(HEADER_SIZE + slots * RECORD_SIZE);
+            }
+            catch (IOException e)
+            {
+                // Some systems do not shrink a mapped file; the header still gives the records written
+            }
+            file.close();
+        }
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    public void onLoad(int address, int length, int value)
+    {
+        if ((access & STORE) == 0 && MachineContext.getCurrent() == context)
+        {
+            access = LOAD | length;
+            accessAddress = address;
+            accessValue = value;
+        }
+    }
+
+    public void onStore(int address, int length, int oldValue, int newValue)
+    {
+        if (MachineContext.getCurrent() == context)
+        {
+            access = STORE | length;
+            accessAddress = address;
+            accessValue = newValue;
+        }
+    }
+
+    public void onRetire(int pc, int binaryStatement)
+    {
+        if (closed || error != null || MachineContext.getCurrent() != context)
+        {
+            return;
+        }
+        long slot = (capacity == 0) ? records : records % capacity;
+        if (slot / WINDOW_RECORDS != windowIndex && !mapWindow(slot / WINDOW_RECORDS))
+        {
+            return;
+        }
+        int register = destinationRegister(binaryStatement);
+        int offset = (int) (slot % WINDOW_RECORDS) * RECORD_SIZE;
+        window.putInt(offset + PC, pc);
+        window.putInt(offset + BINARY_STATEMENT, binaryStatement);
+        window.putInt(offset + REGISTER_VALUE, (register == NO_REGISTER) ? 0
+            : (register >= FPU) ? fpuRegisters[register - FPU] : registers[register]);
+        window.putInt(offset + ADDRESS, accessAddress);
+        window.putInt(offset + MEMORY_VALUE, accessValue);
+        window.put(offset + REGISTER, (byte) register);
+        window.put(offset + ACCESS, (byte) access);
+        access = accessAddress = accessValue = 0;
+        header.putLong(HEADER_RECORDS, ++records);
+    }
+
+    // Map the window holding the given slots, extending the file if need be.  Returns false and ends the trace on
+    // failure.
+    private boolean mapWindow(long index)
+    {
+        long first = index * WINDOW_RECORDS;
+        long length = (capacity == 0) ? WINDOW_RECORDS : Math.min(WINDOW_RECORDS, capacity - first);
+        try
+        {
+            window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE,
+                length * RECORD_SIZE);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowIndex = index;
+            return true;
+        }
+        catch (IOException e)
+        {
+            error = e;
+            return false;
+        }
+    }
+
+    /**
+     * Find the register an instruction writes, from its binary code.  For instructions writing two registers, such as
+     * mult or ldc1, one of them is given.
+     *
+     * @param binaryStatement the instruction
+     * @return the register number, HI, LO, FPU plus the floating point register number, or NO_REGISTER
+     */
+    static int destinationRegister(int binaryStatement)
+    {
+        int rs = (binaryStatement >>> 21) & 0x1F;
+        int rt = (binaryStatement >>> 16) & 0x1F;
+        int rd = (binaryStatement >>> 11) & 0x1F;
+        int funct = binaryStatement & 0x3F;
+        switch (binaryStatement >>> 26)
+        {
+            case 0x00: // special
+                switch (funct)
+                {
+                    case 0x08: // jr
+                    case 0x0C: // syscall
+                    case 0x0D: // break
+                        return NO_REGISTER;
+                    case 0x11: // mthi
+                        return HI;
+                    case 0x13: // mtlo
+                    case 0x18: // mult
+                    case 0x19: // multu
+                    case 0x1A: // div
+                    case 0x1B: // divu
+                        return LO;
+                    default:
+                        // traps
+                        return (funct >= 0x30 && funct <= 0x36) ? NO_REGISTER : rd;
+                }
+            case 0x01: // regimm: bltzal and bgezal link
+                return (rt == 0x10 || rt == 0x11) ? 31 : NO_REGISTER;
+            case 0x03: // jal
+                return 31;
+            case 0x10: // coprocessor 0: mfc0
+                return (rs == 0x00) ? rt : NO_REGISTER;
+            case 0x11: // coprocessor 1
+                if (rs == 0x00) // mfc1
+                {
+                    return rt;
+                }
+                if (rs == 0x04) // mtc1
+                {
+                    return FPU + rd;
+                }
+                if (rs == 0x10 || rs == 0x11 || rs == 0x14) // arithmetic, conversion and move, but not compare
+                {
+                    return (funct >= 0x30) ? NO_REGISTER : FPU + ((binaryStatement >>> 6) & 0x1F);
+                }
+                return NO_REGISTER;
+            case 0x1C: // special 2
+                return (funct == 0x02 || funct == 0x20 || funct == 0x21) ? rd : LO; // mul, clz, clo, else madd etc.
+            case 0x31: // lwc1
+            case 0x35: // ldc1
+                return FPU + rt;
+            default:
+                int opcode = binaryStatement >>> 26;
+                if ((opcode >= 0x08 && opcode <= 0x0F) // immediate arithmetic and logic
+                    || (opcode >= 0x20 && opcode <= 0x26) // loads
+                    || opcode == 0x30 || opcode == 0x38) // ll, sc
+                {
+                    return rt;
+                }
+                return NO_REGISTER; // j, branches, stores
+        }
+    }
+}
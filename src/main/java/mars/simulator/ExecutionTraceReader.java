@@ -0,0 +1,295 @@
+package mars.simulator;
+
+import mars.ProgramStatement;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterBank;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Reading a trace written by ExecutionTrace.  Records are identified by the instruction count of the machine before
+ * executing them, so the first record of a trace started at the beginning of a program is record 0.  A ring trace only
+ * keeps the records from getFirstInstruction() on.  Select a record with seek(), then read its fields; nothing is
+ * allocated per record.
+ */
+public final class ExecutionTraceReader
+{
+    // For the names of the registers written
+    private static final Register[] REGISTERS = RegisterFile.createRegisters(new RegisterBank(RegisterFile.REGISTER_COUNT));
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long capacity;
+
+    // Instruction count of the first record written
+    private final long start;
+
+    private final long records;
+
+    private MappedByteBuffer window;
+
+    // Index of the window mapped, -1 if none
+    private long windowIndex = -1;
+
+    // Offset of the selected record in the window
+    private int offset;
+
+    // Printable basic statements by address and binary code, for export()
+    private final HashMap<Long, String> statements = new HashMap<Long, String>();
+
+    private ExecutionTraceReader(RandomAccessFile file, long capacity, long start, long records)
+    {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.capacity = capacity;
+        this.start = start;
+        this.records = records;
+    }
+
+    /**
+     * Open a trace file.  A trace still being written can be read, up to the records written when it was opened.
+     *
+     * @param file the trace
+     * @return the reader, which must be closed
+     * @throws IOException if reading fails or the file is not a trace
+     */
+    public static ExecutionTraceReader open(File file) throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            if (in.length() < ExecutionTrace.HEADER_SIZE)
+            {
+                throw new IOException(file + " is not an execution trace");
+            }
+            MappedByteBuffer header = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, ExecutionTrace.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != ExecutionTrace.MAGIC)
+            {
+                throw new IOException(file + " is not an execution trace");
+            }
+            int version = header.getInt(ExecutionTrace.HEADER_VERSION);
+            if (version != ExecutionTrace.VERSION || header.getInt(ExecutionTrace.HEADER_RECORD_SIZE) != ExecutionTrace.RECORD_SIZE)
+            {
+                throw new IOException(file + " is a trace of unsupported version " + version);
+            }
+            long capacity = header.getLong(ExecutionTrace.HEADER_CAPACITY);
+            long records = header.getLong(ExecutionTrace.HEADER_RECORDS);
+            long slots = (capacity == 0) ? records : Math.min(records, capacity);
+            if (capacity < 0 || records < 0
+                || in.length() < ExecutionTrace.HEADER_SIZE + slots * ExecutionTrace.RECORD_SIZE)
+            {
+                throw new IOException(file + " is truncated");
+            }
+            return new ExecutionTraceReader(in, capacity, header.getLong(ExecutionTrace.HEADER_FIRST_INSTRUCTION), records);
+        }
+        catch (IOException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    public void close() throws IOException
+    {
+        window = null;
+        file.close();
+    }
+
+    /**
+     * @return instruction count of the oldest record kept
+     */
+    public long getFirstInstruction()
+    {
+        return start + ((capacity != 0 && records > capacity) ? records - capacity : 0);
+    }
+
+    /**
+     * @return instruction count just after the last record
+     */
+    public long getEndInstruction()
+    {
+        return start + records;
+    }
+
+    /**
+     * Select a record.
+     *
+     * @param instruction instruction count of the record, from getFirstInstruction() to getEndInstruction() - 1
+     * @throws IOException if reading fails
+     */
+    public void seek(long instruction) throws IOException
+    {
+        if (instruction < getFirstInstruction() || instruction >= getEndInstruction())
+        {
+            throw new IllegalArgumentException("instruction " + instruction + " is not in the trace");
+        }
+        long record = instruction - start;
+        long slot = (capacity == 0) ? record : record % capacity;
+        long index = slot / ExecutionTrace.WINDOW_RECORDS;
+        if (index != windowIndex)
+        {
+            long first = index * ExecutionTrace.WINDOW_RECORDS;
+            long slots = (capacity == 0) ? records : Math.min(records, capacity);
+            long length = Math.min(ExecutionTrace.WINDOW_RECORDS, slots - first);
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                ExecutionTrace.HEADER_SIZE + first * ExecutionTrace.RECORD_SIZE, length * ExecutionTrace.RECORD_SIZE);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowIndex = index;
+        }
+        offset = (int) (slot % ExecutionTrace.WINDOW_RECORDS) * ExecutionTrace.RECORD_SIZE;
+    }
+
+    /**
+     * @return address of the selected instruction
+     */
+    public int getPc()
+    {
+        return window.getInt(offset + ExecutionTrace.PC);
+    }
+
+    /**
+     * @return binary code of the selected instruction
+     */
+    public int getBinaryStatement()
+    {
+        return window.getInt(offset + ExecutionTrace.BINARY_STATEMENT);
+    }
+
+    /**
+     * @return register the selected instruction writes: a register number, ExecutionTrace.HI or LO,
+     * ExecutionTrace.FPU plus a floating point register number, or ExecutionTrace.NO_REGISTER
+     */
+    public int getRegister()
+    {
+        return window.get(offset + ExecutionTrace.REGISTER) & 0xFF;
+    }
+
+    /**
+     * @return value of the register written after the instruction, 0 if none
+     */
+    public int getRegisterValue()
+    {
+        return window.getInt(offset + ExecutionTrace.REGISTER_VALUE);
+    }
+
+    /**
+     * @return ExecutionTrace.LOAD, ExecutionTrace.STORE or 0 if the instruction did not access memory
+     */
+    public int getAccess()
+    {
+        return window.get(offset + ExecutionTrace.ACCESS) & (ExecutionTrace.LOAD | ExecutionTrace.STORE);
+    }
+
+    /**
+     * @return number of bytes loaded or stored, 0 if none
+     */
+    public int getAccessLength()
+    {
+        return window.get(offset + ExecutionTrace.ACCESS) & 0x0F;
+    }
+
+    /**
+     * @return address loaded from or stored to
+     */
+    public int getAddress()
+    {
+        return window.getInt(offset + ExecutionTrace.ADDRESS);
+    }
+
+    /**
+     * @return value loaded or stored
+     */
+    public int getMemoryValue()
+    {
+        return window.getInt(offset + ExecutionTrace.MEMORY_VALUE);
+    }
+
+    /**
+     * Write records as text, one line per instruction: instruction count, address, binary code, basic statement,
+     * register written and its new value, and memory loaded or stored.  Or as CSV with a header line and the same
+     * columns.
+     *
+     * @param first instruction count of the first record, clamped to those kept
+     * @param last instruction count of the last record, clamped to those kept
+     * @param out where to write
+     * @param csv true for CSV, false for text
+     * @throws IOException if reading fails
+     */
+    public void export(long first, long last, PrintStream out, boolean csv) throws IOException
+    {
+        if (csv)
+        {
+            out.println("instruction,pc,binary,statement,register,register_value,access,address,memory_value");
+        }
+        first = Math.max(first, getFirstInstruction());
+        last = Math.min(last, getEndInstruction() - 1);
+        for (long instruction = first; instruction <= last; instruction++)
+        {
+            seek(instruction);
+            String statement = statement(getPc(), getBinaryStatement());
+            String register = "";
+            String registerValue = "";
+            if (getRegister() != ExecutionTrace.NO_REGISTER)
+            {
+                register = registerName(getRegister());
+                registerValue = Binary.intToHexString(getRegisterValue());
+            }
+            String access = (getAccess() == ExecutionTrace.LOAD) ? "load" + getAccessLength()
+                : (getAccess() == ExecutionTrace.STORE) ? "store" + getAccessLength() : "";
+            String address = access.isEmpty() ? "" : Binary.intToHexString(getAddress());
+            String memoryValue = access.isEmpty() ? "" : Binary.intToHexString(getMemoryValue());
+            if (csv)
+            {
+                out.println(instruction + "," + Binary.intToHexString(getPc()) + ","
+                    + Binary.intToHexString(getBinaryStatement()) + ",\"" + statement + "\"," + register + ","
+                    + registerValue + "," + access + "," + address + "," + memoryValue);
+            }
+            else
+            {
+                StringBuilder line = new StringBuilder();
+                line.append(String.format("%12d  %s  %s  ", instruction, Binary.intToHexString(getPc()),
+                    Binary.intToHexString(getBinaryStatement())));
+                line.append((register.isEmpty() && access.isEmpty()) ? statement : String.format("%-28s", statement));
+                if (!register.isEmpty())
+                {
+                    line.append("  ").append(register).append(" = ").append(registerValue);
+                }
+                if (!access.isEmpty())
+                {
+                    line.append("  ").append(access).append(" [").append(address).append("] ").append(memoryValue);
+                }
+                out.println(line);
+            }
+        }
+    }
+
+    // Basic statement of the instruction, decoded once per address and binary code.
+    private String statement(int pc, int binaryStatement)
+    {
+        Long key = ((long) pc << 32) | (binaryStatement & 0xFFFFFFFFL);
+        String statement = statements.get(key);
+        if (statement == null)
+        {
+            statement = new ProgramStatement(binaryStatement, pc).getPrintableBasicAssemblyStatement().trim();
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    private static String registerName(int register)
+    {
+        return (register >= ExecutionTrace.FPU) ? "$f" + (register - ExecutionTrace.FPU) : REGISTERS[register].getName();
+    }
+}
@@ -0,0 +1,520 @@
+package mars.simulator;
+
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.DeviceWriteListener;
+import mars.mips.instructions.syscalls.Syscall;
+import mars.mips.instructions.syscalls.SyscallHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Recording everything from outside the machine that a run depends on, so that the run can be repeated exactly: the
+ * effect of each syscall whose result is not determined by the machine (console and file input, dialogs, the time,
+ * random numbers, sleeping), each store made by a tool such as a keyboard for memory mapped I/O, and each external
+ * interrupt, all tagged with the instruction count at which they happened.  Replaying the log applies them at the same
+ * instruction counts instead, without reading the console or keyboard, asking the clock or sleeping, so a run can be
+ * reproduced from the command line at full speed.  Other syscalls, such as printing, are performed as usual.
+ * <p>
+ * A log belongs to a MachineContext from record() or replay() until close().  The simulator calls it at the start and
+ * end of each run.  While recording, compiled blocks are not used so that tool stores are placed on the instruction
+ * they happened at.  Stores made while the program is not running are applied at the start of the next run.  Recording
+ * stops if a run starts before the end of the log, for instance after going back with time travel or resetting the
+ * program.  Changes made to registers by hand or by a tool are not recorded.  The program is assumed to be the same
+ * when replaying; if a syscall is not where the log has one, the run ends with an error.
+ */
+public final class InputLog implements SyscallHandler, DeviceWriteListener
+{
+    private static final int MAGIC = 0x454D494C; // "EMIL"
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Record kinds
+    private static final int SYSCALL = 1;
+
+    private static final int WRITE = 2;
+
+    private static final int RAW_WRITE = 3;
+
+    private static final int INTERRUPT = 4;
+
+    // Names of the services whose result comes from outside the machine, or which wait for something outside it
+    private static final HashSet<String> INPUT_SERVICES = new HashSet<String>(Arrays.asList(
+        "ReadInt", "ReadFloat", "ReadDouble", "ReadString", "ReadChar", "Read", "Time", "Sleep", "MidiOutSync",
+        "RandSeed", "RandInt", "RandIntRange", "RandFloat", "RandDouble",
+        "ConfirmDialog", "InputDialogInt", "InputDialogFloat", "InputDialogDouble", "InputDialogString",
+        "MessageDialog", "MessageDialogInt", "MessageDialogFloat", "MessageDialogDouble", "MessageDialogString"));
+
+    private final MachineContext context;
+
+    private final File file;
+
+    // Where records are written while recording, null when replaying or once recording has stopped
+    private DataOutputStream out;
+
+    private final boolean replaying;
+
+    // Instruction count of the last record written
+    private long lastPosition;
+
+    // First failure to write, reported by close()
+    private IOException error;
+
+    // Recorded syscalls and device events when replaying, in order of instruction count
+    private final ArrayList<SyscallEffect> syscalls = new ArrayList<SyscallEffect>();
+
+    private final ArrayList<DeviceEvent> events = new ArrayList<DeviceEvent>();
+
+    // Index of the first syscall and device event at or after the current instruction
+    private int nextSyscall;
+
+    private int nextEvent;
+
+    private InputLog(MachineContext context, File file, DataOutputStream out)
+    {
+        this.context = context;
+        this.file = file;
+        this.out = out;
+        this.replaying = (out == null);
+    }
+
+    /**
+     * Start recording the input of a machine's runs.
+     *
+     * @param context the machine, not running
+     * @param file log file to write
+     * @return the log, which must be closed when the last run to record has ended
+     * @throws IOException if the file cannot be written
+     */
+    public static InputLog record(MachineContext context, File file) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        InputLog log = new InputLog(context, file, out);
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(context.getInstructionCount());
+        }
+        catch (IOException e)
+        {
+            out.close();
+            throw e;
+        }
+        log.lastPosition = context.getInstructionCount();
+        context.getMemory().setDeviceWriteListener(log, null);
+        context.setInputLog(log);
+        return log;
+    }
+
+    /**
+     * Start replaying a log in a machine's runs.  The machine must be in the state it was in when recording started,
+     * with the same program.
+     *
+     * @param context the machine, not running
+     * @param file log file written by record()
+     * @return the log
+     * @throws IOException if the file cannot be read or is not an input log
+     */
+    public static InputLog replay(MachineContext context, File file) throws IOException
+    {
+        InputLog log = new InputLog(context, file, null);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try
+        {
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not an input log");
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException(file + " is an input log of unsupported version " + version);
+            }
+            long position = in.readLong();
+            try
+            {
+                while (true)
+                {
+                    int kind = in.read();
+                    if (kind < 0)
+                    {
+                        break;
+                    }
+                    position += readUnsigned(in);
+                    switch (kind)
+                    {
+                        case SYSCALL:
+                            log.syscalls.add(SyscallEffect.read(in, position));
+                            break;
+                        case WRITE:
+                            log.events.add(new DeviceEvent(position, kind, in.readInt(), in.readUnsignedByte(),
+                                in.readInt()));
+                            break;
+                        case RAW_WRITE:
+                            log.events.add(new DeviceEvent(position, kind, in.readInt(), 4, in.readInt()));
+                            break;
+                        case INTERRUPT:
+                            log.events.add(new DeviceEvent(position, kind, 0, 0, in.readInt()));
+                            break;
+                        default:
+                            throw new IOException(file + " has an invalid record");
+                    }
+                }
+            }
+            catch (EOFException e)
+            {
+                // A log is cut short if recording did not end properly; replay what there is.
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        context.setInputLog(log);
+        return log;
+    }
+
+    /**
+     * @return true if replaying, false if recording
+     */
+    public boolean isReplaying()
+    {
+        return replaying;
+    }
+
+    /**
+     * @return true if the machine's runs are being recorded
+     */
+    public boolean isRecording()
+    {
+        return out != null;
+    }
+
+    /**
+     * @return the log file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Stop recording or replaying.  Not while the machine is running.
+     *
+     * @throws IOException if writing the log failed
+     */
+    public void close() throws IOException
+    {
+        if (context.getInputLog() == this)
+        {
+            context.setInputLog(null);
+        }
+        stopRecording();
+        IOException e = error;
+        error = null;
+        if (e != null)
+        {
+            throw e;
+        }
+    }
+
+    /**
+     * Called by the simulator when a run starts, in the machine's thread.
+     *
+     * @return true if the run is recorded or replayed, in which case the simulator calls interrupted() when it takes
+     * an external interrupt, applyEvents() when the instruction count reaches getNextEvent() and finish() when the run
+     * ends
+     */
+    boolean start()
+    {
+        long position = context.getInstructionCount();
+        if (replaying)
+        {
+            nextSyscall = 0;
+            while (nextSyscall < syscalls.size() && syscalls.get(nextSyscall).position < position)
+            {
+                nextSyscall++;
+            }
+            nextEvent = 0;
+            while (nextEvent < events.size() && events.get(nextEvent).position < position)
+            {
+                nextEvent++;
+            }
+            applyEvents();
+        }
+        else if (out == null)
+        {
+            return false;
+        }
+        else if (position < lastPosition)
+        {
+            // Gone back: what happens from here would not follow the log.
+            stopRecording();
+            return false;
+        }
+        else
+        {
+            context.getMemory().setDeviceWriteListener(this, Thread.currentThread());
+        }
+        context.setSyscallHandler(this);
+        return true;
+    }
+
+    /**
+     * Called by the simulator when a run that was recorded or replayed ends, in the machine's thread.
+     */
+    void finish()
+    {
+        context.setSyscallHandler(null);
+        if (out != null)
+        {
+            context.getMemory().setDeviceWriteListener(this, null);
+            synchronized (this)
+            {
+                try
+                {
+                    out.flush();
+                }
+                catch (IOException e)
+                {
+                    failed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return instruction count at which the simulator is to call applyEvents(), Long.MAX_VALUE if none
+     */
+    long getNextEvent()
+    {
+        return (nextEvent < events.size()) ? events.get(nextEvent).position : Long.MAX_VALUE;
+    }
+
+    /**
+     * Called by the simulator between two instructions of a replayed run to apply the device events recorded there.
+     */
+    void applyEvents()
+    {
+        long position = context.getInstructionCount();
+        while (nextEvent < events.size() && events.get(nextEvent).position <= position)
+        {
+            DeviceEvent event = events.get(nextEvent++);
+            try
+            {
+                switch (event.kind)
+                {
+                    case WRITE:
+                        context.getMemory().set(event.address, event.value, event.length);
+                        break;
+                    case RAW_WRITE:
+                        context.getMemory().setRawWord(event.address, event.value);
+                        break;
+                    default:
+                        context.setExternalInterruptingDevice(event.value);
+                        break;
+                }
+            }
+            catch (AddressErrorException e)
+            {
+                // the address was written when recording, so it is valid
+            }
+        }
+    }
+
+    /**
+     * Called by the simulator when it takes an external interrupt, before the instruction it interrupts.
+     *
+     * @param cause the interrupting device's cause code
+     */
+    synchronized void interrupted(int cause)
+    {
+        if (out != null)
+        {
+            try
+            {
+                writeHeader(INTERRUPT, context.getInstructionCount());
+                out.writeInt(cause);
+            }
+            catch (IOException e)
+            {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Perform a syscall: if its service takes input from outside the machine, record its effect, or apply the effect
+     * recorded when replaying, otherwise call the service.
+     */
+    public void simulate(Syscall service, ProgramStatement statement) throws ProcessingException
+    {
+        if (!INPUT_SERVICES.contains(service.getName()))
+        {
+            service.simulate(statement);
+            return;
+        }
+        if (replaying)
+        {
+            long position = context.getInstructionCount();
+            SyscallEffect effect = (nextSyscall < syscalls.size()) ? syscalls.get(nextSyscall) : null;
+            if (effect == null || effect.position != position || effect.service != service.getNumber())
+            {
+                throw new ProcessingException(statement, "input log " + file.getName()
+                    + " has no input for this syscall (" + service.getName() + ")", Exceptions.SYSCALL_EXCEPTION);
+            }
+            nextSyscall++;
+            effect.apply(context, statement);
+            return;
+        }
+        SyscallEffect effect = SyscallEffect.record(context, service, statement, null);
+        synchronized (this)
+        {
+            if (out != null)
+            {
+                try
+                {
+                    writeHeader(SYSCALL, effect.position);
+                    effect.write(out);
+                }
+                catch (IOException e)
+                {
+                    failed(e);
+                }
+            }
+        }
+        effect.throwException(statement);
+    }
+
+    /**
+     * Record a store made by a tool.
+     */
+    public synchronized void deviceWrite(int address, int length, int value, boolean raw, boolean duringInstruction)
+    {
+        if (out == null)
+        {
+            return;
+        }
+        // A store made during an instruction is seen from the next one on.
+        long position = context.getInstructionCount() + (duringInstruction ? 1 : 0);
+        if (position < lastPosition)
+        {
+            // The machine has gone back, recording stops at the next run.
+            return;
+        }
+        try
+        {
+            writeHeader(raw ? RAW_WRITE : WRITE, position);
+            out.writeInt(address);
+            if (!raw)
+            {
+                out.writeByte(length);
+            }
+            out.writeInt(value);
+        }
+        catch (IOException e)
+        {
+            failed(e);
+        }
+    }
+
+    // Records hold their kind and the increase in instruction count since the previous record.
+    private void writeHeader(int kind, long position) throws IOException
+    {
+        position = Math.max(position, lastPosition);
+        out.writeByte(kind);
+        writeUnsigned(out, position - lastPosition);
+        lastPosition = position;
+    }
+
+    private synchronized void stopRecording()
+    {
+        if (out == null)
+        {
+            return;
+        }
+        context.getMemory().setDeviceWriteListener(null, null);
+        try
+        {
+            out.close();
+        }
+        catch (IOException e)
+        {
+            failed(e);
+        }
+        out = null;
+    }
+
+    private void failed(IOException e)
+    {
+        if (error == null)
+        {
+            error = e;
+        }
+    }
+
+    // Unsigned variable length integer, 7 bits per byte, least significant first.
+    private static void writeUnsigned(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readUnsigned(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("invalid instruction count in input log");
+    }
+
+    // A store made by a tool or an external interrupt.
+    private static final class DeviceEvent
+    {
+        final long position;
+
+        final int kind;
+
+        final int address;
+
+        final int length;
+
+        final int value;
+
+        DeviceEvent(long position, int kind, int address, int length, int value)
+        {
+            this.position = position;
+            this.kind = kind;
+            this.address = address;
+            this.length = length;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package mars.simulator;
+
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.mips.hardware.MemoryConfigurations;
+import mars.util.SystemIO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Saving the state of a machine to a binary snapshot file and loading it back, for instance to run the long
+ * initialization phase of a program once and start later runs from where it ended.  A snapshot holds a MachineState
+ * (allocated memory pages, text segment, registers, coprocessors 0 and 1, heap address, pending delayed branch, exit
+ * code and instruction count) and the name, flags and position of each file the program has open.  It does not hold
+ * the program's source: load it into a machine with the same program assembled so that labels and source lines still
+ * apply.  Random number streams and console input already read are not saved.
+ * <p>
+ * Call from a thread using the machine's MachineContext, since the open files are those of the current one.
+ */
+public final class MachineSnapshot
+{
+    private static final int MAGIC = 0x454D5353; // "EMSS"
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private MachineSnapshot()
+    {
+    }
+
+    /**
+     * Save the state of a machine that is not running.
+     *
+     * @param context the machine
+     * @param file snapshot file to write
+     * @throws IOException if writing fails
+     */
+    public static void save(MachineContext context, File file) throws IOException
+    {
+        MachineState state = MachineState.capture(context);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+            out.writeBoolean(context.getMemory().getByteOrder());
+            state.write(out);
+            SystemIO.saveOpenFiles(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Put a machine that is not running into the state saved in a snapshot file.  Register and memory observers are
+     * not notified, so windows showing the machine must be updated afterwards.
+     *
+     * @param context the machine, with the same memory configuration and byte order as the one saved
+     * @param file snapshot file to read
+     * @throws IOException if reading fails or the file is not a snapshot for this machine; the machine is not changed
+     * unless a file the program had open cannot be opened again
+     */
+    public static void load(MachineContext context, File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try
+        {
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a machine snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException(file + " is a snapshot of unsupported version " + version);
+            }
+            String configuration = in.readUTF();
+            if (!configuration.equals(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier()))
+            {
+                throw new IOException(file + " was saved with memory configuration " + configuration);
+            }
+            if (in.readBoolean() != context.getMemory().getByteOrder())
+            {
+                throw new IOException(file + " was saved with the other byte order");
+            }
+            MachineState state = MachineState.read(in, context);
+            SystemIO.reopenFiles(in);
+            state.restore(context);
+            MIPSprogram program = context.getProgram();
+            if (program != null && program.getBackStepper() != null)
+            {
+                // Neither history leads back from the loaded state.
+                program.getBackStepper().reset();
+                program.getTimeTravel().reset();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
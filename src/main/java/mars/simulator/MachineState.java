@@ -0,0 +1,150 @@
+package mars.simulator;
+
+import mars.MachineContext;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryImage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The state of a simulated machine between two instructions: memory, the register file, coprocessors 0 and 1
+ * (including the condition flags), the pending delayed branch, the exit code and the number of instructions executed.
+ * Taking one copies the registers and takes a copy-on-write image of memory, so it costs about as much as the pages
+ * written since the previous one.  Files opened by the program, the random number streams and anything outside the
+ * machine, such as the console, are not part of it.
+ */
+public final class MachineState
+{
+    private final MemoryImage memory;
+
+    private final int[] registers;
+
+    private final int[] coprocessor0Registers;
+
+    private final int[] coprocessor1Registers;
+
+    private final int[] delayedBranch;
+
+    private final int exitCode;
+
+    private final long instructionCount;
+
+    private MachineState(MemoryImage memory, int[] registers, int[] coprocessor0Registers,
+                         int[] coprocessor1Registers, int[] delayedBranch, int exitCode, long instructionCount)
+    {
+        this.memory = memory;
+        this.registers = registers;
+        this.coprocessor0Registers = coprocessor0Registers;
+        this.coprocessor1Registers = coprocessor1Registers;
+        this.delayedBranch = delayedBranch;
+        this.exitCode = exitCode;
+        this.instructionCount = instructionCount;
+    }
+
+    /**
+     * Save the state of a machine.  Call from the simulator thread while it is running, or while the machine is not
+     * running.
+     *
+     * @param context the machine
+     * @return its state
+     */
+    public static MachineState capture(MachineContext context)
+    {
+        return new MachineState(context.getMemory().captureImage(),
+            context.getRegisterBank().getValues().clone(),
+            context.getCoprocessor0RegisterBank().getValues().clone(),
+            context.getCoprocessor1RegisterBank().getValues().clone(),
+            context.getDelayedBranch().save(),
+            context.getExitCode(),
+            context.getInstructionCount());
+    }
+
+    /**
+     * Put a machine back into this state.  Not while it is running.  Register and memory observers are not notified,
+     * so windows showing the machine must be updated afterwards.
+     *
+     * @param context the machine, the one the state was taken from or one with the same memory configuration
+     */
+    public void restore(MachineContext context)
+    {
+        context.getMemory().restoreImage(memory);
+        System.arraycopy(registers, 0, context.getRegisterBank().getValues(), 0, registers.length);
+        System.arraycopy(coprocessor0Registers, 0, context.getCoprocessor0RegisterBank().getValues(), 0,
+            coprocessor0Registers.length);
+        System.arraycopy(coprocessor1Registers, 0, context.getCoprocessor1RegisterBank().getValues(), 0,
+            coprocessor1Registers.length);
+        context.getDelayedBranch().restore(delayedBranch);
+        context.setExitCode(exitCode);
+        context.setInstructionCount(instructionCount);
+    }
+
+    /**
+     * Write this state in binary form (see Memory.writeImage()).
+     *
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        Memory.writeImage(memory, out);
+        writeValues(out, registers);
+        writeValues(out, coprocessor0Registers);
+        writeValues(out, coprocessor1Registers);
+        writeValues(out, delayedBranch);
+        out.writeInt(exitCode);
+        out.writeLong(instructionCount);
+    }
+
+    /**
+     * Read a state written by write(), for a machine.  The machine is not changed until the state is restored.
+     *
+     * @param in where to read it from
+     * @param context the machine it will be restored to, which must have the same memory configuration and byte order
+     * as the one it was taken from
+     * @return the state
+     * @throws IOException if reading fails or the data is not a valid state for the machine
+     */
+    public static MachineState read(DataInputStream in, MachineContext context) throws IOException
+    {
+        return new MachineState(context.getMemory().readImage(in),
+            readValues(in, context.getRegisterBank().size()),
+            readValues(in, context.getCoprocessor0RegisterBank().size()),
+            readValues(in, context.getCoprocessor1RegisterBank().size()),
+            readValues(in, context.getDelayedBranch().save().length),
+            in.readInt(),
+            in.readLong());
+    }
+
+    private static void writeValues(DataOutputStream out, int[] values) throws IOException
+    {
+        out.writeInt(values.length);
+        for (int value : values)
+        {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readValues(DataInputStream in, int length) throws IOException
+    {
+        if (in.readInt() != length)
+        {
+            throw new IOException("register bank size does not match");
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * @return number of instructions the machine had executed
+     */
+    public long getInstructionCount()
+    {
+        return instructionCount;
+    }
+}
@@ -0,0 +1,634 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProgramStatement;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * Timing of the instructions a program executes on the classic five stage MIPS pipeline (IF, ID, EX, MEM, WB), to
+ * count cycles rather than instructions.  It runs alongside the simulation and only models when each instruction
+ * reaches EX:
+ * <ul>
+ * <li>results are forwarded, so an ALU result can be used by the next instruction, and a load result by the one after
+ * it: the instruction in between stalls (load-use);</li>
+ * <li>branches and jr compare in ID, so they stall a cycle for an ALU result computed just before them (branch
+ * operand);</li>
+ * <li>mult, div and the multiply instructions of special 2, and the floating point operations take the latencies set
+ * with setLatency() to produce a result.  The integer multiply and divide unit and the floating point divider are not
+ * pipelined, so an instruction using them waits until they are free (multi-cycle);</li>
+ * <li>a taken branch or jump costs the BRANCH latency in fetch, unless delayed branching is enabled: then its delay
+ * slot fills it (taken branch).</li>
+ * </ul>
+ * Store data is needed only in MEM.  A double precision value is tracked by its even register.  Syscalls take a cycle.
+ */
+public final class PipelineModel implements ExecutionListener
+{
+    /** Latency of mult, multu and the special 2 multiplies */
+    public static final int MULTIPLY = 0;
+
+    /** Latency of div and divu */
+    public static final int DIVIDE = 1;
+
+    /** Latency of floating point add, subtract, compare and conversions */
+    public static final int FP_ADD = 2;
+
+    /** Latency of floating point multiply */
+    public static final int FP_MULTIPLY = 3;
+
+    /** Latency of floating point divide and square root */
+    public static final int FP_DIVIDE = 4;
+
+    /** Cycles lost fetching after a taken branch or jump, without delayed branching */
+    public static final int BRANCH = 5;
+
+    private static final String[] LATENCY_NAMES = {"mult", "div", "fpadd", "fpmul", "fpdiv", "branch"};
+
+    // Kinds of instruction results, after the latencies
+    private static final int ALU = 6;
+
+    private static final int LOAD = 7;
+
+    // Counters per address
+    private static final int INSTRUCTIONS = 0;
+
+    private static final int CYCLES = 1;
+
+    private static final int LOAD_USE = 2;
+
+    private static final int MULTI_CYCLE = 3;
+
+    private static final int BRANCH_OPERAND = 4;
+
+    private static final int TAKEN_BRANCH = 5;
+
+    private static final String[] STALL_NAMES = {null, null, "load-use", "multi-cycle", "branch operand",
+        "taken branch"};
+
+    // Registers tracked: general purpose, HI, LO, floating point, and the floating point condition flags
+    private static final int HI = 32;
+
+    private static final int LO = 33;
+
+    private static final int FPU = 34;
+
+    private static final int FCC = 66;
+
+    private static final int NONE = -1;
+
+    private final MachineContext context;
+
+    private final boolean delayedBranching;
+
+    // Latencies, indexed by MULTIPLY to BRANCH, and 1 and 2 for ALU and LOAD
+    private final int[] latencies = {12, 35, 2, 4, 12, 1, 1, 2};
+
+    // Cycle at which each register's value can be forwarded to EX, and the kind of instruction producing it
+    private final long[] ready = new long[FCC + 1];
+
+    private final int[] producers = new int[FCC + 1];
+
+    // Cycle at which the multiply and divide unit, and the floating point divider, can start an operation
+    private long multiplyFree;
+
+    private long fpDivideFree;
+
+    // Cycle of the EX stage of the last instruction.  The first instruction reaches EX in cycle 3.
+    private long cycle = 2;
+
+    private long instructionCount;
+
+    private final long[] stalls = new long[STALL_NAMES.length];
+
+    private final TextCounters counts = new TextCounters(STALL_NAMES.length);
+
+    // Last instruction, to find whether it was a taken branch
+    private int lastPc;
+
+    private boolean lastControl;
+
+    // Instruction being timed, from decode()
+    private int source1;
+
+    private int source2;
+
+    private int storeData;
+
+    private int destination1;
+
+    private int destination2;
+
+    private int kind;
+
+    private boolean control;
+
+    private boolean comparesInId;
+
+    private PipelineModel(MachineContext context)
+    {
+        this.context = context;
+        this.delayedBranching = Globals.getSettings().getDelayedBranchingEnabled();
+    }
+
+    /**
+     * Start timing the runs of a machine, with the default latencies.  Others may be set before the first run.
+     *
+     * @param context the machine
+     * @return the model, which must be stopped
+     */
+    public static PipelineModel start(MachineContext context)
+    {
+        PipelineModel model = new PipelineModel(context);
+        context.addExecutionListener(model);
+        return model;
+    }
+
+    /**
+     * Set a latency: cycles from an operation entering EX until its result can be used.
+     *
+     * @param latency MULTIPLY, DIVIDE, FP_ADD, FP_MULTIPLY, FP_DIVIDE or BRANCH
+     * @param cycles the latency, at least 1, or at least 0 for BRANCH
+     */
+    public void setLatency(int latency, int cycles)
+    {
+        if (cycles < ((latency == BRANCH) ? 0 : 1))
+        {
+            throw new IllegalArgumentException("invalid " + LATENCY_NAMES[latency] + " latency " + cycles);
+        }
+        latencies[latency] = cycles;
+    }
+
+    /**
+     * Set latencies given as a list such as "mult=4,div=20".  The names are mult, div, fpadd, fpmul, fpdiv and branch.
+     *
+     * @param list the latencies
+     * @throws IllegalArgumentException if the list is not valid
+     */
+    public void setLatencies(String list)
+    {
+        for (String item : list.split(","))
+        {
+            String[] parts = item.split("=");
+            int latency = (parts.length == 2) ? Arrays.asList(LATENCY_NAMES).indexOf(parts[0].trim()) : -1;
+            if (latency < 0)
+            {
+                throw new IllegalArgumentException("invalid latency " + item);
+            }
+            try
+            {
+                setLatency(latency, Integer.decode(parts[1].trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("invalid latency " + item);
+            }
+        }
+    }
+
+    /**
+     * Stop timing.  The counts remain available.
+     */
+    public void stop()
+    {
+        context.removeExecutionListener(this);
+    }
+
+    /**
+     * @return number of instructions timed
+     */
+    public long getInstructionCount()
+    {
+        return instructionCount;
+    }
+
+    /**
+     * @return number of cycles until the last instruction timed leaves the pipeline
+     */
+    public long getCycleCount()
+    {
+        return (instructionCount == 0) ? 0 : cycle + 2;
+    }
+
+    public void onRetire(int pc, int binaryStatement)
+    {
+        if (lastControl && !delayedBranching && pc != lastPc + 4)
+        {
+            int penalty = latencies[BRANCH];
+            cycle += penalty;
+            stalls[TAKEN_BRANCH] += penalty;
+            counts.add(lastPc, CYCLES, penalty);
+            counts.add(lastPc, TAKEN_BRANCH, penalty);
+        }
+        decode(binaryStatement);
+        long start = cycle + 1;
+        int reason = NONE;
+        int late = comparesInId ? 1 : 0;
+        if (source1 != NONE && ready[source1] + late > start)
+        {
+            start = ready[source1] + late;
+            reason = stallReason(producers[source1]);
+        }
+        if (source2 != NONE && ready[source2] + late > start)
+        {
+            start = ready[source2] + late;
+            reason = stallReason(producers[source2]);
+        }
+        if (storeData != NONE && ready[storeData] - 1 > start)
+        {
+            start = ready[storeData] - 1;
+            reason = stallReason(producers[storeData]);
+        }
+        if ((kind == MULTIPLY || kind == DIVIDE) && multiplyFree > start)
+        {
+            start = multiplyFree;
+            reason = MULTI_CYCLE;
+        }
+        else if (kind == FP_DIVIDE && fpDivideFree > start)
+        {
+            start = fpDivideFree;
+            reason = MULTI_CYCLE;
+        }
+        long stall = start - cycle - 1;
+        if (stall != 0)
+        {
+            stalls[reason] += stall;
+            counts.add(pc, reason, stall);
+        }
+        counts.add(pc, INSTRUCTIONS, 1);
+        counts.add(pc, CYCLES, 1 + stall);
+        long result = start + latencies[kind];
+        if (destination1 > 0)
+        {
+            ready[destination1] = result;
+            producers[destination1] = kind;
+        }
+        if (destination2 != NONE)
+        {
+            ready[destination2] = result;
+            producers[destination2] = kind;
+        }
+        if (kind == MULTIPLY || kind == DIVIDE)
+        {
+            multiplyFree = result;
+        }
+        else if (kind == FP_DIVIDE)
+        {
+            fpDivideFree = result;
+        }
+        cycle = start;
+        lastPc = pc;
+        lastControl = control;
+        instructionCount++;
+    }
+
+    private static int stallReason(int producer)
+    {
+        return (producer == LOAD) ? LOAD_USE : (producer == ALU) ? BRANCH_OPERAND : MULTI_CYCLE;
+    }
+
+    // Set the registers an instruction reads and writes, the kind of its result and whether it is a branch or jump.
+    private void decode(int binaryStatement)
+    {
+        int opcode = binaryStatement >>> 26;
+        int rs = (binaryStatement >>> 21) & 0x1F;
+        int rt = (binaryStatement >>> 16) & 0x1F;
+        int rd = (binaryStatement >>> 11) & 0x1F;
+        int funct = binaryStatement & 0x3F;
+        source1 = source2 = storeData = destination1 = destination2 = NONE;
+        kind = ALU;
+        control = comparesInId = false;
+        switch (opcode)
+        {
+            case 0x00: // special
+                switch (funct)
+                {
+                    case 0x00: // sll
+                    case 0x02: // srl
+                    case 0x03: // sra
+                        source1 = rt;
+                        destination1 = rd;
+                        break;
+                    case 0x01: // movf, movt
+                        source1 = rs;
+                        source2 = FCC;
+                        destination1 = rd;
+                        break;
+                    case 0x08: // jr
+                    case 0x09: // jalr
+                        source1 = rs;
+                        destination1 = (funct == 0x09) ? rd : NONE;
+                        control = comparesInId = true;
+                        break;
+                    case 0x0C: // syscall
+                        source1 = 2;
+                        source2 = 4;
+                        destination1 = 2;
+                        break;
+                    case 0x0D: // break
+                        break;
+                    case 0x10: // mfhi
+                        source1 = HI;
+                        destination1 = rd;
+                        break;
+                    case 0x11: // mthi
+                        source1 = rs;
+                        destination1 = HI;
+                        break;
+                    case 0x12: // mflo
+                        source1 = LO;
+                        destination1 = rd;
+                        break;
+                    case 0x13: // mtlo
+                        source1 = rs;
+                        destination1 = LO;
+                        break;
+                    case 0x18: // mult
+                    case 0x19: // multu
+                    case 0x1A: // div
+                    case 0x1B: // divu
+                        source1 = rs;
+                        source2 = rt;
+                        destination1 = HI;
+                        destination2 = LO;
+                        kind = (funct < 0x1A) ? MULTIPLY : DIVIDE;
+                        break;
+                    default:
+                        // shifts by register, movz, movn, arithmetic, logic, set and traps
+                        source1 = rs;
+                        source2 = rt;
+                        destination1 = (funct >= 0x30) ? NONE : rd;
+                }
+                break;
+            case 0x01: // regimm: branches, links and traps
+                source1 = rs;
+                if (rt < 0x08 || rt >= 0x10)
+                {
+                    control = comparesInId = true;
+                    destination1 = (rt >= 0x10) ? 31 : NONE;
+                }
+                break;
+            case 0x02: // j
+                control = true;
+                break;
+            case 0x03: // jal
+                destination1 = 31;
+                control = true;
+                break;
+            case 0x04: // beq
+            case 0x05: // bne
+                source1 = rs;
+                source2 = rt;
+                control = comparesInId = true;
+                break;
+            case 0x06: // blez
+            case 0x07: // bgtz
+                source1 = rs;
+                control = comparesInId = true;
+                break;
+            case 0x10: // coprocessor 0
+                if (rs == 0x00) // mfc0
+                {
+                    destination1 = rt;
+                }
+                else if (rs == 0x04) // mtc0
+                {
+                    source1 = rt;
+                }
+                else // eret
+                {
+                    control = true;
+                }
+                break;
+            case 0x11: // coprocessor 1
+                decodeCoprocessor1(binaryStatement, rs, rt, rd, funct);
+                break;
+            case 0x1C: // special 2
+                source1 = rs;
+                source2 = rt;
+                if (funct == 0x20 || funct == 0x21) // clz, clo
+                {
+                    destination1 = rd;
+                }
+                else if (funct == 0x02) // mul
+                {
+                    destination1 = rd;
+                    kind = MULTIPLY;
+                }
+                else // madd, maddu, msub, msubu
+                {
+                    destination1 = HI;
+                    destination2 = LO;
+                    kind = MULTIPLY;
+                }
+                break;
+            case 0x0F: // lui
+                destination1 = rt;
+                break;
+            case 0x31: // lwc1
+            case 0x35: // ldc1
+                source1 = rs;
+                destination1 = FPU + rt;
+                kind = LOAD;
+                break;
+            case 0x39: // swc1
+            case 0x3D: // sdc1
+                source1 = rs;
+                storeData = FPU + rt;
+                break;
+            default:
+                if (opcode >= 0x08 && opcode <= 0x0E) // immediate arithmetic and logic
+                {
+                    source1 = rs;
+                    destination1 = rt;
+                }
+                else if ((opcode >= 0x20 && opcode <= 0x26) || opcode == 0x30) // loads, ll
+                {
+                    source1 = rs;
+                    source2 = (opcode == 0x22 || opcode == 0x26) ? rt : NONE; // lwl, lwr merge into rt
+                    destination1 = rt;
+                    kind = LOAD;
+                }
+                else if ((opcode >= 0x28 && opcode <= 0x2E) || opcode == 0x38) // stores, sc
+                {
+                    source1 = rs;
+                    storeData = rt;
+                    destination1 = (opcode == 0x38) ? rt : NONE;
+                    kind = (opcode == 0x38) ? LOAD : ALU;
+                }
+        }
+    }
+
+    private void decodeCoprocessor1(int binaryStatement, int rs, int rt, int rd, int funct)
+    {
+        int fd = (binaryStatement >>> 6) & 0x1F;
+        switch (rs)
+        {
+            case 0x00: // mfc1
+                source1 = FPU + rd;
+                destination1 = rt;
+                return;
+            case 0x04: // mtc1
+                source1 = rt;
+                destination1 = FPU + rd;
+                return;
+            case 0x08: // bc1f, bc1t
+                source1 = FCC;
+                control = comparesInId = true;
+                return;
+            case 0x10: // single
+            case 0x11: // double
+            case 0x14: // word
+                source1 = FPU + rd;
+                destination1 = FPU + fd;
+                if (funct >= 0x30) // compare
+                {
+                    source2 = FPU + rt;
+                    destination1 = FCC;
+                    kind = FP_ADD;
+                }
+                else if (funct <= 0x03) // add, sub, mul, div
+                {
+                    source2 = FPU + rt;
+                    kind = (funct <= 0x01) ? FP_ADD : (funct == 0x02) ? FP_MULTIPLY : FP_DIVIDE;
+                }
+                else if (funct == 0x04) // sqrt
+                {
+                    kind = FP_DIVIDE;
+                }
+                else if (funct == 0x11) // movf, movt
+                {
+                    source2 = FCC;
+                }
+                else if (funct == 0x12 || funct == 0x13) // movz, movn
+                {
+                    source2 = rt;
+                }
+                else if (funct >= 0x08) // rounding and conversions; abs, mov and neg take a cycle
+                {
+                    kind = FP_ADD;
+                }
+                return;
+            default:
+                return;
+        }
+    }
+
+    /**
+     * Write the cycles, CPI and stall cycles of the run, then the same per instruction mnemonic and for the source
+     * lines taking the most cycles.
+     *
+     * @param out where to write
+     * @param program the program run, for its statements and labels
+     * @param lines maximum number of source lines listed
+     */
+    public void writeReport(PrintStream out, MIPSprogram program, int lines)
+    {
+        long cycles = getCycleCount();
+        out.println("Cycles: " + cycles);
+        out.println("Instructions: " + instructionCount);
+        out.println("CPI: " + cpi(cycles, instructionCount));
+        long stallCycles = 0;
+        for (int reason = LOAD_USE; reason < stalls.length; reason++)
+        {
+            stallCycles += stalls[reason];
+        }
+        out.println("Stall cycles: " + stallCycles);
+        for (int reason = LOAD_USE; reason < stalls.length; reason++)
+        {
+            out.println(String.format("  %-16s %12d", STALL_NAMES[reason] + ":", stalls[reason]));
+        }
+        out.println("Latencies: " + getLatencies());
+
+        // Counters summed per mnemonic and per source line, with the first statement of the line
+        LinkedHashMap<String, long[]> mnemonics = new LinkedHashMap<String, long[]>();
+        LinkedHashMap<String, Object[]> sourceLines = new LinkedHashMap<String, Object[]>();
+        for (Object element : program.getMachineList())
+        {
+            ProgramStatement statement = (ProgramStatement) element;
+            if (counts.get(statement.getAddress(), INSTRUCTIONS) == 0 || statement.getInstruction() == null)
+            {
+                continue;
+            }
+            long[] mnemonic = mnemonics.get(statement.getInstruction().getName());
+            if (mnemonic == null)
+            {
+                mnemonic = new long[STALL_NAMES.length];
+                mnemonics.put(statement.getInstruction().getName(), mnemonic);
+            }
+            String key = statement.getSourceFile() + ":" + statement.getSourceLine();
+            Object[] line = sourceLines.get(key);
+            if (line == null)
+            {
+                line = new Object[]{new long[STALL_NAMES.length], statement};
+                sourceLines.put(key, line);
+            }
+            for (int counter = 0; counter < STALL_NAMES.length; counter++)
+            {
+                long count = counts.get(statement.getAddress(), counter);
+                mnemonic[counter] += count;
+                ((long[]) line[0])[counter] += count;
+            }
+        }
+        String columns = String.format("%12s %12s %6s %10s %10s %10s %10s", "count", "cycles", "CPI", "load-use",
+            "multi", "operand", "taken");
+        ArrayList<String> byMnemonic = new ArrayList<String>(mnemonics.keySet());
+        byMnemonic.sort((a, b) -> Long.compare(mnemonics.get(b)[CYCLES], mnemonics.get(a)[CYCLES]));
+        out.println();
+        out.println(columns + "  instruction");
+        for (String mnemonic : byMnemonic)
+        {
+            out.println(row(mnemonics.get(mnemonic)) + "  " + mnemonic);
+        }
+
+        TreeMap<Integer, String> labels = Profiler.labels(program);
+        ArrayList<Object[]> byLine = new ArrayList<Object[]>(sourceLines.values());
+        byLine.sort((a, b) -> Long.compare(((long[]) b[0])[CYCLES], ((long[]) a[0])[CYCLES]));
+        out.println();
+        out.println(columns + String.format("  %-24s %-20s  %s", "line", "where", "source"));
+        for (int i = 0; i < Math.min(lines, byLine.size()); i++)
+        {
+            ProgramStatement statement = (ProgramStatement) byLine.get(i)[1];
+            String line = new File(statement.getSourceFile()).getName() + ":" + statement.getSourceLine();
+            out.println(row((long[]) byLine.get(i)[0]) + String.format("  %-24s %-20s  %s", line,
+                Profiler.name(labels, statement.getAddress()), statement.getSource().trim()));
+        }
+        if (counts.getOther(INSTRUCTIONS) != 0)
+        {
+            out.println();
+            out.println("Instructions executed outside the text segments: " + counts.getOther(INSTRUCTIONS));
+        }
+    }
+
+    /**
+     * @return the latencies, as accepted by setLatencies()
+     */
+    public String getLatencies()
+    {
+        StringBuilder list = new StringBuilder();
+        for (int latency = MULTIPLY; latency <= BRANCH; latency++)
+        {
+            list.append((latency == MULTIPLY) ? "" : ",").append(LATENCY_NAMES[latency]).append('=')
+                .append(latencies[latency]);
+        }
+        return list.toString();
+    }
+
+    private static String row(long[] counters)
+    {
+        return String.format("%12d %12d %6s %10d %10d %10d %10d", counters[INSTRUCTIONS], counters[CYCLES],
+            cpi(counters[CYCLES], counters[INSTRUCTIONS]), counters[LOAD_USE], counters[MULTI_CYCLE],
+            counters[BRANCH_OPERAND], counters[TAKEN_BRANCH]);
+    }
+
+    private static String cpi(long cycles, long instructions)
+    {
+        return String.format("%.2f", (instructions == 0) ? 0.0 : (double) cycles / instructions);
+    }
+}
@@ -0,0 +1,794 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.Instruction;
+
+/**
+ * Pre-decoded form of the user text segment, used as an alternative to calling each instruction's
+ * <code>SimulationCode</code> through its <code>ProgramStatement</code>.  The text segment is decoded once into
+ * parallel primitive arrays holding an opcode ordinal and the operand fields, with immediates already sign- or
+ * zero-extended and branch and jump targets already resolved to absolute addresses.  Execution is then a single
+ * switch over the opcode.
+ * <p>
+ * Only the common integer instructions are handled here.  Everything else (syscalls, traps, floating point,
+ * coprocessor 0 and the unaligned loads and stores) is decoded as FALLBACK and the caller runs it through the
+ * instruction's <code>SimulationCode</code>, which remains the reference implementation.  The semantics of each case
+ * below match the corresponding <code>SimulationCode</code> in <code>InstructionSet</code> exactly, including the
+ * operand conventions used by the assembler.
+ * <p>
+ * A decoded program is only valid as long as the text segment does not change, so it must not be used when
+ * self-modifying code is enabled.  It also does not record backstep information, so it must not be used when
+ * backstepping is enabled.
+ */
+final class PredecodedProgram
+{
+    static final int FALLBACK = 0;
+    static final int NOP = 1;
+    static final int ADD = 2;
+    static final int ADDU = 3;
+    static final int SUB = 4;
+    static final int SUBU = 5;
+    static final int ADDI = 6;
+    static final int ADDIU = 7;
+    static final int AND = 8;
+    static final int OR = 9;
+    static final int XOR = 10;
+    static final int NOR = 11;
+    static final int ANDI = 12;
+    static final int ORI = 13;
+    static final int XORI = 14;
+    static final int SLL = 15;
+    static final int SRL = 16;
+    static final int SRA = 17;
+    static final int SLLV = 18;
+    static final int SRLV = 19;
+    static final int SRAV = 20;
+    static final int SLT = 21;
+    static final int SLTU = 22;
+    static final int SLTI = 23;
+    static final int SLTIU = 24;
+    static final int LUI = 25;
+    static final int MOVN = 26;
+    static final int MOVZ = 27;
+    static final int MULT = 28;
+    static final int MULTU = 29;
+    static final int MUL = 30;
+    static final int DIV = 31;
+    static final int DIVU = 32;
+    static final int MFHI = 33;
+    static final int MFLO = 34;
+    static final int MTHI = 35;
+    static final int MTLO = 36;
+    static final int LW = 37;
+    static final int LH = 38;
+    static final int LHU = 39;
+    static final int LB = 40;
+    static final int LBU = 41;
+    static final int SW = 42;
+    static final int SH = 43;
+    static final int SB = 44;
+    static final int BEQ = 45;
+    static final int BNE = 46;
+    static final int BGEZ = 47;
+    static final int BGTZ = 48;
+    static final int BLEZ = 49;
+    static final int BLTZ = 50;
+    static final int J = 51;
+    static final int JAL = 52;
+    static final int JR = 53;
+    static final int JALR = 54;
+
+    static final int HI = 33;
+    static final int LO = 34;
+    static final int RA = 31;
+
+    private final int baseAddress;
+
+    private final int limitAddress;
+
+    private final ProgramStatement[] statements;
+
+    private final int[] opcode;
+
+    // Operand fields, in the order the assembler stores them in ProgramStatement.getOperands().
+    private final int[] first;
+
+    private final int[] second;
+
+    private final int[] third;
+
+    // Extended immediate, absolute branch/jump target or link address, depending on opcode.
+    private final int[] immediate;
+
+    private final boolean delayedBranching;
+
+    private PredecodedProgram(int baseAddress, ProgramStatement[] statements, boolean delayedBranching)
+    {
+        int length = statements.length;
+        this.baseAddress = baseAddress;
+        this.limitAddress = baseAddress + length * Instruction.INSTRUCTION_LENGTH;
+        this.statements = statements;
+        this.delayedBranching = delayedBranching;
+        this.opcode = new int[length];
+        this.first = new int[length];
+        this.second = new int[length];
+        this.third = new int[length];
+        this.immediate = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            decode(i, baseAddress + i * Instruction.INSTRUCTION_LENGTH);
+        }
+    }
+
+    /**
+     * Decode the user text segment, starting at its base address and ending at the first address that holds no
+     * statement.
+     *
+     * @param delayedBranching whether delayed branching is in effect for the run this will be used for
+     * @return the decoded program, possibly empty.
+     */
+    static PredecodedProgram decodeTextSegment(boolean delayedBranching)
+    {
+        int limit = Memory.textBaseAddress;
+        try
+        {
+            limit = Globals.getMemory().getAddressOfFirstNull(Memory.textBaseAddress, Memory.textLimitAddress);
+        }
+        catch (AddressErrorException aee)
+        {
+        } // will not occur with the well-known text segment bounds
+        ProgramStatement[] statements = new ProgramStatement[(limit - Memory.textBaseAddress) / Instruction.INSTRUCTION_LENGTH];
+        for (int i = 0; i < statements.length; i++)
+        {
+            try
+            {
+                statements[i] = Globals.getMemory().getStatement(Memory.textBaseAddress + i * Instruction.INSTRUCTION_LENGTH);
+            }
+            catch (AddressErrorException aee)
+            {
+            } // will not occur, address was verified above
+        }
+        return new PredecodedProgram(Memory.textBaseAddress, statements, delayedBranching);
+    }
+
+    /**
+     * Get the index of the decoded instruction at the given address.
+     *
+     * @param address instruction address
+     * @return index for use with <code>execute</code> and <code>getStatement</code>, or -1 if the address is not
+     *     covered by this decoded program.
+     */
+    int indexOf(int address)
+    {
+        if (address >= baseAddress && address < limitAddress && (address & 3) == 0)
+        {
+            return (address - baseAddress) >> 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the number of decoded instructions.
+     *
+     * @return number of instructions, starting at the text segment base address
+     */
+    int size()
+    {
+        return statements.length;
+    }
+
+    /**
+     * Get the address of the instruction at the given index.
+     *
+     * @param index index returned by <code>indexOf</code>
+     * @return instruction address
+     */
+    int addressOf(int index)
+    {
+        return baseAddress + index * Instruction.INSTRUCTION_LENGTH;
+    }
+
+    // Decoded fields, for use by the block compiler.
+
+    int getOpcode(int index)
+    {
+        return opcode[index];
+    }
+
+    int getFirst(int index)
+    {
+        return first[index];
+    }
+
+    int getSecond(int index)
+    {
+        return second[index];
+    }
+
+    int getThird(int index)
+    {
+        return third[index];
+    }
+
+    int getImmediate(int index)
+    {
+        return immediate[index];
+    }
+
+    boolean isDelayedBranching()
+    {
+        return delayedBranching;
+    }
+
+    /**
+     * Get the statement that was decoded at the given index.
+     *
+     * @param index index returned by <code>indexOf</code>
+     * @return the ProgramStatement at that index
+     */
+    ProgramStatement getStatement(int index)
+    {
+        return statements[index];
+    }
+
+    /**
+     * Execute the decoded instruction at the given index.  As with <code>SimulationCode.simulate</code>, the program
+     * counter must already have been incremented past the instruction.
+     *
+     * @param index index returned by <code>indexOf</code>
+     * @return true if the instruction was executed, false if it is a FALLBACK instruction that the caller must
+     *     simulate through its <code>SimulationCode</code>.
+     * @throws ProcessingException on a runtime exception, exactly as the reference implementation would.
+     */
+    boolean execute(int index) throws ProcessingException
+    {
+        int a = first[index];
+        int b = second[index];
+        int c = third[index];
+        switch (opcode[index])
+        {
+            case NOP:
+                return true;
+            case ADD:
+            {
+                int add1 = RegisterFile.getValue(b);
+                int add2 = RegisterFile.getValue(c);
+                int sum = add1 + add2;
+                // overflow on A+B detected when A and B have same sign and A+B has other sign.
+                if ((add1 >= 0 && add2 >= 0 && sum < 0)
+                    || (add1 < 0 && add2 < 0 && sum >= 0))
+                {
+                    throw new ProcessingException(statements[index],
+                        "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                RegisterFile.updateRegister(a, sum);
+                return true;
+            }
+            case ADDU:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) + RegisterFile.getValue(c));
+                return true;
+            case SUB:
+            {
+                int sub1 = RegisterFile.getValue(b);
+                int sub2 = RegisterFile.getValue(c);
+                int dif = sub1 - sub2;
+                // overflow on A-B detected when A and B have opposite signs and A-B has B's sign
+                if ((sub1 >= 0 && sub2 < 0 && dif < 0)
+                    || (sub1 < 0 && sub2 >= 0 && dif >= 0))
+                {
+                    throw new ProcessingException(statements[index],
+                        "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                RegisterFile.updateRegister(a, dif);
+                return true;
+            }
+            case SUBU:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) - RegisterFile.getValue(c));
+                return true;
+            case ADDI:
+            {
+                int add1 = RegisterFile.getValue(b);
+                int add2 = immediate[index];
+                int sum = add1 + add2;
+                if ((add1 >= 0 && add2 >= 0 && sum < 0)
+                    || (add1 < 0 && add2 < 0 && sum >= 0))
+                {
+                    throw new ProcessingException(statements[index],
+                        "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                RegisterFile.updateRegister(a, sum);
+                return true;
+            }
+            case ADDIU:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) + immediate[index]);
+                return true;
+            case AND:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) & RegisterFile.getValue(c));
+                return true;
+            case OR:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) | RegisterFile.getValue(c));
+                return true;
+            case XOR:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) ^ RegisterFile.getValue(c));
+                return true;
+            case NOR:
+                RegisterFile.updateRegister(a, ~(RegisterFile.getValue(b) | RegisterFile.getValue(c)));
+                return true;
+            case ANDI:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) & immediate[index]);
+                return true;
+            case ORI:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) | immediate[index]);
+                return true;
+            case XORI:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) ^ immediate[index]);
+                return true;
+            case SLL:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) << c);
+                return true;
+            case SRL:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) >>> c);
+                return true;
+            case SRA:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) >> c);
+                return true;
+            case SLLV:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) << (RegisterFile.getValue(c) & 0x1F));
+                return true;
+            case SRLV:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) >>> (RegisterFile.getValue(c) & 0x1F));
+                return true;
+            case SRAV:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(b) >> (RegisterFile.getValue(c) & 0x1F));
+                return true;
+            case SLT:
+                RegisterFile.updateRegister(a, (RegisterFile.getValue(b) < RegisterFile.getValue(c)) ? 1 : 0);
+                return true;
+            case SLTU:
+                RegisterFile.updateRegister(a,
+                    (Integer.compareUnsigned(RegisterFile.getValue(b), RegisterFile.getValue(c)) < 0) ? 1 : 0);
+                return true;
+            case SLTI:
+                RegisterFile.updateRegister(a, (RegisterFile.getValue(b) < immediate[index]) ? 1 : 0);
+                return true;
+            case SLTIU:
+                RegisterFile.updateRegister(a,
+                    (Integer.compareUnsigned(RegisterFile.getValue(b), immediate[index]) < 0) ? 1 : 0);
+                return true;
+            case LUI:
+                RegisterFile.updateRegister(a, immediate[index]);
+                return true;
+            case MOVN:
+                if (RegisterFile.getValue(c) != 0)
+                {
+                    RegisterFile.updateRegister(a, RegisterFile.getValue(b));
+                }
+                return true;
+            case MOVZ:
+                if (RegisterFile.getValue(c) == 0)
+                {
+                    RegisterFile.updateRegister(a, RegisterFile.getValue(b));
+                }
+                return true;
+            case MULT:
+            {
+                long product = (long) RegisterFile.getValue(a) * (long) RegisterFile.getValue(b);
+                RegisterFile.updateRegister(HI, (int) (product >> 32));
+                RegisterFile.updateRegister(LO, (int) product);
+                return true;
+            }
+            case MULTU:
+            {
+                long product = (RegisterFile.getValue(a) & 0xFFFFFFFFL) * (RegisterFile.getValue(b) & 0xFFFFFFFFL);
+                RegisterFile.updateRegister(HI, (int) (product >> 32));
+                RegisterFile.updateRegister(LO, (int) product);
+                return true;
+            }
+            case MUL:
+            {
+                long product = (long) RegisterFile.getValue(b) * (long) RegisterFile.getValue(c);
+                RegisterFile.updateRegister(a, (int) product);
+                RegisterFile.updateRegister(HI, (int) (product >> 32));
+                RegisterFile.updateRegister(LO, (int) product);
+                return true;
+            }
+            case DIV:
+            {
+                int divisor = RegisterFile.getValue(b);
+                if (divisor == 0)
+                {
+                    return true; // no exception and undefined results, as in the reference
+                }
+                int dividend = RegisterFile.getValue(a);
+                RegisterFile.updateRegister(HI, dividend % divisor);
+                RegisterFile.updateRegister(LO, dividend / divisor);
+                return true;
+            }
+            case DIVU:
+            {
+                int divisor = RegisterFile.getValue(b);
+                if (divisor == 0)
+                {
+                    return true;
+                }
+                int dividend = RegisterFile.getValue(a);
+                RegisterFile.updateRegister(HI, Integer.remainderUnsigned(dividend, divisor));
+                RegisterFile.updateRegister(LO, Integer.divideUnsigned(dividend, divisor));
+                return true;
+            }
+            case MFHI:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(HI));
+                return true;
+            case MFLO:
+                RegisterFile.updateRegister(a, RegisterFile.getValue(LO));
+                return true;
+            case MTHI:
+                RegisterFile.updateRegister(HI, RegisterFile.getValue(a));
+                return true;
+            case MTLO:
+                RegisterFile.updateRegister(LO, RegisterFile.getValue(a));
+                return true;
+            case LW:
+                try
+                {
+                    RegisterFile.updateRegister(a, Globals.getMemory().getWord(RegisterFile.getValue(c) + immediate[index]));
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case LH:
+                try
+                {
+                    RegisterFile.updateRegister(a,
+                        Globals.getMemory().getHalf(RegisterFile.getValue(c) + immediate[index]) << 16 >> 16);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case LHU:
+                try
+                {
+                    RegisterFile.updateRegister(a,
+                        Globals.getMemory().getHalf(RegisterFile.getValue(c) + immediate[index]) & 0x0000FFFF);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case LB:
+                try
+                {
+                    RegisterFile.updateRegister(a,
+                        Globals.getMemory().getByte(RegisterFile.getValue(c) + immediate[index]) << 24 >> 24);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case LBU:
+                try
+                {
+                    RegisterFile.updateRegister(a,
+                        Globals.getMemory().getByte(RegisterFile.getValue(c) + immediate[index]) & 0x000000FF);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case SW:
+                try
+                {
+                    Globals.getMemory().setWord(RegisterFile.getValue(c) + immediate[index], RegisterFile.getValue(a));
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case SH:
+                try
+                {
+                    Globals.getMemory().setHalf(RegisterFile.getValue(c) + immediate[index],
+                        RegisterFile.getValue(a) & 0x0000FFFF);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case SB:
+                try
+                {
+                    Globals.getMemory().setByte(RegisterFile.getValue(c) + immediate[index],
+                        RegisterFile.getValue(a) & 0x000000FF);
+                }
+                catch (AddressErrorException e)
+                {
+                    throw new ProcessingException(statements[index], e);
+                }
+                return true;
+            case BEQ:
+                if (RegisterFile.getValue(a) == RegisterFile.getValue(b))
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case BNE:
+                if (RegisterFile.getValue(a) != RegisterFile.getValue(b))
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case BGEZ:
+                if (RegisterFile.getValue(a) >= 0)
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case BGTZ:
+                if (RegisterFile.getValue(a) > 0)
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case BLEZ:
+                if (RegisterFile.getValue(a) <= 0)
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case BLTZ:
+                if (RegisterFile.getValue(a) < 0)
+                {
+                    branch(immediate[index]);
+                }
+                return true;
+            case J:
+                branch(immediate[index]);
+                return true;
+            case JAL:
+                RegisterFile.updateRegister(RA, returnAddress(index));
+                branch(immediate[index]);
+                return true;
+            case JR:
+                branch(RegisterFile.getValue(a));
+                return true;
+            case JALR:
+                // Link first, then read the target, in the same order as the reference.
+                RegisterFile.updateRegister(a, returnAddress(index));
+                branch(RegisterFile.getValue(b));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Equivalent of InstructionSet's processBranch and processJump, with the target already resolved.
+    private void branch(int target)
+    {
+        if (delayedBranching)
+        {
+            DelayedBranch.register(target);
+        }
+        else
+        {
+            // Backstepping is never enabled when this class is in use, so no PC restore entry is needed.
+            RegisterFile.initializeProgramCounter(target);
+        }
+    }
+
+    // Equivalent of InstructionSet's processReturnAddress.
+    private int returnAddress(int index)
+    {
+        return baseAddress + (index + 1) * Instruction.INSTRUCTION_LENGTH
+            + (delayedBranching ? Instruction.INSTRUCTION_LENGTH : 0);
+    }
+
+    // Fill in the decoded fields for the statement at the given index.
+    private void decode(int index, int address)
+    {
+        ProgramStatement statement = statements[index];
+        Instruction instruction = (statement == null) ? null : statement.getInstruction();
+        int[] operands = (statement == null) ? null : statement.getOperands();
+        if (!(instruction instanceof BasicInstruction) || operands == null)
+        {
+            opcode[index] = FALLBACK;
+            return;
+        }
+        int a = operands[0];
+        int b = operands[1];
+        int c = operands[2];
+        int op = opcodeOf(instruction.getExampleFormat());
+        int nextAddress = address + Instruction.INSTRUCTION_LENGTH;
+        int imm = 0;
+        switch (op)
+        {
+            case ADDI:
+            case ADDIU:
+            case SLTI:
+            case SLTIU:
+                imm = c << 16 >> 16;
+                break;
+            case ANDI:
+            case ORI:
+            case XORI:
+                imm = c & 0x0000FFFF;
+                break;
+            case LUI:
+                imm = b << 16;
+                break;
+            case LW:
+            case SW:
+                imm = b;
+                break;
+            case LH:
+            case LHU:
+            case LB:
+            case LBU:
+            case SH:
+            case SB:
+                imm = b << 16 >> 16;
+                break;
+            case BEQ:
+            case BNE:
+                imm = nextAddress + (c << 2);
+                break;
+            case BGEZ:
+            case BGTZ:
+            case BLEZ:
+            case BLTZ:
+                imm = nextAddress + (b << 2);
+                break;
+            case J:
+            case JAL:
+                imm = (nextAddress & 0xF0000000) | (a << 2);
+                break;
+            case JALR:
+                if (instruction.getExampleFormat().equals("jalr $t1"))
+                {
+                    // single-operand form links to $ra and jumps to first operand
+                    b = a;
+                    a = RA;
+                }
+                break;
+        }
+        opcode[index] = op;
+        first[index] = a;
+        second[index] = b;
+        third[index] = c;
+        immediate[index] = imm;
+    }
+
+    // Map the basic instruction, identified by its unique example format, to its opcode ordinal.
+    private static int opcodeOf(String exampleFormat)
+    {
+        switch (exampleFormat)
+        {
+            case "nop":
+                return NOP;
+            case "add $t1,$t2,$t3":
+                return ADD;
+            case "addu $t1,$t2,$t3":
+                return ADDU;
+            case "sub $t1,$t2,$t3":
+                return SUB;
+            case "subu $t1,$t2,$t3":
+                return SUBU;
+            case "addi $t1,$t2,-100":
+                return ADDI;
+            case "addiu $t1,$t2,-100":
+                return ADDIU;
+            case "and $t1,$t2,$t3":
+                return AND;
+            case "or $t1,$t2,$t3":
+                return OR;
+            case "xor $t1,$t2,$t3":
+                return XOR;
+            case "nor $t1,$t2,$t3":
+                return NOR;
+            case "andi $t1,$t2,100":
+                return ANDI;
+            case "ori $t1,$t2,100":
+                return ORI;
+            case "xori $t1,$t2,100":
+                return XORI;
+            case "sll $t1,$t2,10":
+                return SLL;
+            case "srl $t1,$t2,10":
+                return SRL;
+            case "sra $t1,$t2,10":
+                return SRA;
+            case "sllv $t1,$t2,$t3":
+                return SLLV;
+            case "srlv $t1,$t2,$t3":
+                return SRLV;
+            case "srav $t1,$t2,$t3":
+                return SRAV;
+            case "slt $t1,$t2,$t3":
+                return SLT;
+            case "sltu $t1,$t2,$t3":
+                return SLTU;
+            case "slti $t1,$t2,-100":
+                return SLTI;
+            case "sltiu $t1,$t2,-100":
+                return SLTIU;
+            case "lui $t1,100":
+                return LUI;
+            case "movn $t1,$t2,$t3":
+                return MOVN;
+            case "movz $t1,$t2,$t3":
+                return MOVZ;
+            case "mult $t1,$t2":
+                return MULT;
+            case "multu $t1,$t2":
+                return MULTU;
+            case "mul $t1,$t2,$t3":
+                return MUL;
+            case "div $t1,$t2":
+                return DIV;
+            case "divu $t1,$t2":
+                return DIVU;
+            case "mfhi $t1":
+                return MFHI;
+            case "mflo $t1":
+                return MFLO;
+            case "mthi $t1":
+                return MTHI;
+            case "mtlo $t1":
+                return MTLO;
+            case "lw $t1,-100($t2)":
+            case "ll $t1,-100($t2)":
+                return LW;
+            case "lh $t1,-100($t2)":
+                return LH;
+            case "lhu $t1,-100($t2)":
+                return LHU;
+            case "lb $t1,-100($t2)":
+                return LB;
+            case "lbu $t1,-100($t2)":
+                return LBU;
+            case "sw $t1,-100($t2)":
+                return SW;
+            case "sh $t1,-100($t2)":
+                return SH;
+            case "sb $t1,-100($t2)":
+                return SB;
+            case "beq $t1,$t2,label":
+                return BEQ;
+            case "bne $t1,$t2,label":
+                return BNE;
+            case "bgez $t1,label":
+                return BGEZ;
+            case "bgtz $t1,label":
+                return BGTZ;
+            case "blez $t1,label":
+                return BLEZ;
+            case "bltz $t1,label":
+                return BLTZ;
+            case "j target":
+                return J;
+            case "jal target":
+                return JAL;
+            case "jr $t1":
+                return JR;
+            case "jalr $t1,$t2":
+            case "jalr $t1":
+                return JALR;
+            default:
+                return FALLBACK;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProgramStatement;
+import mars.assembler.Symbol;
+import mars.assembler.SymbolTable;
+import mars.util.Binary;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counting the instructions a program executes at each address and in each call path, to find where its time goes.
+ * Every instruction is counted, not sampled.  Calls are followed with a shadow call stack: jal, jalr, and bgezal or
+ * bltzal when taken, enter the function at their target, and a jr $ra returning to a caller's return address leaves
+ * the functions down to it.  With delayed branching, the delay slot is counted in the caller.
+ * <p>
+ * Where a linking jump or branch went is found from the next instruction executed, after its delay slot if any, as
+ * its link may have overwritten the register it read: <code>bltzal $ra</code> tests the return address it replaces.
+ * <p>
+ * After the run, writeReport() lists the instructions executed per function, named by the label at its entry, and per
+ * source line, and writeCollapsedStacks() writes the counts per call path in the collapsed stack format read by
+ * flame graph tools.
+ */
+public final class Profiler implements ExecutionListener
+{
+    private static final int NO_ADDRESS = -1;
+
+    private final MachineContext context;
+
+    private final boolean delayedBranching;
+
+    // Values of the machine's registers, read after calls and returns
+    private final int[] registers;
+
+    // Instructions executed per address
+    private final TextCounters counts = new TextCounters(1);
+
+    private long instructionCount;
+
+    // Call tree: for each node, its parent, the entry address of its function, instructions executed in it and
+    // number of calls.  Node 0 is the function the run started in.
+    private int[] nodeParents = new int[64];
+
+    private int[] nodeFunctions = new int[64];
+
+    private long[] nodeCounts = new long[64];
+
+    private long[] nodeCalls = new long[64];
+
+    private int nodes;
+
+    // Child node by parent node and function entry address
+    private final HashMap<Long, Integer> children = new HashMap<Long, Integer>();
+
+    // Shadow call stack: node and return address of each frame
+    private int[] stackNodes = new int[64];
+
+    private int[] stackReturns = new int[64];
+
+    private int depth;
+
+    // Linking jump or branch awaiting the next instruction: its address, the return address it wrote, whether it is
+    // taken whatever it tested, and whether its delay slot has been executed.
+    private int pendingLink = NO_ADDRESS;
+
+    private int pendingLinkReturn;
+
+    private boolean pendingLinkAlways;
+
+    private boolean delaySlotPassed;
+
+    // Return taken by the last instruction, done when its target is reached
+    private int pendingReturn = NO_ADDRESS;
+
+    private Profiler(MachineContext context)
+    {
+        this.context = context;
+        this.delayedBranching = Globals.getSettings().getDelayedBranchingEnabled();
+        this.registers = context.getRegisterBank().getValues();
+    }
+
+    /**
+     * Start profiling the runs of a machine.
+     *
+     * @param context the machine
+     * @return the profiler, which must be stopped
+     */
+    public static Profiler start(MachineContext context)
+    {
+        Profiler profiler = new Profiler(context);
+        context.addExecutionListener(profiler);
+        return profiler;
+    }
+
+    /**
+     * Stop profiling.  The counts remain available.
+     */
+    public void stop()
+    {
+        context.removeExecutionListener(this);
+    }
+
+    /**
+     * @return number of instructions counted
+     */
+    public long getInstructionCount()
+    {
+        return instructionCount;
+    }
+
+    /**
+     * @param address address of an instruction
+     * @return number of times it was executed
+     */
+    public long getCount(int address)
+    {
+        return counts.get(address, 0);
+    }
+
+    public void onRetire(int pc, int binaryStatement)
+    {
+        if (nodes == 0)
+        {
+            addNode(-1, pc);
+            push(0, NO_ADDRESS);
+        }
+        if (pendingLink != NO_ADDRESS)
+        {
+            if (delayedBranching && !delaySlotPassed && pc == pendingLink + 4)
+            {
+                delaySlotPassed = true;
+            }
+            else
+            {
+                if (pendingLinkAlways || pc != pendingLink + (delayedBranching ? 8 : 4))
+                {
+                    enter(pc, pendingLinkReturn);
+                }
+                pendingLink = NO_ADDRESS;
+            }
+        }
+        else if (pc == pendingReturn)
+        {
+            leave(pc);
+            pendingReturn = NO_ADDRESS;
+        }
+        counts.add(pc, 0, 1);
+        nodeCounts[stackNodes[depth - 1]]++;
+        instructionCount++;
+        int opcode = binaryStatement >>> 26;
+        int rs = (binaryStatement >>> 21) & 0x1F;
+        int rt = (binaryStatement >>> 16) & 0x1F;
+        if (opcode == 0x03) // jal
+        {
+            link(pc, registers[31], true);
+        }
+        else if (opcode == 0x00 && (binaryStatement & 0x3F) == 0x09) // jalr
+        {
+            link(pc, registers[(binaryStatement >>> 11) & 0x1F], true);
+        }
+        else if (opcode == 0x00 && (binaryStatement & 0x3F) == 0x08 && rs == 31) // jr $ra
+        {
+            pendingLink = NO_ADDRESS;
+            pendingReturn = registers[31];
+        }
+        else if (opcode == 0x01 && (rt == 0x10 || rt == 0x11)) // bltzal or bgezal, a call if taken
+        {
+            link(pc, registers[31], false);
+        }
+    }
+
+    private void link(int pc, int returnAddress, boolean always)
+    {
+        pendingLink = pc;
+        pendingLinkReturn = returnAddress;
+        pendingLinkAlways = always;
+        delaySlotPassed = false;
+        pendingReturn = NO_ADDRESS;
+    }
+
+    private void enter(int function, int returnAddress)
+    {
+        int parent = stackNodes[depth - 1];
+        Long key = ((long) parent << 32) | (function & 0xFFFFFFFFL);
+        Integer node = children.get(key);
+        if (node == null)
+        {
+            node = addNode(parent, function);
+            children.put(key, node);
+        }
+        nodeCalls[node]++;
+        push(node, returnAddress);
+    }
+
+    // Return to address: leave the frames down to the one the address returns from, if any
+    private void leave(int address)
+    {
+        for (int frame = depth - 1; frame > 0; frame--)
+        {
+            if (stackReturns[frame] == address)
+            {
+                depth = frame;
+                return;
+            }
+        }
+    }
+
+    private void push(int node, int returnAddress)
+    {
+        if (depth == stackNodes.length)
+        {
+            stackNodes = Arrays.copyOf(stackNodes, 2 * depth);
+            stackReturns = Arrays.copyOf(stackReturns, 2 * depth);
+        }
+        stackNodes[depth] = node;
+        stackReturns[depth] = returnAddress;
+        depth++;
+    }
+
+    private int addNode(int parent, int function)
+    {
+        if (nodes == nodeParents.length)
+        {
+            nodeParents = Arrays.copyOf(nodeParents, 2 * nodes);
+            nodeFunctions = Arrays.copyOf(nodeFunctions, 2 * nodes);
+            nodeCounts = Arrays.copyOf(nodeCounts, 2 * nodes);
+            nodeCalls = Arrays.copyOf(nodeCalls, 2 * nodes);
+        }
+        nodeParents[nodes] = parent;
+        nodeFunctions[nodes] = function;
+        return nodes++;
+    }
+
+    /**
+     * Write the instructions executed per function, itself and with the functions it calls, and the source lines
+     * executing the most instructions.
+     *
+     * @param out where to write
+     * @param program the program run, for its labels and source
+     * @param lines maximum number of source lines listed
+     */
+    public void writeReport(PrintStream out, MIPSprogram program, int lines)
+    {
+        TreeMap<Integer, String> labels = labels(program);
+        // Functions by entry address: instructions executed in them, with their callees, and calls
+        LinkedHashMap<Integer, long[]> functions = new LinkedHashMap<Integer, long[]>();
+        for (int node = 0; node < nodes; node++)
+        {
+            long[] totals = functions.get(nodeFunctions[node]);
+            if (totals == null)
+            {
+                totals = new long[3];
+                functions.put(nodeFunctions[node], totals);
+            }
+            totals[0] += nodeCounts[node];
+            totals[2] += nodeCalls[node];
+            // Count the node in each distinct function of its call path, so recursion is counted once
+            HashSet<Integer> path = new HashSet<Integer>();
+            for (int n = node; n >= 0; n = nodeParents[n])
+            {
+                if (path.add(nodeFunctions[n]))
+                {
+                    long[] caller = functions.get(nodeFunctions[n]);
+                    if (caller == null)
+                    {
+                        caller = new long[3];
+                        functions.put(nodeFunctions[n], caller);
+                    }
+                    caller[1] += nodeCounts[node];
+                }
+            }
+        }
+        ArrayList<Map.Entry<Integer, long[]>> byFunction = new ArrayList<Map.Entry<Integer, long[]>>(functions.entrySet());
+        byFunction.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        out.println("Instructions executed: " + instructionCount);
+        out.println();
+        out.println(String.format("%12s %7s %12s %7s %10s  %s", "self", "%", "total", "%", "calls", "function"));
+        for (Map.Entry<Integer, long[]> function : byFunction)
+        {
+            long[] totals = function.getValue();
+            out.println(String.format("%12d %7s %12d %7s %10d  %s", totals[0], percent(totals[0]), totals[1],
+                percent(totals[1]), totals[2], name(labels, function.getKey())));
+        }
+
+        // Source lines, keyed by file and line, with their instructions executed and first statement
+        LinkedHashMap<String, Object[]> sourceLines = new LinkedHashMap<String, Object[]>();
+        for (Object element : program.getMachineList())
+        {
+            ProgramStatement statement = (ProgramStatement) element;
+            long count = getCount(statement.getAddress());
+            if (count == 0)
+            {
+                continue;
+            }
+            String key = statement.getSourceFile() + ":" + statement.getSourceLine();
+            Object[] line = sourceLines.get(key);
+            if (line == null)
+            {
+                sourceLines.put(key, new Object[]{count, statement});
+            }
+            else
+            {
+                line[0] = (Long) line[0] + count;
+            }
+        }
+        ArrayList<Object[]> byLine = new ArrayList<Object[]>(sourceLines.values());
+        byLine.sort((a, b) -> Long.compare((Long) b[0], (Long) a[0]));
+        out.println();
+        out.println(String.format("%12s %7s  %-24s %-20s  %s", "count", "%", "line", "where", "source"));
+        for (int i = 0; i < Math.min(lines, byLine.size()); i++)
+        {
+            long count = (Long) byLine.get(i)[0];
+            ProgramStatement statement = (ProgramStatement) byLine.get(i)[1];
+            String line = new File(statement.getSourceFile()).getName() + ":" + statement.getSourceLine();
+            out.println(String.format("%12d %7s  %-24s %-20s  %s", count, percent(count), line,
+                name(labels, statement.getAddress()), statement.getSource().trim()));
+        }
+        if (counts.getOther(0) != 0)
+        {
+            out.println();
+            out.println("Instructions executed outside the text segments: " + counts.getOther(0));
+        }
+    }
+
+    /**
+     * Write the instructions executed in each call path, one line per path: the functions from the outermost,
+     * separated by semicolons, then the count.  This is the input format of flamegraph.pl and similar tools.
+     *
+     * @param out where to write
+     * @param program the program run, for its labels
+     */
+    public void writeCollapsedStacks(PrintStream out, MIPSprogram program)
+    {
+        TreeMap<Integer, String> labels = labels(program);
+        String[] paths = new String[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            // A parent always precedes its children
+            String name = name(labels, nodeFunctions[node]);
+            paths[node] = (nodeParents[node] < 0) ? name : paths[nodeParents[node]] + ";" + name;
+            if (nodeCounts[node] != 0)
+            {
+                out.println(paths[node] + " " + nodeCounts[node]);
+            }
+        }
+    }
+
+    private String percent(long count)
+    {
+        return String.format("%.2f", (instructionCount == 0) ? 0.0 : 100.0 * count / instructionCount);
+    }
+
+    // Text labels of the program by address, global and local to each of its files
+    static TreeMap<Integer, String> labels(MIPSprogram program)
+    {
+        TreeMap<Integer, String> labels = new TreeMap<Integer, String>();
+        ArrayList<SymbolTable> tables = new ArrayList<SymbolTable>();
+        tables.add(Globals.getSymbolTable());
+        HashSet<MIPSprogram> programs = new HashSet<MIPSprogram>();
+        for (Object statement : program.getMachineList())
+        {
+            MIPSprogram source = ((ProgramStatement) statement).getSourceMIPSprogram();
+            if (source != null && programs.add(source))
+            {
+                tables.add(source.getLocalSymbolTable());
+            }
+        }
+        for (SymbolTable table : tables)
+        {
+            for (Object symbol : table.getTextSymbols())
+            {
+                labels.putIfAbsent(((Symbol) symbol).getAddress(), ((Symbol) symbol).getName());
+            }
+        }
+        return labels;
+    }
+
+    // Name of an address: its label, or the label before it and the offset
+    static String name(TreeMap<Integer, String> labels, int address)
+    {
+        Map.Entry<Integer, String> label = labels.floorEntry(address);
+        if (label == null || (label.getKey() < 0) != (address < 0))
+        {
+            return Binary.intToHexString(address);
+        }
+        int offset = address - label.getKey();
+        return (offset == 0) ? label.getValue() : label.getValue() + "+" + offset;
+    }
+}
@@ -73,8 +73,22 @@ public class Simulator extends Observable
 
     public static final int PAUSE_OR_STOP = 6;
 
+    /**
+     * @deprecated each machine has its own pending interrupt; use MachineContext.setExternalInterruptingDevice().  An
+     * interrupt set here is taken by the default machine.
+     */
+    @Deprecated
     public static volatile int externalInterruptingDevice = NO_DEVICE;
 
+    // Number of instructions the headless run loop executes between checks of the stop flag and
+    // external interrupts.  Also the number executed per acquisition of the memory and register lock.
+    private static final int HEADLESS_CHECK_INTERVAL = 4096;
+
+    // Bits of a syscall instruction, which has opcode 0 and function code 12
+    private static final int SYSCALL_MASK = 0xFC00003F;
+
+    private static final int SYSCALL_MATCH = 0x0000000C;
+
     private static Simulator simulator = null;  // Singleton object
 
     private static Runnable interactiveGUIUpdater = null;
@@ -83,6 +97,9 @@ public class Simulator extends Observable
 
     private final ArrayList<StopListener> stopListeners = new ArrayList<StopListener>(1);
 
+    // Replaced rather than modified, so that a run can keep the array it started with.
+    private volatile ExecutionListener[] executionListeners = new ExecutionListener[0];
+
     private Simulator()
     {
         simulatorThread = null;
@@ -138,21 +155,66 @@ public class Simulator extends Observable
 
     public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException
     {
-        simulatorThread = new SimThread(p, pc, maxSteps, breakPoints, actor);
-        simulatorThread.start();
+        return simulate(p, pc, maxSteps, new Breakpoints(breakPoints), actor);
+    }
+
+    /**
+     * Simulate execution of given MIPS program.  It must have already been assembled.
+     *
+     * @param p The MIPSprogram to be simulated.
+     * @param pc address of first instruction to simulate; this goes into program counter
+     * @param maxSteps maximum number of steps to perform before returning false (0 or less means no max)
+     * @param breakpoints breakpoints and watchpoints at which to stop, use null if none
+     * @param actor the GUI component responsible for this call, usually GO or STEP.  null if none.
+     * @return true if execution completed, false otherwise
+     * @throws ProcessingException Throws exception if run-time exception occurs.
+     **/
+
+    public boolean simulate(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction actor) throws ProcessingException
+    {
+        return simulate(p, pc, maxSteps, breakpoints, actor, true);
+    }
+
+    /**
+     * Execute part of a run again for TimeTravel, which is bringing the machine to an instruction it has already
+     * reached.  Like simulate() without an actor, except that the files opened by the MIPS program are left open if it
+     * ends.
+     *
+     * @param p The MIPSprogram to be simulated.
+     * @param pc address of first instruction to simulate; this goes into program counter
+     * @param maxSteps maximum number of steps to perform before returning false (0 or less means no max)
+     * @param breakpoints breakpoints at which to stop, use null if none
+     * @return true if execution completed, false otherwise
+     * @throws ProcessingException Throws exception if run-time exception occurs.
+     */
+    boolean simulateAgain(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints) throws ProcessingException
+    {
+        return simulate(p, pc, maxSteps, breakpoints, null, false);
+    }
+
+    private boolean simulate(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction actor,
+                             boolean closeFiles) throws ProcessingException
+    {
+        // Keep a local reference: programs in other MachineContexts may be simulated concurrently.
+        SimThread thread = new SimThread(p, pc, maxSteps, breakpoints, actor, closeFiles);
+        simulatorThread = thread;
+        thread.start();
 
         // Condition should only be true if run from command-line instead of GUI.
         // If so, just stick around until execution thread is finished.
         if (actor == null)
         {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
-            if (done)
+            Object dun = thread.get(); // this should emulate join()
+            ProcessingException pe = thread.pe;
+            boolean done = thread.done;
+            if (done && closeFiles)
             {
                 SystemIO.resetFiles(); // close any files opened in MIPS progra
             }
-            this.simulatorThread = null;
+            if (simulatorThread == thread)
+            {
+                this.simulatorThread = null;
+            }
             if (pe != null)
             {
                 throw pe;
@@ -191,6 +253,45 @@ public class Simulator extends Observable
         stopListeners.remove(l);
     }
 
+    /**
+     * Add a listener to be told of the instructions, loads, stores and syscalls of every run started from now on.
+     * Block compilation is not used while there are listeners, since compiled blocks cannot report their instructions.
+     *
+     * @param l the listener
+     */
+    public synchronized void addExecutionListener(ExecutionListener l)
+    {
+        ExecutionListener[] listeners = Arrays.copyOf(executionListeners, executionListeners.length + 1);
+        listeners[listeners.length - 1] = l;
+        executionListeners = listeners;
+    }
+
+    /**
+     * Remove a listener added with addExecutionListener().  A run in progress goes on telling it until it stops.
+     *
+     * @param l the listener
+     */
+    public synchronized void removeExecutionListener(ExecutionListener l)
+    {
+        ArrayList<ExecutionListener> listeners = new ArrayList<ExecutionListener>(Arrays.asList(executionListeners));
+        if (listeners.remove(l))
+        {
+            executionListeners = listeners.toArray(new ExecutionListener[0]);
+        }
+    }
+
+    // Listeners of a run: those of the simulator, told of every machine's runs, then those of the machine.
+    private static ExecutionListener[] runListeners(ExecutionListener[] all, ExecutionListener[] machine)
+    {
+        if (machine.length == 0)
+        {
+            return all;
+        }
+        ExecutionListener[] listeners = Arrays.copyOf(all, all.length + machine.length);
+        System.arraycopy(machine, 0, listeners, all.length, machine.length);
+        return listeners;
+    }
+
     // The Simthread object will call this method when it enters and returns from
     // its construct() method.  These signal start and stop, respectively, of
     // simulation execution.  The observer can then adjust its own state depending
@@ -238,7 +339,13 @@ public class Simulator extends Observable
 
         private final int maxSteps;
 
-        private int[] breakPoints;
+        private Breakpoints breakpoints;
+
+        // Machine to simulate: the MachineContext of the thread that created this one
+        private final MachineContext context;
+
+        // Execution listeners when the run was started, told of each instruction only if there are any
+        private final ExecutionListener[] listeners;
 
         private boolean done;
 
@@ -250,8 +357,40 @@ public class Simulator extends Observable
 
         private final AbstractAction starter;
 
+        // Whether to close the files opened by the MIPS program when it ends
+        private final boolean closeFiles;
+
         private int constructReturnReason;
 
+        // Instructions executed so far, added to the MachineContext's count when construct() returns.
+        private long steps = 0;
+
+        // Time travel history recording this run, null if none
+        private TimeTravel timeTravel;
+
+        // Log recording or replaying the input of this run, null if none
+        private InputLog inputLog;
+
+        // Value of steps at which to stop for maxSteps, take a time travel checkpoint or replay device input
+        private long stepLimit;
+
+        // Statement at the program counter, to be executed next
+        private ProgramStatement statement;
+
+        // Address of the statement executed last, reported to observers when the run stops
+        private int statementPc;
+
+        // Pre-decoded text segment and block compiler in use, null if none.  index is the position of statement in
+        // predecoded, or -1 if it is not there.
+        private PredecodedProgram predecoded;
+
+        private BlockCompiler compiler;
+
+        private int index = -1;
+
+        // Text segment modification count when predecoded was made
+        private int textModificationCount;
+
 
         /**
          * SimThread constructor.  Receives all the information it needs to simulate execution.
@@ -259,20 +398,25 @@ public class Simulator extends Observable
          * @param p the MIPSprogram to be simulated
          * @param pc address in text segment of first instruction to simulate
          * @param maxSteps maximum number of instruction steps to simulate.  Default of -1 means no maximum
-         * @param breakPoints array of breakpoints (instruction addresses) specified by user
+         * @param breakpoints breakpoints and watchpoints specified by user, or null if none
          * @param starter the GUI component responsible for this call, usually GO or STEP.  null if none.
+         * @param closeFiles whether to close the files opened by the MIPS program when it ends
          */
-        SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter)
+        SimThread(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction starter,
+                  boolean closeFiles)
         {
             super(Globals.getGui() != null);
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
-            this.breakPoints = breakPoints;
+            this.breakpoints = breakpoints;
             this.done = false;
             this.pe = null;
             this.starter = starter;
+            this.closeFiles = closeFiles;
             this.stopper = null;
+            this.context = MachineContext.getCurrent();
+            this.listeners = runListeners(executionListeners, context.getMachineExecutionListeners());
         }
 
         /**
@@ -296,6 +440,37 @@ public class Simulator extends Observable
          */
 
         public Object construct()
+        {
+            context.setRunInstructionCount(() -> steps);
+            try
+            {
+                return simulateProgram();
+            }
+            finally
+            {
+                if (breakpoints != null)
+                {
+                    breakpoints.detach();
+                }
+                context.setRunInstructionCount(null);
+                context.addInstructionCount(steps);
+                if (timeTravel != null)
+                {
+                    timeTravel.finish();
+                }
+                if (inputLog != null)
+                {
+                    inputLog.finish();
+                }
+                if (listeners.length != 0)
+                {
+                    context.setExecutionListeners(null);
+                    context.getMemory().setExecutionListeners(null, null);
+                }
+            }
+        }
+
+        private Object simulateProgram()
         {
             // The next two statements are necessary for GUI to be consistently updated
             // before the simulation gets underway.  Without them, this happens only intermittently,
@@ -303,41 +478,40 @@ public class Simulator extends Observable
             // are not (because one or the other or both is not yet enabled).
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
+            context.makeCurrent();
 
-            if (breakPoints == null || breakPoints.length == 0)
+            if (breakpoints != null && breakpoints.isEmpty())
             {
-                breakPoints = null;
+                breakpoints = null;
             }
-            else
+            else if (breakpoints != null)
             {
-                Arrays.sort(breakPoints);  // must be pre-sorted for binary search
+                breakpoints.attach(context.getMemory());
             }
 
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
 
             RegisterFile.initializeProgramCounter(pc);
-            ProgramStatement statement = null;
-            try
+            if (context.getInputLog() != null && context.getInputLog().start())
             {
-                statement = Globals.memory.getStatement(RegisterFile.getPc());
+                inputLog = context.getInputLog();
             }
-            catch (AddressErrorException e)
+            if (p.getTimeTravel() != null && p.getTimeTravel().start(context))
             {
-                ErrorList el = new ErrorList();
-                el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getPc())));
-                this.pe = new ProcessingException(el, e);
-                // Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
-                // because it assumes the bad address comes from an operand so the ProgramCounter has already been
-                // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
-                // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
-                Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getPc());
-                this.constructReturnReason = EXCEPTION;
-                this.done = true;
-                SystemIO.resetFiles(); // close any files opened in MIPS program
-                Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                return Boolean.valueOf(done);
+                timeTravel = p.getTimeTravel();
+            }
+            if (listeners.length != 0)
+            {
+                context.setExecutionListeners(listeners);
+                context.getMemory().setExecutionListeners(listeners, Thread.currentThread());
+            }
+            stepLimit = nextStepLimit();
+            statementPc = pc; // until an instruction is executed
+            Boolean end = fetchStatement();
+            if (end != null)
+            {
+                return end;
             }
-            int steps = 0;
 
             // *******************  PS addition 26 July 2006  **********************
             // A couple statements below were added for the purpose of assuring that when
@@ -369,124 +543,68 @@ public class Simulator extends Observable
             // This is noticeable in stepped mode.
             // *********************************************************************
 
-            int pc = 0;  // added: 7/26/06 (explanation above)
+            // Use the pre-decoded interpreter, and above it the block compiler, if enabled and nothing requires the
+            // reference path: neither records backstep information.  Both are dropped for the rest of the run as soon
+            // as the text segment is modified.  Stepping one instruction at a time is not worth the cost of decoding.
+            boolean delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+            // Compiled blocks only return to the run loop at their end, too late to stop just after a watched store,
+            // to tell which of their instructions a tool's store was made during or to report each instruction.
+            boolean compileBlocks = Globals.getSettings().getBooleanSetting(Settings.BLOCK_COMPILATION_ENABLED)
+                && !delayedBranching && (breakpoints == null || !breakpoints.hasWatchpoints())
+                && (inputLog == null || !inputLog.isRecording()) && listeners.length == 0;
+            if (maxSteps != 1
+                && (compileBlocks || Globals.getSettings().getBooleanSetting(Settings.PREDECODED_EXECUTION_ENABLED))
+                && !Globals.getSettings().getBackSteppingEnabled())
+            {
+                predecoded = PredecodedProgram.decodeTextSegment(delayedBranching);
+                textModificationCount = Globals.getMemory().getTextSegmentModificationCount();
+                if (compileBlocks)
+                {
+                    compiler = new BlockCompiler(predecoded, (breakpoints == null) ? null : breakpoints.getAddresses(),
+                        Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+                }
+                index = predecoded.indexOf(RegisterFile.getPc());
+            }
+
+            // Without a GUI, breakpoints or backstepping nothing needs to be looked at between instructions, so use
+            // the batched run loop.  A stand-alone tool has no GUI but may have a run speed slider (see below), and
+            // then needs the delay after each instruction.
+            if (Globals.getGui() == null && !Globals.runSpeedPanelExists && breakpoints == null && maxSteps != 1
+                && !Globals.getSettings().getBackSteppingEnabled())
+            {
+                return runHeadless();
+            }
 
-            while (statement != null)
+            while (true)
             {
-                pc = RegisterFile.getPc(); // added: 7/26/06 (explanation above)
-                RegisterFile.incrementPC();
                 // Perform the MIPS instruction in synchronized block.  If external threads agree
                 // to access MIPS memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of MIPS memory and
                 // registers is assured.  Not as critical for reading from those resources.
-                synchronized (Globals.memoryAndRegistersLock)
+                synchronized (context.getLock())
                 {
-                    try
-                    {
-                        if (Simulator.externalInterruptingDevice != NO_DEVICE)
-                        {
-                            int deviceInterruptCode = externalInterruptingDevice;
-                            Simulator.externalInterruptingDevice = NO_DEVICE;
-                            throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
-                        }
-                        BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
-                        if (instruction == null)
-                        {
-                            throw new ProcessingException(statement,
-                                "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
-                                Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
-                        }
-                        // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                        instruction.getSimulationCode().simulate(statement);
-
-                        // IF statement added 7/26/06 (explanation above)
-                        if (Globals.getSettings().getBackSteppingEnabled())
-                        {
-                            Globals.program.getBackStepper().addDoNothing(pc);
-                        }
-                    }
-                    catch (ProcessingException pe)
-                    {
-                        if (pe.errors() == null)
-                        {
-                            this.constructReturnReason = NORMAL_TERMINATION;
-                            this.done = true;
-                            SystemIO.resetFiles(); // close any files opened in MIPS program
-                            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                            return Boolean.valueOf(done); // execution completed without error.
-                        }
-                        else
-                        {
-                            // See if an exception handler is present.  Assume this is the case
-                            // if and only if memory location Memory.exceptionHandlerAddress
-                            // (e.g. 0x80000180) contains an instruction.  If so, then set the
-                            // program counter there and continue.  Otherwise terminate the
-                            // MIPS program with appropriate error message.
-                            ProgramStatement exceptionHandler = null;
-                            try
-                            {
-                                exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
-                            }
-                            catch (AddressErrorException aee)
-                            {
-                            } // will not occur with this well-known addres
-                            if (exceptionHandler != null)
-                            {
-                                RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
-                            }
-                            else
-                            {
-                                this.constructReturnReason = EXCEPTION;
-                                this.pe = pe;
-                                this.done = true;
-                                SystemIO.resetFiles(); // close any files opened in MIPS program
-                                Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                                return Boolean.valueOf(done);
-                            }
-                        }
-                    }
+                    end = executeStatement(true);
                 }// end synchronized block
-
-                ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
-                if (DelayedBranch.isTriggered())
+                if (end != null)
                 {
-                    RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
-                    DelayedBranch.clear();
+                    return end;
                 }
-                else if (DelayedBranch.isRegistered())
-                {
-                    DelayedBranch.trigger();
-                }//////////////////////////////////////////////////////////////////////
 
                 // Volatile variable initialized false but can be set true by the main thread.
                 // Used to stop or pause a running MIPS program.  See stopSimulation() above.
-                if (stop)
+                if (stop || context.isStopRequested())
                 {
-                    this.constructReturnReason = PAUSE_OR_STOP;
-                    this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                    return Boolean.valueOf(done);
+                    return stopExecution(false, PAUSE_OR_STOP);
                 }
-                //	Return if we've reached a breakpoint.
-                if ((breakPoints != null) &&
-                    (Arrays.binarySearch(breakPoints, RegisterFile.getPc()) >= 0))
+                //	Return if we've reached a breakpoint or written to a watched address.
+                if ((breakpoints != null) &&
+                    breakpoints.shouldStop(RegisterFile.getPc()))
                 {
-                    this.constructReturnReason = BREAKPOINT;
-                    this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                    return Boolean.valueOf(done); // false;
+                    return stopExecution(false, BREAKPOINT); // false;
                 }
-                // Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
-                if (maxSteps > 0)
+                if (steps >= stepLimit && (end = stepLimitReached()) != null)
                 {
-                    steps++;
-                    if (steps >= maxSteps)
-                    {
-                        this.constructReturnReason = MAX_STEPS;
-                        this.done = false;
-                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                        return Boolean.valueOf(done);// false;
-                    }
+                    return end;
                 }
 
                 // schedule GUI update only if: there is in fact a GUI! AND
@@ -513,48 +631,354 @@ public class Simulator extends Observable
                     }
                 }
 
-
                 // Get next instruction in preparation for next iteration.
+                if ((end = fetchStatement()) != null)
+                {
+                    return end;
+                }
+            }
+        }
+
+
+        /**
+         * Run loop for command-line use: no GUI updates, breakpoints, backstepping or run speed delays.  The stop flag
+         * and external interrupts are checked, and the memory and register lock taken, once every
+         * HEADLESS_CHECK_INTERVAL instructions rather than for each instruction.  A syscall ends the batch and is
+         * executed without the lock, since it may wait for input for as long as the user takes.
+         *
+         * @return value to be returned by construct()
+         */
+        private Boolean runHeadless()
+        {
+            Boolean end;
+            while (true)
+            {
+                if (stop || context.isStopRequested())
+                {
+                    return stopExecution(false, PAUSE_OR_STOP);
+                }
+                if (isSyscall(statement))
+                {
+                    if ((end = executeStatement(true)) != null
+                        || steps >= stepLimit && (end = stepLimitReached()) != null
+                        || (end = fetchStatement()) != null)
+                    {
+                        return end;
+                    }
+                    continue;
+                }
+                synchronized (context.getLock())
+                {
+                    for (int batch = 0; batch < HEADLESS_CHECK_INTERVAL && !isSyscall(statement); batch++)
+                    {
+                        if ((end = executeStatement(batch == 0)) != null)
+                        {
+                            return end;
+                        }
+                        if (steps >= stepLimit)
+                        {
+                            if ((end = stepLimitReached()) != null)
+                            {
+                                return end;
+                            }
+                            if (inputLog != null)
+                            {
+                                // End the batch, so an interrupt replayed by the input log is taken before the next
+                                // instruction.
+                                batch = HEADLESS_CHECK_INTERVAL;
+                            }
+                        }
+                        if ((end = fetchStatement()) != null)
+                        {
+                            return end;
+                        }
+                    }
+                }
+            }
+        }
 
-                try
+        /**
+         * Execute the current statement, or the compiled block starting at it, as the one step shared by both run
+         * loops: take an external interrupt, enter the exception handler on an exception, tell the listeners and count
+         * the instructions, then handle a delayed branch.  Called with the memory and register lock held, except for
+         * syscalls in the headless loop.
+         *
+         * @param checkInterrupt whether to take a pending external interrupt before executing
+         * @return value to be returned by construct() if the run ended, null otherwise
+         */
+        private Boolean executeStatement(boolean checkInterrupt)
+        {
+            CompiledBlock block = null;
+            if (compiler != null && index >= 0)
+            {
+                block = compiler.enter(index);
+                if (block != null && steps + block.getLength() > stepLimit)
+                {
+                    block = null; // would overrun the step limit, interpret instead
+                }
+            }
+            statementPc = RegisterFile.getPc(); // added: 7/26/06 (explanation in simulateProgram())
+            RegisterFile.incrementPC();
+            try
+            {
+                int deviceInterruptCode = checkInterrupt ? takeExternalInterrupt() : NO_DEVICE;
+                if (deviceInterruptCode != NO_DEVICE)
                 {
-                    statement = Globals.memory.getStatement(RegisterFile.getPc());
+                    if (inputLog != null)
+                    {
+                        inputLog.interrupted(deviceInterruptCode);
+                    }
+                    throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
                 }
-                catch (AddressErrorException e)
+                if (block != null)
                 {
-                    ErrorList el = new ErrorList();
-                    el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getPc())));
-                    this.pe = new ProcessingException(el, e);
-                    // Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
-                    // because it assumes the bad address comes from an operand so the ProgramCounter has already been
-                    // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
-                    // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
-                    Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getPc());
-                    this.constructReturnReason = EXCEPTION;
-                    this.done = true;
-                    SystemIO.resetFiles(); // close any files opened in MIPS program
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                    return Boolean.valueOf(done);
+                    RegisterFile.initializeProgramCounter(block.execute());
+                    steps += block.getLength() - 1; // the last one is counted below
+                }
+                else if (index < 0 || !predecoded.execute(index))
+                {
+                    BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
+                    if (instruction == null)
+                    {
+                        throw new ProcessingException(statement,
+                            "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
+                            Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                    }
+                    // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
+                    instruction.getSimulationCode().simulate(statement);
+                }
+
+                // IF statement added 7/26/06 (explanation in simulateProgram())
+                if (Globals.getSettings().getBackSteppingEnabled())
+                {
+                    Globals.getProgram().getBackStepper().addDoNothing(statementPc);
+                }
+            }
+            catch (ProcessingException pe)
+            {
+                if (block != null)
+                {
+                    steps += block.takeRetired(); // the instructions of the block before the one that raised pe
+                }
+                if (pe.errors() == null)
+                {
+                    if (listeners.length != 0)
+                    {
+                        retire(statementPc, statement);
+                    }
+                    steps++; // the exit syscall counts as executed
+                    return stopExecution(true, NORMAL_TERMINATION); // execution completed without error.
+                }
+                if (!enterExceptionHandler())
+                {
+                    this.pe = pe;
+                    return stopExecution(true, EXCEPTION);
                 }
             }
-            // DPS July 2007.  This "if" statement is needed for correct program
-            // termination if delayed branching on and last statement in
-            // program is a branch/jump.  Program will terminate rather than branch,
-            // because that's what MARS does when execution drops off the bottom.
-            if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered())
+            if (listeners.length != 0)
             {
+                retire(statementPc, statement);
+            }
+            // Counted while holding the lock, so that a tool storing between two instructions sees the count.
+            steps++;
+
+            ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
+            if (DelayedBranch.isTriggered())
+            {
+                RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
                 DelayedBranch.clear();
             }
-            // If we got here it was due to null statement, which means program
-            // counter "fell off the end" of the program.  NOTE: Assumes the
-            // "while" loop contains no "break;" statements.
-            this.constructReturnReason = CLIFF_TERMINATION;
-            this.done = true;
-            SystemIO.resetFiles(); // close any files opened in MIPS program
-            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-            return Boolean.valueOf(done); // true;  // execution completed
+            else if (DelayedBranch.isRegistered())
+            {
+                DelayedBranch.trigger();
+            }//////////////////////////////////////////////////////////////////////
+            return null;
+        }
+
+        /**
+         * Called when steps has reached stepLimit: stop if at maxSteps, otherwise take a time travel checkpoint and
+         * replay device input.
+         *
+         * @return value to be returned by construct() if the run ended, null otherwise
+         */
+        private Boolean stepLimitReached()
+        {
+            // Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
+            if (maxSteps > 0 && steps >= maxSteps)
+            {
+                return stopExecution(false, MAX_STEPS);// false;
+            }
+            stepLimit = checkpoint();
+            return null;
+        }
+
+        /**
+         * Take the external interrupt pending for this machine, clearing it.  The default machine also takes one set
+         * through the deprecated Simulator.externalInterruptingDevice.
+         *
+         * @return the interrupting device's cause code, NO_DEVICE if none is pending
+         */
+        @SuppressWarnings("deprecation")
+        private int takeExternalInterrupt()
+        {
+            int device = context.getExternalInterruptingDevice();
+            if (device != NO_DEVICE)
+            {
+                context.setExternalInterruptingDevice(NO_DEVICE);
+            }
+            else if (externalInterruptingDevice != NO_DEVICE && context == MachineContext.getDefault())
+            {
+                device = externalInterruptingDevice;
+                externalInterruptingDevice = NO_DEVICE;
+            }
+            return device;
         }
 
+        /**
+         * Set statement to the instruction at the program counter.  The pre-decoded program and compiled blocks are
+         * dropped if the text segment has been modified since they were made.
+         *
+         * @return value to be returned by construct() if the program counter is invalid or has run off the end of the
+         *     program, null otherwise
+         */
+        private Boolean fetchStatement()
+        {
+            if (predecoded != null)
+            {
+                if (textModificationCount != Globals.getMemory().getTextSegmentModificationCount())
+                {
+                    // Self-modifying code: decoded and compiled code are stale, continue with the reference path.
+                    predecoded = null;
+                    compiler = null;
+                    index = -1;
+                }
+                else if ((index = predecoded.indexOf(RegisterFile.getPc())) >= 0)
+                {
+                    statement = predecoded.getStatement(index);
+                    return null;
+                }
+            }
+            try
+            {
+                statement = Globals.getMemory().getStatement(RegisterFile.getPc());
+            }
+            catch (AddressErrorException e)
+            {
+                ErrorList el = new ErrorList();
+                el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getPc())));
+                this.pe = new ProcessingException(el, e);
+                // Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
+                // because it assumes the bad address comes from an operand so the ProgramCounter has already been
+                // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
+                // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
+                Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getPc());
+                return stopExecution(true, EXCEPTION);
+            }
+            if (statement == null)
+            {
+                // DPS July 2007.  This "if" statement is needed for correct program
+                // termination if delayed branching on and last statement in
+                // program is a branch/jump.  Program will terminate rather than branch,
+                // because that's what MARS does when execution drops off the bottom.
+                if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered())
+                {
+                    DelayedBranch.clear();
+                }
+                // A null statement means the program counter "fell off the end" of the program.
+                return stopExecution(true, CLIFF_TERMINATION); // true;  // execution completed
+            }
+            return null;
+        }
+
+        // True if a statement is a syscall instruction, which the headless loop executes without the lock.
+        private boolean isSyscall(ProgramStatement statement)
+        {
+            return (statement.getBinaryStatement() & SYSCALL_MASK) == SYSCALL_MATCH;
+        }
+
+        // Tell the execution listeners that an instruction has been executed.
+        private void retire(int pc, ProgramStatement statement)
+        {
+            int binaryStatement = statement.getBinaryStatement();
+            for (ExecutionListener listener : listeners)
+            {
+                listener.onRetire(pc, binaryStatement);
+            }
+        }
+
+        // Value of steps at which the run loop next has to call checkpoint() or stop for maxSteps.
+        private long nextStepLimit()
+        {
+            long limit = (maxSteps > 0) ? maxSteps : Long.MAX_VALUE;
+            if (timeTravel != null)
+            {
+                limit = Math.min(limit, stepsUntil(timeTravel.getNextCheckpoint()));
+            }
+            if (inputLog != null)
+            {
+                limit = Math.min(limit, stepsUntil(inputLog.getNextEvent()));
+            }
+            return limit;
+        }
+
+        // Value of steps at which the instruction count reaches a position, at least one more than now.
+        private long stepsUntil(long position)
+        {
+            return (position == Long.MAX_VALUE)
+                ? Long.MAX_VALUE : steps + Math.max(1, position - context.getInstructionCount());
+        }
+
+        // Take a time travel checkpoint and replay the device input recorded here, if any.
+        private long checkpoint()
+        {
+            if (timeTravel != null)
+            {
+                timeTravel.checkpoint();
+            }
+            if (inputLog != null)
+            {
+                inputLog.applyEvents();
+            }
+            return nextStepLimit();
+        }
+
+        /**
+         * If an exception handler is present, set the program counter to it.  Assume this is the case if and only if
+         * memory location Memory.exceptionHandlerAddress (e.g. 0x80000180) contains an instruction.
+         *
+         * @return true if execution continues in the exception handler
+         */
+        private boolean enterExceptionHandler()
+        {
+            ProgramStatement exceptionHandler = null;
+            try
+            {
+                exceptionHandler = Globals.getMemory().getStatement(Memory.exceptionHandlerAddress);
+            }
+            catch (AddressErrorException aee)
+            {
+            } // will not occur with this well-known addres
+            if (exceptionHandler == null)
+            {
+                return false;
+            }
+            RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+            return true;
+        }
+
+        // Record why execution stopped and notify observers.  Files opened by the MIPS program are closed if it is
+        // done, unless this is a run executed again by TimeTravel.
+        private Boolean stopExecution(boolean done, int reason)
+        {
+            this.constructReturnReason = reason;
+            this.done = done;
+            if (done && closeFiles)
+            {
+                SystemIO.resetFiles(); // close any files opened in MIPS program
+            }
+            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, statementPc);
+            return Boolean.valueOf(done);
+        }
 
         /**
          * This method is invoked by the SwingWorker when the "construct" method returns. It will update the GUI
@@ -567,8 +991,8 @@ public class Simulator extends Observable
 
         public void finished()
         {
-            // If running from the command-line, then there is no GUI to update.
-            if (Globals.getGui() == null)
+            // If running from the command-line, or without a GUI action, then there is no GUI to update.
+            if (Globals.getGui() == null || starter == null)
             {
                 return;
             }
@@ -0,0 +1,294 @@
+package mars.simulator;
+
+import mars.ErrorList;
+import mars.ErrorMessage;
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterBank;
+import mars.mips.instructions.syscalls.Syscall;
+import mars.mips.instructions.syscalls.SyscallHandler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * What one syscall did: the registers and memory words it changed, and how it ended.  Applying it to the machine again
+ * at the same instruction has the same result as performing the syscall, without calling the service.
+ */
+final class SyscallEffect
+{
+    private static final int NORMAL = 0;
+
+    private static final int EXIT = 1;
+
+    private static final int ERROR = 2;
+
+    final long position;
+
+    final int service;
+
+    // Pairs of (bank << 16 | register number) and value, banks numbered as in banks()
+    private final int[] registers;
+
+    // Pairs of address and value
+    private final int[] memory;
+
+    private final int heapAddress;
+
+    private final int exitCode;
+
+    private final int outcome;
+
+    // The exception thrown, if recorded in this JVM
+    private final ProcessingException exception;
+
+    // Error messages of the exception thrown, if read from a file
+    private final String[] errors;
+
+    private SyscallEffect(long position, int service, int[] registers, int[] memory, int heapAddress, int exitCode,
+                          int outcome, ProcessingException exception, String[] errors)
+    {
+        this.position = position;
+        this.service = service;
+        this.registers = registers;
+        this.memory = memory;
+        this.heapAddress = heapAddress;
+        this.exitCode = exitCode;
+        this.outcome = outcome;
+        this.exception = exception;
+        this.errors = errors;
+    }
+
+    /**
+     * Perform a syscall and record its effect.  A ProcessingException thrown by the service is recorded rather than
+     * thrown; apply() throws it.
+     *
+     * @param context the machine, whose instruction count is the syscall's position
+     * @param service the service selected by $v0
+     * @param statement the syscall statement
+     * @param handler handler to perform the syscall through, or null to call the service
+     * @return the effect
+     */
+    static SyscallEffect record(MachineContext context, Syscall service, ProgramStatement statement,
+                                SyscallHandler handler)
+    {
+        long position = context.getInstructionCount();
+        int[][] before = copyRegisters(context);
+        Memory memory = context.getMemory();
+        ProcessingException exception = null;
+        int[] words;
+        memory.startWriteJournal();
+        try
+        {
+            if (handler != null)
+            {
+                handler.simulate(service, statement);
+            }
+            else
+            {
+                service.simulate(statement);
+            }
+        }
+        catch (ProcessingException e)
+        {
+            exception = e;
+        }
+        finally
+        {
+            words = memory.endWriteJournal();
+        }
+        RegisterBank[] banks = banks(context);
+        int changed = 0;
+        int[] registers = new int[16];
+        for (int bank = 0; bank < banks.length; bank++)
+        {
+            int[] values = banks[bank].getValues();
+            for (int i = 0; i < values.length; i++)
+            {
+                if (values[i] != before[bank][i])
+                {
+                    if (changed + 2 > registers.length)
+                    {
+                        registers = Arrays.copyOf(registers, registers.length * 2);
+                    }
+                    registers[changed++] = bank << 16 | i;
+                    registers[changed++] = values[i];
+                }
+            }
+        }
+        int outcome = (exception == null) ? NORMAL : (exception.errors() == null) ? EXIT : ERROR;
+        return new SyscallEffect(position, service.getNumber(), Arrays.copyOf(registers, changed), words,
+            memory.getHeapAddress(), context.getExitCode(), outcome, exception, null);
+    }
+
+    /**
+     * Put the registers and memory words the syscall changed back to the values it gave them, and end as it did.
+     *
+     * @param context the machine
+     * @param statement the syscall statement
+     * @throws ProcessingException if the syscall threw one
+     */
+    void apply(MachineContext context, ProgramStatement statement) throws ProcessingException
+    {
+        RegisterBank[] banks = banks(context);
+        for (int i = 0; i < registers.length; i += 2)
+        {
+            banks[registers[i] >>> 16].set(registers[i] & 0xFFFF, registers[i + 1]);
+        }
+        try
+        {
+            for (int i = 0; i < memory.length; i += 2)
+            {
+                context.getMemory().setRawWord(memory[i], memory[i + 1]);
+            }
+        }
+        catch (AddressErrorException e)
+        {
+            throw new ProcessingException(statement, e);
+        }
+        context.getMemory().setHeapAddress(heapAddress);
+        context.setExitCode(exitCode);
+        throwException(statement);
+    }
+
+    /**
+     * Throw the ProcessingException the syscall threw, if it threw one.
+     *
+     * @param statement the syscall statement
+     * @throws ProcessingException the exception
+     */
+    void throwException(ProgramStatement statement) throws ProcessingException
+    {
+        if (exception != null)
+        {
+            throw exception;
+        }
+        if (outcome == EXIT)
+        {
+            throw new ProcessingException();
+        }
+        if (outcome == ERROR)
+        {
+            ErrorList list = new ErrorList();
+            for (String error : errors)
+            {
+                list.add(new ErrorMessage(statement, error));
+            }
+            throw new ProcessingException(list);
+        }
+    }
+
+    /**
+     * Write the effect in binary form, without its position.
+     *
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(service);
+        out.writeShort(registers.length / 2);
+        for (int value : registers)
+        {
+            out.writeInt(value);
+        }
+        out.writeInt(memory.length / 2);
+        for (int value : memory)
+        {
+            out.writeInt(value);
+        }
+        out.writeInt(heapAddress);
+        out.writeInt(exitCode);
+        out.writeByte(outcome);
+        if (outcome == ERROR)
+        {
+            if (exception == null)
+            {
+                out.writeShort(errors.length);
+                for (String error : errors)
+                {
+                    out.writeUTF(error);
+                }
+                return;
+            }
+            ArrayList messages = exception.errors().getErrorMessages();
+            out.writeShort(messages.size());
+            for (Object message : messages)
+            {
+                out.writeUTF(((ErrorMessage) message).getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read an effect written by write().
+     *
+     * @param in where to read it from
+     * @param position instruction count at which the syscall was performed
+     * @return the effect
+     * @throws IOException if reading fails or the data is not valid
+     */
+    static SyscallEffect read(DataInputStream in, long position) throws IOException
+    {
+        int service = in.readInt();
+        int[] registers = readPairs(in, in.readUnsignedShort());
+        int[] memory = readPairs(in, in.readInt());
+        int heapAddress = in.readInt();
+        int exitCode = in.readInt();
+        int outcome = in.readByte();
+        String[] errors = null;
+        if (outcome == ERROR)
+        {
+            errors = new String[in.readUnsignedShort()];
+            for (int i = 0; i < errors.length; i++)
+            {
+                errors[i] = in.readUTF();
+            }
+        }
+        else if (outcome != NORMAL && outcome != EXIT)
+        {
+            throw new IOException("invalid syscall outcome " + outcome);
+        }
+        return new SyscallEffect(position, service, registers, memory, heapAddress, exitCode, outcome, null, errors);
+    }
+
+    private static int[] readPairs(DataInputStream in, int pairs) throws IOException
+    {
+        if (pairs < 0 || pairs > 1 << 24)
+        {
+            throw new IOException("invalid syscall effect size " + pairs);
+        }
+        int[] values = new int[2 * pairs];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * @return copy of the values of the machine's register banks, in the order of banks()
+     */
+    static int[][] copyRegisters(MachineContext context)
+    {
+        RegisterBank[] banks = banks(context);
+        int[][] copy = new int[banks.length][];
+        for (int i = 0; i < banks.length; i++)
+        {
+            copy[i] = banks[i].getValues().clone();
+        }
+        return copy;
+    }
+
+    private static RegisterBank[] banks(MachineContext context)
+    {
+        return new RegisterBank[]{context.getRegisterBank(), context.getCoprocessor0RegisterBank(),
+            context.getCoprocessor1RegisterBank()};
+    }
+}
@@ -0,0 +1,92 @@
+package mars.simulator;
+
+import mars.mips.hardware.Memory;
+
+import java.util.Arrays;
+
+/**
+ * Counters kept for each word of the text and kernel text segments, such as the number of times the instruction there
+ * was executed.  Each word has the same number of counters, numbered from 0.  The arrays grow as the program executes
+ * further into the segments; counts for addresses outside them are summed together.
+ */
+final class TextCounters
+{
+    private final int columns;
+
+    // Counters of word n of a segment at n * columns to n * columns + columns - 1
+    private long[] text;
+
+    private long[] kernelText;
+
+    private final long[] other;
+
+    TextCounters(int columns)
+    {
+        this.columns = columns;
+        this.text = new long[1024 * columns];
+        this.kernelText = new long[64 * columns];
+        this.other = new long[columns];
+    }
+
+    /**
+     * Add to a counter of an address.
+     *
+     * @param address the address
+     * @param column the counter
+     * @param amount amount to add
+     */
+    void add(int address, int column, long amount)
+    {
+        if (Memory.inTextSegment(address))
+        {
+            int index = ((address - Memory.textBaseAddress) >>> 2) * columns + column;
+            if (index >= text.length)
+            {
+                text = Arrays.copyOf(text, Math.max(2 * text.length, index + columns));
+            }
+            text[index] += amount;
+        }
+        else if (Memory.inKernelTextSegment(address))
+        {
+            int index = ((address - Memory.kernelTextBaseAddress) >>> 2) * columns + column;
+            if (index >= kernelText.length)
+            {
+                kernelText = Arrays.copyOf(kernelText, Math.max(2 * kernelText.length, index + columns));
+            }
+            kernelText[index] += amount;
+        }
+        else
+        {
+            other[column] += amount;
+        }
+    }
+
+    /**
+     * @param address address in the text or kernel text segment
+     * @param column the counter
+     * @return value of the counter of the address
+     */
+    long get(int address, int column)
+    {
+        if (Memory.inTextSegment(address))
+        {
+            int index = ((address - Memory.textBaseAddress) >>> 2) * columns + column;
+            return (index < text.length) ? text[index] : 0;
+        }
+        if (Memory.inKernelTextSegment(address))
+        {
+            int index = ((address - Memory.kernelTextBaseAddress) >>> 2) * columns + column;
+            return (index < kernelText.length) ? kernelText[index] : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @param column the counter
+     * @return sum of the counter for addresses outside the text segments
+     */
+    long getOther(int column)
+    {
+        return other[column];
+    }
+}
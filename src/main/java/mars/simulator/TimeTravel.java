@@ -0,0 +1,472 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.syscalls.Syscall;
+import mars.mips.instructions.syscalls.SyscallHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Time travel debugging: going back to any instruction of a run at full speed, instead of recording an undo action
+ * for every write as BackStepper does.  While the time travel setting is on and backstepping is not (that is, at
+ * unlimited run speed or from the command line), the simulator takes a MachineState checkpoint every
+ * <code>Globals.timeTravelInterval</code> instructions and every syscall goes through this class, which records
+ * what the syscall did to the registers and memory.  Going back restores the last checkpoint before the wanted
+ * instruction and executes forward to it.  Executing again an instruction already executed once applies the recorded
+ * effect of its syscall instead of calling the service, so the program reads the same input and nothing is printed
+ * twice; past the furthest instruction reached the services are called again.
+ * <p>
+ * When there are more than <code>Globals.maximumCheckpoints</code> checkpoints every other one is dropped and the
+ * interval doubled, so memory use stays bounded while going back to an instruction costs at most one interval of
+ * execution.
+ * <p>
+ * The program is assumed to do the same thing each time apart from its syscalls.  Changes made to registers or memory
+ * while the program is not running, by hand or by a tool, start a new history from there.  Input from memory mapped
+ * devices during a run, external interrupts, random number streams and files are not recorded, unless an InputLog is
+ * replaying them; if a syscall is not reached where it was before, the history is discarded and starts again with the
+ * next run.
+ */
+public class TimeTravel implements SyscallHandler
+{
+    private final MIPSprogram program;
+
+    // Machine the history is of, set when a run is first recorded
+    private MachineContext context;
+
+    // Checkpoints in order of instruction count, the first at the start of the history
+    private final ArrayList<MachineState> checkpoints = new ArrayList<MachineState>();
+
+    // Recorded syscalls in order of instruction count
+    private final ArrayList<SyscallEffect> syscalls = new ArrayList<SyscallEffect>();
+
+    // Index in syscalls of the first one at or after the current instruction
+    private int nextSyscall;
+
+    // Furthest instruction count reached; syscalls before it are replayed
+    private long horizon;
+
+    // Checkpoint interval at the start of a history, and the number of checkpoints above which they are thinned out
+    private int initialInterval = Globals.timeTravelInterval;
+
+    private int maximumCheckpoints = Globals.maximumCheckpoints;
+
+    private long interval = initialInterval;
+
+    // Whether writes to memory are being journalled to detect changes made while the program is not running
+    private boolean parked;
+
+    private int[][] parkedRegisters;
+
+    // Handler that was installed when the run started, through which the syscalls not replayed are performed
+    private SyscallHandler liveHandler;
+
+    // Whether the last executeTo() was stopped with Stop or Pause before reaching its position
+    private boolean stopped;
+
+    /**
+     * Create the time travel history for a program.  Done when it is assembled.
+     *
+     * @param program the program
+     */
+    public TimeTravel(MIPSprogram program)
+    {
+        this.program = program;
+    }
+
+    /**
+     * Called by the simulator when a run starts, in the machine's thread.  Continues the history if time travel is
+     * enabled and backstepping is not, or else discards it.
+     *
+     * @param context the machine about to run
+     * @return true if the run is recorded, in which case the simulator calls checkpoint() when the instruction count
+     * reaches getNextCheckpoint() and finish() when the run ends
+     */
+    boolean start(MachineContext context)
+    {
+        if (!Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED)
+            || Globals.getSettings().getBackSteppingEnabled())
+        {
+            reset();
+            return false;
+        }
+        if (this.context != context)
+        {
+            reset();
+            this.context = context;
+        }
+        recordChangesByHand();
+        long position = context.getInstructionCount();
+        if (checkpoints.isEmpty() || position < getEarliestPosition() || position > horizon)
+        {
+            reset();
+            checkpoints.add(MachineState.capture(context));
+            horizon = position;
+        }
+        nextSyscall = firstSyscallAtOrAfter(position);
+        liveHandler = context.getSyscallHandler();
+        context.setSyscallHandler(this);
+        return true;
+    }
+
+    /**
+     * Called by the simulator when a recorded run ends, in the machine's thread.
+     */
+    void finish()
+    {
+        context.setSyscallHandler(liveHandler);
+        liveHandler = null;
+        horizon = Math.max(horizon, context.getInstructionCount());
+        park();
+    }
+
+    /**
+     * @return instruction count at which the simulator is to call checkpoint(), Long.MAX_VALUE if none
+     */
+    long getNextCheckpoint()
+    {
+        if (checkpoints.isEmpty())
+        {
+            return Long.MAX_VALUE;
+        }
+        return checkpoints.get(checkpoints.size() - 1).getInstructionCount() + interval;
+    }
+
+    /**
+     * Called by the simulator between two instructions of a recorded run to take a checkpoint.
+     */
+    void checkpoint()
+    {
+        if (checkpoints.isEmpty()
+            || context.getInstructionCount() <= checkpoints.get(checkpoints.size() - 1).getInstructionCount())
+        {
+            return;
+        }
+        checkpoints.add(MachineState.capture(context));
+        if (checkpoints.size() > maximumCheckpoints)
+        {
+            // Keep the first and last and every other one in between.
+            for (int i = checkpoints.size() - 2; i > 0; i -= 2)
+            {
+                checkpoints.remove(i);
+            }
+            interval *= 2;
+        }
+    }
+
+    /**
+     * Perform a syscall for the machine: apply its recorded effect if the current instruction has already been
+     * executed, otherwise call the service and record its effect.
+     */
+    public void simulate(Syscall service, ProgramStatement statement) throws ProcessingException
+    {
+        long position = context.getInstructionCount();
+        if (nextSyscall < syscalls.size() && syscalls.get(nextSyscall).position == position)
+        {
+            syscalls.get(nextSyscall++).apply(context, statement);
+            return;
+        }
+        if (position < horizon)
+        {
+            // Not the syscall recorded here, or none was: the history no longer applies.
+            reset();
+            simulateLive(service, statement);
+            return;
+        }
+        if (checkpoints.isEmpty())
+        {
+            simulateLive(service, statement);
+            return;
+        }
+        SyscallEffect effect = SyscallEffect.record(context, service, statement, liveHandler);
+        syscalls.add(effect);
+        nextSyscall = syscalls.size();
+        effect.throwException(statement);
+    }
+
+    /**
+     * Go to an instruction of the history: restore the state of the machine after the given number of instructions
+     * were executed.  Not while the machine is running.  Call from a thread using the machine's MachineContext, but
+     * not the GUI's event thread: up to a checkpoint interval of instructions may be executed again, which the
+     * simulator does on a thread of its own while this one waits.  Windows showing the machine must be updated
+     * afterwards.  Stopping the simulator leaves the machine at the instruction reached so far.
+     *
+     * @param position the instruction count, between getEarliestPosition() and the furthest count reached
+     * @return true if done, false if the position is not in the history
+     * @throws ProcessingException if executing forward to the position fails
+     */
+    public boolean seek(long position) throws ProcessingException
+    {
+        if (context == null || checkpoints.isEmpty())
+        {
+            return false;
+        }
+        recordChangesByHand();
+        if (position < getEarliestPosition() || position > horizon)
+        {
+            park();
+            return false;
+        }
+        MachineState checkpoint = checkpoints.get(lastCheckpointAtOrBefore(position));
+        long current = context.getInstructionCount();
+        if (position < current || checkpoint.getInstructionCount() > current)
+        {
+            checkpoint.restore(context);
+        }
+        executeTo(position, null);
+        park();
+        return true;
+    }
+
+    /**
+     * Go back a number of instructions, or to the start of the history if it has fewer.
+     *
+     * @param instructions number of instructions
+     * @return number of instructions gone back
+     * @throws ProcessingException if executing forward from a checkpoint fails
+     */
+    public int backStep(int instructions) throws ProcessingException
+    {
+        if (!canGoBack())
+        {
+            return 0;
+        }
+        long current = context.getInstructionCount();
+        long target = Math.max(getEarliestPosition(), current - instructions);
+        return seek(target) ? (int) (current - target) : 0;
+    }
+
+    /**
+     * Go back to the last time a breakpoint was reached, that is, to the last instruction before the current one at
+     * which the program counter was a breakpoint address.  Goes to the start of the history if there is none.
+     * Conditions and watchpoints are ignored.  This may execute the whole history again; called as seek() is.
+     *
+     * @param breakpoints the breakpoints, may be null
+     * @return number of instructions gone back
+     * @throws ProcessingException if executing forward from a checkpoint fails
+     */
+    public long backStepToBreakpoint(Breakpoints breakpoints) throws ProcessingException
+    {
+        if (!canGoBack())
+        {
+            return 0;
+        }
+        recordChangesByHand();
+        long current = context.getInstructionCount();
+        long target = getEarliestPosition();
+        if (breakpoints != null && !breakpoints.isEmpty())
+        {
+            int[] addresses = breakpoints.getAddresses();
+            for (int i = lastCheckpointAtOrBefore(current - 1); i >= 0; i--)
+            {
+                long end = (i + 1 < checkpoints.size())
+                    ? Math.min(current, checkpoints.get(i + 1).getInstructionCount()) : current;
+                checkpoints.get(i).restore(context);
+                long hit = executeTo(end, new Breakpoints(addresses));
+                if (stopped)
+                {
+                    park();
+                    return current - context.getInstructionCount();
+                }
+                if (hit >= 0)
+                {
+                    target = hit;
+                    break;
+                }
+            }
+        }
+        seek(target);
+        return current - target;
+    }
+
+    /**
+     * @return instruction count of the machine
+     */
+    public long getPosition()
+    {
+        return (context == null) ? 0 : context.getInstructionCount();
+    }
+
+    /**
+     * @return instruction count at the start of the history
+     */
+    public long getEarliestPosition()
+    {
+        return checkpoints.isEmpty() ? 0 : checkpoints.get(0).getInstructionCount();
+    }
+
+    /**
+     * @return true if there is an earlier instruction to go back to
+     */
+    public boolean canGoBack()
+    {
+        return context != null && !checkpoints.isEmpty() && context.getInstructionCount() > getEarliestPosition();
+    }
+
+    /**
+     * Discard the history.
+     */
+    public void reset()
+    {
+        if (parked)
+        {
+            parked = false;
+            context.getMemory().endWriteJournal();
+        }
+        checkpoints.clear();
+        syscalls.clear();
+        nextSyscall = 0;
+        horizon = 0;
+        interval = initialInterval;
+    }
+
+    /**
+     * Use another checkpoint interval and limit than those of Config.properties, as tests do to exercise checkpoints
+     * on short programs.  Discards the history.
+     *
+     * @param initialInterval number of instructions between checkpoints at the start of a history
+     * @param maximumCheckpoints number of checkpoints above which every other one is dropped
+     */
+    void setLimits(int initialInterval, int maximumCheckpoints)
+    {
+        this.initialInterval = initialInterval;
+        this.maximumCheckpoints = maximumCheckpoints;
+        reset();
+    }
+
+    /**
+     * @return number of checkpoints in the history
+     */
+    int getCheckpointCount()
+    {
+        return checkpoints.size();
+    }
+
+    /**
+     * @return number of instructions between checkpoints now, which doubles each time they are thinned out
+     */
+    long getInterval()
+    {
+        return interval;
+    }
+
+    private void simulateLive(Syscall service, ProgramStatement statement) throws ProcessingException
+    {
+        if (liveHandler != null)
+        {
+            liveHandler.simulate(service, statement);
+        }
+        else
+        {
+            service.simulate(statement);
+        }
+    }
+
+    // Execute forward to an instruction count, unless the simulator is stopped first.  With breakpoints, returns the
+    // last count before the end at which the program counter was a breakpoint address, or -1.
+    private long executeTo(long position, Breakpoints breakpoints) throws ProcessingException
+    {
+        long hit = (breakpoints != null && breakpoints.isBreakpoint(RegisterFile.getPc()))
+            ? context.getInstructionCount() : -1;
+        stopped = false;
+        while (context.getInstructionCount() < position)
+        {
+            int steps = (int) Math.min(position - context.getInstructionCount(), Integer.MAX_VALUE);
+            boolean done = Simulator.getInstance().simulateAgain(program, RegisterFile.getPc(), steps, breakpoints);
+            boolean atBreakpoint = breakpoints != null && breakpoints.getStopReason() == Breakpoints.BREAKPOINT;
+            if (done)
+            {
+                break;
+            }
+            if (context.getInstructionCount() < position)
+            {
+                if (!atBreakpoint)
+                {
+                    stopped = true; // by Stop or Pause
+                    break;
+                }
+                hit = context.getInstructionCount();
+            }
+        }
+        return hit;
+    }
+
+    // Watch for changes made while the program is not running.
+    private void park()
+    {
+        if (!parked && context != null)
+        {
+            parked = true;
+            parkedRegisters = SyscallEffect.copyRegisters(context);
+            context.getMemory().startWriteJournal();
+        }
+    }
+
+    // If registers or memory were changed since the program last ran, start a new history from here.
+    private void recordChangesByHand()
+    {
+        if (!parked)
+        {
+            return;
+        }
+        parked = false;
+        int[] words = context.getMemory().endWriteJournal();
+        if (words.length == 0 && Arrays.deepEquals(parkedRegisters, SyscallEffect.copyRegisters(context)))
+        {
+            return;
+        }
+        long position = context.getInstructionCount();
+        while (!checkpoints.isEmpty()
+            && checkpoints.get(checkpoints.size() - 1).getInstructionCount() >= position)
+        {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        syscalls.subList(firstSyscallAtOrAfter(position), syscalls.size()).clear();
+        checkpoints.add(MachineState.capture(context));
+        horizon = position;
+    }
+
+    private int lastCheckpointAtOrBefore(long position)
+    {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).getInstructionCount() <= position)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int firstSyscallAtOrAfter(long position)
+    {
+        int low = 0;
+        int high = syscalls.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (syscalls.get(middle).position < position)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -100,6 +101,9 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
 
     private boolean multiFileAssemble = false;
 
+    // Set while a display update asked for by requestDisplayUpdate() is waiting to run.
+    private final AtomicBoolean displayUpdatePending = new AtomicBoolean(false);
+
 
     /**
      * Simple constructor
@@ -538,7 +542,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
         String errorMessage = "Error connecting to MIPS memory";
         try
         {
-            Globals.memory.addObserver(thisMarsApp, lowEnd, highEnd);
+            Globals.getMemory().addObserver(thisMarsApp, lowEnd, highEnd);
         }
         catch (AddressErrorException aee)
         {
@@ -574,7 +578,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
 
     protected void deleteAsObserver()
     {
-        Globals.memory.deleteObserver(thisMarsApp);
+        Globals.getMemory().deleteObserver(thisMarsApp);
     }
 
     /**
@@ -614,6 +618,22 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     {
     }
 
+    /**
+     * Have updateDisplay() called on the event dispatch thread soon, unless a call is already waiting.  For tools told
+     * of each instruction by an ExecutionListener, which may be called far more often than the display can be redrawn.
+     */
+    protected void requestDisplayUpdate()
+    {
+        if (displayUpdatePending.compareAndSet(false, true))
+        {
+            SwingUtilities.invokeLater(() ->
+            {
+                displayUpdatePending.set(false);
+                updateDisplay();
+            });
+        }
+    }
+
     /**
      * Override this method to provide a JComponent (probably a JButton) of your choice to be placed just left of the
      * Close/Exit button.  Its anticipated use is for a "help" button that launches a help message or dialog.  But it
@@ -751,7 +771,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
             Thread.yield();
             MIPSprogram program = new MIPSprogram();
-            mars.Globals.program = program; // Shouldn't have to do this...
+            mars.Globals.setProgram(program); // Shouldn't have to do this...
             String fileToAssemble = mostRecentlyOpenedFile.getPath();
             ArrayList filesToAssemble = null;
             if (multiFileAssemble)
@@ -160,7 +160,7 @@ class BitmapDisplay : AbstractMarsToolAndApplication
             // Clear the segment
             if (offset == 0x01u || offset == 0x11u)
             {
-                if (Globals.memory.getByte(addr.toInt()) != 1) return
+                if (Globals.getMemory().getByte(addr.toInt()) != 1) return
 
                 println("Offset written: ${offset.toHex(2)}")
 
@@ -169,7 +169,7 @@ class BitmapDisplay : AbstractMarsToolAndApplication
                 val range = offset..offset + 0x0Fu
                 synchronized(Globals.memoryAndRegistersLock)
                 {
-                    range.map { keyboardAddr + it }.forEach { Globals.memory.setByte(it.toInt(), 0) }
+                    range.map { keyboardAddr + it }.forEach { Globals.getMemory().setByte(it.toInt(), 0) }
                 }
                 pooledKeyEvents[offset]!!.clear()
                 println("[Keyboard++] Keyboard segment range $range cleared")
@@ -209,15 +209,15 @@ class BitmapDisplay : AbstractMarsToolAndApplication
             if (e.id == KeyEvent.KEY_PRESSED)
             {
                 oldKeyboardLastPressed = e.keyChar
-                Globals.memory.setWord(oldKeyboardAddr.toInt(), 1)
-                Globals.memory.setWord((oldKeyboardAddr + 4u).toInt(), e.keyChar.code)
+                Globals.getMemory().setWord(oldKeyboardAddr.toInt(), 1)
+                Globals.getMemory().setWord((oldKeyboardAddr + 4u).toInt(), e.keyChar.code)
             }
 
             if (e.id == KeyEvent.KEY_RELEASED && e.keyChar == oldKeyboardLastPressed)
             {
                 oldKeyboardLastPressed = 0.toChar()
-                Globals.memory.setWord(oldKeyboardAddr.toInt(), 0)
-                Globals.memory.setWord((oldKeyboardAddr + 4u).toInt(), 0)
+                Globals.getMemory().setWord(oldKeyboardAddr.toInt(), 0)
+                Globals.getMemory().setWord((oldKeyboardAddr + 4u).toInt(), 0)
             }
         }
 
@@ -233,11 +233,11 @@ class BitmapDisplay : AbstractMarsToolAndApplication
         synchronized(Globals.memoryAndRegistersLock)
         {
             // Change 0x0: Number of events
-            Globals.memory.setByte(addr.toInt(), queue.size)
+            Globals.getMemory().setByte(addr.toInt(), queue.size)
 
             // Set the keycode
             addr += queue.size.toUInt() * 2u
-            Globals.memory.setHalf(addr.toInt(), e.keyCode)
+            Globals.getMemory().setHalf(addr.toInt(), e.keyCode)
         }
     }
 
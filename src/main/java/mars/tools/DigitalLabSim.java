@@ -124,7 +124,7 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication
                 CounterValue = CounterValueMax;
                 if ((Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0)
                 {
-                    mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_TIMER;
+                    mars.MachineContext.getCurrent().setExternalInterruptingDevice(/*Exceptions.*/EXTERNAL_INTERRUPT_TIMER);
                 }
             }
         }
@@ -156,7 +156,7 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication
             {
                 try
                 {
-                    Globals.memory.setByte(dataAddr, dataValue);
+                    Globals.getMemory().setByte(dataAddr, dataValue);
                 }
                 catch (AddressErrorException aee)
                 {
@@ -456,7 +456,7 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication
                     button[KeyBoardValueButtonClick].setBackground(Color.GREEN);
                     if (KeyboardInterruptOnOff && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0)
                     {
-                        mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD;
+                        mars.MachineContext.getCurrent().setExternalInterruptingDevice(/*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD);
                     }
                 }
             }
@@ -111,10 +111,10 @@ public class GameStation extends AbstractMarsToolAndApplication {
 
       try {
         if (mem.getAddress() == keyPressAddress && mem.getValue() != 0) {
-          Globals.memory.setWord(keyPressAddress, 0);
+          Globals.getMemory().setWord(keyPressAddress, 0);
         } else if (mem.getAddress() == keyReleaseAddress &&
                    mem.getValue() != 0) {
-          Globals.memory.setWord(keyReleaseAddress, 0);
+          Globals.getMemory().setWord(keyReleaseAddress, 0);
         }
       } catch (AddressErrorException ex) {
       }
@@ -244,10 +244,12 @@ public class GameStation extends AbstractMarsToolAndApplication {
    */
   private void handleKeyEvent(KeyEvent e, KeyType t) {
     try {
-      if (t == KeyType.PRESS) {
-        Globals.memory.setWord(keyPressAddress, e.getKeyCode());
-      } else {
-        Globals.memory.setWord(keyReleaseAddress, e.getKeyCode());
+      synchronized (Globals.memoryAndRegistersLock) {
+        if (t == KeyType.PRESS) {
+          Globals.getMemory().setWord(keyPressAddress, e.getKeyCode());
+        } else {
+          Globals.getMemory().setWord(keyReleaseAddress, e.getKeyCode());
+        }
       }
 
       SwingUtilities.invokeLater(() -> {
@@ -287,8 +289,8 @@ public class GameStation extends AbstractMarsToolAndApplication {
 
     try {
       // Clear our memory-mapped I/O addresses
-      Globals.memory.setWord(keyPressAddress, 0);
-      Globals.memory.setWord(keyReleaseAddress, 0);
+      Globals.getMemory().setWord(keyPressAddress, 0);
+      Globals.getMemory().setWord(keyReleaseAddress, 0);
 
       // Clear all pixels to black
       canvas.clearPixels(0x00000000);
@@ -543,4 +545,4 @@ public class GameStation extends AbstractMarsToolAndApplication {
       }
     }
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
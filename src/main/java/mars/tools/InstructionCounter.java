@@ -27,16 +27,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package mars.tools;
 
 import mars.ProgramStatement;
-import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
 import mars.mips.instructions.BasicInstruction;
 import mars.mips.instructions.BasicInstructionFormat;
+import mars.simulator.ExecutionListener;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Observable;
 
 /**
  * Instruction counter tool. Can be used to know how many instructions were executed to complete a given program.
@@ -75,10 +74,15 @@ public class InstructionCounter extends AbstractMarsToolAndApplication
     protected int counterJ = 0;
 
     /**
-     * The last address we saw. We ignore it because the only way for a program to execute twice the same instruction is
-     * to enter an infinite loop, which is not insteresting in the POV of counting instructions.
+     * Counts each instruction the simulator reports executed.
      */
-    protected int lastAddress = -1;
+    private final ExecutionListener listener = new ExecutionListener()
+    {
+        public void onRetire(int pc, int binaryStatement)
+        {
+            count(pc);
+        }
+    };
 
     private JTextField counterField;
 
@@ -202,33 +206,25 @@ public class InstructionCounter extends AbstractMarsToolAndApplication
     //	@Override
     protected void addAsObserver()
     {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        Simulator.getInstance().addExecutionListener(listener);
     }
 
     //	@Override
-    protected void processMIPSUpdate(Observable resource, AccessNotice notice)
+    protected void deleteAsObserver()
+    {
+        Simulator.getInstance().removeExecutionListener(listener);
+    }
+
+    // Called in the simulator thread for each instruction executed.
+    private void count(int address)
     {
-        if (!notice.accessIsFromMIPS())
-        {
-            return;
-        }
-        if (notice.getAccessType() != AccessNotice.READ)
-        {
-            return;
-        }
-        MemoryAccessNotice m = (MemoryAccessNotice) notice;
-        int a = m.getAddress();
-        if (a == lastAddress)
-        {
-            return;
-        }
-        lastAddress = a;
         counter++;
         try
         {
-            ProgramStatement stmt = Memory.getInstance().getStatement(a);
-            BasicInstruction instr = (BasicInstruction) stmt.getInstruction();
-            BasicInstructionFormat format = instr.getInstructionFormat();
+            ProgramStatement stmt = Memory.getInstance().getStatement(address);
+            // an undefined instruction is reported too if the exception handler takes the exception
+            BasicInstructionFormat format = (stmt == null || stmt.getInstruction() == null)
+                ? null : ((BasicInstruction) stmt.getInstruction()).getInstructionFormat();
             if (format == BasicInstructionFormat.R_FORMAT)
             {
                 counterR++;
@@ -248,21 +244,19 @@ public class InstructionCounter extends AbstractMarsToolAndApplication
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
-        updateDisplay();
+        requestDisplayUpdate();
     }
 
     //	@Override
     protected void initializePreGUI()
     {
         counter = counterR = counterI = counterJ = 0;
-        lastAddress = -1;
     }
 
     // @Override
     protected void reset()
     {
         counter = counterR = counterI = counterJ = 0;
-        lastAddress = -1;
         updateDisplay();
     }
 
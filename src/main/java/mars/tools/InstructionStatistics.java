@@ -27,15 +27,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package mars.tools;
 
-import mars.ProgramStatement;
-import mars.mips.hardware.AccessNotice;
-import mars.mips.hardware.AddressErrorException;
-import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
+import mars.simulator.ExecutionListener;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Observable;
 
 
 /**
@@ -76,11 +72,14 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
     /** heading of the tool */
     private static final String HEADING = "";
 
-    /**
-     * The last address we saw. We ignore it because the only way for a program to execute twice the same instruction is
-     * to enter an infinite loop, which is not insteresting in the POV of counting instructions.
-     */
-    protected int lastAddress = -1;
+    /** listener told of each instruction the simulator executes */
+    private final ExecutionListener listener = new ExecutionListener()
+    {
+        public void onRetire(int pc, int binaryStatement)
+        {
+            count(binaryStatement);
+        }
+    };
 
     /** text field for visualizing the total number of instructions processed */
     private JTextField m_tfTotalCounter;
@@ -193,11 +192,20 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
 
 
     /**
-     * registers the tool as observer for the text segment of the MIPS program
+     * registers the tool as execution listener of the simulator
      */
     protected void addAsObserver()
     {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        Simulator.getInstance().addExecutionListener(listener);
+    }
+
+
+    /**
+     * removes the tool as execution listener of the simulator
+     */
+    protected void deleteAsObserver()
+    {
+        Simulator.getInstance().removeExecutionListener(listener);
     }
 
 
@@ -207,7 +215,7 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
      * The instruction is decoded by extracting the operation and function code of the 32-bit instruction. Only the most
      * relevant instructions are decoded and categorized.
      *
-     * @param stmt the instruction to decode
+     * @param binaryStatement the binary code of the instruction to decode
      * @return the category of the instruction
      * @see InstructionStatistics#CATEGORY_ALU
      * @see InstructionStatistics#CATEGORY_JUMP
@@ -215,11 +223,11 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
      * @see InstructionStatistics#CATEGORY_MEM
      * @see InstructionStatistics#CATEGORY_OTHER
      */
-    protected int getInstructionCategory(ProgramStatement stmt)
+    protected int getInstructionCategory(int binaryStatement)
     {
 
-        int opCode = stmt.getBinaryStatement() >>> (32 - 6);
-        int funct = stmt.getBinaryStatement() & 0x1F;
+        int opCode = binaryStatement >>> (32 - 6);
+        int funct = binaryStatement & 0x1F;
 
         if (opCode == 0x00)
         {
@@ -283,59 +291,16 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
 
 
     /**
-     * method that is called each time the MIPS simulator accesses the text segment. Before an instruction is executed
-     * by the simulator, the instruction is fetched from the program memory. This memory access is observed and the
-     * corresponding instruction is decoded and categorized by the tool. According to the category the counter values
-     * are increased and the display gets updated.
+     * method that is called in the simulator thread each time it has executed an instruction. The instruction is
+     * categorized by the tool, the counter values are increased accordingly and a display update is requested.
      *
-     * @param resource the observed resource
-     * @param notice signals the type of access (memory, register etc.)
+     * @param binaryStatement the binary code of the instruction executed
      */
-    protected void processMIPSUpdate(Observable resource, AccessNotice notice)
+    private void count(int binaryStatement)
     {
-
-        if (!notice.accessIsFromMIPS())
-        {
-            return;
-        }
-
-        // check for a read access in the text segment
-        if (notice.getAccessType() == AccessNotice.READ && notice instanceof MemoryAccessNotice)
-        {
-
-            // now it is safe to make a cast of the notice
-            MemoryAccessNotice memAccNotice = (MemoryAccessNotice) notice;
-
-            // The next three statments are from Felipe Lessa's instruction counter.  Prevents double-counting.
-            int a = memAccNotice.getAddress();
-            if (a == lastAddress)
-            {
-                return;
-            }
-            lastAddress = a;
-
-            try
-            {
-
-                // access the statement in the text segment without notifying other tools etc.
-                ProgramStatement stmt = Memory.getInstance().getStatement(memAccNotice.getAddress());
-
-                // necessary to handle possible null pointers at the end of the program
-                // (e.g., if the simulator tries to execute the next instruction after the last instruction in the text segment)
-                if (stmt != null)
-                {
-                    int category = getInstructionCategory(stmt);
-
-                    m_totalCounter++;
-                    m_counters[category]++;
-                    updateDisplay();
-                }
-            }
-            catch (AddressErrorException e)
-            {
-                // silently ignore these exceptions
-            }
-        }
+        m_totalCounter++;
+        m_counters[getInstructionCategory(binaryStatement)]++;
+        requestDisplayUpdate();
     }
 
 
@@ -345,7 +310,6 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
     protected void initializePreGUI()
     {
         m_totalCounter = 0;
-        lastAddress = -1; // from Felipe Lessa's instruction counter tool
         for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++)
         {
             m_counters[i] = 0;
@@ -359,7 +323,6 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication
     protected void reset()
     {
         m_totalCounter = 0;
-        lastAddress = -1; // from Felipe Lessa's instruction counter tool
         for (int i = 0; i < InstructionStatistics.MAX_CATEGORY; i++)
         {
             m_counters[i] = 0;
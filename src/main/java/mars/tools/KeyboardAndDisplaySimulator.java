@@ -196,7 +196,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     {
         try
         {
-            return (Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 1) == 1;
+            return (Globals.getMemory().get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 1) == 1;
         }
         catch (AddressErrorException aee)
         {
@@ -213,7 +213,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     {
         try
         {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) | 1;
+            return Globals.getMemory().get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) | 1;
         }
         catch (AddressErrorException aee)
         {
@@ -236,7 +236,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
     {
         try
         {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 2;
+            return Globals.getMemory().get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 2;
         }
         catch (AddressErrorException aee)
         {
@@ -287,7 +287,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
         // Set transmitter Control ready bit to 1, means we're ready to accept display character.
         updateMMIOControl(TRANSMITTER_CONTROL, readyBitSet(TRANSMITTER_CONTROL));
         // We want to be an observer only of MIPS reads from RECEIVER_DATA and writes to TRANSMITTER_DATA.
-        // Use the Globals.memory.addObserver() methods instead of inherited method to achieve this.
+        // Use the Globals.getMemory().addObserver() methods instead of inherited method to achieve this.
         addAsObserver(RECEIVER_DATA, RECEIVER_DATA);
         addAsObserver(TRANSMITTER_DATA, TRANSMITTER_DATA);
         // We want to be notified of each instruction execution, because instruction count is the
@@ -381,7 +381,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
                 {
                     // interrupt-enabled bit is set in both Tranmitter Control and in
                     // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
-                    mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_DISPLAY;
+                    mars.MachineContext.getCurrent().setExternalInterruptingDevice(Exceptions.EXTERNAL_INTERRUPT_DISPLAY);
                 }
             }
         }
@@ -846,10 +846,10 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
             {
                 try
                 {
-                    Globals.memory.setRawWord(controlAddr, controlValue);
+                    Globals.getMemory().setRawWord(controlAddr, controlValue);
                     if (!controlOnly)
                     {
-                        Globals.memory.setRawWord(dataAddr, dataValue);
+                        Globals.getMemory().setRawWord(dataAddr, dataValue);
                     }
                 }
                 catch (AddressErrorException aee)
@@ -930,7 +930,7 @@ public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication
             {
                 // interrupt-enabled bit is set in both Receiver Control and in
                 // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
-                mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_KEYBOARD;
+                mars.MachineContext.getCurrent().setExternalInterruptingDevice(Exceptions.EXTERNAL_INTERRUPT_KEYBOARD);
             }
         }
 
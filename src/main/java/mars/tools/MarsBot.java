@@ -69,7 +69,7 @@ public class MarsBot implements Observer, MarsTool
         // New: DPS 27 Feb 2006.  Register observer for memory subrange.
         try
         {
-            Globals.memory.addObserver(this, 0xffff8000, 0xffff8060);
+            Globals.getMemory().addObserver(this, 0xffff8000, 0xffff8060);
         }
         catch (AddressErrorException aee)
         {
@@ -240,8 +240,8 @@ public class MarsBot implements Observer, MarsTool
                     // Write this new information to MARS memory area
                     try
                     {
-                        Globals.memory.setWord(ADDR_WHEREAREWEX, (int) MarsBotXPosition);
-                        Globals.memory.setWord(ADDR_WHEREAREWEY, (int) MarsBotYPosition);
+                        Globals.getMemory().setWord(ADDR_WHEREAREWEX, (int) MarsBotXPosition);
+                        Globals.getMemory().setWord(ADDR_WHEREAREWEY, (int) MarsBotYPosition);
 
                     }
                     catch (AddressErrorException e)
@@ -152,11 +152,11 @@ public class ScavengerHunt implements Observer, MarsTool
         // are not used by this Tool.
         try
         {
-            Globals.memory.addObserver(this, 0xffff8000, 0xfffffff0);  // must be on word boundaries
+            Globals.getMemory().addObserver(this, 0xffff8000, 0xfffffff0);  // must be on word boundaries
         }
         catch (AddressErrorException e)
         {
-            System.out.println("\n\nScavengerHunt.action: Globals.memory.addObserver caused AddressErrorException.\n\n");
+            System.out.println("\n\nScavengerHunt.action: Globals.getMemory().addObserver caused AddressErrorException.\n\n");
             System.exit(0);
         }
 
@@ -463,7 +463,7 @@ public class ScavengerHunt implements Observer, MarsTool
 
         try
         {
-            Globals.memory.setWord(address, data); // Write
+            Globals.getMemory().setWord(address, data); // Write
         }
         catch (AddressErrorException e)
         {
@@ -517,10 +517,10 @@ public class ScavengerHunt implements Observer, MarsTool
         {
          /*
          System.out.println("ScavengerHunt.toolGetWord: returning " +
-           Binary.intToHexString(Globals.memory.getWord(address)) +
+           Binary.intToHexString(Globals.getMemory().getWord(address)) +
            " which is at MIPS Memory[" + Binary.intToHexString(address) + "]" );
          */
-            returnValue = Globals.memory.getWord(address);
+            returnValue = Globals.getMemory().getWord(address);
 
          /*
          System.out.println("ScavengerHunt.toolGetWord: Mem[" +
@@ -133,7 +133,7 @@ public class MemoryDump
         int address = baseAddress;
         for (; address < limitAddress; address += Memory.WORD_LENGTH_BYTES)
         {
-            if (Globals.memory.getRawWordOrNull(address) == null)
+            if (Globals.getMemory().getRawWordOrNull(address) == null)
             {
                 break;
             }
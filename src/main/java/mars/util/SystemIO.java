@@ -1,6 +1,7 @@
 package mars.util;
 
 import mars.Globals;
+import mars.MachineContext;
 import mars.Settings;
 
 import java.io.*;
@@ -70,13 +71,15 @@ public class SystemIO
 
     private static final int STDERR = 2;
 
-    /** String used for description of file error */
+    /**
+     * String used for description of file error
+     *
+     * @deprecated Each MachineContext has its own; use getFileErrorMessage().  This field follows the one of the
+     * default context, for existing tools.
+     */
+    @Deprecated
     public static String fileErrorString = "File operation OK";
 
-    // Will use one buffered reader for all keyboard/redirected/piped input.
-    // Added by DPS 28 Feb 2008.  See getInputReader() below.
-    private static BufferedReader inputReader = null;
-
     /**
      * Implements syscall to read an integer value. Client is responsible for catching NumberFormatException.
      *
@@ -194,7 +197,7 @@ public class SystemIO
     {
         if (Globals.getGui() == null)
         {
-            System.out.print(string);
+            MachineContext.getCurrent().getStandardOutput().print(string);
         }
         else
         {
@@ -325,13 +328,13 @@ public class SystemIO
         ///////////////////////////////////////////////////////////////////////////////////
         //// When running in command mode, code below works for either regular file or STDOUT/STDERR
 
-        if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
+        if (!files().fdInUse(fd, 1)) // Check the existence of the "write" fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for writing";
+            files().setFileError("File descriptor " + fd + " is not open for writing");
             return -1;
         }
         // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+        OutputStream outputStream = (OutputStream) files().getStreamInUse(fd);
         try
         {
             // Oct. 9 2005 Ken Vollmar
@@ -354,12 +357,12 @@ public class SystemIO
         }
         catch (IOException e)
         {
-            fileErrorString = "IO Exception on write of file with fd " + fd;
+            files().setFileError("IO Exception on write of file with fd " + fd);
             return -1;
         }
         catch (IndexOutOfBoundsException e)
         {
-            fileErrorString = "IndexOutOfBoundsException on write of file with fd" + fd;
+            files().setFileError("IndexOutOfBoundsException on write of file with fd" + fd);
             return -1;
         }
 
@@ -394,13 +397,13 @@ public class SystemIO
         ////////////////////////////////////////////////////////////////////////////////////
         //// When running in command mode, code below works for either regular file or STDIN
 
-        if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+        if (!files().fdInUse(fd, 0)) // Check the existence of the "read" fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for reading";
+            files().setFileError("File descriptor " + fd + " is not open for reading");
             return -1;
         }
         // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        InputStream InputStream = (InputStream) files().getStreamInUse(fd);
         try
         {
             // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
@@ -414,12 +417,12 @@ public class SystemIO
         }
         catch (IOException e)
         {
-            fileErrorString = "IO Exception on read of file with fd " + fd;
+            files().setFileError("IO Exception on read of file with fd " + fd);
             return -1;
         }
         catch (IndexOutOfBoundsException e)
         {
-            fileErrorString = "IndexOutOfBoundsException on read of file with fd" + fd;
+            files().setFileError("IndexOutOfBoundsException on read of file with fd" + fd);
             return -1;
         }
         return retValue;
@@ -449,7 +452,7 @@ public class SystemIO
         int fdToUse;
 
         // Check internal plausibility of opening this file
-        fdToUse = FileIOData.nowOpening(filename, flags);
+        fdToUse = files().nowOpening(filename, flags);
         retValue = fdToUse; // return value is the fd
         if (fdToUse < 0)
         {
@@ -463,11 +466,11 @@ public class SystemIO
             {
                 // Set up input stream from disk file
                 inputStream = new FileInputStream(filename);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+                files().setStreamInUse(fdToUse, inputStream); // Save stream for later use
             }
             catch (FileNotFoundException e)
             {
-                fileErrorString = "File " + filename + " not found, open for input.";
+                files().setFileError("File " + filename + " not found, open for input.");
                 retValue = -1;
             }
         }
@@ -477,11 +480,11 @@ public class SystemIO
             try
             {
                 outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+                files().setStreamInUse(fdToUse, outputStream); // Save stream for later use
             }
             catch (FileNotFoundException e)
             {
-                fileErrorString = "File " + filename + " not found, open for output.";
+                files().setFileError("File " + filename + " not found, open for output.");
                 retValue = -1;
             }
         }
@@ -496,7 +499,7 @@ public class SystemIO
      */
     public static void closeFile(int fd)
     {
-        FileIOData.close(fd);
+        files().close(fd);
     }
 
     /**
@@ -504,7 +507,7 @@ public class SystemIO
      */
     public static void resetFiles()
     {
-        FileIOData.resetFiles();
+        files().resetFiles();
     }
 
     /**
@@ -514,7 +517,101 @@ public class SystemIO
      */
     public static String getFileErrorMessage()
     {
-        return fileErrorString;
+        return files().fileErrorString;
+    }
+
+    /**
+     * Write the name, flags and position of each file the MIPS program has open, with its file descriptor, so that
+     * reopenFiles() can open them again.  Used to save the state of a machine.
+     *
+     * @param out where to write them
+     * @throws IOException if writing fails or a file position cannot be found
+     */
+    public static void saveOpenFiles(DataOutputStream out) throws IOException
+    {
+        FileIOData files = files();
+        int count = 0;
+        for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++)
+        {
+            if (files.streams[fd] != null)
+            {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++)
+        {
+            Object stream = files.streams[fd];
+            if (stream != null)
+            {
+                out.writeInt(fd);
+                out.writeUTF(files.fileNames[fd]);
+                out.writeInt(files.fileFlags[fd]);
+                out.writeLong((stream instanceof FileInputStream)
+                    ? ((FileInputStream) stream).getChannel().position()
+                    : ((FileOutputStream) stream).getChannel().position());
+            }
+        }
+    }
+
+    /**
+     * Close the files the MIPS program has open and open those written by saveOpenFiles() instead, with the same file
+     * descriptors and at the same positions.  A file open for writing is not emptied again but cut back to its saved
+     * position.
+     *
+     * @param in where to read them from
+     * @throws IOException if reading fails or a file cannot be opened, in which case no files are left open
+     */
+    public static void reopenFiles(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0 || count > SYSCALL_MAXFILES)
+        {
+            throw new IOException("invalid number of open files " + count);
+        }
+        int[] descriptors = new int[count];
+        String[] names = new String[count];
+        int[] flags = new int[count];
+        long[] positions = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            descriptors[i] = in.readInt();
+            names[i] = in.readUTF();
+            flags[i] = in.readInt();
+            positions[i] = in.readLong();
+            if (descriptors[i] <= STDERR || descriptors[i] >= SYSCALL_MAXFILES)
+            {
+                throw new IOException("invalid file descriptor " + descriptors[i]);
+            }
+        }
+        FileIOData files = files();
+        files.resetFiles();
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                int fd = descriptors[i];
+                if (flags[i] == O_RDONLY)
+                {
+                    FileInputStream stream = new FileInputStream(names[i]);
+                    files.setStreamInUse(fd, stream);
+                    stream.getChannel().position(positions[i]);
+                }
+                else
+                {
+                    FileOutputStream stream = new FileOutputStream(names[i], true);
+                    files.setStreamInUse(fd, stream);
+                    stream.getChannel().truncate(positions[i]);
+                }
+                files.fileNames[fd] = names[i];
+                files.fileFlags[fd] = flags[i];
+            }
+        }
+        catch (IOException e)
+        {
+            files.resetFiles();
+            throw e;
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////
@@ -523,13 +620,21 @@ public class SystemIO
     // These are all equivalent in the eyes of the program because they are
     // transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
 
+    // Files of the calling thread's MachineContext
+    private static FileIOData files()
+    {
+        return MachineContext.getCurrent().getFileIOData();
+    }
+
     private static BufferedReader getInputReader()
     {
-        if (inputReader == null)
+        FileIOData files = files();
+        if (files.inputReader == null)
         {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+            files.inputReader = new BufferedReader(
+                new InputStreamReader(MachineContext.getCurrent().getStandardInput()));
         }
-        return inputReader;
+        return files.inputReader;
     }
 
 
@@ -537,16 +642,40 @@ public class SystemIO
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
 
-    private static class FileIOData
+    /**
+     * Files in use by the syscalls of one MachineContext.
+     */
+    public static final class FileIOData
     {
-        private static final String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
+        /** String used for description of file error */
+        private String fileErrorString = "File operation OK";
+
+        private final String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
+
+        private final int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+
+        private final Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
 
-        private static final int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+        // Will use one buffered reader for all keyboard/redirected/piped input.
+        // Added by DPS 28 Feb 2008.  See getInputReader() above.
+        private BufferedReader inputReader = null;
 
-        private static final Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+        public FileIOData()
+        {
+        }
+
+        // Set the description of the last file error, also in the deprecated static field for the default context.
+        private void setFileError(String message)
+        {
+            fileErrorString = message;
+            if (this == MachineContext.getDefault().getFileIOData())
+            {
+                SystemIO.fileErrorString = message;
+            }
+        }
 
         // Reset all file information. Closes any open files and resets the arrays
-        private static void resetFiles()
+        private void resetFiles()
         {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -556,7 +685,7 @@ public class SystemIO
         }
 
         // DPS 8-Jan-2013
-        private static void setupStdio()
+        private void setupStdio()
         {
             fileNames[STDIN] = "STDIN";
             fileNames[STDOUT] = "STDOUT";
@@ -564,29 +693,30 @@ public class SystemIO
             fileFlags[STDIN] = SystemIO.O_RDONLY;
             fileFlags[STDOUT] = SystemIO.O_WRONLY;
             fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN] = System.in;
-            streams[STDOUT] = System.out;
+            MachineContext context = MachineContext.getCurrent();
+            streams[STDIN] = context.getStandardInput();
+            streams[STDOUT] = context.getStandardOutput();
             streams[STDERR] = System.err;
-            System.out.flush();
+            context.getStandardOutput().flush();
             System.err.flush();
         }
 
         // Preserve a stream that is in use
-        private static void setStreamInUse(int fd, Object s)
+        private void setStreamInUse(int fd, Object s)
         {
             streams[fd] = s;
 
         }
 
         // Retrieve a stream for use
-        private static Object getStreamInUse(int fd)
+        private Object getStreamInUse(int fd)
         {
             return streams[fd];
 
         }
 
         // Determine whether a given filename is already in use.
-        private static boolean filenameInUse(String requestedFilename)
+        private boolean filenameInUse(String requestedFilename)
         {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -604,7 +734,7 @@ public class SystemIO
         }
 
         // Determine whether a given fd is already in use with the given flag.
-        private static boolean fdInUse(int fd, int flag)
+        private boolean fdInUse(int fd, int flag)
         {
             if (fd < 0 || fd >= SYSCALL_MAXFILES)
             {
@@ -621,7 +751,7 @@ public class SystemIO
 
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
-        private static void close(int fd)
+        private void close(int fd)
         {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
             if (fd <= STDERR || fd >= SYSCALL_MAXFILES)
@@ -662,19 +792,19 @@ public class SystemIO
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
         // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
-        private static int nowOpening(String filename, int flag)
+        private int nowOpening(String filename, int flag)
         {
             int i = 0;
             if (filenameInUse(filename))
             {
-                fileErrorString = "File name " + filename + " is already open.";
+                setFileError("File name " + filename + " is already open.");
                 return -1;
             }
 
             if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND)) // Only read and write are implemented
             {
-                fileErrorString = "File name " + filename
-                    + " has unknown requested opening flag";
+                setFileError("File name " + filename
+                    + " has unknown requested opening flag");
                 return -1;
             }
 
@@ -685,21 +815,21 @@ public class SystemIO
 
             if (i >= SYSCALL_MAXFILES) // no available file descriptors
             {
-                fileErrorString = "File name " + filename
+                setFileError("File name " + filename
                     + " exceeds maximum open file limit of "
-                    + SYSCALL_MAXFILES;
+                    + SYSCALL_MAXFILES);
                 return -1;
             }
 
             // Must be OK -- put filename in table
             fileNames[i] = filename; // our table has its own copy of filename
             fileFlags[i] = flag;
-            fileErrorString = "File operation OK";
+            setFileError("File operation OK");
             return i;
 
         }
 
-    } // end private class FileIOData
+    } // end class FileIOData
     ////////////////////////////////////////////////////////////////////////////////
 
 
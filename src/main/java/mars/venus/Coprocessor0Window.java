@@ -74,6 +74,8 @@ public class Coprocessor0Window extends JPanel implements Observer
 
     private int highlightRow;
 
+    private final RegisterWriteHighlighter writeHighlighter = new RegisterWriteHighlighter(this::highlightWrite);
+
     private ExecutePane executePane;
 
     private int[] rowGivenRegNumber; // translate register number to table row.
@@ -227,18 +229,24 @@ public class Coprocessor0Window extends JPanel implements Observer
             RegisterAccessNotice access = (RegisterAccessNotice) obj;
             if (access.getAccessType() == AccessNotice.WRITE)
             {
-                // For now, use highlighting technique used by Label Window feature to highlight
-                // memory cell corresponding to a selected label.  The highlighting is not
-                // as visually distinct as changing the background color, but will do for now.
-                // Ideally, use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
+                writeHighlighter.written((Register) observable);
             }
         }
     }
 
+    // Called on the event thread by writeHighlighter.
+    private void highlightWrite(Register register)
+    {
+        // For now, use highlighting technique used by Label Window feature to highlight
+        // memory cell corresponding to a selected label.  The highlighting is not
+        // as visually distinct as changing the background color, but will do for now.
+        // Ideally, use the same highlighting technique as for Text Segment -- see
+        // AddressCellRenderer class in DataSegmentWindow.java.
+        this.highlighting = true;
+        this.highlightCellForRegister(register);
+        Globals.getGui().getRegistersPane().setSelectedComponent(this);
+    }
+
     /**
      * Highlight the row corresponding to the given register.
      *
@@ -73,6 +73,8 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
 
     private int highlightRow;
 
+    private final RegisterWriteHighlighter writeHighlighter = new RegisterWriteHighlighter(this::highlightWrite);
+
     private ExecutePane executePane;
 
     private final JCheckBox[] conditionFlagCheckBox;
@@ -324,18 +326,24 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
             RegisterAccessNotice access = (RegisterAccessNotice) obj;
             if (access.getAccessType() == AccessNotice.WRITE)
             {
-                // For now, use highlighting technique used by Label Window feature to highlight
-                // memory cell corresponding to a selected label.  The highlighting is not
-                // as visually distinct as changing the background color, but will do for now.
-                // Ideally, use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
+                writeHighlighter.written((Register) observable);
             }
         }
     }
 
+    // Called on the event thread by writeHighlighter.
+    private void highlightWrite(Register register)
+    {
+        // For now, use highlighting technique used by Label Window feature to highlight
+        // memory cell corresponding to a selected label.  The highlighting is not
+        // as visually distinct as changing the background color, but will do for now.
+        // Ideally, use the same highlighting technique as for Text Segment -- see
+        // AddressCellRenderer class in DataSegmentWindow.java.
+        this.highlighting = true;
+        this.highlightCellForRegister(register);
+        Globals.getGui().getRegistersPane().setSelectedComponent(this);
+    }
+
     /**
      * Highlight the row corresponding to the given register.
      *
@@ -493,7 +493,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer
             {
                 try
                 {
-                    dataData[row][column] = NumberDisplayBaseChooser.formatNumber(Globals.memory.getRawWord(address), valueBase);
+                    dataData[row][column] = NumberDisplayBaseChooser.formatNumber(Globals.getMemory().getRawWord(address), valueBase);
                 }
                 catch (AddressErrorException aee)
                 {
@@ -601,7 +601,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer
             {
                 try
                 {
-                    ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase), row, column);
+                    ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.getMemory().getWordNoNotify(address), valueBase), row, column);
                 }
                 catch (AddressErrorException aee)
                 {
@@ -617,7 +617,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer
                             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
                             try
                             {
-                                displayValue = Globals.memory.getWordNoNotify(address);
+                                displayValue = Globals.getMemory().getWordNoNotify(address);
                             }
                             catch (AddressErrorException e)
                             {
@@ -1119,7 +1119,7 @@ public class DataSegmentWindow extends JInternalFrame implements Observer
             {
                 try
                 {
-                    Globals.memory.setRawWord(address, val);
+                    Globals.getMemory().setRawWord(address, val);
                 }
                 // somehow, user was able to display out-of-range address.  Most likely to occur between
                 // stack base and Kernel.  Also text segment with self-modifying-code setting off.
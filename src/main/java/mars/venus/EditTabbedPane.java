@@ -718,10 +718,10 @@ public class EditTabbedPane extends JTabbedPane
             FileStatus.set(FileStatus.OPENING);// DPS 9-Aug-2011
             if (theFile.canRead())
             {
-                Globals.program = new MIPSprogram();
+                Globals.setProgram(new MIPSprogram());
                 try
                 {
-                    Globals.program.readSource(currentFilePath);
+                    Globals.getProgram().readSource(currentFilePath);
                 }
                 catch (ProcessingException pe)
                 {
@@ -733,11 +733,11 @@ public class EditTabbedPane extends JTabbedPane
                 // to the Edit pane as it was read, way slower due to dynamic string alloc.
                 StringBuffer fileContents = new StringBuffer((int) theFile.length());
                 int lineNumber = 1;
-                String line = Globals.program.getSourceLine(lineNumber++);
+                String line = Globals.getProgram().getSourceLine(lineNumber++);
                 while (line != null)
                 {
                     fileContents.append(line + "\n");
-                    line = Globals.program.getSourceLine(lineNumber++);
+                    line = Globals.getProgram().getSourceLine(lineNumber++);
                 }
                 editPane.setSourceCode(fileContents.toString(), true);
                 // The above operation generates an undoable edit, setting the initial
@@ -152,7 +152,7 @@ public class FileDumpMemoryAction extends GuiAction
         {
             try
             {
-                highAddressArray[i] = Globals.memory.getAddressOfFirstNull(baseAddressArray[i], limitAddressArray[i]) - Memory.WORD_LENGTH_BYTES;
+                highAddressArray[i] = Globals.getMemory().getAddressOfFirstNull(baseAddressArray[i], limitAddressArray[i]) - Memory.WORD_LENGTH_BYTES;
 
             }  // Exception will not happen since the Memory base and limit addresses are on word boundaries!
             catch (AddressErrorException aee)
@@ -0,0 +1,62 @@
+package mars.venus;
+
+import mars.MachineContext;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.MachineSnapshot;
+import mars.util.Binary;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the File -> Load Snapshot menu item: put the machine into the state saved in a snapshot file, taken with
+ * the program now assembled, and get ready to continue running from there.
+ */
+public class FileLoadSnapshotAction extends GuiAction
+{
+    private static final String title = "Load Machine Snapshot";
+
+    public FileLoadSnapshotAction(String name, Icon icon, String descrip,
+                                  Integer mnemonic, KeyStroke accel, VenusUI gui)
+    {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        if (!FileStatus.isAssembled())
+        {
+            JOptionPane.showMessageDialog(mainUI, "The program must be assembled before a snapshot can be loaded.");
+            return;
+        }
+        JFileChooser openDialog = new JFileChooser(mainUI.getEditor().getCurrentSaveDirectory());
+        openDialog.setDialogTitle(title);
+        if (openDialog.showOpenDialog(mainUI) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        File file = openDialog.getSelectedFile();
+        try
+        {
+            MachineSnapshot.load(MachineContext.getCurrent(), file);
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(mainUI, "Could not load snapshot: " + ex.getMessage(), title,
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ExecutePane executePane = mainUI.getMainPane().getExecutePane();
+        executePane.getRegistersWindow().updateRegisters();
+        executePane.getCoprocessor1Window().updateRegisters();
+        executePane.getCoprocessor0Window().updateRegisters();
+        executePane.getDataSegmentWindow().updateValues();
+        executePane.getTextSegmentWindow().setCodeHighlighting(true);
+        executePane.getTextSegmentWindow().highlightStepAtPC();
+        FileStatus.set(FileStatus.RUNNABLE);
+        mainUI.getMessagesPane().postMarsMessage("Machine snapshot loaded from " + file + ", PC = "
+            + Binary.intToHexString(RegisterFile.getPc()) + "\n");
+    }
+}
@@ -0,0 +1,51 @@
+package mars.venus;
+
+import mars.MachineContext;
+import mars.simulator.MachineSnapshot;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the File -> Save Snapshot menu item: save the state of the machine (memory, registers, heap and open
+ * files) to a snapshot file that Load Snapshot, or the command line "resume" option, can start from.
+ */
+public class FileSaveSnapshotAction extends GuiAction
+{
+    private static final String title = "Save Machine Snapshot";
+
+    public FileSaveSnapshotAction(String name, Icon icon, String descrip,
+                                  Integer mnemonic, KeyStroke accel, VenusUI gui)
+    {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        JFileChooser saveDialog = new JFileChooser(mainUI.getEditor().getCurrentSaveDirectory());
+        saveDialog.setDialogTitle(title);
+        if (saveDialog.showSaveDialog(mainUI) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        File file = saveDialog.getSelectedFile();
+        if (file.exists() && JOptionPane.showConfirmDialog(mainUI,
+            "File " + file.getName() + " already exists.  Do you wish to overwrite it?",
+            "Overwrite existing file?", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION)
+        {
+            return;
+        }
+        try
+        {
+            MachineSnapshot.save(MachineContext.getCurrent(), file);
+            mainUI.getMessagesPane().postMarsMessage("Machine snapshot saved to " + file + "\n");
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(mainUI, "Could not save snapshot: " + ex.getMessage(), title,
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
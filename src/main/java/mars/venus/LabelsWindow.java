@@ -355,7 +355,7 @@ public class LabelsWindow extends JInternalFrame
         {
             this.myMIPSprogram = myMIPSprogram;
             symbolTable = (myMIPSprogram == null)
-                ? Globals.symbolTable
+                ? Globals.getSymbolTable()
                 : myMIPSprogram.getLocalSymbolTable();
             tableName = (myMIPSprogram == null)
                 ? "(global)"
@@ -378,7 +378,7 @@ public class LabelsWindow extends JInternalFrame
         private JTable generateLabelTable()
         {
             SymbolTable symbolTable = (myMIPSprogram == null)
-                ? Globals.symbolTable
+                ? Globals.getSymbolTable()
                 : myMIPSprogram.getLocalSymbolTable();
             int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
             if (textLabels.isSelected() && dataLabels.isSelected())
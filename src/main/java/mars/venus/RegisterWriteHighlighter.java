@@ -0,0 +1,52 @@
+package mars.venus;
+
+import mars.mips.hardware.Register;
+
+import javax.swing.*;
+import java.util.function.Consumer;
+
+/**
+ * Hands register writes seen on the simulator thread to the Swing event thread, where a register window highlights
+ * them.  Writes that arrive before the event thread has handled the previous one are merged, so the window repaints
+ * once for the latest write rather than once per register access.
+ */
+class RegisterWriteHighlighter implements Runnable
+{
+    private final Consumer<Register> highlight;
+
+    // Latest register written since the event thread last ran, or null if no highlight is queued.
+    private Register pending;
+
+    /**
+     * @param highlight highlights a register in the window; called on the event thread
+     */
+    RegisterWriteHighlighter(Consumer<Register> highlight)
+    {
+        this.highlight = highlight;
+    }
+
+    /**
+     * Queue a highlight of the given register.  May be called from any thread.
+     *
+     * @param register the register written
+     */
+    synchronized void written(Register register)
+    {
+        if (pending == null)
+        {
+            SwingUtilities.invokeLater(this);
+        }
+        pending = register;
+    }
+
+    public void run()
+    {
+        Register register;
+        synchronized (this)
+        {
+            register = pending;
+            pending = null;
+        }
+        highlight.accept(register);
+    }
+}
@@ -74,6 +74,8 @@ public class RegistersWindow extends JPanel implements Observer
 
     private int highlightRow;
 
+    private final RegisterWriteHighlighter writeHighlighter = new RegisterWriteHighlighter(this::highlightWrite);
+
     private ExecutePane executePane;
 
     /**
@@ -244,15 +246,22 @@ public class RegistersWindow extends JPanel implements Observer
             RegisterAccessNotice access = (RegisterAccessNotice) obj;
             if (access.getAccessType() == AccessNotice.WRITE)
             {
-                // Uses the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
+                // This is the simulator thread; the window is updated on the event thread.
+                writeHighlighter.written((Register) observable);
             }
         }
     }
 
+    // Highlight a register written by the running program.  Called on the event thread.
+    private void highlightWrite(Register register)
+    {
+        // Uses the same highlighting technique as for Text Segment -- see
+        // AddressCellRenderer class in DataSegmentWindow.java.
+        this.highlighting = true;
+        this.highlightCellForRegister(register);
+        Globals.getGui().getRegistersPane().setSelectedComponent(this);
+    }
+
     /**
      * Highlight the row corresponding to the given register.
      *
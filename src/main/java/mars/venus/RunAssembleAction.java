@@ -95,7 +95,7 @@ public class RunAssembleAction extends GuiAction
             }
             try
             {
-                Globals.program = new MIPSprogram();
+                Globals.setProgram(new MIPSprogram());
                 ArrayList filesToAssemble;
                 if (Globals.getSettings().getAssembleAllEnabled())
                 {// setting calls for multiple file assembly
@@ -114,10 +114,10 @@ public class RunAssembleAction extends GuiAction
                 {
                     exceptionHandler = Globals.getSettings().getExceptionHandler();
                 }
-                MIPSprogramsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);
+                MIPSprogramsToAssemble = Globals.getProgram().prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);
                 mainUI.messagesPane.postMarsMessage(buildFileNameList(name + ": assembling ", MIPSprogramsToAssemble));
                 // added logic to receive any warnings and output them.... DPS 11/28/06
-                ErrorList warnings = Globals.program.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled,
+                ErrorList warnings = Globals.getProgram().assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled,
                     warningsAreErrors);
                 if (warnings.warningsOccurred())
                 {
@@ -1,10 +1,16 @@
 package mars.venus;
 
 import mars.Globals;
+import mars.MachineContext;
+import mars.ProcessingException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.BackStepper;
+import mars.simulator.Breakpoints;
+import mars.simulator.SwingWorker;
+import mars.simulator.TimeTravel;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -73,13 +79,26 @@ public class RunBackstepAction extends GuiAction
 
         if (Globals.getSettings().getBackSteppingEnabled())
         {
-            boolean inDelaySlot = Globals.program.getBackStepper().inDelaySlot(); // Added 25 June 2007
-            Memory.getInstance().addObserver(executePane.getDataSegmentWindow());
-            //RegisterFile.addRegistersObserver(executePane.getRegistersWindow());
-            Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
-            Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
-            Globals.program.getBackStepper().backStep();
-            Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
+            BackStepper backStepper = Globals.getProgram().getBackStepper();
+            boolean inDelaySlot = backStepper.inDelaySlot(); // Added 25 June 2007
+            if ((e.getModifiers() & ActionEvent.SHIFT_MASK) != 0)
+            {
+                // Shift-Backstep: reverse continue to the previous breakpoint.  The windows are
+                // refreshed below, so they need not observe each of what may be many undo actions.
+                backStepper.backStepToBreakpoint(
+                    new Breakpoints(executePane.getTextSegmentWindow().getSortedBreakPointsArray()));
+            }
+            else
+            {
+                Memory.getInstance().addObserver(executePane.getDataSegmentWindow());
+                //RegisterFile.addRegistersObserver(executePane.getRegistersWindow());
+                Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
+                Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
+                backStepper.backStep();
+                Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
+                Coprocessor0.deleteRegistersObserver(executePane.getCoprocessor0Window());
+                Coprocessor1.deleteRegistersObserver(executePane.getCoprocessor1Window());
+            }
             //RegisterFile.deleteRegistersObserver(executePane.getRegistersWindow());
             executePane.getRegistersWindow().updateRegisters();
             executePane.getCoprocessor1Window().updateRegisters();
@@ -88,7 +107,7 @@ public class RunBackstepAction extends GuiAction
             executePane.getTextSegmentWindow().highlightStepAtPC(inDelaySlot); // Argument aded 25 June 2007
             FileStatus.set(FileStatus.RUNNABLE);
             // if we've backed all the way, disable the button
-            //    if (Globals.program.getBackStepper().empty()) {
+            //    if (Globals.getProgram().getBackStepper().empty()) {
             //     ((AbstractAction)((AbstractButton)e.getSource()).getAction()).setEnabled(false);
             //}
          /*
@@ -107,5 +126,57 @@ public class RunBackstepAction extends GuiAction
          */
             VenusUI.setReset(false);
         }
+        else if (Globals.getProgram().getTimeTravel() != null && Globals.getProgram().getTimeTravel().canGoBack())
+        {
+            // At unlimited speed there is no backstep information, but the time travel history can go back.  That
+            // executes part of the history again, all of it for Shift-Backstep, so it is done off the event thread,
+            // as a run is, and the windows are updated when it finishes.
+            final TimeTravel timeTravel = Globals.getProgram().getTimeTravel();
+            final MachineContext context = MachineContext.getCurrent();
+            final Breakpoints breakpoints = ((e.getModifiers() & ActionEvent.SHIFT_MASK) != 0)
+                ? new Breakpoints(executePane.getTextSegmentWindow().getSortedBreakPointsArray()) : null;
+            FileStatus.set(FileStatus.RUNNING);
+            new SwingWorker(true)
+            {
+                public Object construct()
+                {
+                    context.makeCurrent();
+                    try
+                    {
+                        if (breakpoints != null)
+                        {
+                            timeTravel.backStepToBreakpoint(breakpoints);
+                        }
+                        else
+                        {
+                            timeTravel.backStep(1);
+                        }
+                        return null;
+                    }
+                    catch (ProcessingException pe)
+                    {
+                        return pe;
+                    }
+                }
+
+                public void finished()
+                {
+                    ProcessingException pe = (ProcessingException) getValue();
+                    if (pe != null)
+                    {
+                        mainUI.getMessagesPane().postMarsMessage(
+                            "\n" + name + ": could not go back, " + ((pe.errors() == null) ? "program ended"
+                                : pe.errors().generateErrorReport()) + "\n");
+                    }
+                    executePane.getRegistersWindow().updateRegisters();
+                    executePane.getCoprocessor1Window().updateRegisters();
+                    executePane.getCoprocessor0Window().updateRegisters();
+                    executePane.getDataSegmentWindow().updateValues();
+                    executePane.getTextSegmentWindow().highlightStepAtPC();
+                    FileStatus.set(FileStatus.RUNNABLE);
+                    VenusUI.setReset(false);
+                }
+            }.start();
+        }
     }
 }
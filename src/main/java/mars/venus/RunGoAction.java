@@ -95,7 +95,7 @@ public class RunGoAction extends GuiAction
                 try
                 {
                     int[] breakPoints = executePane.getTextSegmentWindow().getSortedBreakPointsArray();
-                    boolean done = Globals.program.simulateFromPC(breakPoints, maxSteps, this);
+                    boolean done = Globals.getProgram().simulateFromPC(breakPoints, maxSteps, this);
                 }
                 catch (ProcessingException pe)
                 {
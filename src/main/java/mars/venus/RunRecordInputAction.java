@@ -0,0 +1,58 @@
+package mars.venus;
+
+import mars.MachineContext;
+import mars.simulator.InputLog;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the Run -> Record Input menu item: start recording the input of the following runs to a log file that
+ * Replay Input, or the command line "replay" option, can run the program with again.  Choosing it while recording stops
+ * recording.
+ */
+public class RunRecordInputAction extends GuiAction
+{
+    private static final String title = "Record Input";
+
+    public RunRecordInputAction(String name, Icon icon, String descrip,
+                                Integer mnemonic, KeyStroke accel, VenusUI gui)
+    {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        MachineContext context = MachineContext.getCurrent();
+        if (RunReplayInputAction.closeInputLog(mainUI, context, title))
+        {
+            return;
+        }
+        JFileChooser saveDialog = new JFileChooser(mainUI.getEditor().getCurrentSaveDirectory());
+        saveDialog.setDialogTitle(title);
+        if (saveDialog.showSaveDialog(mainUI) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        File file = saveDialog.getSelectedFile();
+        if (file.exists() && JOptionPane.showConfirmDialog(mainUI,
+            "File " + file.getName() + " already exists.  Do you wish to overwrite it?",
+            "Overwrite existing file?", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION)
+        {
+            return;
+        }
+        try
+        {
+            InputLog.record(context, file);
+            mainUI.getMessagesPane().postMarsMessage("Recording input to " + file
+                + ".  Choose Record Input again to stop.\n");
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(mainUI, "Could not record input: " + ex.getMessage(), title,
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package mars.venus;
+
+import mars.MachineContext;
+import mars.simulator.InputLog;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the Run -> Replay Input menu item: run the program with the input recorded by Record Input instead of
+ * reading the console or tools, asking the clock or sleeping.  Reset the program first so that it starts where the
+ * recording did.  Choosing it while replaying stops replaying.
+ */
+public class RunReplayInputAction extends GuiAction
+{
+    private static final String title = "Replay Input";
+
+    public RunReplayInputAction(String name, Icon icon, String descrip,
+                                Integer mnemonic, KeyStroke accel, VenusUI gui)
+    {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        MachineContext context = MachineContext.getCurrent();
+        if (closeInputLog(mainUI, context, title))
+        {
+            return;
+        }
+        JFileChooser openDialog = new JFileChooser(mainUI.getEditor().getCurrentSaveDirectory());
+        openDialog.setDialogTitle(title);
+        if (openDialog.showOpenDialog(mainUI) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        File file = openDialog.getSelectedFile();
+        try
+        {
+            InputLog.replay(context, file);
+            mainUI.getMessagesPane().postMarsMessage("Replaying input from " + file
+                + ".  Choose Replay Input again to stop.\n");
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(mainUI, "Could not replay input: " + ex.getMessage(), title,
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Stop recording or replaying input, if the machine is doing either.
+     *
+     * @return true if it was
+     */
+    static boolean closeInputLog(VenusUI mainUI, MachineContext context, String title)
+    {
+        InputLog log = context.getInputLog();
+        if (log == null)
+        {
+            return false;
+        }
+        try
+        {
+            log.close();
+            mainUI.getMessagesPane().postMarsMessage((log.isReplaying() ? "Stopped replaying input from "
+                : "Stopped recording input to ") + log.getFile() + "\n");
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(mainUI, "Could not write input log: " + ex.getMessage(), title,
+                JOptionPane.ERROR_MESSAGE);
+        }
+        return true;
+    }
+}
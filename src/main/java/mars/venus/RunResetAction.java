@@ -60,7 +60,7 @@ public class RunResetAction extends GuiAction
         String name = this.getValue(Action.NAME).toString();
         ExecutePane executePane = mainUI.getMainPane().getExecutePane();
         // The difficult part here is resetting the data segment.  Two approaches are:
-        // 1. After each assembly, get a deep copy of the Globals.memory array
+        // 1. After each assembly, get a deep copy of the Globals.getMemory() array
         //    containing data segment.  Then replace it upon reset.
         // 2. Simply re-assemble the program upon reset, and the assembler will
         //    build a new data segment.  Reset can only be done after a successful
@@ -69,7 +69,7 @@ public class RunResetAction extends GuiAction
         // operation.  The first approach requires additional Memory class methods.
         try
         {
-            Globals.program.assemble(RunAssembleAction.getMIPSprogramsToAssemble(),
+            Globals.getProgram().assemble(RunAssembleAction.getMIPSprogramsToAssemble(),
                 RunAssembleAction.getExtendedAssemblerEnabled(),
                 RunAssembleAction.getWarningsAreErrors());
         }
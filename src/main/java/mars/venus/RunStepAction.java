@@ -72,7 +72,7 @@ public class RunStepAction extends GuiAction
             executePane.getTextSegmentWindow().setCodeHighlighting(true);
             try
             {
-                done = Globals.program.simulateStepAtPC(this);
+                done = Globals.getProgram().simulateStepAtPC(this);
             }
             catch (ProcessingException ev)
             {
@@ -0,0 +1,57 @@
+package mars.venus;
+
+import mars.Globals;
+import mars.Settings;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+	
+	/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Action class for the Settings menu item to control whether programs run at unlimited speed keep a time travel
+ * history, so that Backstep can go back through them.
+ */
+public class SettingsTimeTravelAction extends GuiAction
+{
+
+
+    public SettingsTimeTravelAction(String name, Icon icon, String descrip,
+                                    Integer mnemonic, KeyStroke accel, VenusUI gui)
+    {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        Globals.getSettings().setBooleanSetting(Settings.TIME_TRAVEL_ENABLED,
+            ((JCheckBoxMenuItem) e.getSource()).isSelected());
+    }
+
+}
@@ -138,7 +138,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer
         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
         codeHighlighting = true;
         breakpointsEnabled = true;
-        ArrayList sourceStatementList = Globals.program.getMachineList();
+        ArrayList sourceStatementList = Globals.getProgram().getMachineList();
         data = new Object[sourceStatementList.size()][columnNames.length];
         intAddresses = new int[data.length];
         addressRows = new Hashtable(data.length);
@@ -319,7 +319,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer
         {
             return; // ignore if no content to change
         }
-        ArrayList sourceStatementList = Globals.program.getMachineList();
+        ArrayList sourceStatementList = Globals.getProgram().getMachineList();
         for (int i = 0; i < sourceStatementList.size(); i++)
         {
             // Loop has been extended to cover self-modifying code.  If code at this memory location has been
@@ -894,7 +894,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer
             {
                 try
                 {
-                    Globals.memory.setRawWord(address, val);
+                    Globals.getMemory().setRawWord(address, val);
                 }
                 // somehow, user was able to display out-of-range address.  Most likely to occur between
                 // stack base and Kernel.  
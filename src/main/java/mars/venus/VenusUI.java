@@ -92,13 +92,13 @@ public class VenusUI extends JFrame
     // components of the menubar
     private JMenu file, run, window, help, edit, settings;
 
-    private JMenuItem fileNew, fileOpen, fileClose, fileCloseAll, fileSave, fileSaveAs, fileSaveAll, fileDumpMemory, filePrint, fileExit;
+    private JMenuItem fileNew, fileOpen, fileClose, fileCloseAll, fileSave, fileSaveAs, fileSaveAll, fileDumpMemory, fileSaveSnapshot, fileLoadSnapshot, filePrint, fileExit;
 
     private JMenuItem editUndo, editRedo, editCut, editCopy, editPaste, editFindReplace, editSelectAll;
 
-    private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
+    private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints, runRecordInput, runReplayInput;
 
-    private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase, settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain, settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
+    private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase, settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain, settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsTimeTravel;
 
     private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
 
@@ -118,13 +118,13 @@ public class VenusUI extends JFrame
 
     private Action fileNewAction, fileOpenAction, fileCloseAction, fileCloseAllAction, fileSaveAction;
 
-    private Action fileSaveAsAction, fileSaveAllAction, fileDumpMemoryAction, filePrintAction, fileExitAction;
+    private Action fileSaveAsAction, fileSaveAllAction, fileDumpMemoryAction, fileSaveSnapshotAction, fileLoadSnapshotAction, filePrintAction, fileExitAction;
 
     private Action editCutAction, editCopyAction, editPasteAction, editFindReplaceAction, editSelectAllAction;
 
-    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction, runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction;
+    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction, runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction, runRecordInputAction, runReplayInputAction;
 
-    private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction, settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction, settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction, settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction, settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;
+    private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction, settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction, settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction, settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction, settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction, settingsTimeTravelAction;
 
     private Action helpHelpAction, helpAboutAction;
 
@@ -389,6 +389,8 @@ public class VenusUI extends JFrame
             fileSaveAsAction = new FileSaveAsAction("Save as ...", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "SaveAs22.png"))), "Save current file with different name", KeyEvent.VK_A, null, mainUI);
             fileSaveAllAction = new FileSaveAllAction("Save All", null, "Save all open files", KeyEvent.VK_V, null, mainUI);
             fileDumpMemoryAction = new FileDumpMemoryAction("Dump Memory ...", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Dump22.png"))), "Dump machine code or data in an available format", KeyEvent.VK_D, KeyStroke.getKeyStroke(KeyEvent.VK_D, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()), mainUI);
+            fileSaveSnapshotAction = new FileSaveSnapshotAction("Save Snapshot ...", null, "Save the state of the machine to a file, to continue from later", null, null, mainUI);
+            fileLoadSnapshotAction = new FileLoadSnapshotAction("Load Snapshot ...", null, "Put the machine into a state saved by Save Snapshot", null, null, mainUI);
             filePrintAction = new FilePrintAction("Print ...", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Print22.gif"))), "Print current file", KeyEvent.VK_P, null, mainUI);
             fileExitAction = new FileExitAction("Exit", null, "Exit Mars", KeyEvent.VK_X, null, mainUI);
             editUndoAction = new EditUndoAction("Undo", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Undo22.png"))), "Undo last edit", KeyEvent.VK_U, KeyStroke.getKeyStroke(KeyEvent.VK_Z, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()), mainUI);
@@ -406,6 +408,8 @@ public class VenusUI extends JFrame
             runPauseAction = new RunPauseAction("Pause", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Pause22.png"))), "Pause the currently running program", KeyEvent.VK_P, KeyStroke.getKeyStroke(KeyEvent.VK_F9, 0), mainUI);
             runStopAction = new RunStopAction("Stop", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Stop22.png"))), "Stop the currently running program", KeyEvent.VK_S, KeyStroke.getKeyStroke(KeyEvent.VK_F11, 0), mainUI);
             runResetAction = new RunResetAction("Reset", new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Reset22.png"))), "Reset MIPS memory and registers", KeyEvent.VK_R, KeyStroke.getKeyStroke(KeyEvent.VK_F12, 0), mainUI);
+            runRecordInputAction = new RunRecordInputAction("Record Input ...", null, "Record the input of the following runs to a file, to reproduce them with Replay Input", null, null, mainUI);
+            runReplayInputAction = new RunReplayInputAction("Replay Input ...", null, "Run with input recorded by Record Input instead of the console, tools and clock", null, null, mainUI);
             runClearBreakpointsAction = new RunClearBreakpointsAction("Clear all breakpoints", null, "Clears all execution breakpoints set since the last assemble.", KeyEvent.VK_K, KeyStroke.getKeyStroke(KeyEvent.VK_K, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()), mainUI);
             runToggleBreakpointsAction = new RunToggleBreakpointsAction("Toggle all breakpoints", null, "Disable/enable all breakpoints without clearing (can also click Bkpt column header)", KeyEvent.VK_T, KeyStroke.getKeyStroke(KeyEvent.VK_T, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()), mainUI);
             settingsLabelAction = new SettingsLabelAction("Show Labels Window (symbol table)", null, "Toggle visibility of Labels window (symbol table) in the Execute tab", null, null, mainUI);
@@ -421,6 +425,7 @@ public class VenusUI extends JFrame
             settingsProgramArgumentsAction = new SettingsProgramArgumentsAction("Program arguments provided to MIPS program", null, "If set, program arguments for MIPS program can be entered in border of Text Segment window.", null, null, mainUI);
             settingsDelayedBranchingAction = new SettingsDelayedBranchingAction("Delayed branching", null, "If set, delayed branching will occur during MIPS execution.", null, null, mainUI);
             settingsSelfModifyingCodeAction = new SettingsSelfModifyingCodeAction("Self-modifying code", null, "If set, the MIPS program can write and branch to both text and data segments.", null, null, mainUI);
+            settingsTimeTravelAction = new SettingsTimeTravelAction("Time travel at unlimited speed", null, "If set, Backstep can go back through a program run at unlimited speed, using periodic checkpoints.", null, null, mainUI);
             settingsEditorAction = new SettingsEditorAction("Editor...", null, "View and modify text editor settings.", null, null, mainUI);
             settingsHighlightingAction = new SettingsHighlightingAction("Highlighting...", null, "View and modify Execute Tab highlighting colors", null, null, mainUI);
             settingsExceptionHandlerAction = new SettingsExceptionHandlerAction("Exception Handler...", null, "If set, the specified exception handler file will be included in all Assemble operations.", null, null, mainUI);
@@ -472,6 +477,10 @@ public class VenusUI extends JFrame
         fileSaveAll.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         fileDumpMemory = new JMenuItem(fileDumpMemoryAction);
         fileDumpMemory.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Dump16.png"))));
+        fileSaveSnapshot = new JMenuItem(fileSaveSnapshotAction);
+        fileSaveSnapshot.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
+        fileLoadSnapshot = new JMenuItem(fileLoadSnapshotAction);
+        fileLoadSnapshot.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         filePrint = new JMenuItem(filePrintAction);
         filePrint.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Print16.gif"))));
         fileExit = new JMenuItem(fileExitAction);
@@ -488,6 +497,8 @@ public class VenusUI extends JFrame
         {
             file.add(fileDumpMemory);
         }
+        file.add(fileSaveSnapshot);
+        file.add(fileLoadSnapshot);
         file.addSeparator();
         file.add(filePrint);
         file.addSeparator();
@@ -531,6 +542,10 @@ public class VenusUI extends JFrame
         runStop.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Stop16.png"))));//"Stop16.gif"))));
         runPause = new JMenuItem(runPauseAction);
         runPause.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Pause16.png"))));//"Pause16.gif"))));
+        runRecordInput = new JMenuItem(runRecordInputAction);
+        runRecordInput.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
+        runReplayInput = new JMenuItem(runReplayInputAction);
+        runReplayInput.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         runClearBreakpoints = new JMenuItem(runClearBreakpointsAction);
         runClearBreakpoints.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         runToggleBreakpoints = new JMenuItem(runToggleBreakpointsAction);
@@ -544,6 +559,9 @@ public class VenusUI extends JFrame
         run.add(runStop);
         run.add(runReset);
         run.addSeparator();
+        run.add(runRecordInput);
+        run.add(runReplayInput);
+        run.addSeparator();
         run.add(runClearBreakpoints);
         run.add(runToggleBreakpoints);
 
@@ -565,6 +583,8 @@ public class VenusUI extends JFrame
         settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
         settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
         settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+        settingsTimeTravel = new JCheckBoxMenuItem(settingsTimeTravelAction);
+        settingsTimeTravel.setSelected(Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED));
         settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
         settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
         settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -594,6 +614,7 @@ public class VenusUI extends JFrame
         settings.add(settingsExtended);
         settings.add(settingsDelayedBranching);
         settings.add(settingsSelfModifyingCode);
+        settings.add(settingsTimeTravel);
         settings.addSeparator();
         settings.add(settingsEditor);
         settings.add(settingsHighlighting);
@@ -715,6 +736,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(false);
         fileSaveAllAction.setEnabled(false);
         fileDumpMemoryAction.setEnabled(false);
+        fileSaveSnapshotAction.setEnabled(false);
+        fileLoadSnapshotAction.setEnabled(false);
+        runRecordInputAction.setEnabled(false);
+        runReplayInputAction.setEnabled(false);
         filePrintAction.setEnabled(false);
         fileExitAction.setEnabled(true);
         editUndoAction.setEnabled(false);
@@ -755,6 +780,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(true);
         fileSaveAllAction.setEnabled(true);
         fileDumpMemoryAction.setEnabled(false);
+        fileSaveSnapshotAction.setEnabled(false);
+        fileLoadSnapshotAction.setEnabled(false);
+        runRecordInputAction.setEnabled(false);
+        runReplayInputAction.setEnabled(false);
         filePrintAction.setEnabled(true);
         fileExitAction.setEnabled(true);
         editCutAction.setEnabled(true);
@@ -795,6 +824,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(true);
         fileSaveAllAction.setEnabled(true);
         fileDumpMemoryAction.setEnabled(false);
+        fileSaveSnapshotAction.setEnabled(false);
+        fileLoadSnapshotAction.setEnabled(false);
+        runRecordInputAction.setEnabled(false);
+        runReplayInputAction.setEnabled(false);
         filePrintAction.setEnabled(true);
         fileExitAction.setEnabled(true);
         editCutAction.setEnabled(true);
@@ -832,6 +865,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(true);
         fileSaveAllAction.setEnabled(true);
         fileDumpMemoryAction.setEnabled(false);
+        fileSaveSnapshotAction.setEnabled(false);
+        fileLoadSnapshotAction.setEnabled(false);
+        runRecordInputAction.setEnabled(false);
+        runReplayInputAction.setEnabled(false);
         filePrintAction.setEnabled(true);
         fileExitAction.setEnabled(true);
         editCutAction.setEnabled(true);
@@ -869,6 +906,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(true);
         fileSaveAllAction.setEnabled(true);
         fileDumpMemoryAction.setEnabled(true);
+        fileSaveSnapshotAction.setEnabled(true);
+        fileLoadSnapshotAction.setEnabled(true);
+        runRecordInputAction.setEnabled(true);
+        runReplayInputAction.setEnabled(true);
         filePrintAction.setEnabled(true);
         fileExitAction.setEnabled(true);
         editCutAction.setEnabled(true);
@@ -881,7 +922,7 @@ public class VenusUI extends JFrame
         runAssembleAction.setEnabled(true);
         runGoAction.setEnabled(true);
         runStepAction.setEnabled(true);
-        runBackstepAction.setEnabled(Globals.getSettings().getBackSteppingEnabled() && !Globals.program.getBackStepper().empty());
+        runBackstepAction.setEnabled(canBackstep());
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -905,6 +946,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(false);
         fileSaveAllAction.setEnabled(false);
         fileDumpMemoryAction.setEnabled(false);
+        fileSaveSnapshotAction.setEnabled(false);
+        fileLoadSnapshotAction.setEnabled(false);
+        runRecordInputAction.setEnabled(false);
+        runReplayInputAction.setEnabled(false);
         filePrintAction.setEnabled(false);
         fileExitAction.setEnabled(false);
         editCutAction.setEnabled(false);
@@ -941,6 +986,10 @@ public class VenusUI extends JFrame
         fileSaveAsAction.setEnabled(true);
         fileSaveAllAction.setEnabled(true);
         fileDumpMemoryAction.setEnabled(true);
+        fileSaveSnapshotAction.setEnabled(true);
+        fileLoadSnapshotAction.setEnabled(true);
+        runRecordInputAction.setEnabled(true);
+        runReplayInputAction.setEnabled(true);
         filePrintAction.setEnabled(true);
         fileExitAction.setEnabled(true);
         editCutAction.setEnabled(true);
@@ -953,7 +1002,7 @@ public class VenusUI extends JFrame
         runAssembleAction.setEnabled(true);
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
-        runBackstepAction.setEnabled(Globals.getSettings().getBackSteppingEnabled() && !Globals.program.getBackStepper().empty());
+        runBackstepAction.setEnabled(canBackstep());
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -964,6 +1013,16 @@ public class VenusUI extends JFrame
         editRedoAction.updateRedoState();
     }
 
+    // Backstep is possible with backstep information or, at unlimited speed, with the time travel history.
+    private boolean canBackstep()
+    {
+        if (Globals.getSettings().getBackSteppingEnabled())
+        {
+            return !Globals.getProgram().getBackStepper().empty();
+        }
+        return Globals.getProgram().getTimeTravel() != null && Globals.getProgram().getTimeTravel().canGoBack();
+    }
+
     /**
      * Get reference to Editor object associated with this GUI.
      *
@@ -9,6 +9,6 @@ fun main(args: Array<String>)
     println(measureTimeMillis {
         for (n in 0..100)
             for (i in 0..128*256)
-                Globals.memory.getWord(0x10008000 + i * 4)
+                Globals.getMemory().getWord(0x10008000 + i * 4)
     })
 }
@@ -0,0 +1,104 @@
+package mars.mips.instructions;
+
+import mars.Globals;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the indexed lookups of InstructionSet against straight linear searches of its instruction list.
+ */
+public class InstructionSetTest
+{
+    @Test
+    public void findByBinaryCode()
+    {
+        Globals.initialize(false);
+        InstructionSet set = Globals.instructionSet;
+        ArrayList<BasicInstruction> basics = new ArrayList<BasicInstruction>();
+        for (Instruction instruction : set.getInstructionList())
+        {
+            if (instruction instanceof BasicInstruction)
+            {
+                basics.add((BasicInstruction) instruction);
+            }
+        }
+        Random random = new Random(1);
+        // Each instruction with random operands, then random words, most of which match nothing
+        for (BasicInstruction basic : basics)
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                int binary = basic.getOpcodeMatch() | (random.nextInt() & ~basic.getOpcodeMask());
+                assertSame(Integer.toHexString(binary), decode(basics, binary), set.findByBinaryCode(binary));
+            }
+        }
+        for (int i = 0; i < 200000; i++)
+        {
+            int binary = random.nextInt();
+            assertSame(Integer.toHexString(binary), decode(basics, binary), set.findByBinaryCode(binary));
+        }
+    }
+
+    @Test
+    public void matchOperator()
+    {
+        Globals.initialize(false);
+        InstructionSet set = Globals.instructionSet;
+        ArrayList<String> names = new ArrayList<String>();
+        names.add("");
+        names.add("nosuchop");
+        for (Instruction instruction : set.getInstructionList())
+        {
+            String name = instruction.getName();
+            names.add(name.toUpperCase());
+            for (int length = 0; length <= name.length(); length++)
+            {
+                names.add(name.substring(0, length));
+            }
+        }
+        for (String name : names)
+        {
+            ArrayList exact = new ArrayList();
+            ArrayList prefix = new ArrayList();
+            for (Instruction instruction : set.getInstructionList())
+            {
+                if (instruction.getName().equalsIgnoreCase(name))
+                {
+                    exact.add(instruction);
+                }
+                if (instruction.getName().toLowerCase().startsWith(name.toLowerCase()))
+                {
+                    prefix.add(instruction);
+                }
+            }
+            assertEquals(name, exact.isEmpty() ? null : exact, set.matchOperator(name));
+            assertEquals(name, prefix.isEmpty() ? null : prefix, set.prefixMatchOperator(name));
+        }
+    }
+
+    // The instruction matching a binary with the most bits in its mask, the lowest mask if several, and the last one
+    // in the instruction set if several have the same mask and match.
+    private static BasicInstruction decode(ArrayList<BasicInstruction> basics, int binary)
+    {
+        BasicInstruction best = null;
+        for (BasicInstruction basic : basics)
+        {
+            int mask = basic.getOpcodeMask();
+            if ((binary & mask) != basic.getOpcodeMatch())
+            {
+                continue;
+            }
+            if (best == null || Integer.bitCount(mask) > Integer.bitCount(best.getOpcodeMask())
+                || Integer.bitCount(mask) == Integer.bitCount(best.getOpcodeMask()) && mask <= best.getOpcodeMask())
+            {
+                best = basic;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,199 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.ProcessingException;
+import mars.Settings;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the same programs with the reference interpreter, the pre-decoded interpreter (pd) and the block compiler
+ * (jit), and checks that each mode leaves the same machine behind: instruction count, exit code, output, registers of
+ * the CPU and coprocessors, and memory at the start of the data segment and the top of the stack.  Every block the
+ * compiler tries must compile.
+ */
+public class ExecutionModeTest
+{
+    private static final String[] MODES = {"interpreter", "pd", "jit"};
+
+    // Words compared at the start of the data segment and below the top of the stack
+    private static final int DATA_WORDS = 4096;
+
+    private static final int STACK_WORDS = 1024;
+
+    private MachineContext previousContext;
+
+    private boolean predecodedExecution;
+
+    private boolean blockCompilation;
+
+    @Before
+    public void setUp()
+    {
+        previousContext = MachineContext.getCurrent();
+        Globals.initialize(false);
+        predecodedExecution = Globals.getSettings().getBooleanSetting(Settings.PREDECODED_EXECUTION_ENABLED);
+        blockCompilation = Globals.getSettings().getBooleanSetting(Settings.BLOCK_COMPILATION_ENABLED);
+    }
+
+    @After
+    public void tearDown()
+    {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED, predecodedExecution);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, blockCompilation);
+        previousContext.makeCurrent();
+    }
+
+    @Test
+    public void kernels() throws Exception
+    {
+        for (String kernel : new String[] {"loop", "memcpy", "fib", "sort"})
+        {
+            compareModes("/kernels/" + kernel + ".asm");
+        }
+    }
+
+    @Test
+    public void exceptionsInsideCompiledBlocks() throws Exception
+    {
+        compareModes("/programs/exceptions.asm");
+    }
+
+    private static void compareModes(String resource) throws Exception
+    {
+        Machine reference = run(resource, MODES[0]);
+        for (int i = 1; i < MODES.length; i++)
+        {
+            Machine machine = run(resource, MODES[i]);
+            String where = resource + " in " + machine.mode + ": ";
+            assertEquals(where + "instruction count", reference.instructions, machine.instructions);
+            assertEquals(where + "exit code", reference.exitCode, machine.exitCode);
+            assertEquals(where + "output", reference.output, machine.output);
+            assertArrayEquals(where + "registers", reference.registers, machine.registers);
+            assertArrayEquals(where + "coprocessor 0 registers", reference.coprocessor0, machine.coprocessor0);
+            assertArrayEquals(where + "coprocessor 1 registers", reference.coprocessor1, machine.coprocessor1);
+            assertArrayEquals(where + "data segment", reference.data, machine.data);
+            assertArrayEquals(where + "stack", reference.stack, machine.stack);
+        }
+    }
+
+    // Assembles and runs a program to its exit on a new machine in the given mode.
+    private static Machine run(String resource, String mode) throws IOException, ProcessingException,
+        AddressErrorException
+    {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED,
+            mode.equals("pd") || mode.equals("jit"));
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, mode.equals("jit"));
+        MachineContext context = new MachineContext();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        context.setStandardOutput(new PrintStream(output, true, StandardCharsets.UTF_8));
+        context.makeCurrent();
+
+        File file = File.createTempFile("program", ".asm");
+        file.deleteOnExit();
+        try (InputStream in = ExecutionModeTest.class.getResourceAsStream(resource))
+        {
+            if (in == null)
+            {
+                throw new IOException("no program " + resource);
+            }
+            Files.write(file.toPath(), in.readAllBytes());
+        }
+        ArrayList<String> files = new ArrayList<String>();
+        files.add(file.getPath());
+        ArrayList programs = new MIPSprogram().prepareFilesForAssembly(files, file.getPath(), null);
+        MIPSprogram program = (MIPSprogram) programs.get(0);
+        program.assemble(programs, true);
+        context.setProgram(program);
+        RegisterFile.INSTANCE.initializeProgramCounter(false);
+        long compiled = BlockCompiler.getBlocksCompiled();
+        long failures = BlockCompiler.getCompileFailures();
+        program.simulate(-1);
+        assertEquals(resource + " in " + mode + ": blocks not compiled", failures, BlockCompiler.getCompileFailures());
+        if (mode.equals("jit"))
+        {
+            assertTrue(resource + ": no block compiled", BlockCompiler.getBlocksCompiled() > compiled);
+        }
+
+        Machine machine = new Machine();
+        machine.mode = mode;
+        machine.instructions = context.getInstructionCount();
+        machine.exitCode = context.getExitCode();
+        machine.output = output.toString(StandardCharsets.UTF_8);
+        machine.registers = new int[35];
+        for (int i = 0; i < machine.registers.length; i++)
+        {
+            machine.registers[i] = RegisterFile.getValue(i);
+        }
+        machine.registers[0] = RegisterFile.getPc();
+        machine.coprocessor0 = values(Coprocessor0.getRegisters());
+        machine.coprocessor1 = values(Coprocessor1.getRegisters());
+        machine.data = words(Memory.dataBaseAddress, DATA_WORDS);
+        machine.stack = words(Memory.stackBaseAddress - 4 * (STACK_WORDS - 1), STACK_WORDS);
+        return machine;
+    }
+
+    private static int[] values(Register[] registers)
+    {
+        int[] values = new int[registers.length];
+        for (int i = 0; i < registers.length; i++)
+        {
+            values[i] = registers[i].getValue();
+        }
+        return values;
+    }
+
+    private static int[] words(int address, int count) throws AddressErrorException
+    {
+        int[] words = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            words[i] = Globals.getMemory().getWordNoNotify(address + 4 * i);
+        }
+        return words;
+    }
+
+    // State of a machine after a run; registers[0] holds the program counter, as $zero is always 0.
+    private static final class Machine
+    {
+        String mode;
+
+        long instructions;
+
+        int exitCode;
+
+        String output;
+
+        int[] registers;
+
+        int[] coprocessor0;
+
+        int[] coprocessor1;
+
+        int[] data;
+
+        int[] stack;
+    }
+}
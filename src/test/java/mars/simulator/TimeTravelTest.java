@@ -0,0 +1,214 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.MachineContext;
+import mars.Settings;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a program with time travel on, a checkpoint every 100 instructions, and checks that going back to an
+ * instruction leaves the machine as it was when the program first reached it.
+ */
+public class TimeTravelTest
+{
+    private static final int INTERVAL = 100;
+
+    // Instructions executed by the program to its exit
+    private static final int LENGTH = 4182;
+
+    private static final String OUTPUT = "sum 4950\nsum 9900\nsum 14850\nsum 19800\nsum 24750\nsum 29700\nsum 34650\n"
+        + "sum 39600\nsum 44550\nsum 49500\n7";
+
+    private MachineContext previousContext;
+
+    private boolean timeTravelEnabled;
+
+    private MachineContext context;
+
+    private ByteArrayOutputStream output;
+
+    private MIPSprogram program;
+
+    private TimeTravel timeTravel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        previousContext = MachineContext.getCurrent();
+        Globals.initialize(false);
+        timeTravelEnabled = Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.TIME_TRAVEL_ENABLED, true);
+        context = new MachineContext();
+        output = new ByteArrayOutputStream();
+        context.setStandardOutput(new PrintStream(output, true, StandardCharsets.UTF_8));
+        context.setStandardInput(new ByteArrayInputStream("7\n".getBytes(StandardCharsets.UTF_8)));
+        context.makeCurrent();
+        program = assemble("/programs/timetravel.asm");
+        timeTravel = program.getTimeTravel();
+        timeTravel.setLimits(INTERVAL, 1000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.TIME_TRAVEL_ENABLED, timeTravelEnabled);
+        previousContext.makeCurrent();
+    }
+
+    @Test
+    public void seekAcrossCheckpoints() throws Exception
+    {
+        TreeMap<Long, int[]> states = runRecordingStates(50, 199, 200, 201, 250, 1234, LENGTH - 1);
+        assertEquals("checkpoints", LENGTH / INTERVAL + 1, timeTravel.getCheckpointCount());
+        // Backwards from the end, forwards within an interval and into the next, and back to a checkpoint
+        for (long position : new long[] {1234, 250, 201, 250, 1234, 199, 200, 50, LENGTH - 1, 0})
+        {
+            assertTrue("seek to " + position, timeTravel.seek(position));
+            assertEquals("position", position, context.getInstructionCount());
+            if (states.containsKey(position))
+            {
+                assertArrayEquals("state at " + position, states.get(position), state());
+            }
+        }
+        assertFalse("seek past the end", timeTravel.seek(LENGTH + 1));
+    }
+
+    @Test
+    public void backStepAcrossCheckpoint() throws Exception
+    {
+        TreeMap<Long, int[]> states = runRecordingStates(199, 200, 201);
+        assertTrue(timeTravel.seek(201));
+        assertEquals("instructions gone back", 1, timeTravel.backStep(1));
+        assertArrayEquals("state at 200", states.get(200L), state());
+        assertEquals("instructions gone back", 1, timeTravel.backStep(1));
+        assertArrayEquals("state at 199", states.get(199L), state());
+        assertEquals("instructions gone back", 199, timeTravel.backStep(1000));
+        assertFalse("before the start", timeTravel.canGoBack());
+    }
+
+    @Test
+    public void syscallsReplayedWithoutInputOrOutput() throws Exception
+    {
+        int[] end = runRecordingStates(LENGTH).get((long) LENGTH);
+        assertEquals("output", OUTPUT, output.toString(StandardCharsets.UTF_8));
+        // The read and every print are before this.  Running on from here must neither read the input, which is used
+        // up, nor print again.
+        assertTrue(timeTravel.seek(1));
+        assertTrue("done", program.simulate(-1));
+        assertEquals("position", LENGTH, context.getInstructionCount());
+        assertEquals("output", OUTPUT, output.toString(StandardCharsets.UTF_8));
+        assertArrayEquals("state at end", end, state());
+    }
+
+    @Test
+    public void checkpointsThinnedOut() throws Exception
+    {
+        timeTravel.setLimits(INTERVAL, 8);
+        TreeMap<Long, int[]> states = runRecordingStates(150, 1999, 3001, LENGTH - 1);
+        assertTrue("checkpoints " + timeTravel.getCheckpointCount(), timeTravel.getCheckpointCount() <= 8);
+        assertTrue("interval " + timeTravel.getInterval(), timeTravel.getInterval() >= 8 * INTERVAL);
+        assertEquals("start of history", 0, timeTravel.getEarliestPosition());
+        for (long position : new long[] {3001, 150, LENGTH - 1, 1999})
+        {
+            assertTrue("seek to " + position, timeTravel.seek(position));
+            assertArrayEquals("state at " + position, states.get(position), state());
+        }
+    }
+
+    @Test
+    public void changeByHandStartsNewHistory() throws Exception
+    {
+        TreeMap<Long, int[]> states = runRecordingStates(400, 500);
+        assertTrue(timeTravel.seek(500));
+        RegisterFile.updateRegister("$s1", 12345);
+        // What the program did after the change is forgotten, what it did before can still be gone back to.
+        assertFalse("seek past the change", timeTravel.seek(600));
+        assertEquals("changed register", 12345, RegisterFile.getValue(17));
+        assertTrue(timeTravel.seek(400));
+        assertArrayEquals("state at 400", states.get(400L), state());
+        assertTrue(timeTravel.seek(500));
+        assertEquals("changed register", 12345, RegisterFile.getValue(17));
+
+        // The run goes on from the changed state, and the history is of that run.
+        program.simulate(100);
+        int[] changed = state();
+        assertTrue(timeTravel.seek(550));
+        assertTrue(timeTravel.seek(600));
+        assertArrayEquals("state at 600", changed, state());
+    }
+
+    // Runs the program to its end, stopping at each of the given instruction counts to record the state there.
+    private TreeMap<Long, int[]> runRecordingStates(long... positions) throws Exception
+    {
+        TreeMap<Long, int[]> states = new TreeMap<Long, int[]>();
+        for (long position : positions)
+        {
+            program.simulate((int) (position - context.getInstructionCount()));
+            assertEquals("position", position, context.getInstructionCount());
+            states.put(position, state());
+        }
+        program.simulate(-1);
+        assertEquals("instructions", LENGTH, context.getInstructionCount());
+        return states;
+    }
+
+    // The registers, program counter and stored sums of the machine.
+    private static int[] state() throws AddressErrorException
+    {
+        int[] state = new int[35 + 10];
+        for (int i = 0; i < 35; i++)
+        {
+            state[i] = RegisterFile.getValue(i);
+        }
+        state[0] = RegisterFile.getPc();
+        for (int i = 0; i < 10; i++)
+        {
+            state[35 + i] = Globals.getMemory().getWordNoNotify(Memory.dataBaseAddress + 4 * i);
+        }
+        return state;
+    }
+
+    private static MIPSprogram assemble(String resource) throws Exception
+    {
+        File file = File.createTempFile("program", ".asm");
+        file.deleteOnExit();
+        try (InputStream in = TimeTravelTest.class.getResourceAsStream(resource))
+        {
+            if (in == null)
+            {
+                throw new IOException("no program " + resource);
+            }
+            Files.write(file.toPath(), in.readAllBytes());
+        }
+        ArrayList<String> files = new ArrayList<String>();
+        files.add(file.getPath());
+        ArrayList programs = new MIPSprogram().prepareFilesForAssembly(files, file.getPath(), null);
+        MIPSprogram program = (MIPSprogram) programs.get(0);
+        program.assemble(programs, true);
+        MachineContext.getCurrent().setProgram(program);
+        RegisterFile.INSTANCE.initializeProgramCounter(false);
+        return program;
+    }
+}
@@ -0,0 +1,27 @@
+# Recursive Fibonacci: calls, returns and stack accesses
+        .text
+main:   li    $a0, 20
+        jal   fib
+        li    $v0, 10
+        syscall
+
+# fib(n) = n < 2 ? n : fib(n - 1) + fib(n - 2)
+fib:    slti  $t0, $a0, 2
+        beq   $t0, $zero, recurse
+        move  $v0, $a0
+        jr    $ra
+recurse:
+        addiu $sp, $sp, -12
+        sw    $ra, 8($sp)
+        sw    $a0, 4($sp)
+        addiu $a0, $a0, -1
+        jal   fib
+        sw    $v0, 0($sp)
+        lw    $a0, 4($sp)
+        addiu $a0, $a0, -2
+        jal   fib
+        lw    $t0, 0($sp)
+        addu  $v0, $v0, $t0
+        lw    $ra, 8($sp)
+        addiu $sp, $sp, 12
+        jr    $ra
@@ -0,0 +1,28 @@
+# Bubble sort of 300 words in descending order: data dependent branches
+        .data
+array:  .space 1200
+        .text
+main:   la    $t0, array           # fill with 0 .. 299
+        li    $t1, 0
+        li    $t2, 300
+fill:   sw    $t1, 0($t0)
+        addiu $t0, $t0, 4
+        addiu $t1, $t1, 1
+        bne   $t1, $t2, fill
+        li    $s0, 299             # passes
+pass:   la    $t0, array
+        move  $t1, $s0
+compare:
+        lw    $t2, 0($t0)
+        lw    $t3, 4($t0)
+        bge   $t2, $t3, ordered
+        sw    $t3, 0($t0)
+        sw    $t2, 4($t0)
+ordered:
+        addiu $t0, $t0, 4
+        addiu $t1, $t1, -1
+        bgtz  $t1, compare
+        addiu $s0, $s0, -1
+        bgtz  $s0, pass
+        li    $v0, 10
+        syscall
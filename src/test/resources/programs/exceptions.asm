@@ -0,0 +1,33 @@
+# Arithmetic overflows and address errors in the middle of a hot loop, skipped by the exception handler, which
+# counts them in $k1.  Blocks compiled from the loop raise them partway through.
+        .data
+words:  .word 1, 2, 3, 4
+        .text
+main:   la    $s3, words
+        li    $s0, 0
+        li    $s1, 2000
+        li    $t2, 0x7fffffff
+loop:   addi  $t0, $s0, 1
+        addu  $t1, $t0, $t0
+        andi  $t5, $s0, 3
+        bnez  $t5, fits
+        add   $t3, $t2, $t0         # overflows every fourth iteration
+fits:   sw    $t1, 4($s3)
+        andi  $t6, $s0, 7
+        addu  $t6, $t6, $s3
+        lw    $t4, 0($t6)           # misaligned unless $s0 is a multiple of 4
+        addu  $s2, $s2, $t4
+        addi  $s0, $s0, 1
+        bne   $s0, $s1, loop
+        move  $a0, $k1
+        li    $v0, 1
+        syscall
+        li    $v0, 10
+        syscall
+
+        .ktext 0x80000180
+        addi  $k1, $k1, 1
+        mfc0  $k0, $14
+        addi  $k0, $k0, 4
+        mtc0  $k0, $14
+        eret
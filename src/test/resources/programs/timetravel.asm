@@ -0,0 +1,35 @@
+# Reads a number, then sums in nested loops, storing each partial sum and printing it, for about 4200 instructions
+# in all.  Ends by printing the number read.
+        .data
+sums:   .space 40
+label:  .asciiz "sum "
+        .text
+main:   li    $v0, 5
+        syscall
+        move  $s0, $v0
+        la    $s2, sums
+        li    $s1, 0
+        li    $t0, 0
+outer:  li    $t1, 0
+inner:  addu  $s1, $s1, $t1
+        addiu $t1, $t1, 1
+        blt   $t1, 100, inner
+        sll   $t2, $t0, 2
+        addu  $t2, $t2, $s2
+        sw    $s1, 0($t2)
+        la    $a0, label
+        li    $v0, 4
+        syscall
+        move  $a0, $s1
+        li    $v0, 1
+        syscall
+        li    $a0, '\n'
+        li    $v0, 11
+        syscall
+        addiu $t0, $t0, 1
+        blt   $t0, 10, outer
+        move  $a0, $s0
+        li    $v0, 1
+        syscall
+        li    $v0, 10
+        syscall
@@ -0,0 +1,69 @@
+# Bitmap display rendering loop: draws 16 frames of a 64 x 64 pixel scene, a color gradient with a moving square,
+# at the heap base address.  Connect the Bitmap Display tool to watch it (unit width and height 8, display width and
+# height 512, base address 0x10040000 (heap)).  Prints a checksum of each frame.
+        .eqv  SIZE 64
+        .eqv  DISPLAY 0x10040000
+        .data
+frame:  .asciiz "frame "
+colon:  .asciiz ": "
+newline: .asciiz "\n"
+        .text
+main:   li    $s0, 0               # frame
+draw:   li    $s1, DISPLAY
+        li    $t0, 0               # y
+rows:   li    $t1, 0               # x
+pixels: # background: red from x, green from y, blue from the frame
+        addu  $t2, $t1, $s0
+        sll   $t2, $t2, 2
+        andi  $t2, $t2, 0xff
+        sll   $t2, $t2, 16
+        sll   $t3, $t0, 2
+        andi  $t3, $t3, 0xff
+        sll   $t3, $t3, 8
+        or    $t2, $t2, $t3
+        sll   $t3, $s0, 4
+        or    $t2, $t2, $t3
+        # a white 16 x 16 square whose top left corner moves along the diagonal, 3 pixels per frame
+        mul   $t4, $s0, 3
+        subu  $t5, $t1, $t4
+        bltz  $t5, store
+        bge   $t5, 16, store
+        subu  $t5, $t0, $t4
+        bltz  $t5, store
+        bge   $t5, 16, store
+        li    $t2, 0x00ffffff
+store:  sw    $t2, 0($s1)
+        addiu $s1, $s1, 4
+        addiu $t1, $t1, 1
+        blt   $t1, SIZE, pixels
+        addiu $t0, $t0, 1
+        blt   $t0, SIZE, rows
+        # checksum of the frame: rotate left by 1 and add each pixel
+        li    $t0, DISPLAY
+        li    $t1, 0
+        li    $t2, 4096
+sum:    lw    $t3, 0($t0)
+        rol   $t1, $t1, 1
+        addu  $t1, $t1, $t3
+        addiu $t0, $t0, 4
+        addiu $t2, $t2, -1
+        bgtz  $t2, sum
+        la    $a0, frame
+        li    $v0, 4
+        syscall
+        move  $a0, $s0
+        li    $v0, 1
+        syscall
+        la    $a0, colon
+        li    $v0, 4
+        syscall
+        move  $a0, $t1
+        li    $v0, 34              # hexadecimal
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        addiu $s0, $s0, 1
+        blt   $s0, 16, draw
+        li    $v0, 10
+        syscall
@@ -0,0 +1,50 @@
+# Recursive Fibonacci: fib(n) for n = 15 to 24, by the doubly recursive definition.
+        .data
+fib_of: .asciiz "fib("
+equals: .asciiz ") = "
+newline: .asciiz "\n"
+        .text
+main:   li    $s0, 15
+loop:   move  $a0, $s0
+        jal   fib
+        move  $s1, $v0
+        la    $a0, fib_of
+        li    $v0, 4
+        syscall
+        move  $a0, $s0
+        li    $v0, 1
+        syscall
+        la    $a0, equals
+        li    $v0, 4
+        syscall
+        move  $a0, $s1
+        li    $v0, 1
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        addiu $s0, $s0, 1
+        ble   $s0, 24, loop
+        li    $v0, 10
+        syscall
+
+# fib(n) = n < 2 ? n : fib(n - 1) + fib(n - 2)
+fib:    slti  $t0, $a0, 2
+        beq   $t0, $zero, recurse
+        move  $v0, $a0
+        jr    $ra
+recurse:
+        addiu $sp, $sp, -12
+        sw    $ra, 8($sp)
+        sw    $a0, 4($sp)
+        addiu $a0, $a0, -1
+        jal   fib
+        sw    $v0, 0($sp)
+        lw    $a0, 4($sp)
+        addiu $a0, $a0, -2
+        jal   fib
+        lw    $t0, 0($sp)
+        addu  $v0, $v0, $t0
+        lw    $ra, 8($sp)
+        addiu $sp, $sp, 12
+        jr    $ra
@@ -0,0 +1,89 @@
+# Floating point loops on coprocessor 1: pi by the Leibniz series in double precision, square roots by Newton's
+# method in single precision, and a single precision dot product.
+        .data
+pi_is:  .asciiz "pi ~ "
+roots:  .asciiz "\nsum of sqrt(1..2000) ~ "
+dot:    .asciiz "\ndot product ~ "
+newline: .asciiz "\n"
+one:    .double 1.0
+two:    .double 2.0
+four:   .double 4.0
+half:   .float 0.5
+tenth:  .float 0.1
+        .text
+main:   # pi = 4 * sum (-1)^k / (2k + 1), k = 0 .. 299999
+        l.d   $f2, one             # denominator
+        l.d   $f4, two
+        l.d   $f6, one             # sign
+        mtc1  $zero, $f0           # sum
+        mtc1  $zero, $f1
+        li    $t0, 300000
+leibniz:
+        div.d $f8, $f6, $f2
+        add.d $f0, $f0, $f8
+        add.d $f2, $f2, $f4
+        neg.d $f6, $f6
+        addiu $t0, $t0, -1
+        bgtz  $t0, leibniz
+        l.d   $f8, four
+        mul.d $f12, $f0, $f8
+        la    $a0, pi_is
+        li    $v0, 4
+        syscall
+        li    $v0, 3
+        syscall
+        # sum of sqrt(n), n = 1 .. 2000, each by 12 Newton iterations x = (x + n / x) / 2 from x = n
+        l.s   $f20, half
+        mtc1  $zero, $f22          # sum
+        li    $t0, 1
+roots_next:
+        mtc1  $t0, $f24
+        cvt.s.w $f24, $f24         # n
+        mov.s $f26, $f24           # x
+        li    $t1, 12
+newton: div.s $f28, $f24, $f26
+        add.s $f26, $f26, $f28
+        mul.s $f26, $f26, $f20
+        addiu $t1, $t1, -1
+        bgtz  $t1, newton
+        add.s $f22, $f22, $f26
+        addiu $t0, $t0, 1
+        ble   $t0, 2000, roots_next
+        la    $a0, roots
+        li    $v0, 4
+        syscall
+        mov.s $f12, $f22
+        li    $v0, 2
+        syscall
+        # products of x = i * 0.1 and y = 1 - i * 0.1, i = 0 .. 9999, subtracted when below the running sum
+        l.s   $f20, tenth
+        l.d   $f30, one
+        cvt.s.d $f30, $f30         # 1.0f
+        mtc1  $zero, $f22          # sum
+        li    $t0, 0
+dot_next:
+        mtc1  $t0, $f24
+        cvt.s.w $f24, $f24
+        mul.s $f24, $f24, $f20     # x
+        sub.s $f26, $f30, $f24     # y
+        mul.s $f28, $f24, $f26
+        c.lt.s $f28, $f22
+        bc1t  smaller
+        add.s $f22, $f22, $f28
+        j     dot_counted
+smaller:
+        sub.s $f22, $f22, $f28
+dot_counted:
+        addiu $t0, $t0, 1
+        blt   $t0, 10000, dot_next
+        la    $a0, dot
+        li    $v0, 4
+        syscall
+        mov.s $f12, $f22
+        li    $v0, 2
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        li    $v0, 10
+        syscall
@@ -0,0 +1,178 @@
+# Heap-heavy linked list: nodes of a value and a next pointer allocated one at a time with sbrk (syscall 9).
+# Builds a sorted list by insertion, removes the odd values onto a free list, reverses the list, then inserts more
+# values reusing the free nodes first.  Prints counts, values and checksums along the way, and the heap used.
+        .data
+count:  .asciiz "nodes: "
+values: .asciiz ", first: "
+comma:  .asciiz ", "
+sum:    .asciiz ", checksum: "
+heap:   .asciiz "heap bytes: "
+newline: .asciiz "\n"
+        .text
+main:   li    $s0, 0               # list head
+        li    $s1, 0               # free list head
+        li    $s2, 777             # random state
+        li    $a0, 0               # heap start
+        li    $v0, 9
+        syscall
+        move  $s3, $v0
+        li    $s4, 1500            # sorted insertion of 1500 values
+build:  jal   random
+        move  $a0, $v0
+        jal   insert
+        addiu $s4, $s4, -1
+        bgtz  $s4, build
+        jal   report
+        # remove odd values onto the free list
+        li    $t0, 0               # previous node
+        move  $t1, $s0
+remove: beqz  $t1, removed
+        lw    $t2, 0($t1)
+        lw    $t3, 4($t1)
+        andi  $t4, $t2, 1
+        beqz  $t4, keep
+        bnez  $t0, unlink
+        move  $s0, $t3
+        j     free
+unlink: sw    $t3, 4($t0)
+free:   sw    $s1, 4($t1)
+        move  $s1, $t1
+        move  $t1, $t3
+        j     remove
+keep:   move  $t0, $t1
+        move  $t1, $t3
+        j     remove
+removed:
+        jal   report
+        # reverse
+        li    $t0, 0
+        move  $t1, $s0
+reverse:
+        beqz  $t1, reversed
+        lw    $t2, 4($t1)
+        sw    $t0, 4($t1)
+        move  $t0, $t1
+        move  $t1, $t2
+        j     reverse
+reversed:
+        move  $s0, $t0
+        jal   report
+        # reverse back to ascending order, then insert 1000 more values
+        li    $t0, 0
+        move  $t1, $s0
+back:   beqz  $t1, ascending
+        lw    $t2, 4($t1)
+        sw    $t0, 4($t1)
+        move  $t0, $t1
+        move  $t1, $t2
+        j     back
+ascending:
+        move  $s0, $t0
+        li    $s4, 1000
+more:   jal   random
+        move  $a0, $v0
+        jal   insert
+        addiu $s4, $s4, -1
+        bgtz  $s4, more
+        jal   report
+        la    $a0, heap
+        li    $v0, 4
+        syscall
+        li    $a0, 0
+        li    $v0, 9
+        syscall
+        subu  $a0, $v0, $s3
+        li    $v0, 1
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        li    $v0, 10
+        syscall
+
+# Next pseudo-random value from 0 to 9999 in v0
+random: li    $t0, 1103515245
+        mul   $s2, $s2, $t0
+        addiu $s2, $s2, 12345
+        srl   $v0, $s2, 8
+        li    $t0, 10000
+        divu  $v0, $t0
+        mfhi  $v0
+        jr    $ra
+
+# Insert value a0 into the ascending list, in a node from the free list or else from sbrk
+insert: beqz  $s1, allocate
+        move  $t0, $s1
+        lw    $s1, 4($s1)
+        j     fill
+allocate:
+        move  $t1, $a0
+        li    $a0, 8
+        li    $v0, 9
+        syscall
+        move  $a0, $t1
+        move  $t0, $v0
+fill:   sw    $a0, 0($t0)
+        li    $t1, 0               # previous node
+        move  $t2, $s0
+find:   beqz  $t2, link
+        lw    $t3, 0($t2)
+        bge   $t3, $a0, link
+        move  $t1, $t2
+        lw    $t2, 4($t2)
+        j     find
+link:   sw    $t2, 4($t0)
+        bnez  $t1, after
+        move  $s0, $t0
+        jr    $ra
+after:  sw    $t0, 4($t1)
+        jr    $ra
+
+# Print the number of nodes, the first three values and a checksum of the list
+report: la    $a0, count
+        li    $v0, 4
+        syscall
+        li    $t0, 0               # count
+        li    $t1, 0               # checksum
+        move  $t2, $s0
+walk:   beqz  $t2, walked
+        lw    $t3, 0($t2)
+        sll   $t4, $t1, 5          # checksum = checksum * 31 + value
+        subu  $t1, $t4, $t1
+        addu  $t1, $t1, $t3
+        addiu $t0, $t0, 1
+        lw    $t2, 4($t2)
+        j     walk
+walked: move  $a0, $t0
+        li    $v0, 1
+        syscall
+        la    $a0, values
+        li    $v0, 4
+        syscall
+        lw    $a0, 0($s0)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $t2, 4($s0)
+        lw    $a0, 0($t2)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $t2, 4($t2)
+        lw    $a0, 0($t2)
+        li    $v0, 1
+        syscall
+        la    $a0, sum
+        li    $v0, 4
+        syscall
+        move  $a0, $t1
+        li    $v0, 36
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        jr    $ra
@@ -0,0 +1,107 @@
+# Integer matrix multiply C = A * B of 32 x 32 matrices, A[i][j] = i + j and B[i][j] = i - j, repeated 8 times.
+# Prints the trace of C, a checksum of all its elements, and two of them.
+        .eqv  N 32
+        .data
+a:      .space 4096
+b:      .space 4096
+c:      .space 4096
+trace:  .asciiz "trace: "
+sum:    .asciiz "\nchecksum: "
+corner: .asciiz "\nC[0][31], C[31][0]: "
+comma:  .asciiz ", "
+newline: .asciiz "\n"
+        .text
+main:   la    $s0, a
+        la    $s1, b
+        la    $s2, c
+        # fill A and B
+        li    $t0, 0               # i
+        move  $t2, $s0
+        move  $t3, $s1
+filli:  li    $t1, 0               # j
+fillj:  addu  $t4, $t0, $t1
+        sw    $t4, 0($t2)
+        subu  $t4, $t0, $t1
+        sw    $t4, 0($t3)
+        addiu $t2, $t2, 4
+        addiu $t3, $t3, 4
+        addiu $t1, $t1, 1
+        blt   $t1, N, fillj
+        addiu $t0, $t0, 1
+        blt   $t0, N, filli
+        li    $s3, 8               # repetitions
+repeat: li    $t0, 0               # i
+rows:   li    $t1, 0               # j
+columns:
+        li    $t4, 0               # C[i][j]
+        sll   $t5, $t0, 7
+        addu  $t5, $t5, $s0        # &A[i][0]
+        sll   $t6, $t1, 2
+        addu  $t6, $t6, $s1        # &B[0][j]
+        li    $t2, N               # k
+dot:    lw    $t7, 0($t5)
+        lw    $t8, 0($t6)
+        mul   $t9, $t7, $t8
+        addu  $t4, $t4, $t9
+        addiu $t5, $t5, 4
+        addiu $t6, $t6, 128
+        addiu $t2, $t2, -1
+        bgtz  $t2, dot
+        sll   $t5, $t0, 7
+        sll   $t6, $t1, 2
+        addu  $t5, $t5, $t6
+        addu  $t5, $t5, $s2
+        sw    $t4, 0($t5)
+        addiu $t1, $t1, 1
+        blt   $t1, N, columns
+        addiu $t0, $t0, 1
+        blt   $t0, N, rows
+        addiu $s3, $s3, -1
+        bgtz  $s3, repeat
+        # trace and checksum
+        li    $t0, 0               # index
+        li    $t1, 0               # trace
+        li    $t2, 0               # checksum
+        move  $t3, $s2
+total:  lw    $t4, 0($t3)
+        sll   $t5, $t2, 5          # checksum = checksum * 31 + value
+        subu  $t2, $t5, $t2
+        addu  $t2, $t2, $t4
+        li    $t5, 33              # diagonal: index multiple of N + 1
+        divu  $t0, $t5
+        mfhi  $t5
+        bnez  $t5, offdiagonal
+        addu  $t1, $t1, $t4
+offdiagonal:
+        addiu $t3, $t3, 4
+        addiu $t0, $t0, 1
+        blt   $t0, 1024, total
+        la    $a0, trace
+        li    $v0, 4
+        syscall
+        move  $a0, $t1
+        li    $v0, 1
+        syscall
+        la    $a0, sum
+        li    $v0, 4
+        syscall
+        move  $a0, $t2
+        li    $v0, 36
+        syscall
+        la    $a0, corner
+        li    $v0, 4
+        syscall
+        lw    $a0, 124($s2)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, 3968($s2)
+        li    $v0, 1
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        li    $v0, 10
+        syscall
@@ -0,0 +1,171 @@
+# Recursive merge sort of 12000 pseudo-random words through a work array, then a check that they are in order.
+# Prints the first and last values, a checksum, and whether the array is sorted.
+        .data
+array:  .space 48000
+work:   .space 48000
+comma:  .asciiz ", "
+first:  .asciiz "first: "
+last:   .asciiz "\nlast: "
+sum:    .asciiz "\nchecksum: "
+sorted: .asciiz "\nsorted\n"
+unsorted: .asciiz "\nnot sorted\n"
+        .text
+main:   li    $s0, 12000           # number of words
+        la    $s1, array
+        jal   fill
+        li    $a0, 0
+        move  $a1, $s0
+        jal   mergesort
+        jal   report
+        li    $v0, 10
+        syscall
+
+# Sort words a0 (included) to a1 (excluded) of the array
+mergesort:
+        subu  $t0, $a1, $a0
+        slti  $t0, $t0, 2
+        bnez  $t0, mdone
+        addiu $sp, $sp, -16
+        sw    $ra, 12($sp)
+        sw    $a0, 8($sp)
+        sw    $a1, 4($sp)
+        addu  $t0, $a0, $a1
+        srl   $t0, $t0, 1          # middle
+        sw    $t0, 0($sp)
+        move  $a1, $t0
+        jal   mergesort
+        lw    $a0, 0($sp)
+        lw    $a1, 4($sp)
+        jal   mergesort
+        lw    $t0, 8($sp)          # merge [low, middle) and [middle, high) into work, then copy back
+        lw    $t1, 0($sp)
+        lw    $t2, 4($sp)
+        move  $t3, $t0             # i
+        move  $t4, $t1             # j
+        la    $t5, work
+        sll   $t6, $t0, 2
+        addu  $t5, $t5, $t6        # output
+merge:  bge   $t3, $t1, right
+        bge   $t4, $t2, left
+        sll   $t6, $t3, 2
+        addu  $t6, $t6, $s1
+        lw    $t7, 0($t6)
+        sll   $t8, $t4, 2
+        addu  $t8, $t8, $s1
+        lw    $t9, 0($t8)
+        bgt   $t7, $t9, takeright
+left:   sll   $t6, $t3, 2
+        addu  $t6, $t6, $s1
+        lw    $t7, 0($t6)
+        sw    $t7, 0($t5)
+        addiu $t3, $t3, 1
+        addiu $t5, $t5, 4
+        j     next_merge
+right:  bge   $t4, $t2, copy
+takeright:
+        sll   $t8, $t4, 2
+        addu  $t8, $t8, $s1
+        lw    $t9, 0($t8)
+        sw    $t9, 0($t5)
+        addiu $t4, $t4, 1
+        addiu $t5, $t5, 4
+next_merge:
+        j     merge
+copy:   la    $t5, work
+        sll   $t6, $t0, 2
+        addu  $t5, $t5, $t6
+        addu  $t7, $t6, $s1
+        sll   $t8, $t2, 2
+        addu  $t8, $t8, $s1
+copyword:
+        lw    $t9, 0($t5)
+        sw    $t9, 0($t7)
+        addiu $t5, $t5, 4
+        addiu $t7, $t7, 4
+        blt   $t7, $t8, copyword
+        lw    $ra, 12($sp)
+        addiu $sp, $sp, 16
+mdone:  jr    $ra
+
+# Fill the s0 words at s1 with a linear congruential sequence
+fill:   li    $t0, 12345
+        li    $t1, 1103515245
+        move  $t2, $s1
+        move  $t3, $s0
+next:   mul   $t0, $t0, $t1
+        addiu $t0, $t0, 12345
+        srl   $t4, $t0, 8
+        andi  $t4, $t4, 0xffff
+        sw    $t4, 0($t2)
+        addiu $t2, $t2, 4
+        addiu $t3, $t3, -1
+        bgtz  $t3, next
+        jr    $ra
+
+# Print the first three and last three of the s0 words at s1, their checksum and whether they are sorted
+report: la    $a0, first
+        li    $v0, 4
+        syscall
+        lw    $a0, 0($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, 4($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, 8($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, last
+        li    $v0, 4
+        syscall
+        sll   $t0, $s0, 2
+        addu  $t0, $t0, $s1
+        lw    $a0, -12($t0)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, -8($t0)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, -4($t0)
+        li    $v0, 1
+        syscall
+        # checksum: sum of a[i] * (i + 1), and order check
+        li    $t1, 0               # checksum
+        li    $t2, 1               # index + 1
+        li    $t3, 1               # sorted
+        move  $t4, $s1
+        li    $t5, -1              # previous value
+check:  lw    $t6, 0($t4)
+        mul   $t7, $t6, $t2
+        addu  $t1, $t1, $t7
+        bge   $t6, $t5, inorder
+        li    $t3, 0
+inorder:
+        move  $t5, $t6
+        addiu $t4, $t4, 4
+        addiu $t2, $t2, 1
+        ble   $t2, $s0, check
+        la    $a0, sum
+        li    $v0, 4
+        syscall
+        move  $a0, $t1
+        li    $v0, 36              # unsigned
+        syscall
+        la    $a0, sorted
+        bnez  $t3, print
+        la    $a0, unsorted
+print:  li    $v0, 4
+        syscall
+        jr    $ra
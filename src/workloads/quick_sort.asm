@@ -0,0 +1,138 @@
+# Recursive quicksort (Lomuto partition) of 20000 pseudo-random words, then a check that they are in order.
+# Prints the first and last values, a checksum, and whether the array is sorted.
+        .data
+array:  .space 80000
+comma:  .asciiz ", "
+first:  .asciiz "first: "
+last:   .asciiz "\nlast: "
+sum:    .asciiz "\nchecksum: "
+sorted: .asciiz "\nsorted\n"
+unsorted: .asciiz "\nnot sorted\n"
+        .text
+main:   li    $s0, 20000           # number of words
+        la    $s1, array
+        jal   fill
+        move  $a0, $s1
+        sll   $a1, $s0, 2
+        addu  $a1, $a1, $s1
+        addiu $a1, $a1, -4
+        jal   quicksort
+        jal   report
+        li    $v0, 10
+        syscall
+
+# Sort the words from address a0 to address a1 included
+quicksort:
+        bge   $a0, $a1, qdone
+        addiu $sp, $sp, -12
+        sw    $ra, 8($sp)
+        sw    $a1, 4($sp)
+        lw    $t0, 0($a1)          # pivot: last word
+        addiu $t1, $a0, -4         # end of the words below the pivot
+        move  $t2, $a0
+partition:
+        lw    $t3, 0($t2)
+        bgt   $t3, $t0, above
+        addiu $t1, $t1, 4
+        lw    $t4, 0($t1)
+        sw    $t3, 0($t1)
+        sw    $t4, 0($t2)
+above:  addiu $t2, $t2, 4
+        blt   $t2, $a1, partition
+        addiu $t1, $t1, 4          # pivot goes after the words below it
+        lw    $t4, 0($t1)
+        sw    $t0, 0($t1)
+        sw    $t4, 0($a1)
+        sw    $t1, 0($sp)
+        addiu $a1, $t1, -4
+        jal   quicksort
+        lw    $t1, 0($sp)
+        addiu $a0, $t1, 4
+        lw    $a1, 4($sp)
+        jal   quicksort
+        lw    $ra, 8($sp)
+        addiu $sp, $sp, 12
+qdone:  jr    $ra
+
+# Fill the s0 words at s1 with a linear congruential sequence
+fill:   li    $t0, 12345
+        li    $t1, 1103515245
+        move  $t2, $s1
+        move  $t3, $s0
+next:   mul   $t0, $t0, $t1
+        addiu $t0, $t0, 12345
+        srl   $t4, $t0, 8
+        andi  $t4, $t4, 0xffff
+        sw    $t4, 0($t2)
+        addiu $t2, $t2, 4
+        addiu $t3, $t3, -1
+        bgtz  $t3, next
+        jr    $ra
+
+# Print the first three and last three of the s0 words at s1, their checksum and whether they are sorted
+report: la    $a0, first
+        li    $v0, 4
+        syscall
+        lw    $a0, 0($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, 4($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, 8($s1)
+        li    $v0, 1
+        syscall
+        la    $a0, last
+        li    $v0, 4
+        syscall
+        sll   $t0, $s0, 2
+        addu  $t0, $t0, $s1
+        lw    $a0, -12($t0)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, -8($t0)
+        li    $v0, 1
+        syscall
+        la    $a0, comma
+        li    $v0, 4
+        syscall
+        lw    $a0, -4($t0)
+        li    $v0, 1
+        syscall
+        # checksum: sum of a[i] * (i + 1), and order check
+        li    $t1, 0               # checksum
+        li    $t2, 1               # index + 1
+        li    $t3, 1               # sorted
+        move  $t4, $s1
+        li    $t5, -1              # previous value
+check:  lw    $t6, 0($t4)
+        mul   $t7, $t6, $t2
+        addu  $t1, $t1, $t7
+        bge   $t6, $t5, inorder
+        li    $t3, 0
+inorder:
+        move  $t5, $t6
+        addiu $t4, $t4, 4
+        addiu $t2, $t2, 1
+        ble   $t2, $s0, check
+        la    $a0, sum
+        li    $v0, 4
+        syscall
+        move  $a0, $t1
+        li    $v0, 36              # unsigned
+        syscall
+        la    $a0, sorted
+        bnez  $t3, print
+        la    $a0, unsorted
+print:  li    $v0, 4
+        syscall
+        jr    $ra
@@ -0,0 +1,151 @@
+# String processing with console syscalls: reads a line count, then each line, and prints for each its length,
+# number of words and vowels, the line reversed, and the line in upper case.
+        .data
+buffer: .space 256
+copy:   .space 256
+length: .asciiz "length "
+words:  .asciiz ", words "
+vowels: .asciiz ", vowels "
+newline: .asciiz "\n"
+vowel_set: .asciiz "aeiouAEIOU"
+        .text
+main:   li    $v0, 5               # line count
+        syscall
+        move  $s0, $v0
+line:   blez  $s0, done
+        la    $a0, buffer
+        li    $a1, 256
+        li    $v0, 8
+        syscall
+        la    $a0, buffer
+        jal   chomp
+        move  $s1, $v0             # length
+        la    $a0, buffer
+        jal   count_words
+        move  $s2, $v0
+        la    $a0, buffer
+        jal   count_vowels
+        move  $s3, $v0
+        la    $a0, length
+        li    $v0, 4
+        syscall
+        move  $a0, $s1
+        li    $v0, 1
+        syscall
+        la    $a0, words
+        li    $v0, 4
+        syscall
+        move  $a0, $s2
+        li    $v0, 1
+        syscall
+        la    $a0, vowels
+        li    $v0, 4
+        syscall
+        move  $a0, $s3
+        li    $v0, 1
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        la    $a0, buffer          # reversed
+        la    $a1, copy
+        move  $a2, $s1
+        jal   reverse
+        la    $a0, copy
+        li    $v0, 4
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        la    $a0, buffer          # upper case in place
+        jal   upper
+        la    $a0, buffer
+        li    $v0, 4
+        syscall
+        la    $a0, newline
+        li    $v0, 4
+        syscall
+        addiu $s0, $s0, -1
+        j     line
+done:   li    $v0, 10
+        syscall
+
+# Remove the newline ending the string at a0, returning its length
+chomp:  move  $v0, $zero
+chomp_next:
+        addu  $t0, $a0, $v0
+        lbu   $t1, 0($t0)
+        beqz  $t1, chomp_done
+        bne   $t1, 10, chomp_char
+        sb    $zero, 0($t0)
+        jr    $ra
+chomp_char:
+        addiu $v0, $v0, 1
+        j     chomp_next
+chomp_done:
+        jr    $ra
+
+# Number of space separated words of the string at a0
+count_words:
+        move  $v0, $zero
+        li    $t2, 1               # after a space
+words_next:
+        lbu   $t1, 0($a0)
+        beqz  $t1, words_done
+        addiu $a0, $a0, 1
+        bne   $t1, 32, in_word
+        li    $t2, 1
+        j     words_next
+in_word:
+        beqz  $t2, words_next
+        addiu $v0, $v0, 1
+        move  $t2, $zero
+        j     words_next
+words_done:
+        jr    $ra
+
+# Number of vowels of the string at a0, by searching each character in vowel_set
+count_vowels:
+        move  $v0, $zero
+vowels_next:
+        lbu   $t1, 0($a0)
+        beqz  $t1, vowels_done
+        addiu $a0, $a0, 1
+        la    $t3, vowel_set
+search: lbu   $t4, 0($t3)
+        beqz  $t4, vowels_next
+        addiu $t3, $t3, 1
+        bne   $t4, $t1, search
+        addiu $v0, $v0, 1
+        j     vowels_next
+vowels_done:
+        jr    $ra
+
+# Copy the a2 characters at a0 to a1 in reverse order, terminated by a null
+reverse:
+        addu  $t0, $a0, $a2
+        sb    $zero, 0($a1)
+        addu  $t1, $a1, $a2
+        sb    $zero, 0($t1)
+reverse_next:
+        beq   $t0, $a0, reverse_done
+        addiu $t0, $t0, -1
+        lbu   $t2, 0($t0)
+        sb    $t2, 0($a1)
+        addiu $a1, $a1, 1
+        j     reverse_next
+reverse_done:
+        jr    $ra
+
+# Upper case the letters of the string at a0 in place
+upper:  lbu   $t1, 0($a0)
+        beqz  $t1, upper_done
+        blt   $t1, 'a', upper_keep
+        bgt   $t1, 'z', upper_keep
+        addiu $t1, $t1, -32
+        sb    $t1, 0($a0)
+upper_keep:
+        addiu $a0, $a0, 1
+        j     upper
+upper_done:
+        jr    $ra